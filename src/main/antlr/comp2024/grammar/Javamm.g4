@@ -78,8 +78,7 @@ methodDecl locals [boolean isPublic=false, boolean isStatic = false]
             ( paramDecl ( ',' paramDecl )* )?
         RPAREN
         LCURLY
-            varDecl* ( stmt )*
-            stmt
+            varDecl* stmt+
         RCURLY #ClassMethod
     | (PUBLIC {$isPublic=true;})?
         (STATIC {$isStatic=true;})?
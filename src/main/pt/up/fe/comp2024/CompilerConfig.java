@@ -1,7 +1,11 @@
 package pt.up.fe.comp2024;
 
+import pt.up.fe.comp2024.backend.JasminRunner;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPipelines;
+
 import java.io.File;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 
@@ -10,6 +14,18 @@ public class CompilerConfig {
     private static final String INPUT_FILE = "inputFile";
     private static final String OPTIMIZE = "optimize";
     private static final String REGISTER = "registerAllocation";
+    private static final String CACHE_DIR = "cacheDir";
+    private static final String CACHE_SIZE = "cacheSize";
+    private static final String WATCH = "watch";
+    private static final String INLINE = "inline";
+    private static final String UNROLL = "unroll";
+    private static final String CALL_STEPS = "callSteps";
+    private static final String LEVEL = "optimizationLevel";
+    private static final String PASSES = "passes";
+    private static final String STATISTICS = "passStatistics";
+    private static final String EXECUTE = "execute";
+    private static final String JAR = "jarFile";
+    private static final String BUNDLE = "bundleDir";
 
 
     static Map<String, String> shortToLong = new HashMap<>();
@@ -18,6 +34,18 @@ public class CompilerConfig {
         shortToLong.put("i", CompilerConfig.INPUT_FILE);
         shortToLong.put("o", CompilerConfig.OPTIMIZE);
         shortToLong.put("r", CompilerConfig.REGISTER);
+        shortToLong.put("c", CompilerConfig.CACHE_DIR);
+        shortToLong.put("s", CompilerConfig.CACHE_SIZE);
+        shortToLong.put("w", CompilerConfig.WATCH);
+        shortToLong.put("l", CompilerConfig.INLINE);
+        shortToLong.put("u", CompilerConfig.UNROLL);
+        shortToLong.put("f", CompilerConfig.CALL_STEPS);
+        shortToLong.put("O", CompilerConfig.LEVEL);
+        shortToLong.put("p", CompilerConfig.PASSES);
+        shortToLong.put("t", CompilerConfig.STATISTICS);
+        shortToLong.put("x", CompilerConfig.EXECUTE);
+        shortToLong.put("j", CompilerConfig.JAR);
+        shortToLong.put("b", CompilerConfig.BUNDLE);
     }
 
 
@@ -33,13 +61,225 @@ public class CompilerConfig {
     }
 
     public static boolean getOptimize(Map<String, String> config) {
-        return Boolean.parseBoolean(config.getOrDefault(OPTIMIZE, "false"));
+        return getOptimizationLevel(config) > 0;
+    }
+
+    /**
+     * "-O<n>" selects the passes of level n, from 0 to 3, "-O" alone and "-o" being level 2.
+     *
+     * @param config
+     * @return
+     */
+    public static int getOptimizationLevel(Map<String, String> config) {
+        var level = config.get(LEVEL);
+
+        if (level == null) {
+            return Boolean.parseBoolean(config.getOrDefault(OPTIMIZE, "false")) ? 2 : 0;
+        }
+
+        if (level.equals("true")) {
+            return 2;
+        }
+
+        if (!level.matches("[0-3]")) {
+            throw new RuntimeException("Option '-O' expects a level from 0 to 3, got '" + level + "'");
+        }
+
+        return Integer.parseInt(level);
+    }
+
+    /**
+     * "-p=unroll,-inline" runs loop unrolling and not inlining, whatever the optimization level.
+     *
+     * @param config
+     * @return whether each pass named in "-p" is enabled
+     */
+    public static Map<String, Boolean> getPassFlags(Map<String, String> config) {
+        var flags = new LinkedHashMap<String, Boolean>();
+        var passes = config.get(PASSES);
+
+        if (passes == null) {
+            return flags;
+        }
+
+        for (var pass : passes.split(",")) {
+            pass = pass.trim();
+            if (pass.startsWith("-")) {
+                flags.put(pass.substring(1), false);
+            } else if (!pass.isEmpty()) {
+                flags.put(pass, true);
+            }
+        }
+
+        return flags;
+    }
+
+    /**
+     * @param config
+     * @return whether the runs, changes and time of each optimization pass are printed
+     */
+    public static boolean getPassStatistics(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(STATISTICS, "false"));
     }
 
     public static int getRegisterAllocation(Map<String, String> config) {
         return Integer.parseInt(config.getOrDefault(REGISTER, "-1"));
     }
 
+    /**
+     * @param config
+     * @return the directory of the compilation cache, or empty if caching is disabled
+     */
+    public static Optional<File> getCacheDir(Map<String, String> config) {
+        var cacheDir = config.get(CACHE_DIR);
+
+        if (cacheDir == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new File(cacheDir));
+    }
+
+    /**
+     * @param config
+     * @return the maximum size of the compilation cache, in megabytes
+     */
+    public static int getCacheSize(Map<String, String> config) {
+        return Integer.parseInt(config.getOrDefault(CACHE_SIZE, "64"));
+    }
+
+    /**
+     * Methods whose statements have at most this many AST nodes are inlined into their callers when optimizing, 0
+     * disables inlining. Defaults to 30, or 60 with "-O3".
+     *
+     * @param config
+     * @return
+     */
+    public static int getInlineLimit(Map<String, String> config) {
+        return Integer.parseInt(config.getOrDefault(INLINE, getOptimizationLevel(config) >= 3 ? "60" : "30"));
+    }
+
+    /**
+     * Loops with a number of iterations known at compile time are unrolled when optimizing, into statements of at most
+     * this many AST nodes, 0 disables unrolling. Defaults to 128, or 512 with "-O3".
+     *
+     * @param config
+     * @return
+     */
+    public static int getUnrollBudget(Map<String, String> config) {
+        return Integer.parseInt(config.getOrDefault(UNROLL, getOptimizationLevel(config) >= 3 ? "512" : "128"));
+    }
+
+    /**
+     * Calls to pure methods of the class with literal arguments are replaced by their result when optimizing, if they
+     * return within this many OLLIR instructions, 0 disables it. Defaults to 10000, or 100000 with "-O3".
+     *
+     * @param config
+     * @return
+     */
+    public static int getCallSteps(Map<String, String> config) {
+        var defaultSteps = getOptimizationLevel(config) >= 3 ? "100000" : "10000";
+        return Integer.parseInt(config.getOrDefault(CALL_STEPS, defaultSteps));
+    }
+
+    /**
+     * "-w" watches the input file, "-w=<dir>" watches every .jmm file in the given directory.
+     *
+     * @param config
+     * @return the file or directory to watch, or empty if not in watch mode
+     */
+    public static Optional<File> getWatch(Map<String, String> config) {
+        var watch = config.get(WATCH);
+
+        if (watch == null) {
+            return Optional.empty();
+        }
+
+        if (watch.equals("true")) {
+            return getInputFile(config);
+        }
+
+        return Optional.of(new File(watch));
+    }
+
+    /**
+     * "-x" runs the compiled class in the JVM of the compiler, giving up on it after 5 seconds, and "-x=<ms>" after
+     * the given number of milliseconds.
+     *
+     * @param config
+     * @return how long the compiled class may run, or empty if it is not run
+     */
+    public static Optional<Long> getExecuteTimeout(Map<String, String> config) {
+        var execute = config.get(EXECUTE);
+
+        if (execute == null) {
+            return Optional.empty();
+        }
+
+        if (execute.equals("true")) {
+            return Optional.of(JasminRunner.DEFAULT_TIMEOUT_MS);
+        }
+
+        if (!execute.matches("[0-9]+")) {
+            throw new RuntimeException("Option '-x' expects a timeout in milliseconds, got '" + execute + "'");
+        }
+
+        return Optional.of(Long.parseLong(execute));
+    }
+
+    /**
+     * "-jar=<file>" packages the compiled class in the given jar, with the class as its main class.
+     *
+     * @param config
+     * @return the jar to write, or empty if none
+     */
+    public static Optional<File> getJarFile(Map<String, String> config) {
+        var jar = config.get(JAR);
+
+        if (jar == null) {
+            return Optional.empty();
+        }
+
+        if (jar.equals("true") || jar.isEmpty()) {
+            throw new RuntimeException("Option '-jar' expects the path of the jar, use '-jar=<PATH_TO_JAR>'");
+        }
+
+        return Optional.of(new File(jar));
+    }
+
+    /**
+     * "-b" packages the runtime classes of Java-- (libs-jmm/compiled) in the jar of "-jar" as well, and "-b=<dir>" the
+     * class files of the given directory.
+     *
+     * @param config
+     * @return the directory of the classes to package along with the compiled ones, or empty if none
+     */
+    public static Optional<File> getBundleDir(Map<String, String> config) {
+        var bundle = config.get(BUNDLE);
+
+        if (bundle == null) {
+            return Optional.empty();
+        }
+
+        if (bundle.equals("true")) {
+            return Optional.of(JasminRunner.RUNTIME_CLASSES);
+        }
+
+        return Optional.of(new File(bundle));
+    }
+
+    /**
+     * @param config
+     * @param inputFile
+     * @return a copy of the config that compiles the given file instead
+     */
+    public static Map<String, String> withInputFile(Map<String, String> config, File inputFile) {
+        var fileConfig = new HashMap<>(config);
+        fileConfig.put(INPUT_FILE, inputFile.getAbsolutePath());
+
+        return fileConfig;
+    }
+
 
     public static Map<String, String> getDefault() {
 
@@ -72,6 +312,11 @@ public class CompilerConfig {
                 throw new RuntimeException("Arguments should start with '-'");
             }
 
+            // "-jar=<file>" as well as "-j=<file>"
+            if (arg.startsWith("-jar")) {
+                arg = "-j" + arg.substring(4);
+            }
+
             String shortOption = arg.substring(1, 2);
             if (!isShortOpt(shortOption)) {
                 throw new RuntimeException("Unrecognized option '-" + shortOption + "'");
@@ -83,6 +328,9 @@ public class CompilerConfig {
                 if (equalSign.equals("=")) {
 
                     value = arg.substring(3);
+                } else if (shortOption.equals("O")) {
+                    // "-O2" as well as "-O=2"
+                    value = arg.substring(2);
                 }
             }
 
@@ -105,7 +353,25 @@ public class CompilerConfig {
 
         // Verify if values are valid
         getOptimize(config);
+        getOptimizationLevel(config);
+        OptimizationPipelines.checkPassNames(config);
         getRegisterAllocation(config);
+        getCacheSize(config);
+        getInlineLimit(config);
+        getUnrollBudget(config);
+        getCallSteps(config);
+        getExecuteTimeout(config);
+        getJarFile(config);
+        getBundleDir(config).ifPresent(bundle -> {
+            if (!bundle.isDirectory()) {
+                throw new RuntimeException("Option '-b' expects an existing directory, got '" + bundle + "'");
+            }
+        });
+        getWatch(config).ifPresent(watch -> {
+            if (!watch.exists()) {
+                throw new RuntimeException("Option '-w' expects an existing file or directory, got '" + watch + "'");
+            }
+        });
 
         return config;
     }
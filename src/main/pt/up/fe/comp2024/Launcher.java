@@ -6,12 +6,20 @@ import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.backend.AssembledClass;
+import pt.up.fe.comp2024.backend.JarPackager;
 import pt.up.fe.comp2024.backend.JasminBackendImpl;
+import pt.up.fe.comp2024.backend.JasminRunner;
+import pt.up.fe.comp2024.cache.CompilationCache;
 import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
 import pt.up.fe.comp2024.parser.JmmParserImpl;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsSystem;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 public class Launcher {
@@ -25,7 +33,38 @@ public class Launcher {
         if (!inputFile.isFile()) {
             throw new RuntimeException("Option '-i' expects a path to an existing input file, got '" + args[0] + "'.");
         }
-        String code = SpecsIo.read(inputFile);
+
+        // Watch mode, keeps recompiling the input in this JVM as it changes
+        if (CompilerConfig.getWatch(config).isPresent()) {
+            new Watcher(config).run();
+            return;
+        }
+
+        var jasminCode = compile(SpecsIo.read(inputFile), config);
+        CompilerConfig.getJarFile(config).ifPresent(jar -> writeJar(jar, jasminCode, List.of(), config));
+        CompilerConfig.getExecuteTimeout(config).ifPresent(timeout -> execute(jasminCode, timeout));
+    }
+
+    /**
+     * Runs the whole pipeline over the given code, throwing if any stage reports an error.
+     *
+     * @param code
+     * @param config
+     * @return the Jasmin code of the class
+     */
+    public static String compile(String code, Map<String, String> config) {
+        // Compilation cache, skips the whole pipeline if this code was already compiled with the same options
+        var cache = CompilerConfig.getCacheDir(config)
+                .map(dir -> new CompilationCache(dir.toPath(), CompilerConfig.getCacheSize(config) * 1024L * 1024L));
+        var cacheKey = cache.map(c -> c.getKey(code, config)).orElse(null);
+
+        if (cache.isPresent()) {
+            var cached = cache.get().get(cacheKey);
+            if (cached.isPresent()) {
+                printCacheStats("hit", cache.get(), config);
+                return cached.get().jasminCode();
+            }
+        }
 
         // Parsing stage
         JmmParserImpl parser = new JmmParserImpl();
@@ -44,6 +83,7 @@ public class Launcher {
         // Optimization stage
         JmmOptimizationImpl ollirGen = new JmmOptimizationImpl();
         OllirResult ollirResult = ollirGen.toOllir(semanticsResult);
+        ollirResult = ollirGen.optimize(ollirResult);
         TestUtils.noErrors(ollirResult.getReports());
 
         // Print OLLIR code
@@ -56,6 +96,62 @@ public class Launcher {
 
         // Print Jasmin code
         //System.out.println(jasminResult.getJasminCode());
+
+        if (cache.isPresent()) {
+            cache.get().put(cacheKey, new CompilationCache.Entry(ollirResult.getOllirCode(), jasminResult.getJasminCode()));
+            printCacheStats("miss", cache.get(), config);
+        }
+
+        return jasminResult.getJasminCode();
+    }
+
+    /**
+     * Reports a cache hit or miss with "-t", next to the statistics of the passes, so that it does not get mixed with
+     * the output of "-x" otherwise.
+     */
+    private static void printCacheStats(String result, CompilationCache cache, Map<String, String> config) {
+        if (CompilerConfig.getPassStatistics(config)) {
+            System.out.println("Compilation cache " + result + " (" + cache.getStats() + ")");
+        }
+    }
+
+    /**
+     * Packages compiled classes in a jar, along with the classes of "-b" if given.
+     *
+     * @param jar
+     * @param mainJasmin  the Jasmin code of the main class of the jar, or null if it has none
+     * @param otherJasmin the Jasmin code of the other classes
+     * @param config
+     */
+    public static void writeJar(File jar, String mainJasmin, Collection<String> otherJasmin,
+                                Map<String, String> config) {
+        var classes = new ArrayList<AssembledClass>();
+        String mainClass = null;
+        if (mainJasmin != null) {
+            var main = AssembledClass.assemble(mainJasmin);
+            classes.add(main);
+            mainClass = main.getBinaryName();
+        }
+        otherJasmin.forEach(jasminCode -> classes.add(AssembledClass.assemble(jasminCode)));
+
+        JarPackager.write(jar, classes, mainClass, CompilerConfig.getBundleDir(config).orElse(null));
+        System.out.println("Wrote " + jar + " with " + classes.size() + " compiled classes");
+    }
+
+    /**
+     * Runs the compiled class in this JVM, with the standard input of the compiler, and prints what it printed.
+     *
+     * @param jasminCode
+     * @param timeoutMs
+     */
+    public static void execute(String jasminCode, long timeoutMs) {
+        var output = JasminRunner.fromJasmin(jasminCode).run(System.in, timeoutMs);
+
+        System.out.print(output.getStdOut());
+        System.err.print(output.getStdErr());
+        if (output.getReturnValue() != 0) {
+            System.out.println("Exited with code " + output.getReturnValue());
+        }
     }
 
 }
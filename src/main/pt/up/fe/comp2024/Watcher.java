@@ -0,0 +1,200 @@
+package pt.up.fe.comp2024;
+
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps the compiler resident and recompiles the watched files as they change.
+ * <p>
+ * Every compile goes through the same JVM, so after the first one the parser, analysis and backend classes are
+ * already loaded and compiled by the JIT. Editors usually save a file with several events in a row (truncate, write,
+ * rename), so changes are only compiled once no new event arrived for {@link #DEBOUNCE_MS}.
+ */
+public class Watcher {
+
+    private static final long DEBOUNCE_MS = 50;
+    private static final String EXTENSION = ".jmm";
+
+    private final Map<String, String> config;
+    private final Path dir;
+    // null when watching a whole directory
+    private final Path file;
+
+    // last compiled contents, to skip events that did not change the file
+    private final Map<Path, String> compiled;
+
+    // the Jasmin of the files that compiled, packaged together by "-jar"
+    private final Map<Path, String> jasmin;
+
+    public Watcher(Map<String, String> config) {
+        this.config = config;
+
+        var watch = CompilerConfig.getWatch(config).orElseThrow().getAbsoluteFile().toPath();
+        this.dir = Files.isDirectory(watch) ? watch : watch.getParent();
+        this.file = Files.isDirectory(watch) ? null : watch;
+        this.compiled = new HashMap<>();
+        this.jasmin = new TreeMap<>();
+    }
+
+    /**
+     * Compiles the watched files once, then recompiles them on every change. Only returns if interrupted.
+     */
+    public void run() {
+        try (var watchService = FileSystems.getDefault().newWatchService()) {
+            dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            System.out.println("Watching " + (file != null ? file : dir) + ", press Ctrl+C to stop");
+
+            compileAll(getWatchedFiles());
+
+            while (true) {
+                var changed = new LinkedHashSet<Path>();
+                var key = watchService.take();
+
+                // wait for a burst of edits to settle
+                while (key != null) {
+                    collectChanges(key, changed);
+                    key = watchService.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+                }
+
+                compileAll(changed);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not watch '" + dir + "'", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<Path> getWatchedFiles() {
+        if (file != null) {
+            return List.of(file);
+        }
+
+        var files = new ArrayList<Path>();
+        for (var child : Objects.requireNonNull(dir.toFile().listFiles())) {
+            if (isWatched(child.toPath())) {
+                files.add(child.toPath());
+            }
+        }
+        Collections.sort(files);
+
+        return files;
+    }
+
+    private void collectChanges(WatchKey key, Set<Path> changed) {
+        for (var event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // events were lost, look at every file again
+                changed.addAll(getWatchedFiles());
+                continue;
+            }
+
+            var path = dir.resolve((Path) event.context());
+            if (isWatched(path)) {
+                changed.add(path);
+            }
+        }
+
+        key.reset();
+    }
+
+    private boolean isWatched(Path path) {
+        if (file != null) {
+            return path.equals(file);
+        }
+
+        // a deleted file is only known by its earlier compile
+        return path.getFileName().toString().endsWith(EXTENSION)
+                && (Files.isRegularFile(path) || compiled.containsKey(path));
+    }
+
+    private void compileAll(Collection<Path> paths) {
+        var changed = false;
+        for (var path : paths) {
+            changed |= compile(path.toFile());
+        }
+
+        var jar = CompilerConfig.getJarFile(config);
+        if (changed && jar.isPresent()) {
+            writeJar(jar.get());
+        }
+    }
+
+    /**
+     * @return true if the file changed since it was last compiled
+     */
+    private boolean compile(File inputFile) {
+        var path = inputFile.toPath();
+        if (!inputFile.isFile()) {
+            jasmin.remove(path);
+            if (compiled.remove(path) == null) {
+                return false;
+            }
+
+            System.out.println("Removed " + inputFile.getName());
+            return true;
+        }
+
+        var code = SpecsIo.read(inputFile);
+        if (code.equals(compiled.get(path))) {
+            return false;
+        }
+        compiled.put(path, code);
+
+        var start = System.nanoTime();
+        try {
+            var jasminCode = Launcher.compile(code, CompilerConfig.withInputFile(config, inputFile));
+            System.out.println("Compiled " + inputFile.getName() + " in " + getMillis(start) + " ms");
+            jasmin.put(path, jasminCode);
+
+            // run in this JVM, with the classes of the previous runs dropped
+            CompilerConfig.getExecuteTimeout(config).ifPresent(timeout -> Launcher.execute(jasminCode, timeout));
+        } catch (RuntimeException e) {
+            // keep watching, the next save may fix it
+            System.out.println("Failed to compile " + inputFile.getName() + " in " + getMillis(start) + " ms: "
+                    + e.getMessage());
+            jasmin.remove(path);
+        }
+
+        return true;
+    }
+
+    /**
+     * Packages every watched file that compiles, with the input file as the main class of the jar. When the input file
+     * is not one of them, e.g. it is outside the watched directory or does not compile, the jar has no main class.
+     */
+    private void writeJar(File jar) {
+        if (jasmin.isEmpty()) {
+            System.out.println("Not writing " + jar + ", no file compiles");
+            return;
+        }
+
+        var mainPath = CompilerConfig.getInputFile(config)
+                .map(inputFile -> inputFile.getAbsoluteFile().toPath())
+                .filter(jasmin::containsKey)
+                .orElse(null);
+        var mainJasmin = mainPath != null ? jasmin.get(mainPath) : null;
+        var others = jasmin.entrySet().stream()
+                .filter(entry -> !entry.getKey().equals(mainPath))
+                .map(Map.Entry::getValue)
+                .toList();
+
+        try {
+            Launcher.writeJar(jar, mainJasmin, others, config);
+        } catch (RuntimeException e) {
+            System.out.println("Failed to write " + jar + ": " + e.getMessage());
+        }
+    }
+
+    private static long getMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
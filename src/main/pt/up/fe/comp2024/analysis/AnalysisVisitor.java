@@ -4,22 +4,52 @@ import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.ast.PreorderJmmVisitor;
 import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TreeWalker;
+import pt.up.fe.comp2024.cache.IncrementalCompilation;
+import pt.up.fe.comp2024.symboltable.MethodScope;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
 
 /**
- *
+ * Preorder visitor for analysis passes, walked with an explicit stack (see {@link TreeWalker}).
+ * <p>
+ * Besides the usual visits, which run before the children of a node, passes can register post visits, which run
+ * after all of them. Rules that need the results of the children (e.g. type inference) should be post visits
+ * instead of visiting the children themselves, which would visit them again.
  */
 public abstract class AnalysisVisitor extends PreorderJmmVisitor<SymbolTable, Void> implements AnalysisPass {
 
     private List<Report> reports;
 
+    private MethodScope currentScope;
+
+    // Filled by buildVisitor, which runs in the super constructor before the fields of this class are initialized
+    private Map<String, BiFunction<JmmNode, SymbolTable, Void>> postVisits;
+
     public AnalysisVisitor() {
         reports = new ArrayList<>();
         setDefaultValue(() -> null);
     }
 
+    /**
+     * Registers a visit that runs after the children of the node were visited.
+     *
+     * @param kind
+     * @param method
+     */
+    protected void addPostVisit(Kind kind, BiFunction<JmmNode, SymbolTable, Void> method) {
+        if (postVisits == null) {
+            postVisits = new HashMap<>();
+        }
+
+        postVisits.put(kind.toString(), method);
+    }
+
     protected void addReport(Report report) {
         reports.add(report);
     }
@@ -28,6 +58,61 @@ public abstract class AnalysisVisitor extends PreorderJmmVisitor<SymbolTable, Vo
         return reports;
     }
 
+    /**
+     * @return the scope of the method currently being visited, or null if outside a method
+     */
+    protected MethodScope getCurrentScope() {
+        return currentScope;
+    }
+
+    @Override
+    public Void visit(JmmNode node, SymbolTable table) {
+        TreeWalker.walk(node, child -> preVisit(child, table), child -> postVisit(child, table));
+        return null;
+    }
+
+    /**
+     * Re-runs the visit and post visit of a single node, without visiting its children again.
+     *
+     * @param node
+     * @param table
+     */
+    protected void revisit(JmmNode node, SymbolTable table) {
+        getVisit(node).apply(node, table);
+        postVisit(node, table);
+    }
+
+    private boolean preVisit(JmmNode node, SymbolTable table) {
+        if (Kind.METHOD_DECL.check(node)) {
+            // Results of this method are taken from the compilation cache
+            if (IncrementalCompilation.isReused(node)) {
+                return false;
+            }
+
+            // Resolve the method once on entry, its descendants reuse the scope
+            currentScope = new MethodScope(node, table);
+        }
+
+        getVisit(node).apply(node, table);
+        return true;
+    }
+
+    private void postVisit(JmmNode node, SymbolTable table) {
+        if (postVisits == null) {
+            return;
+        }
+
+        // Same lookup as the visits, the most specific kind in the hierarchy wins
+        for (var kind : node.getHierarchy()) {
+            var postVisit = postVisits.get(kind);
+
+            if (postVisit != null) {
+                postVisit.apply(node, table);
+                return;
+            }
+        }
+    }
+
 
     @Override
     public List<Report> analyze(JmmNode root, SymbolTable table) {
@@ -2,14 +2,19 @@ package pt.up.fe.comp2024.analysis;
 
 import pt.up.fe.comp.jmm.analysis.JmmAnalysis;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
-import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
-import pt.up.fe.comp2024.analysis.optimization.ConstantFolding;
-import pt.up.fe.comp2024.analysis.optimization.ConstantPropagation;
+import pt.up.fe.comp2024.CompilerConfig;
 import pt.up.fe.comp2024.analysis.passes.*;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TreeWalker;
+import pt.up.fe.comp2024.cache.IncrementalCompilation;
+import pt.up.fe.comp2024.optimization.pipeline.AstUnit;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPipelines;
+import pt.up.fe.comp2024.optimization.pipeline.PassStatistics;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
 import pt.up.fe.comp2024.symboltable.JmmSymbolTableBuilder;
 
 import java.util.ArrayList;
@@ -33,10 +38,14 @@ public class JmmAnalysisImpl implements JmmAnalysis {
 
         JmmNode rootNode = parserResult.getRootNode();
 
-        SymbolTable table = JmmSymbolTableBuilder.build(rootNode);
+        JmmSymbolTable table = JmmSymbolTableBuilder.build(rootNode);
 
         List<Report> reports = new ArrayList<>();
 
+        // Methods unchanged since a previous compilation are skipped by the passes
+        var incremental = IncrementalCompilation.fromConfig(parserResult.getConfig());
+        incremental.ifPresent(inc -> inc.fingerprintMethods(rootNode, table));
+
         // Visit all nodes in the AST
         for (var analysisPass : analysisPasses) {
             try {
@@ -53,17 +62,24 @@ public class JmmAnalysisImpl implements JmmAnalysis {
 
         }
 
-        if(parserResult.getConfig().get("optimize") != null && parserResult.getConfig().get("optimize").equals("true")){
-            ConstantPropagation constantPropagationVisitor = new ConstantPropagation();
-            ConstantFolding constantFoldingVisitor = new ConstantFolding();
-            boolean modified;
-            do {
-                constantPropagationVisitor.optimize(rootNode, table);
-                constantFoldingVisitor.optimize(rootNode, table);
-                modified = constantPropagationVisitor.modified || constantFoldingVisitor.modified;
-            } while (modified);
+        if (incremental.isPresent()) {
+            for (var method : TreeWalker.getDescendants(rootNode, Kind.METHOD_DECL)) {
+                if (IncrementalCompilation.isReused(method)) {
+                    reports.addAll(incremental.get().getReports(method));
+                } else {
+                    incremental.get().putReports(method, reports.stream()
+                            .filter(report -> IncrementalCompilation.isInside(report, method))
+                            .toList());
+                }
+            }
+        }
 
+        var statistics = new PassStatistics();
+        OptimizationPipelines.ast(parserResult.getConfig()).run(new AstUnit(rootNode, table), statistics);
+        if (CompilerConfig.getPassStatistics(parserResult.getConfig()) && !statistics.isEmpty()) {
+            System.out.print(statistics.getReport("AST passes:"));
         }
+
         return new JmmSemanticsResult(parserResult, table, reports);
     }
 }
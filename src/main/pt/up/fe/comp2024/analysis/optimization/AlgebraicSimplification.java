@@ -0,0 +1,293 @@
+package pt.up.fe.comp2024.analysis.optimization;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp2024.analysis.AnalysisVisitor;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.optimization.pipeline.AstUnit;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites expressions and statements using algebraic identities and boolean folding.
+ * <p>
+ * Nodes are simplified bottom-up, so each node sees its children already simplified. A node is rewritten by the first
+ * of its rules that applies, and the result is simplified again until no rule applies. Rules that drop an operand
+ * only do so when evaluating it has no side effects.
+ */
+public class AlgebraicSimplification extends AnalysisVisitor implements OptimizationPass<AstUnit> {
+
+    /**
+     * A rewrite of a single node.
+     */
+    @FunctionalInterface
+    private interface Rule {
+        /**
+         * @param node
+         * @return the node that replaces the given one, or null if the rule does not apply
+         */
+        JmmNode apply(JmmNode node);
+    }
+
+    private static final Map<Kind, List<Rule>> RULES = Map.of(
+            Kind.PRECEDENT_EXPR, List.of(AlgebraicSimplification::unwrapAtom),
+            Kind.NEG_EXPR, List.of(AlgebraicSimplification::foldNot, AlgebraicSimplification::doubleNot),
+            Kind.BINARY_EXPR, List.of(AlgebraicSimplification::foldComparison, AlgebraicSimplification::foldAnd,
+                    AlgebraicSimplification::additiveIdentity, AlgebraicSimplification::multiplicativeIdentity,
+                    AlgebraicSimplification::multiplyByZero, AlgebraicSimplification::selfSubtraction),
+            Kind.IF_ELSE_STMT, List.of(AlgebraicSimplification::constantIf),
+            Kind.WHILE_STMT, List.of(AlgebraicSimplification::constantWhile)
+    );
+
+    private int changes = 0;
+
+    public void optimize(JmmNode node, SymbolTable table) {
+        changes = 0;
+        visit(node, table);
+    }
+
+    @Override
+    public String getName() {
+        return "simplify";
+    }
+
+    @Override
+    public int run(AstUnit target) {
+        optimize(target.root(), target.table());
+        return changes;
+    }
+
+
+    @Override
+    public void buildVisitor() {
+        for (var kind : RULES.keySet()) {
+            addPostVisit(kind, this::simplify);
+        }
+    }
+
+
+    private Void simplify(JmmNode node, SymbolTable table) {
+        var current = node;
+        var rules = getRules(current);
+
+        for (int i = 0; i < rules.size(); i++) {
+            var replacement = rules.get(i).apply(current);
+            if (replacement == null) {
+                continue;
+            }
+
+            // the replacement may be a child of the current node, detach it so that it is moved instead of copied
+            if (replacement.getParent() != null) {
+                replacement.detach();
+            }
+            current.replace(replacement);
+            changes++;
+
+            current = replacement;
+            rules = getRules(current);
+            i = -1;
+        }
+
+        return null;
+    }
+
+    private static List<Rule> getRules(JmmNode node) {
+        for (var entry : RULES.entrySet()) {
+            if (entry.getKey().check(node)) {
+                return entry.getValue();
+            }
+        }
+
+        return List.of();
+    }
+
+    // (x) -> x, when x is a literal, a variable or a negation, so that the other rules see through the parentheses
+    private static JmmNode unwrapAtom(JmmNode precedentExpr) {
+        var expr = precedentExpr.getJmmChild(0);
+        return Kind.check(expr, Kind.INTEGER_LITERAL, Kind.BOOL_EXPR, Kind.VAR_REF_EXPR, Kind.NEG_EXPR,
+                Kind.PRECEDENT_EXPR) ? expr : null;
+    }
+
+    // !true -> false, !false -> true
+    private static JmmNode foldNot(JmmNode negExpr) {
+        var expr = negExpr.getJmmChild(0);
+        return Kind.BOOL_EXPR.check(expr) ? newBool(!getBool(expr)) : null;
+    }
+
+    // !!x -> x
+    private static JmmNode doubleNot(JmmNode negExpr) {
+        var expr = negExpr.getJmmChild(0);
+        return Kind.NEG_EXPR.check(expr) ? expr.getJmmChild(0) : null;
+    }
+
+    // 1 < 2 -> true, 1 > 2 -> false
+    private static JmmNode foldComparison(JmmNode binaryExpr) {
+        var op = binaryExpr.get("op");
+        if (!op.equals("<") && !op.equals(">")) {
+            return null;
+        }
+
+        var left = binaryExpr.getJmmChild(0);
+        var right = binaryExpr.getJmmChild(1);
+        if (!Kind.INTEGER_LITERAL.check(left) || !Kind.INTEGER_LITERAL.check(right)) {
+            return null;
+        }
+
+        var leftValue = getInt(left);
+        var rightValue = getInt(right);
+        return newBool(op.equals("<") ? leftValue < rightValue : leftValue > rightValue);
+    }
+
+    // false && e -> false, true && e -> e, e && true -> e, e && false -> false
+    private static JmmNode foldAnd(JmmNode binaryExpr) {
+        if (!binaryExpr.get("op").equals("&&")) {
+            return null;
+        }
+
+        var left = binaryExpr.getJmmChild(0);
+        var right = binaryExpr.getJmmChild(1);
+
+        if (Kind.BOOL_EXPR.check(left)) {
+            // the right operand is never evaluated when the left one is false
+            return getBool(left) ? right : left;
+        }
+
+        if (Kind.BOOL_EXPR.check(right)) {
+            if (getBool(right)) {
+                return left;
+            }
+            return isPure(left) ? right : null;
+        }
+
+        return null;
+    }
+
+    // x + 0 -> x, 0 + x -> x, x - 0 -> x
+    private static JmmNode additiveIdentity(JmmNode binaryExpr) {
+        var op = binaryExpr.get("op");
+        var left = binaryExpr.getJmmChild(0);
+        var right = binaryExpr.getJmmChild(1);
+
+        if ((op.equals("+") || op.equals("-")) && isInt(right, 0)) {
+            return left;
+        }
+
+        return op.equals("+") && isInt(left, 0) ? right : null;
+    }
+
+    // x * 1 -> x, 1 * x -> x, x / 1 -> x
+    private static JmmNode multiplicativeIdentity(JmmNode binaryExpr) {
+        var op = binaryExpr.get("op");
+        var left = binaryExpr.getJmmChild(0);
+        var right = binaryExpr.getJmmChild(1);
+
+        if ((op.equals("*") || op.equals("/")) && isInt(right, 1)) {
+            return left;
+        }
+
+        return op.equals("*") && isInt(left, 1) ? right : null;
+    }
+
+    // x * 0 -> 0, 0 * x -> 0
+    private static JmmNode multiplyByZero(JmmNode binaryExpr) {
+        if (!binaryExpr.get("op").equals("*")) {
+            return null;
+        }
+
+        var left = binaryExpr.getJmmChild(0);
+        var right = binaryExpr.getJmmChild(1);
+
+        if (isInt(right, 0) && isPure(left) || isInt(left, 0) && isPure(right)) {
+            return newInt(0);
+        }
+
+        return null;
+    }
+
+    // x - x -> 0
+    private static JmmNode selfSubtraction(JmmNode binaryExpr) {
+        if (!binaryExpr.get("op").equals("-")) {
+            return null;
+        }
+
+        var left = binaryExpr.getJmmChild(0);
+        var right = binaryExpr.getJmmChild(1);
+
+        if (Kind.VAR_REF_EXPR.check(left) && Kind.VAR_REF_EXPR.check(right)
+                && left.get("name").equals(right.get("name"))) {
+            return newInt(0);
+        }
+
+        return null;
+    }
+
+    // if (true) a else b -> a, if (false) a else b -> b
+    private static JmmNode constantIf(JmmNode ifElseStmt) {
+        var condition = ifElseStmt.getJmmChild(0);
+        if (!Kind.BOOL_EXPR.check(condition)) {
+            return null;
+        }
+
+        return getBool(condition) ? ifElseStmt.getJmmChild(1) : ifElseStmt.getJmmChild(2);
+    }
+
+    // while (false) s -> {}
+    private static JmmNode constantWhile(JmmNode whileStmt) {
+        var condition = whileStmt.getJmmChild(0);
+        if (!Kind.BOOL_EXPR.check(condition) || getBool(condition)) {
+            return null;
+        }
+
+        // an empty block instead of removing the statement, so that the siblings keep their positions
+        return new JmmNodeImpl(Kind.BLOCK_STMT.toString());
+    }
+
+    /**
+     * @param expr
+     * @return true if evaluating the expression has no side effects and cannot throw
+     */
+    private static boolean isPure(JmmNode expr) {
+        if (Kind.check(expr, Kind.INTEGER_LITERAL, Kind.BOOL_EXPR, Kind.VAR_REF_EXPR, Kind.SELF_EXPR)) {
+            return true;
+        }
+
+        if (Kind.BINARY_EXPR.check(expr) && expr.get("op").equals("/")) {
+            return false;
+        }
+
+        if (Kind.check(expr, Kind.PRECEDENT_EXPR, Kind.NEG_EXPR, Kind.BINARY_EXPR)) {
+            return expr.getChildren().stream().allMatch(AlgebraicSimplification::isPure);
+        }
+
+        return false;
+    }
+
+    private static boolean isInt(JmmNode expr, int value) {
+        return Kind.INTEGER_LITERAL.check(expr) && getInt(expr) == value;
+    }
+
+    private static int getInt(JmmNode integerLiteral) {
+        return Integer.parseInt(integerLiteral.get("value"));
+    }
+
+    private static boolean getBool(JmmNode boolExpr) {
+        return boolExpr.get("bool").equals("true");
+    }
+
+    private static JmmNode newInt(int value) {
+        var node = new JmmNodeImpl(Kind.INTEGER_LITERAL.toString());
+        node.put("value", Integer.toString(value));
+        node.put("type", "int");
+        return node;
+    }
+
+    private static JmmNode newBool(boolean value) {
+        var node = new JmmNodeImpl(Kind.BOOL_EXPR.toString());
+        node.put("bool", Boolean.toString(value));
+        node.put("type", "boolean");
+        return node;
+    }
+}
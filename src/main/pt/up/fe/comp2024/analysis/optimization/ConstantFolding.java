@@ -5,23 +5,37 @@ import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
 import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.optimization.pipeline.AstUnit;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
 
 import java.util.List;
 
 
-public class ConstantFolding extends AnalysisVisitor {
+public class ConstantFolding extends AnalysisVisitor implements OptimizationPass<AstUnit> {
 
-    public boolean modified = false;
+    private int changes = 0;
 
     public void optimize(JmmNode node, SymbolTable table) {
-        modified = false;
+        changes = 0;
         visit(node, table);
     }
 
+    @Override
+    public String getName() {
+        return "fold";
+    }
+
+    @Override
+    public int run(AstUnit target) {
+        optimize(target.root(), target.table());
+        return changes;
+    }
+
 
     @Override
     public void buildVisitor() {
-        addVisit(Kind.BINARY_EXPR, this::visitBinaryExpr);
+        // after the operands, which may have been folded into literals themselves
+        addPostVisit(Kind.BINARY_EXPR, this::visitBinaryExpr);
     }
 
 
@@ -38,6 +52,11 @@ public class ConstantFolding extends AnalysisVisitor {
                 return null;
             }
 
+            // left for the program to throw at run time
+            if (op.equals("/") && rightValue == 0) {
+                return null;
+            }
+
             int result = switch (op) {
                 case "+" -> leftValue + rightValue;
                 case "-" -> leftValue - rightValue;
@@ -49,7 +68,7 @@ public class ConstantFolding extends AnalysisVisitor {
             var newNode = new JmmNodeImpl(Kind.INTEGER_LITERAL.toString());
             newNode.put("value", Integer.toString(result));
             binaryExpr.replace(newNode);
-            modified = true;
+            changes++;
         }
 
         return null;
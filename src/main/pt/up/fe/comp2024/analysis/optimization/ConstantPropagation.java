@@ -3,81 +3,153 @@ package pt.up.fe.comp2024.analysis.optimization;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp2024.ast.Kind;
-
+import pt.up.fe.comp2024.ast.TreeWalker;
+import pt.up.fe.comp2024.cache.IncrementalCompilation;
+import pt.up.fe.comp2024.optimization.pipeline.AstUnit;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+import pt.up.fe.comp2024.symboltable.MethodScope;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-
-import pt.up.fe.comp2024.analysis.AnalysisVisitor;
 
+/**
+ * Replaces reads of locals and parameters by the integer literal last assigned to them, following the statements of
+ * each method in order.
+ * <p>
+ * A variable stops being constant when it is assigned anything else. After an if, only the constants both branches
+ * agree on are kept, and the variables a loop assigns are constant neither in its condition and body nor after it.
+ * Fields are never propagated, as calls may change them.
+ * <p>
+ * Statements and expressions are followed with explicit work stacks, so deeply nested code does not overflow the Java
+ * call stack.
+ */
+public class ConstantPropagation implements OptimizationPass<AstUnit> {
+
+    private int changes = 0;
+
+    public void optimize(JmmNode root, SymbolTable table) {
+        changes = 0;
+
+        for (var method : TreeWalker.getDescendants(root, Kind.METHOD_DECL)) {
+            // its code is taken from the cache, which already has its constants propagated
+            if (IncrementalCompilation.isReused(method)) {
+                continue;
+            }
 
-public class ConstantPropagation extends AnalysisVisitor {
-
-    private final Map<String, JmmNode > constantVariables = new HashMap<>();
-    private final Set<String> loopConditionVars = new HashSet<>();
-    public boolean modified = false;
+            var scope = new MethodScope(method, table);
 
-    public void optimize(JmmNode node, SymbolTable table) {
-        modified = false;
-        visit(node, table);
+            // the statements still to follow, and the merges after ifs, the next one on top
+            var work = new ArrayDeque<Runnable>();
+            pushAll(method.getChildren(), new HashMap<>(), scope, work);
+            while (!work.isEmpty()) {
+                work.pop().run();
+            }
+        }
     }
 
-
     @Override
-    public void buildVisitor() {
-        addVisit(Kind.ASSIGN_STMT, this::visitAssignStmt);
-        addVisit(Kind.WHILE_STMT, this::visitWhileStmt);
-        addVisit(Kind.VAR_REF_EXPR, this::visitVarRefExpr);
+    public String getName() {
+        return "propagate";
     }
 
-
-    private Void visitAssignStmt(JmmNode assignStmt, SymbolTable table) {
-        var assignee = assignStmt.getChildren().get(0);
-        var assignExpr = assignStmt.getChildren().get(1);
-
-
-        if (assignExpr.getKind().equals(Kind.INTEGER_LITERAL.toString())) {
-            constantVariables.put(assignee.get("name"), assignExpr);
-            loopConditionVars.add(assignee.get("name"));
-        }
-
-        return null;
+    @Override
+    public int run(AstUnit target) {
+        optimize(target.root(), target.table());
+        return changes;
     }
 
-    private Void visitWhileStmt(JmmNode whileStmt, SymbolTable table) {
-        var condition = whileStmt.getChildren().get(0);
-        var body = whileStmt.getChildren().get(1);
-
-        for (var var : condition.getDescendants()) {
-            if (var.getKind().equals(Kind.VAR_REF_EXPR.toString())) {
-                loopConditionVars.add(var.get("name"));
+    /**
+     * Replaces the reads of the statement, and updates the constants with what it assigns, leaving its nested
+     * statements on the work stack.
+     *
+     * @param statement
+     * @param constants the literal of each constant variable before the statement, then after it and the statements
+     *                  pushed for it
+     * @param scope
+     * @param work
+     */
+    private void propagate(JmmNode statement, Map<String, JmmNode> constants, MethodScope scope,
+                           Deque<Runnable> work) {
+        if (Kind.ASSIGN_STMT.check(statement)) {
+            var target = statement.getJmmChild(0);
+
+            // the array and index of an element are read before it is assigned
+            if (!Kind.VAR_REF_EXPR.check(target)) {
+                replace(target, constants);
+            }
+            replace(statement.getJmmChild(1), constants);
+
+            if (Kind.VAR_REF_EXPR.check(target) && isVariable(target.get("name"), scope)) {
+                var value = statement.getJmmChild(1);
+                if (Kind.INTEGER_LITERAL.check(value)) {
+                    constants.put(target.get("name"), value);
+                } else {
+                    constants.remove(target.get("name"));
+                }
             }
+        } else if (Kind.IF_ELSE_STMT.check(statement)) {
+            replace(statement.getJmmChild(0), constants);
+
+            var elseConstants = new HashMap<>(constants);
+            work.push(() -> constants.entrySet().removeIf(constant -> !sameLiteral(constant.getValue(),
+                    elseConstants.get(constant.getKey()))));
+            work.push(() -> propagate(statement.getJmmChild(2), elseConstants, scope, work));
+            work.push(() -> propagate(statement.getJmmChild(1), constants, scope, work));
+        } else if (Kind.WHILE_STMT.check(statement)) {
+            // the condition and the body may run after any number of iterations
+            TreeWalker.preorder(statement.getJmmChild(1), node -> {
+                if (Kind.ASSIGN_STMT.check(node) && Kind.VAR_REF_EXPR.check(node.getJmmChild(0))) {
+                    constants.remove(node.getJmmChild(0).get("name"));
+                }
+            });
+
+            replace(statement.getJmmChild(0), constants);
+
+            var bodyConstants = new HashMap<>(constants);
+            work.push(() -> propagate(statement.getJmmChild(1), bodyConstants, scope, work));
+        } else if (Kind.BLOCK_STMT.check(statement)) {
+            pushAll(statement.getChildren(), constants, scope, work);
+        } else if (Kind.EXPR_STMT.check(statement) || Kind.RETURN_STMT.check(statement)) {
+            replace(statement, constants);
         }
+    }
 
-        for (var var : body.getDescendants(Kind.VAR_REF_EXPR)) {
-            loopConditionVars.remove(var.get("name"));
+    /**
+     * Pushes the statements so that they are followed in order, all with the same constants.
+     */
+    private void pushAll(List<JmmNode> statements, Map<String, JmmNode> constants, MethodScope scope,
+                         Deque<Runnable> work) {
+        for (int i = statements.size() - 1; i >= 0; i--) {
+            var statement = statements.get(i);
+            work.push(() -> propagate(statement, constants, scope, work));
         }
-
-        return null;
     }
 
-
-    private Void visitVarRefExpr(JmmNode varRefExpr, SymbolTable table) {
-        String varName = varRefExpr.get("name");
-
-
-        if (constantVariables.containsKey(varName) && loopConditionVars.contains(varName)) {
-            if(varRefExpr.getParent().getKind().equals(Kind.ASSIGN_STMT.toString())) {
-                return null;
+    private void replace(JmmNode expr, Map<String, JmmNode> constants) {
+        TreeWalker.walk(expr, node -> {
+            if (!Kind.VAR_REF_EXPR.check(node)) {
+                return true;
             }
 
-            varRefExpr.replace(constantVariables.get(varName));
-            modified = true;
-        }
+            var literal = constants.get(node.get("name"));
+            if (literal != null) {
+                node.replace(literal.copy());
+                changes++;
+            }
+            return false;
+        }, node -> {
+        });
+    }
 
-        return null;
+    private static boolean isVariable(String name, MethodScope scope) {
+        var occurrence = scope.getOccurrence(name);
+        return occurrence.equals("local") || occurrence.equals("param");
     }
 
+    private static boolean sameLiteral(JmmNode first, JmmNode second) {
+        return second != null && first.get("value").equals(second.get("value"));
+    }
 }
-
@@ -0,0 +1,480 @@
+package pt.up.fe.comp2024.analysis.optimization;
+
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TreeWalker;
+import pt.up.fe.comp2024.cache.IncrementalCompilation;
+import pt.up.fe.comp2024.optimization.pipeline.AstUnit;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+import pt.up.fe.comp2024.symboltable.MethodScope;
+
+import java.util.*;
+
+/**
+ * Strength reduction of the expressions derived from the induction variables of loops.
+ * <p>
+ * A basic induction variable is a local or parameter that the body of a loop only assigns with steps
+ * {@code i = i + c} or {@code i = i - c}, {@code c} being a literal, each one a statement of the body itself rather than
+ * of a nested statement. An expression {@code i * k} or {@code i * k + b}, with {@code k} and {@code b} literals or
+ * variables the loop does not assign, is computed once before the loop into a new local, which is then stepped by
+ * {@code k * c} after each step of {@code i}, usually with an iinc, instead of multiplying on every iteration.
+ * <p>
+ * When {@code i} is then only read by its condition {@code i < n} (or {@code i > n}), with {@code n}, {@code k} and
+ * {@code b} literals and {@code i} having a literal value before the loop, the condition is rewritten over the new
+ * local, the steps of {@code i} are removed and its final value is assigned after the loop. This is only done when the
+ * products involved do not overflow, so that both conditions agree.
+ */
+public class InductionVariables implements OptimizationPass<AstUnit> {
+
+    private int changes = 0;
+
+    private int counter = 0;
+
+    public void optimize(JmmNode root, JmmSymbolTable table) {
+        changes = 0;
+
+        for (var method : TreeWalker.getDescendants(root, Kind.METHOD_DECL)) {
+            // its code is taken from the cache, which already has its loops reduced
+            if (IncrementalCompilation.isReused(method)) {
+                continue;
+            }
+
+            var scope = new MethodScope(method, table);
+            var taken = getTakenNames(method.get("name"), table);
+
+            var loops = new ArrayList<JmmNode>();
+            TreeWalker.postorder(method, node -> {
+                if (Kind.WHILE_STMT.check(node)) {
+                    loops.add(node);
+                }
+            });
+
+            for (var loop : loops) {
+                reduce(loop, scope, taken, table);
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "induction";
+    }
+
+    @Override
+    public int run(AstUnit target) {
+        optimize(target.root(), target.table());
+        return changes;
+    }
+
+    /**
+     * An expression {@code variable * factor + offset} found in a loop.
+     *
+     * @param variable    the basic induction variable
+     * @param factor      a literal or an invariant variable
+     * @param offset      a literal or an invariant variable, or null
+     * @param occurrences the nodes of the expression
+     */
+    private record Derived(String variable, JmmNode factor, JmmNode offset, List<JmmNode> occurrences) {
+    }
+
+    private void reduce(JmmNode loop, MethodScope scope, Set<String> taken, JmmSymbolTable table) {
+        var body = loop.getJmmChild(1);
+        if (!Kind.BLOCK_STMT.check(body)) {
+            return;
+        }
+
+        var assigned = new HashSet<String>();
+        TreeWalker.preorder(body, node -> {
+            if (Kind.ASSIGN_STMT.check(node) && Kind.VAR_REF_EXPR.check(node.getJmmChild(0))) {
+                assigned.add(node.getJmmChild(0).get("name"));
+            }
+        });
+
+        // the steps of each variable, as statements of the body
+        var steps = new HashMap<String, List<JmmNode>>();
+        for (var statement : body.getChildren()) {
+            var step = getStep(statement);
+            if (step != null && isLocal(step, scope)) {
+                steps.computeIfAbsent(step, variable -> new ArrayList<>()).add(statement);
+            }
+        }
+
+        // variables assigned anywhere else are not induction variables
+        TreeWalker.preorder(body, node -> {
+            if (Kind.ASSIGN_STMT.check(node) && Kind.VAR_REF_EXPR.check(node.getJmmChild(0))) {
+                var name = node.getJmmChild(0).get("name");
+                if (steps.containsKey(name) && !steps.get(name).contains(node)) {
+                    steps.remove(name);
+                }
+            }
+        });
+
+        if (steps.isEmpty()) {
+            return;
+        }
+
+        var derived = findDerived(loop, steps.keySet(), assigned, scope);
+        if (derived.isEmpty()) {
+            return;
+        }
+
+        var before = new ArrayList<JmmNode>();
+        var reduced = new LinkedHashMap<Derived, Symbol>();
+
+        for (var expression : derived) {
+            var local = newLocal(expression.variable(), table, scope.getMethodName(), taken);
+            reduced.put(expression, local);
+
+            before.add(newAssign(local, expression.occurrences().get(0).copy()));
+            var stepAmounts = new HashMap<Long, JmmNode>();
+
+            for (var step : steps.get(expression.variable())) {
+                var delta = getDelta(step);
+                var amount = stepAmounts.get(delta);
+
+                if (amount == null) {
+                    amount = getStepAmount(expression.factor(), Math.abs(delta), before, table, scope, taken);
+                    stepAmounts.put(delta, amount);
+                }
+
+                var update = newBinary(delta > 0 ? "+" : "-", newVarRef(local), amount.copy());
+                body.add(newAssign(local, update), step.getIndexOfSelf() + 1);
+            }
+
+            for (var occurrence : expression.occurrences()) {
+                occurrence.replace(newVarRef(local));
+            }
+        }
+
+        insertBefore(loop, before);
+
+        // once every expression is reduced, the variables may no longer be read other than by the condition
+        var replaced = new HashSet<String>();
+        reduced.forEach((expression, local) -> {
+            if (!replaced.contains(expression.variable())
+                    && replaceCounter(loop, expression, local, steps.get(expression.variable()))) {
+                replaced.add(expression.variable());
+            }
+        });
+
+        changes++;
+    }
+
+    /**
+     * Finds the expressions derived from the induction variables in the condition and the body of the loop, the same
+     * expressions being grouped together.
+     */
+    private static List<Derived> findDerived(JmmNode loop, Set<String> variables, Set<String> assigned,
+                                             MethodScope scope) {
+        var derived = new LinkedHashMap<String, Derived>();
+
+        TreeWalker.preorder(loop, node -> {
+            if (!Kind.BINARY_EXPR.check(node) || !node.get("op").equals("*")) {
+                return;
+            }
+
+            JmmNode factor;
+            String variable;
+            if (Kind.VAR_REF_EXPR.check(node.getJmmChild(0)) && variables.contains(node.getJmmChild(0).get("name"))) {
+                variable = node.getJmmChild(0).get("name");
+                factor = node.getJmmChild(1);
+            } else if (Kind.VAR_REF_EXPR.check(node.getJmmChild(1))
+                    && variables.contains(node.getJmmChild(1).get("name"))) {
+                variable = node.getJmmChild(1).get("name");
+                factor = node.getJmmChild(0);
+            } else {
+                return;
+            }
+
+            if (!isInvariant(factor, assigned, scope)) {
+                return;
+            }
+
+            // an invariant added to the product is folded into the new variable too
+            var expression = node;
+            JmmNode offset = null;
+            var parent = node.getParent();
+            if (Kind.BINARY_EXPR.check(parent) && parent.get("op").equals("+")) {
+                var other = parent.getJmmChild(0) == node ? parent.getJmmChild(1) : parent.getJmmChild(0);
+                if (isInvariant(other, assigned, scope)) {
+                    expression = parent;
+                    offset = other;
+                }
+            }
+
+            var key = variable + "*" + getKey(factor) + "+" + (offset == null ? "" : getKey(offset));
+            var derivedOffset = offset;
+            derived.computeIfAbsent(key, k -> new Derived(variable, factor, derivedOffset, new ArrayList<>()))
+                    .occurrences().add(expression);
+        });
+
+        return new ArrayList<>(derived.values());
+    }
+
+    /**
+     * Rewrites the condition of the loop over the reduced variable, when the induction variable is read nowhere
+     * else, and removes the steps of the induction variable.
+     *
+     * @return true if the condition was rewritten
+     */
+    private static boolean replaceCounter(JmmNode loop, Derived expression, Symbol local, List<JmmNode> steps) {
+        var condition = loop.getJmmChild(0);
+        var variable = expression.variable();
+        if (!Kind.BINARY_EXPR.check(condition) || !isVarRef(condition.getJmmChild(0), variable)
+                || !Kind.INTEGER_LITERAL.check(condition.getJmmChild(1))
+                || !Kind.INTEGER_LITERAL.check(expression.factor())
+                || expression.offset() != null && !Kind.INTEGER_LITERAL.check(expression.offset())) {
+            return false;
+        }
+
+        var increasing = condition.get("op").equals("<");
+        if (!increasing && !condition.get("op").equals(">")) {
+            return false;
+        }
+
+        var reads = TreeWalker.getDescendants(loop.getJmmChild(1), Kind.VAR_REF_EXPR).stream()
+                .filter(varRef -> varRef.get("name").equals(variable))
+                .filter(varRef -> steps.stream().noneMatch(step -> step == varRef.getParent()
+                        || step == varRef.getParent().getParent()))
+                .count();
+        if (reads > 0) {
+            return false;
+        }
+
+        var first = getValueBefore(loop, variable);
+        if (first == null) {
+            return false;
+        }
+
+        long delta = steps.stream().mapToLong(InductionVariables::getDelta).sum();
+        if (delta == 0 || delta > 0 != increasing) {
+            return false;
+        }
+
+        long last = Long.parseLong(condition.getJmmChild(1).get("value"));
+        long factor = Long.parseLong(expression.factor().get("value"));
+        long offset = expression.offset() == null ? 0 : Long.parseLong(expression.offset().get("value"));
+
+        long distance = increasing ? last - first : first - last;
+        long trips = distance <= 0 ? 0 : (distance + Math.abs(delta) - 1) / Math.abs(delta);
+        long end = first + trips * delta;
+
+        // the variable goes from its first to its last value, and the products must be exact all the way
+        long bound = last * factor + offset;
+        if (factor == 0 || !fitsInt(end) || !fitsInt(first * factor + offset) || !fitsInt(end * factor + offset)
+                || !fitsInt(bound) || bound < 0 || end < 0) {
+            return false;
+        }
+
+        var op = factor > 0 ? condition.get("op") : increasing ? ">" : "<";
+        condition.replace(newBinary(op, newVarRef(local), newIntLiteral(bound)));
+
+        steps.forEach(JmmNode::detach);
+        insertAfter(loop, newAssign(new Symbol(new Type("int", false), variable), newIntLiteral(end)));
+
+        return true;
+    }
+
+    /**
+     * @return the amount the reduced variable changes at each step of the induction variable, multiplying the factor
+     * once before the loop when it is a variable
+     */
+    private JmmNode getStepAmount(JmmNode factor, long step, List<JmmNode> before, JmmSymbolTable table,
+                                  MethodScope scope, Set<String> taken) {
+        if (Kind.INTEGER_LITERAL.check(factor)) {
+            // the updates wrap around as the products they replace would
+            return newIntLiteral((int) (Long.parseLong(factor.get("value")) * step));
+        }
+
+        if (step == 1) {
+            return factor.copy();
+        }
+
+        var local = newLocal(factor.get("name"), table, scope.getMethodName(), taken);
+        before.add(newAssign(local, newBinary("*", factor.copy(), newIntLiteral(step))));
+
+        return newVarRef(local);
+    }
+
+    /**
+     * @return the variable of a statement {@code i = i + c} or {@code i = i - c}, or null
+     */
+    private static String getStep(JmmNode statement) {
+        if (!Kind.ASSIGN_STMT.check(statement) || !Kind.VAR_REF_EXPR.check(statement.getJmmChild(0))) {
+            return null;
+        }
+
+        var variable = statement.getJmmChild(0).get("name");
+        var value = statement.getJmmChild(1);
+        if (!Kind.BINARY_EXPR.check(value) || !isVarRef(value.getJmmChild(0), variable)
+                || !Kind.INTEGER_LITERAL.check(value.getJmmChild(1))) {
+            return null;
+        }
+
+        return value.get("op").equals("+") || value.get("op").equals("-") ? variable : null;
+    }
+
+    private static long getDelta(JmmNode step) {
+        var value = step.getJmmChild(1);
+        var amount = Long.parseLong(value.getJmmChild(1).get("value"));
+
+        return value.get("op").equals("+") ? amount : -amount;
+    }
+
+    /**
+     * @return the literal last assigned to the variable by the statements before the given one in its block, or null
+     * if the value is not known
+     */
+    private static Long getValueBefore(JmmNode statement, String variable) {
+        if (!Kind.check(statement.getParent(), Kind.METHOD_DECL, Kind.BLOCK_STMT)) {
+            return null;
+        }
+
+        var siblings = statement.getParent().getChildren();
+        for (int i = statement.getIndexOfSelf() - 1; i >= 0; i--) {
+            var sibling = siblings.get(i);
+
+            if (Kind.ASSIGN_STMT.check(sibling) && isVarRef(sibling.getJmmChild(0), variable)) {
+                var value = sibling.getJmmChild(1);
+                return Kind.INTEGER_LITERAL.check(value) ? Long.parseLong(value.get("value")) : null;
+            }
+
+            var assigns = TreeWalker.getDescendants(sibling, Kind.ASSIGN_STMT).stream()
+                    .anyMatch(assign -> isVarRef(assign.getJmmChild(0), variable));
+            if (assigns) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    private static boolean isInvariant(JmmNode node, Set<String> assigned, MethodScope scope) {
+        if (Kind.INTEGER_LITERAL.check(node)) {
+            return true;
+        }
+
+        return Kind.VAR_REF_EXPR.check(node) && isLocal(node.get("name"), scope)
+                && !assigned.contains(node.get("name"));
+    }
+
+    private static String getKey(JmmNode invariant) {
+        return Kind.INTEGER_LITERAL.check(invariant) ? invariant.get("value") : "$" + invariant.get("name");
+    }
+
+    private static boolean isVarRef(JmmNode node, String variable) {
+        return Kind.VAR_REF_EXPR.check(node) && node.get("name").equals(variable);
+    }
+
+    /**
+     * Fields may be changed by the calls in the loop, locals and parameters only by its assignments.
+     */
+    private static boolean isLocal(String variable, MethodScope scope) {
+        var occurrence = scope.getOccurrence(variable);
+        return occurrence.equals("local") || occurrence.equals("param");
+    }
+
+    private static boolean fitsInt(long value) {
+        return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Inserts the statements before the loop, wrapping both in a block when the loop is the body of an if or a while.
+     */
+    private static void insertBefore(JmmNode loop, List<JmmNode> statements) {
+        var parent = loop.getParent();
+        var index = loop.getIndexOfSelf();
+
+        if (Kind.check(parent, Kind.METHOD_DECL, Kind.BLOCK_STMT)) {
+            for (int i = 0; i < statements.size(); i++) {
+                parent.add(statements.get(i), index + i);
+            }
+            return;
+        }
+
+        var block = new JmmNodeImpl(Kind.BLOCK_STMT.toString());
+        statements.forEach(block::add);
+
+        parent.removeJmmChild(index);
+        block.add(loop);
+        parent.add(block, index);
+    }
+
+    private static void insertAfter(JmmNode loop, JmmNode statement) {
+        var parent = loop.getParent();
+        var index = loop.getIndexOfSelf();
+
+        if (Kind.check(parent, Kind.METHOD_DECL, Kind.BLOCK_STMT)) {
+            parent.add(statement, index + 1);
+            return;
+        }
+
+        var block = new JmmNodeImpl(Kind.BLOCK_STMT.toString());
+        parent.removeJmmChild(index);
+        block.add(loop);
+        block.add(statement);
+        parent.add(block, index);
+    }
+
+    private static Set<String> getTakenNames(String method, JmmSymbolTable table) {
+        var names = new HashSet<String>();
+        table.getParameters(method).forEach(param -> names.add(param.getName()));
+        table.getLocalVariables(method).forEach(local -> names.add(local.getName()));
+        table.getFields().forEach(field -> names.add(field.getName()));
+        table.getImports().forEach(imported -> names.addAll(List.of(imported.split("\\."))));
+        names.add(table.getClassName());
+
+        return names;
+    }
+
+    /**
+     * Declares a new int local of the method, named after the variable it is derived from.
+     */
+    private Symbol newLocal(String variable, JmmSymbolTable table, String method, Set<String> taken) {
+        String name;
+        do {
+            name = variable + "_iv" + counter++;
+        } while (taken.contains(name));
+        taken.add(name);
+
+        var local = new Symbol(new Type("int", false), name);
+        table.addLocalVariable(method, local);
+
+        return local;
+    }
+
+    private static JmmNode newVarRef(Symbol variable) {
+        var node = new JmmNodeImpl(Kind.VAR_REF_EXPR.toString());
+        node.put("name", variable.getName());
+        node.put("type", "int");
+        return node;
+    }
+
+    private static JmmNode newIntLiteral(long value) {
+        var node = new JmmNodeImpl(Kind.INTEGER_LITERAL.toString());
+        node.put("value", Long.toString(value));
+        node.put("type", "int");
+        return node;
+    }
+
+    private static JmmNode newBinary(String op, JmmNode left, JmmNode right) {
+        var node = new JmmNodeImpl(Kind.BINARY_EXPR.toString());
+        node.put("op", op);
+        node.put("type", op.equals("<") || op.equals(">") ? "boolean" : "int");
+        node.add(left);
+        node.add(right);
+        return node;
+    }
+
+    private static JmmNode newAssign(Symbol variable, JmmNode value) {
+        var node = new JmmNodeImpl(Kind.ASSIGN_STMT.toString());
+        node.put("type", "int");
+        node.add(newVarRef(variable));
+        node.add(value);
+        return node;
+    }
+}
@@ -0,0 +1,55 @@
+package pt.up.fe.comp2024.analysis.optimization;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TreeWalker;
+import pt.up.fe.comp2024.cache.IncrementalCompilation;
+import pt.up.fe.comp2024.optimization.pipeline.AstUnit;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+
+/**
+ * Marks the while loops to be generated as a guarded do-while: the condition is tested once before the loop and again
+ * at the bottom of the body, which jumps back to it, so that each iteration takes a single jump instead of a test and a
+ * goto back to it.
+ */
+public class LoopRotation implements OptimizationPass<AstUnit> {
+
+    /**
+     * The attribute of the while loops that are rotated.
+     */
+    public static final String ROTATED = "rotated";
+
+    @Override
+    public String getName() {
+        return "rotate-loops";
+    }
+
+    @Override
+    public int run(AstUnit target) {
+        var changes = 0;
+
+        for (var method : TreeWalker.getDescendants(target.root(), Kind.METHOD_DECL)) {
+            // its code is taken from the cache
+            if (IncrementalCompilation.isReused(method)) {
+                continue;
+            }
+
+            for (var loop : TreeWalker.getDescendants(method, Kind.WHILE_STMT)) {
+                if (!isRotated(loop)) {
+                    loop.put(ROTATED, "true");
+                    changes++;
+                }
+            }
+        }
+
+        return changes;
+    }
+
+    /**
+     * @param loop
+     * @return true if the loop is generated as a guarded do-while
+     */
+    public static boolean isRotated(JmmNode loop) {
+        return loop.getOptional(ROTATED).map(Boolean::parseBoolean).orElse(false);
+    }
+}
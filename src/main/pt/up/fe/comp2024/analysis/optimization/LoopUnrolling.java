@@ -0,0 +1,286 @@
+package pt.up.fe.comp2024.analysis.optimization;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TreeWalker;
+import pt.up.fe.comp2024.cache.IncrementalCompilation;
+import pt.up.fe.comp2024.optimization.pipeline.AstUnit;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+import pt.up.fe.comp2024.symboltable.MethodScope;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Unrolls counted loops, whose number of iterations is known at compile time.
+ * <p>
+ * A loop is counted when its condition is {@code i < n} (or {@code i > n}) and its body ends with {@code i = i + c}
+ * (or {@code i = i - c}), {@code c} being a positive literal, {@code i} being a local or parameter assigned nowhere else
+ * in the body, and {@code n} being a literal or a variable the body does not assign. The first value of {@code i}, and
+ * of {@code n} when it is a variable, is the literal it is last assigned before the loop in the same block.
+ * <p>
+ * Loops whose unrolled body fits the budget, in AST nodes, are replaced by a copy of their body for each iteration.
+ * Longer loops get a body of 8, 4 or 2 copies, the largest that fits, with the iterations left over copied before the
+ * loop, so that the condition holds the same way it did for the original loop.
+ */
+public class LoopUnrolling implements OptimizationPass<AstUnit> {
+
+    private static final int[] FACTORS = {8, 4, 2};
+
+    private int changes = 0;
+
+    private final int budget;
+
+    /**
+     * @param budget the maximum number of AST nodes of the statements an unrolled loop becomes
+     */
+    public LoopUnrolling(int budget) {
+        this.budget = budget;
+    }
+
+    public void optimize(JmmNode root, SymbolTable table) {
+        changes = 0;
+
+        for (var method : TreeWalker.getDescendants(root, Kind.METHOD_DECL)) {
+            // its code is taken from the cache, which already has its loops unrolled
+            if (IncrementalCompilation.isReused(method)) {
+                continue;
+            }
+
+            var scope = new MethodScope(method, table);
+
+            // innermost loops first, as an unrolled outer loop would copy loops that are unrolled afterwards
+            var loops = new ArrayList<JmmNode>();
+            TreeWalker.postorder(method, node -> {
+                if (Kind.WHILE_STMT.check(node)) {
+                    loops.add(node);
+                }
+            });
+
+            for (var loop : loops) {
+                getCountedLoop(loop, scope).ifPresent(this::unroll);
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "unroll";
+    }
+
+    // the bounds of the loops must be folded into literals first
+    @Override
+    public List<String> getDependencies() {
+        return List.of("fold");
+    }
+
+    @Override
+    public int run(AstUnit target) {
+        // a budget of 0 disables the pass
+        if (budget <= 0) {
+            return 0;
+        }
+
+        optimize(target.root(), target.table());
+        return changes;
+    }
+
+    /**
+     * @param loop
+     * @param statements the statements of the body, the last one being the step of the variable
+     * @param trips      the number of iterations
+     */
+    private record CountedLoop(JmmNode loop, List<JmmNode> statements, long trips) {
+    }
+
+    private Optional<CountedLoop> getCountedLoop(JmmNode loop, MethodScope scope) {
+        // the statements before it are where the first values come from
+        if (!Kind.check(loop.getParent(), Kind.METHOD_DECL, Kind.BLOCK_STMT)) {
+            return Optional.empty();
+        }
+
+        var condition = loop.getJmmChild(0);
+        if (!Kind.BINARY_EXPR.check(condition) || !Kind.VAR_REF_EXPR.check(condition.getJmmChild(0))) {
+            return Optional.empty();
+        }
+
+        var increasing = condition.get("op").equals("<");
+        if (!increasing && !condition.get("op").equals(">")) {
+            return Optional.empty();
+        }
+
+        var variable = condition.getJmmChild(0).get("name");
+        if (!isLocal(variable, scope)) {
+            return Optional.empty();
+        }
+
+        var body = loop.getJmmChild(1);
+        var statements = Kind.BLOCK_STMT.check(body) ? body.getChildren() : List.of(body);
+        if (statements.isEmpty()) {
+            return Optional.empty();
+        }
+
+        var stepStmt = statements.get(statements.size() - 1);
+        var step = getStep(stepStmt, variable, increasing);
+        if (step.isEmpty()) {
+            return Optional.empty();
+        }
+
+        for (var statement : statements) {
+            if (statement != stepStmt && isAssigned(statement, variable)) {
+                return Optional.empty();
+            }
+        }
+
+        var bound = condition.getJmmChild(1);
+        Optional<Long> last;
+        if (Kind.INTEGER_LITERAL.check(bound)) {
+            last = Optional.of(Long.parseLong(bound.get("value")));
+        } else if (Kind.VAR_REF_EXPR.check(bound) && isLocal(bound.get("name"), scope)
+                && !isAssigned(body, bound.get("name"))) {
+            last = getValueBefore(loop, bound.get("name"));
+        } else {
+            return Optional.empty();
+        }
+
+        var first = getValueBefore(loop, variable);
+        if (first.isEmpty() || last.isEmpty()) {
+            return Optional.empty();
+        }
+
+        // the distance the variable has to go, in the direction of the step
+        long distance = increasing ? last.get() - first.get() : first.get() - last.get();
+        long trips = distance <= 0 ? 0 : (distance + step.get() - 1) / step.get();
+
+        // the last step must not wrap around, or the loop would not end where it is expected to
+        long end = first.get() + (increasing ? trips : -trips) * step.get();
+        if (end > Integer.MAX_VALUE || end < Integer.MIN_VALUE) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new CountedLoop(loop, statements, trips));
+    }
+
+    private void unroll(CountedLoop counted) {
+        var loop = counted.loop();
+        var parent = loop.getParent();
+        var index = loop.getIndexOfSelf();
+        var size = counted.statements().stream().mapToInt(s -> TreeWalker.getDescendants(s).size() + 1).sum();
+
+        if (counted.trips() * size <= budget) {
+            loop.detach();
+            for (var statement : copies(counted.statements(), counted.trips())) {
+                parent.add(statement, index++);
+            }
+
+            changes++;
+            return;
+        }
+
+        for (var factor : FACTORS) {
+            var leftOver = counted.trips() % factor;
+            if (factor > counted.trips() || (factor + leftOver) * size > budget) {
+                continue;
+            }
+
+            for (var statement : copies(counted.statements(), leftOver)) {
+                parent.add(statement, index++);
+            }
+
+            var body = new JmmNodeImpl(Kind.BLOCK_STMT.toString());
+            copies(counted.statements(), factor).forEach(body::add);
+            loop.removeJmmChild(1);
+            loop.add(body, 1);
+
+            changes++;
+            return;
+        }
+    }
+
+    private static List<JmmNode> copies(List<JmmNode> statements, long times) {
+        var copies = new ArrayList<JmmNode>();
+        for (long i = 0; i < times; i++) {
+            statements.forEach(statement -> copies.add(statement.copy()));
+        }
+
+        return copies;
+    }
+
+    /**
+     * @return the step of {@code variable = variable + c}, or of {@code variable = variable - c} if decreasing
+     */
+    private static Optional<Long> getStep(JmmNode statement, String variable, boolean increasing) {
+        if (!Kind.ASSIGN_STMT.check(statement) || !isVarRef(statement.getJmmChild(0), variable)) {
+            return Optional.empty();
+        }
+
+        var value = statement.getJmmChild(1);
+        if (!Kind.BINARY_EXPR.check(value) || !value.get("op").equals(increasing ? "+" : "-")) {
+            return Optional.empty();
+        }
+
+        JmmNode step;
+        if (isVarRef(value.getJmmChild(0), variable)) {
+            step = value.getJmmChild(1);
+        } else if (increasing && isVarRef(value.getJmmChild(1), variable)) {
+            step = value.getJmmChild(0);
+        } else {
+            return Optional.empty();
+        }
+
+        if (!Kind.INTEGER_LITERAL.check(step) || Long.parseLong(step.get("value")) <= 0) {
+            return Optional.empty();
+        }
+
+        return Optional.of(Long.parseLong(step.get("value")));
+    }
+
+    /**
+     * @return the literal last assigned to the variable by the statements before the given one in its block, or empty
+     * if the value is not known
+     */
+    private static Optional<Long> getValueBefore(JmmNode statement, String variable) {
+        var siblings = statement.getParent().getChildren();
+
+        for (int i = statement.getIndexOfSelf() - 1; i >= 0; i--) {
+            var sibling = siblings.get(i);
+
+            if (Kind.ASSIGN_STMT.check(sibling) && isVarRef(sibling.getJmmChild(0), variable)) {
+                var value = sibling.getJmmChild(1);
+                return Kind.INTEGER_LITERAL.check(value) ?
+                        Optional.of(Long.parseLong(value.get("value"))) :
+                        Optional.empty();
+            }
+
+            if (isAssigned(sibling, variable)) {
+                return Optional.empty();
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    private static boolean isAssigned(JmmNode root, String variable) {
+        var nodes = TreeWalker.getDescendants(root, Kind.ASSIGN_STMT);
+        if (Kind.ASSIGN_STMT.check(root)) {
+            nodes.add(root);
+        }
+
+        return nodes.stream().anyMatch(assign -> isVarRef(assign.getJmmChild(0), variable));
+    }
+
+    private static boolean isVarRef(JmmNode node, String variable) {
+        return Kind.VAR_REF_EXPR.check(node) && node.get("name").equals(variable);
+    }
+
+    /**
+     * Fields may be changed by the calls in the body, locals and parameters only by its assignments.
+     */
+    private static boolean isLocal(String variable, MethodScope scope) {
+        var occurrence = scope.getOccurrence(variable);
+        return occurrence.equals("local") || occurrence.equals("param");
+    }
+}
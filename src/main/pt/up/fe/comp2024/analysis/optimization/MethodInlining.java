@@ -0,0 +1,371 @@
+package pt.up.fe.comp2024.analysis.optimization;
+
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.NodeUtils;
+import pt.up.fe.comp2024.ast.TreeWalker;
+import pt.up.fe.comp2024.cache.IncrementalCompilation;
+import pt.up.fe.comp2024.optimization.pipeline.AstUnit;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPipelines;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+import pt.up.fe.comp2024.symboltable.MethodScope;
+
+import java.util.*;
+
+/**
+ * Inlines calls to small methods of the compiled class, so that constant propagation and folding see through them.
+ * <p>
+ * A method can be inlined when its statements have at most the configured number of nodes, it has no varargs, its
+ * only return is its last statement and it calls no method of the class, so that inlining never recurses. Only calls
+ * on {@code this} are inlined (see the closed class assumption of {@link OptimizationPipelines}), and only when the
+ * call is the whole value of an assignment to a variable, of an expression statement or of a return, so that
+ * nothing else in the statement is evaluated out of order. A callee that only returns an expression is inlined
+ * anywhere, if its arguments are literals or variables of the caller.
+ * <p>
+ * The statements of the callee are copied before the statement of the call, with its parameters and locals renamed to
+ * new locals of the caller, and the call is replaced by the returned expression. A parameter that the callee never
+ * assigns takes the argument itself when it is a literal or a variable of the caller, and is assigned from it
+ * otherwise.
+ */
+public class MethodInlining implements OptimizationPass<AstUnit> {
+
+    private int changes = 0;
+
+    private final int limit;
+
+    private int counter = 0;
+
+    /**
+     * @param limit the maximum number of nodes in the statements of an inlined method
+     */
+    public MethodInlining(int limit) {
+        this.limit = limit;
+    }
+
+    public void optimize(JmmNode root, JmmSymbolTable table) {
+        changes = 0;
+
+        for (var classDecl : root.getChildren(Kind.CLASS_DECL_RULE)) {
+            var callees = new HashMap<String, JmmNode>();
+            for (var method : classDecl.getChildren(Kind.METHOD_DECL)) {
+                if (isInlinable(method, table)) {
+                    callees.put(method.get("name"), method);
+                }
+            }
+
+            if (callees.isEmpty()) {
+                continue;
+            }
+
+            for (var caller : classDecl.getChildren(Kind.METHOD_DECL)) {
+                // its code is taken from the cache, which already has its calls inlined
+                if (IncrementalCompilation.isReused(caller)) {
+                    continue;
+                }
+
+                // arguments that were calls themselves become inlinable once assigned to a parameter
+                boolean inlined;
+                do {
+                    inlined = false;
+                    for (var call : TreeWalker.getDescendants(caller, Kind.MEMBER_CALL_EXPR)) {
+                        var callee = callees.get(call.get("name"));
+                        if (callee != null && callee != caller && isInlinableCall(call, callee, caller, table)) {
+                            inline(call, callee, caller, table);
+                            inlined = true;
+                            changes++;
+                        }
+                    }
+                } while (inlined);
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "inline";
+    }
+
+    @Override
+    public int run(AstUnit target) {
+        // a limit of 0 disables the pass
+        if (limit <= 0) {
+            return 0;
+        }
+
+        optimize(target.root(), target.table());
+        return changes;
+    }
+
+    private boolean isInlinable(JmmNode method, JmmSymbolTable table) {
+        if (!Kind.CLASS_METHOD.check(method) || NodeUtils.getBooleanAttribute(method, "isStatic", "false")) {
+            return false;
+        }
+
+        var name = method.get("name");
+        if (table.getParameters(name).stream().anyMatch(param -> param.getType().getName().equals("vararg"))) {
+            return false;
+        }
+
+        var statements = getStatements(method);
+        if (statements.isEmpty() || !Kind.RETURN_STMT.check(statements.get(statements.size() - 1))) {
+            return false;
+        }
+
+        var size = 0;
+        for (var statement : statements) {
+            var nodes = TreeWalker.getDescendants(statement);
+            size += nodes.size() + 1;
+
+            for (var node : nodes) {
+                if (Kind.RETURN_STMT.check(node)
+                        || Kind.MEMBER_CALL_EXPR.check(node) && table.getMethods().contains(node.get("name"))) {
+                    return false;
+                }
+            }
+        }
+
+        return size <= limit && statements.stream().filter(Kind.RETURN_STMT::check).count() == 1;
+    }
+
+    private boolean isInlinableCall(JmmNode call, JmmNode callee, JmmNode caller, JmmSymbolTable table) {
+        // this itself, not one of its fields
+        var receiver = call.getJmmChild(0);
+        var isThis = Kind.SELF_EXPR.check(receiver) && receiver.getOptional("name").orElse("this").equals("this");
+        if (!isThis || NodeUtils.getBooleanAttribute(caller, "isStatic", "false")) {
+            return false;
+        }
+
+        var calleeName = callee.get("name");
+        if (call.getNumChildren() - 1 != table.getParameters(calleeName).size()) {
+            return false;
+        }
+
+        var scope = new MethodScope(caller, table);
+
+        var statement = call.getParent();
+        var isStatementValue = Kind.check(statement, Kind.EXPR_STMT, Kind.RETURN_STMT)
+                || Kind.ASSIGN_STMT.check(statement) && statement.getJmmChild(1) == call
+                && Kind.VAR_REF_EXPR.check(statement.getJmmChild(0));
+
+        // a callee that only returns an expression of its parameters becomes that expression wherever the call is
+        var isExpression = getStatements(callee).size() == 1 && call.getChildren().stream().skip(1)
+                .allMatch(arg -> isReusable(arg, scope));
+
+        if (!isStatementValue && !isExpression) {
+            return false;
+        }
+
+        // the fields and classes the callee refers to must not be hidden by variables of the caller
+        var calleeVariables = getVariableNames(calleeName, table);
+        for (var calleeStatement : getStatements(callee)) {
+            for (var varRef : TreeWalker.getDescendants(calleeStatement, Kind.VAR_REF_EXPR)) {
+                var name = varRef.get("name");
+                var occurrence = scope.getOccurrence(name);
+                if (!calleeVariables.contains(name) && (occurrence.equals("local") || occurrence.equals("param"))) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void inline(JmmNode call, JmmNode callee, JmmNode caller, JmmSymbolTable table) {
+        var callerName = caller.get("name");
+        var calleeName = callee.get("name");
+        var scope = new MethodScope(caller, table);
+        var taken = getTakenNames(callerName, table);
+
+        var statements = getStatements(callee);
+        var returnStmt = statements.get(statements.size() - 1);
+
+        var assigned = new HashSet<String>();
+        for (var statement : statements) {
+            TreeWalker.preorder(statement, node -> {
+                if (Kind.ASSIGN_STMT.check(node) && Kind.VAR_REF_EXPR.check(node.getJmmChild(0))) {
+                    assigned.add(node.getJmmChild(0).get("name"));
+                }
+            });
+        }
+
+        // what each parameter and local of the callee becomes in the caller
+        var renames = new HashMap<String, JmmNode>();
+        var inlined = new ArrayList<JmmNode>();
+
+        var args = new ArrayList<>(call.getChildren().subList(1, call.getNumChildren()));
+        var params = table.getParameters(calleeName);
+        for (int i = 0; i < params.size(); i++) {
+            var param = params.get(i);
+            var arg = args.get(i);
+            arg.detach();
+
+            if (!assigned.contains(param.getName()) && isReusable(arg, scope)) {
+                renames.put(param.getName(), arg);
+                continue;
+            }
+
+            var local = newLocal(param, callerName, taken, table);
+            renames.put(param.getName(), newVarRef(local));
+            inlined.add(newAssign(local, arg));
+        }
+
+        for (var local : table.getLocalVariables(calleeName)) {
+            renames.put(local.getName(), newVarRef(newLocal(local, callerName, taken, table)));
+        }
+
+        for (var statement : statements) {
+            if (statement != returnStmt) {
+                inlined.add(rename(statement.copy(), renames));
+            }
+        }
+
+        var result = rename(returnStmt.getJmmChild(0).copy(), renames);
+
+        var statement = call.getParent();
+        if (Kind.EXPR_STMT.check(statement)) {
+            // a value that is not used, still evaluated if it may throw
+            if (!Kind.check(result, Kind.INTEGER_LITERAL, Kind.BOOL_EXPR, Kind.VAR_REF_EXPR, Kind.SELF_EXPR)) {
+                var returnType = new Symbol(table.getReturnType(calleeName), "result");
+                inlined.add(newAssign(newLocal(returnType, callerName, taken, table), result));
+            }
+            insertBefore(statement, inlined, false);
+        } else {
+            call.replace(result);
+            if (!inlined.isEmpty()) {
+                insertBefore(statement, inlined, true);
+            }
+        }
+    }
+
+    /**
+     * Inserts the statements before the given one, wrapping them in a block when the statement is the body of an if or
+     * a while.
+     */
+    private static void insertBefore(JmmNode statement, List<JmmNode> inlined, boolean keepStatement) {
+        var parent = statement.getParent();
+        var index = statement.getIndexOfSelf();
+
+        if (Kind.check(parent, Kind.METHOD_DECL, Kind.BLOCK_STMT)) {
+            for (int i = 0; i < inlined.size(); i++) {
+                parent.add(inlined.get(i), index + i);
+            }
+            if (!keepStatement) {
+                statement.detach();
+            }
+            return;
+        }
+
+        var block = new JmmNodeImpl(Kind.BLOCK_STMT.toString());
+        inlined.forEach(block::add);
+
+        parent.removeJmmChild(index);
+        if (keepStatement) {
+            block.add(statement);
+        }
+        parent.add(block, index);
+    }
+
+    /**
+     * @param arg
+     * @param scope
+     * @return true if the argument can stand for a parameter that is never assigned, which holds for literals and for
+     * variables of the caller, as the callee cannot change them
+     */
+    private static boolean isReusable(JmmNode arg, MethodScope scope) {
+        if (Kind.check(arg, Kind.INTEGER_LITERAL, Kind.BOOL_EXPR)) {
+            return true;
+        }
+
+        if (!Kind.VAR_REF_EXPR.check(arg)) {
+            return false;
+        }
+
+        var occurrence = scope.getOccurrence(arg.get("name"));
+        return occurrence.equals("local") || occurrence.equals("param");
+    }
+
+    /**
+     * Replaces the variables of the callee in a copied subtree.
+     *
+     * @return the root of the subtree, which is replaced too if it is a variable
+     */
+    private static JmmNode rename(JmmNode root, Map<String, JmmNode> renames) {
+        if (Kind.VAR_REF_EXPR.check(root) && renames.containsKey(root.get("name"))) {
+            return renames.get(root.get("name")).copy();
+        }
+
+        for (var varRef : TreeWalker.getDescendants(root, Kind.VAR_REF_EXPR)) {
+            var replacement = renames.get(varRef.get("name"));
+            if (replacement != null) {
+                varRef.replace(replacement.copy());
+            }
+        }
+
+        return root;
+    }
+
+    private static List<JmmNode> getStatements(JmmNode method) {
+        return method.getChildren().stream()
+                .filter(child -> Kind.check(child, Kind.ASSIGN_STMT, Kind.IF_ELSE_STMT, Kind.WHILE_STMT,
+                        Kind.EXPR_STMT, Kind.RETURN_STMT, Kind.BLOCK_STMT))
+                .toList();
+    }
+
+    private static Set<String> getVariableNames(String method, JmmSymbolTable table) {
+        var names = new HashSet<String>();
+        table.getParameters(method).forEach(param -> names.add(param.getName()));
+        table.getLocalVariables(method).forEach(local -> names.add(local.getName()));
+
+        return names;
+    }
+
+    private static Set<String> getTakenNames(String method, JmmSymbolTable table) {
+        var names = getVariableNames(method, table);
+        table.getFields().forEach(field -> names.add(field.getName()));
+        table.getImports().forEach(imported -> names.addAll(List.of(imported.split("\\."))));
+        names.add(table.getClassName());
+
+        return names;
+    }
+
+    /**
+     * Declares a new local of the caller for a variable of the callee.
+     *
+     * @return the new local
+     */
+    private Symbol newLocal(Symbol variable, String method, Set<String> taken, JmmSymbolTable table) {
+        String name;
+        do {
+            name = variable.getName() + "_inl" + counter++;
+        } while (taken.contains(name));
+        taken.add(name);
+
+        var local = new Symbol(variable.getType(), name);
+        table.addLocalVariable(method, local);
+
+        return local;
+    }
+
+    private static JmmNode newVarRef(Symbol variable) {
+        var node = new JmmNodeImpl(Kind.VAR_REF_EXPR.toString());
+        node.put("name", variable.getName());
+        node.put("type", getTypeName(variable.getType()));
+        return node;
+    }
+
+    private static JmmNode newAssign(Symbol variable, JmmNode value) {
+        var node = new JmmNodeImpl(Kind.ASSIGN_STMT.toString());
+        node.put("type", getTypeName(variable.getType()));
+        node.add(newVarRef(variable));
+        node.add(value);
+        return node;
+    }
+
+    private static String getTypeName(Type type) {
+        return type.getName() + (type.isArray() ? "[]" : "");
+    }
+}
@@ -5,7 +5,6 @@ import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
-import pt.up.fe.comp2024.analysis.Utils;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
 
@@ -32,12 +31,12 @@ public class ArrayOperationsCheck extends AnalysisVisitor {
         var array = arrayRefExpr.getChildren().get(0);
         var index = arrayRefExpr.getChildren().get(1);
 
-        var importSet = Utils.getImports(table);
+        var scope = getCurrentScope();
 
         var arrayType = array.get("type");
         var indexType = index.get("type");
 
-        if (arrayType != null && !(arrayType.equals("int[]") || arrayType.equals("vararg") || importSet.contains(arrayType))) {
+        if (arrayType != null && !(arrayType.equals("int[]") || arrayType.equals("vararg") || scope.isImportedClass(arrayType))) {
             var message = String.format("Cannot perform array access on a non-array variable '%s'", array.get("name"));
             addReport(Report.newError(
                     Stage.SEMANTIC,
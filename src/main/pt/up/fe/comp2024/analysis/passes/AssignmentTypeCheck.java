@@ -5,7 +5,6 @@ import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
-import pt.up.fe.comp2024.analysis.Utils;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
 
@@ -65,14 +64,14 @@ public class AssignmentTypeCheck extends AnalysisVisitor {
             return null;
         }
 
-        var importSet = Utils.getImports(table);
+        var scope = getCurrentScope();
 
 
         if (Objects.equals(assigneeType, valueType)
-                || importSet.contains(valueType) && importSet.contains(assigneeType)
-                || (!superClass.isEmpty() && superClass.equals(valueType) && importSet.contains(valueType))
-                || (importSet.contains(valueType))
-                || (!superClass.isEmpty() && superClass.equals(assigneeType) && importSet.contains(assigneeType))
+                || scope.isImportedClass(valueType) && scope.isImportedClass(assigneeType)
+                || (!superClass.isEmpty() && superClass.equals(valueType) && scope.isImportedClass(valueType))
+                || (scope.isImportedClass(valueType))
+                || (!superClass.isEmpty() && superClass.equals(assigneeType) && scope.isImportedClass(assigneeType))
         ) {
             assignStmt.put("type", assigneeType);
         } else {
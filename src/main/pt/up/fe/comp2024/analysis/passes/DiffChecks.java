@@ -6,6 +6,7 @@ import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
 import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TreeWalker;
 import pt.up.fe.comp2024.ast.NodeUtils;
 
 import java.util.HashSet;
@@ -112,7 +113,7 @@ public class DiffChecks extends AnalysisVisitor {
 
         }
 
-        List<JmmNode> varReferences = node.getDescendants(Kind.VAR_REF_EXPR);
+        List<JmmNode> varReferences = TreeWalker.getDescendants(node, Kind.VAR_REF_EXPR);
         for (JmmNode varRef : varReferences) {
             if (fields.contains(varRef.get("name")) && node.get("isStatic").equals("true") && !localVars.contains(varRef.get("name"))) {
                 var message = String.format("Variable %s is a field", varRef.get("name"));
@@ -5,7 +5,6 @@ import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
-import pt.up.fe.comp2024.analysis.Utils;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
 
@@ -32,7 +31,7 @@ public class MethodsChecks extends AnalysisVisitor {
         var assigneeType = memberCallExpr.getChildren().get(0).get("type");
 
 
-        var importSet = Utils.getImports(table);
+        var scope = getCurrentScope();
 
         if (!Objects.equals(memberCallExpr.get("type"), "invalid")) {
             return null;
@@ -43,8 +42,8 @@ public class MethodsChecks extends AnalysisVisitor {
         }
 
 
-        if (superClass.isEmpty() || !importSet.contains(superClass) || !Objects.equals(assigneeType, className)) {
-            if (!importSet.contains(assigneeType)) {
+        if (superClass.isEmpty() || !scope.isImportedClass(superClass) || !Objects.equals(assigneeType, className)) {
+            if (!scope.isImportedClass(assigneeType)) {
                 var message = String.format("Method %s not found", memberCallExpr.get("name"));
                 addReport(Report.newError(
                         Stage.SEMANTIC,
@@ -9,10 +9,8 @@ import pt.up.fe.comp2024.analysis.Utils;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
 
-import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
-import java.util.Set;
 
 public class NodesTypesCheck extends AnalysisVisitor {
 
@@ -21,27 +19,29 @@ public class NodesTypesCheck extends AnalysisVisitor {
     @Override
     public void buildVisitor() {
 
-        addVisit(Kind.BINARY_EXPR, this::visitBinaryExpr);
         addVisit(Kind.VAR_REF_EXPR, this::visitVarRefExpr);
         addVisit(Kind.METHOD_DECL, this::visitMethodCall);
-        addVisit(Kind.ARRAY_REF_EXPR, this::visitArrayRefExpr);
         addVisit(Kind.INTEGER_LITERAL, this::visitIntegerLiteral);
         addVisit(Kind.BOOL_EXPR, this::visitBooleanLiteral);
-        addVisit(Kind.ASSIGN_STMT, this::visitAssignStmt);
-        addVisit(Kind.NEW_ARRAY_EXPR, this::visitNewArrayExpr);
-        addVisit(Kind.PRECEDENT_EXPR, this::visitPrecedentExpr);
-        addVisit(Kind.WHILE_STMT, this::visitWhileStmt);
         addVisit(Kind.NEW_OBJ_EXPR, this::visitNewObjectType);
-        addVisit(Kind.MEMBER_CALL_EXPR, this::visitMemberCallExpr);
         addVisit(Kind.PARAM_DECL, this::visitParamDecl);
-        addVisit(Kind.IF_ELSE_STMT, this::visitIfElseStmt);
-        addVisit(Kind.RETURN_STMT, this::visitReturnStmt);
         addVisit(Kind.SELF_EXPR, this::visitSelfExpr);
-        addVisit(Kind.ARRAY_INIT_EXPR, this::visitArrayInitExpr);
-        addVisit(Kind.EXPR_STMT, this::visitExprStmt);
         addVisit(Kind.VAR_DECL, this::visitVarDecl);
-        addVisit(Kind.LENGTH_EXPR, this::visitLengthExpr);
-        addVisit(Kind.NEG_EXPR, this::visitPrecedentExpr);
+
+        // Types that depend on the types of the children
+        addPostVisit(Kind.BINARY_EXPR, this::visitBinaryExpr);
+        addPostVisit(Kind.ARRAY_REF_EXPR, this::visitArrayRefExpr);
+        addPostVisit(Kind.ASSIGN_STMT, this::visitAssignStmt);
+        addPostVisit(Kind.NEW_ARRAY_EXPR, this::visitNewArrayExpr);
+        addPostVisit(Kind.PRECEDENT_EXPR, this::visitPrecedentExpr);
+        addPostVisit(Kind.WHILE_STMT, this::visitWhileStmt);
+        addPostVisit(Kind.MEMBER_CALL_EXPR, this::visitMemberCallExpr);
+        addPostVisit(Kind.IF_ELSE_STMT, this::visitIfElseStmt);
+        addPostVisit(Kind.RETURN_STMT, this::visitReturnStmt);
+        addPostVisit(Kind.ARRAY_INIT_EXPR, this::visitArrayInitExpr);
+        addPostVisit(Kind.EXPR_STMT, this::visitExprStmt);
+        addPostVisit(Kind.LENGTH_EXPR, this::visitLengthExpr);
+        addPostVisit(Kind.NEG_EXPR, this::visitPrecedentExpr);
     }
 
     private Void visitMethodCall(JmmNode methodCall, SymbolTable table) {
@@ -55,8 +55,6 @@ public class NodesTypesCheck extends AnalysisVisitor {
         var leftOperand = binaryExpr.getChildren().get(0);
         var rightOperand = binaryExpr.getChildren().get(1);
 
-        visit(leftOperand, table);
-        visit(rightOperand, table);
 
         var leftType = leftOperand.get("type");
         var rightType = rightOperand.get("type");
@@ -72,7 +70,7 @@ public class NodesTypesCheck extends AnalysisVisitor {
     }
 
     private Void visitVarRefExpr(JmmNode varRefExpr, SymbolTable table) {
-        var varType = Utils.getType(varRefExpr, table, currentMethod);
+        var varType = Utils.getType(varRefExpr, getCurrentScope());
         varRefExpr.put("type", varType);
         return null;
     }
@@ -81,8 +79,6 @@ public class NodesTypesCheck extends AnalysisVisitor {
         var arrayVar = arrayRefExpr.getChildren().get(0);
         var index = arrayRefExpr.getChildren().get(1);
 
-        visit(arrayVar, table);
-        visit(index, table);
 
         var arrayVarType = arrayVar.get("type");
         var indexType = index.get("type");
@@ -110,9 +106,6 @@ public class NodesTypesCheck extends AnalysisVisitor {
         var Var = assignStmt.getChildren().get(0);
         var Value = assignStmt.getChildren().get(1);
 
-        visit(Var, table);
-        visit(Value, table);
-
         var varType = Var.get("type");
         var valueType = Value.get("type");
 
@@ -121,6 +114,10 @@ public class NodesTypesCheck extends AnalysisVisitor {
         } else {
             assignStmt.put("type", "invalid");
             Value.put("type", varType);
+
+            // The value keeps its own type when it can infer one, only expressions that take the type of their
+            // operand when they have none (parentheses, negations) keep the type of the variable
+            revisit(Value, table);
         }
 
         return null;
@@ -128,7 +125,6 @@ public class NodesTypesCheck extends AnalysisVisitor {
 
     private Void visitNewArrayExpr(JmmNode newArrayExpr, SymbolTable table) {
         var size = newArrayExpr.getChildren().get(0);
-        visit(size, table);
 
         var sizeType = size.get("type");
 
@@ -143,7 +139,6 @@ public class NodesTypesCheck extends AnalysisVisitor {
 
     private Void visitPrecedentExpr(JmmNode precedentExpr, SymbolTable table) {
         var expr = precedentExpr.getChildren().get(0);
-        visit(expr, table);
         if (precedentExpr.getOptional("type").isEmpty()) {
             try {
                 var exprType = expr.get("type");
@@ -168,7 +163,6 @@ public class NodesTypesCheck extends AnalysisVisitor {
 
     private Void visitWhileStmt(JmmNode whileStmt, SymbolTable table) {
         var condition = whileStmt.getChildren().get(0);
-        visit(condition, table);
         var conditionType = condition.get("type");
         if (Objects.equals(conditionType, "boolean")) {
             whileStmt.put("type", "boolean");
@@ -190,18 +184,9 @@ public class NodesTypesCheck extends AnalysisVisitor {
 
         var method = memberCallExpr.get("name");
         var methodType = table.getReturnType(method);
-        var imports = table.getImports();
-        var isUnknown = imports.contains(obj);
-        Set<String> importSet = new HashSet<>();
-
-        for (var i : imports){
-            var pathParts = i.split("\\.");
-            importSet.add(pathParts[pathParts.length - 1]);
-        }
-
+        var isUnknown = table.getImports().contains(obj);
 
 
-        visit(object, table);
         if (methodType != null && !isUnknown) {
             var typeMethod = methodType.getName();
 
@@ -210,11 +195,10 @@ public class NodesTypesCheck extends AnalysisVisitor {
             }
             memberCallExpr.put("type", typeMethod);
         } else {
-            for (var i: importSet){
-                if (i.equals(object.get("type"))){
-                    memberCallExpr.put("type",i);
-                    return null;
-                }
+            var objectType = object.getOptional("type").orElse(null);
+            if (objectType != null && getCurrentScope().isImportedClass(objectType)){
+                memberCallExpr.put("type", objectType);
+                return null;
             }
             memberCallExpr.put("type", "invalid");
         }
@@ -228,7 +212,7 @@ public class NodesTypesCheck extends AnalysisVisitor {
     }
 
     private Void visitParamDecl(JmmNode paramDecl, SymbolTable table) {
-        var type = Utils.getType(paramDecl, table, currentMethod);
+        var type = Utils.getType(paramDecl, getCurrentScope());
         paramDecl.put("type", type);
         return null;
     }
@@ -236,7 +220,6 @@ public class NodesTypesCheck extends AnalysisVisitor {
     private Void visitIfElseStmt(JmmNode ifElseStmt, SymbolTable table) {
         var condition = ifElseStmt.getChildren().get(0);
 
-        visit(condition, table);
 
         var conditionType = condition.get("type");
 
@@ -252,7 +235,6 @@ public class NodesTypesCheck extends AnalysisVisitor {
 
     private Void visitReturnStmt(JmmNode returnStmt, SymbolTable table) {
         var returnValue = returnStmt.getChildren().get(0);
-        visit(returnValue, table);
         var returnType = returnValue.get("type");
         returnStmt.put("type", returnType);
         return null;
@@ -266,7 +248,6 @@ public class NodesTypesCheck extends AnalysisVisitor {
     private Void visitArrayInitExpr(JmmNode arrayInitExpr, SymbolTable table) {
         var hasType = false;
         for (JmmNode child : arrayInitExpr.getChildren()) {
-            visit(child, table);
             var childType = child.get("type");
             if (!Objects.equals(childType, "int")) {
                 arrayInitExpr.put("type", "invalid");
@@ -285,7 +266,6 @@ public class NodesTypesCheck extends AnalysisVisitor {
 
     private Void visitExprStmt(JmmNode exprStmt, SymbolTable table) {
         var expr = exprStmt.getChildren().get(0);
-        visit(expr, table);
         exprStmt.put("type", expr.get("type"));
         return null;
     }
@@ -297,7 +277,6 @@ public class NodesTypesCheck extends AnalysisVisitor {
 
     private Void visitLengthExpr(JmmNode lengthExpr, SymbolTable table) {
         var array = lengthExpr.getChildren().get(0);
-        visit(array, table);
         var arrayType = array.get("type");
         if (Objects.equals(arrayType, "int[]") || Objects.equals(arrayType, "vararg")) {
             lengthExpr.put("type", "int");
@@ -5,7 +5,6 @@ import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
-import pt.up.fe.comp2024.analysis.Utils;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
 
@@ -23,7 +22,7 @@ public class OperationTypesCheck extends AnalysisVisitor {
     private Void visitBinaryExpr(JmmNode binaryExpr, SymbolTable table) {
         var leftOperand = binaryExpr.getChildren().get(0);
         var rightOperand = binaryExpr.getChildren().get(1);
-        var importSet = Utils.getImports(table);
+        var scope = getCurrentScope();
 
         var leftType = leftOperand.get("type");
         var rightType = rightOperand.get("type");
@@ -37,11 +36,11 @@ public class OperationTypesCheck extends AnalysisVisitor {
             default -> throw new IllegalArgumentException("Unknown operator: " + operator);
         };
 
-        if (importSet.contains(leftType) && leftOperand.getKind().equals(Kind.MEMBER_CALL_EXPR.toString())) {
+        if (scope.isImportedClass(leftType) && leftOperand.getKind().equals(Kind.MEMBER_CALL_EXPR.toString())) {
             leftType = expectedType;
         }
 
-        if (importSet.contains(rightType) && rightOperand.getKind().equals(Kind.MEMBER_CALL_EXPR.toString())) {
+        if (scope.isImportedClass(rightType) && rightOperand.getKind().equals(Kind.MEMBER_CALL_EXPR.toString())) {
             rightType = expectedType;
         }
 
@@ -6,7 +6,6 @@ import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
-import pt.up.fe.comp2024.analysis.Utils;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
 
@@ -59,12 +58,12 @@ public class ParamChecks extends AnalysisVisitor {
 
         var type = memberCallExpr.get("type");
         var method = memberCallExpr.get("name");
-        var importSet = Utils.getImports(table);
+        var scope = getCurrentScope();
 
-        var isUnknown = importSet.contains(obj);
+        var isUnknown = scope.isImportedClass(obj);
         var superClass = table.getSuper();
 
-        if (importSet.contains(type) || superClass.equals(type) || type.equals("invalid")) {
+        if (scope.isImportedClass(type) || superClass.equals(type) || type.equals("invalid")) {
             return null;
         }
 
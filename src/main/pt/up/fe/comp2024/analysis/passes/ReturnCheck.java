@@ -6,7 +6,6 @@ import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.ReportType;
 import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.AnalysisVisitor;
-import pt.up.fe.comp2024.analysis.Utils;
 import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
 
@@ -72,9 +71,9 @@ public class ReturnCheck extends AnalysisVisitor {
     private Void visitReturnStmt(JmmNode returnStmt, SymbolTable table) {
         var returnStmtType = returnStmt.getChildren().get(0).get("type");
         var superClass = table.getSuper();
-        var imports = Utils.getImports(table);
+        var scope = getCurrentScope();
 
-        if (!returnStmtType.equals(returnType) && !(returnStmtType.equals(superClass) || imports.contains(returnStmtType))){
+        if (!returnStmtType.equals(returnType) && !(returnStmtType.equals(superClass) || scope.isImportedClass(returnStmtType))){
             var message = String.format("Method %s has a return type of %s, but the call is being assigned to a %s", currentMethod, returnType, returnStmtType);
             addReport(Report.newError(
                     Stage.SEMANTIC,
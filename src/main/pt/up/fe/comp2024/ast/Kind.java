@@ -26,6 +26,7 @@ public enum Kind {
     WHILE_STMT,
     EXPR_STMT,
     RETURN_STMT,
+    BLOCK_STMT,
     PRECEDENT_EXPR,
     NEG_EXPR,
     BINARY_EXPR,
@@ -42,7 +43,7 @@ public enum Kind {
     SELF_EXPR;
 
 
-    private static final Set<Kind> STATEMENTS = Set.of( ASSIGN_STMT, IF_ELSE_STMT, WHILE_STMT, EXPR_STMT, RETURN_STMT);
+    private static final Set<Kind> STATEMENTS = Set.of( ASSIGN_STMT, IF_ELSE_STMT, WHILE_STMT, EXPR_STMT, RETURN_STMT, BLOCK_STMT);
     private static final Set<Kind> EXPRESSIONS = Set.of( PRECEDENT_EXPR, NEG_EXPR, BINARY_EXPR, INTEGER_LITERAL, ARRAY_INIT_EXPR, ARRAY_REF_EXPR, VAR_REF_EXPR, LENGTH_EXPR, NEW_ARRAY_EXPR, NEW_OBJ_EXPR, BOOL_EXPR, SELF_EXPR, MEMBER_CALL_EXPR);
 
     private static final Set<Kind> TYPES = Set.of( ARRAY_TYPE, VARARG_TYPE, BOOL_TYPE, INT_TYPE, OBJECT_TYPE, TYPE);
@@ -0,0 +1,117 @@
+package pt.up.fe.comp2024.ast;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Depth-first traversal of a JmmNode tree that keeps its pending nodes in an explicit work stack instead of the Java
+ * call stack, so that deeply nested programs (e.g. long chains of binary expressions) do not overflow it.
+ */
+public class TreeWalker {
+
+    /**
+     * Walks the tree rooted at the given node, calling the pre hook before the children of a node are walked and the
+     * post hook after all of them were.
+     * <p>
+     * The children of a node are read right after its pre hook, so the hook may replace or remove them.
+     *
+     * @param root
+     * @param pre  returns false to skip the children and the post hook of the node
+     * @param post
+     */
+    public static void walk(JmmNode root, Predicate<JmmNode> pre, Consumer<JmmNode> post) {
+        var stack = new ArrayDeque<Frame>();
+
+        if (pre.test(root)) {
+            stack.push(new Frame(root));
+        }
+
+        while (!stack.isEmpty()) {
+            var frame = stack.peek();
+
+            if (frame.next < frame.children.size()) {
+                var child = frame.children.get(frame.next++);
+                if (pre.test(child)) {
+                    stack.push(new Frame(child));
+                }
+                continue;
+            }
+
+            stack.pop();
+            post.accept(frame.node);
+        }
+    }
+
+    /**
+     * Calls the hook on every node of the tree, children before their parents.
+     *
+     * @param root
+     * @param post
+     */
+    public static void postorder(JmmNode root, Consumer<JmmNode> post) {
+        walk(root, node -> true, post);
+    }
+
+    /**
+     * Calls the hook on every node of the tree, parents before their children.
+     *
+     * @param root
+     * @param pre
+     */
+    public static void preorder(JmmNode root, Consumer<JmmNode> pre) {
+        walk(root, node -> {
+            pre.accept(node);
+            return true;
+        }, node -> {
+        });
+    }
+
+    /**
+     * Same as {@link JmmNode#getDescendants()}, without recursion.
+     *
+     * @param root
+     * @return the descendants of the node, in preorder
+     */
+    public static List<JmmNode> getDescendants(JmmNode root) {
+        var descendants = new ArrayList<JmmNode>();
+        preorder(root, descendants::add);
+        descendants.remove(0);
+
+        return descendants;
+    }
+
+    /**
+     * Same as {@link JmmNode#getDescendants(Object)}, without recursion.
+     *
+     * @param root
+     * @param kind
+     * @return the descendants of the node of the given kind, in preorder
+     */
+    public static List<JmmNode> getDescendants(JmmNode root, Kind kind) {
+        var descendants = new ArrayList<JmmNode>();
+        preorder(root, node -> {
+            if (node != root && kind.check(node)) {
+                descendants.add(node);
+            }
+        });
+
+        return descendants;
+    }
+
+    private static class Frame {
+        private final JmmNode node;
+        private final List<JmmNode> children;
+        private int next;
+
+        private Frame(JmmNode node) {
+            this.node = node;
+            this.children = node.getChildren();
+            this.next = 0;
+        }
+    }
+}
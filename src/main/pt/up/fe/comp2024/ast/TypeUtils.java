@@ -3,6 +3,7 @@ package pt.up.fe.comp2024.ast;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.symboltable.MethodScope;
 
 public class TypeUtils {
 
@@ -37,6 +38,24 @@ public class TypeUtils {
         return type;
     }
 
+    /**
+     * Gets the {@link Type} of an arbitrary expression, resolving variable references against an already
+     * built {@link MethodScope} instead of searching for the enclosing method.
+     *
+     * @param expr
+     * @param table
+     * @param scope
+     * @return
+     */
+    public static Type getExprType(JmmNode expr, SymbolTable table, MethodScope scope) {
+        if (scope == null || !Kind.VAR_REF_EXPR.check(expr)) {
+            return getExprType(expr, table);
+        }
+
+        var type = scope.getType(expr.get("name"));
+        return type != null ? type : new Type("", false);
+    }
+
     private static Type getBinExprType(JmmNode binaryExpr) {
         // TODO: Simple implementation that needs to be expanded
 
@@ -0,0 +1,25 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+
+/**
+ * Takes the arrays of literals of a method ({@link ConstantArrays}) from the static fields they are built in once,
+ * instead of filling them in element by element.
+ */
+public class ArrayHoisting implements OptimizationPass<MethodLowering> {
+
+    @Override
+    public String getName() {
+        return "constant-arrays";
+    }
+
+    @Override
+    public int run(MethodLowering target) {
+        var arrays = target.getConstantArrays().find(target.getMethod());
+
+        target.getArrays().putAll(arrays);
+        arrays.values().forEach(array -> target.getOmitted().addAll(array.stores()));
+
+        return arrays.size();
+    }
+}
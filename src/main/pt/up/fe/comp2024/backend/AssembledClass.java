@@ -0,0 +1,52 @@
+package pt.up.fe.comp2024.backend;
+
+import jas.jasError;
+import jasmin.ClassFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * A class file assembled from Jasmin in memory, without going through files or the jasmin command.
+ *
+ * @param name  the internal name of the class, e.g. {@code foo/Bar}
+ * @param bytes the contents of its class file
+ */
+public record AssembledClass(String name, byte[] bytes) {
+
+    /**
+     * @param jasminCode
+     * @return the class the code declares
+     */
+    public static AssembledClass assemble(String jasminCode) {
+        var classFile = new ClassFile();
+
+        try {
+            classFile.readJasmin(new StringReader(jasminCode), "jasmin", true);
+            if (classFile.errorCount() > 0) {
+                throw new RuntimeException("Found " + classFile.errorCount() + " errors while assembling Jasmin code");
+            }
+
+            var bytes = new ByteArrayOutputStream();
+            classFile.write(bytes);
+
+            return new AssembledClass(classFile.getClassName(), bytes.toByteArray());
+        } catch (jasError e) {
+            throw new RuntimeException("JAS Error: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not assemble Jasmin code: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Exception while assembling Jasmin code: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the binary name of the class, e.g. {@code foo.Bar}, as a class loader knows it
+     */
+    public String getBinaryName() {
+        return name.replace('/', '.');
+    }
+}
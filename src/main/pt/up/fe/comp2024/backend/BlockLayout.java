@@ -0,0 +1,72 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Placement of the jumps of a method, so that as few gotos as possible are executed.
+ * <p>
+ * Jumps to a goto are redirected to where that goto leads, gotos to the instruction that follows them anyway are
+ * dropped, and gotos to a return whose value is cheap to load are replaced by a copy of the return.
+ */
+public class BlockLayout {
+
+    private final Map<String, Instruction> labels;
+
+    public BlockLayout(Method method) {
+        this(method.getLabels());
+    }
+
+    private BlockLayout(Map<String, Instruction> labels) {
+        this.labels = labels;
+    }
+
+    /**
+     * @return the layout that leaves every jump as it is
+     */
+    public static BlockLayout none() {
+        return new BlockLayout(Map.of());
+    }
+
+    /**
+     * @param label
+     * @return the label the jump ends up at, after going through any gotos at the given one
+     */
+    public String getTarget(String label) {
+        var visited = new HashSet<String>();
+
+        // a loop of gotos is left as it is
+        while (visited.add(label) && labels.get(label) instanceof GotoInstruction next) {
+            label = next.getLabel();
+        }
+
+        return label;
+    }
+
+    /**
+     * @param gotoInst
+     * @param next     the instruction emitted after the goto, or null if there is none
+     * @return true if the goto only jumps to the instruction that follows it
+     */
+    public boolean isFallthrough(GotoInstruction gotoInst, Instruction next) {
+        return next != null && labels.get(getTarget(gotoInst.getLabel())) == next;
+    }
+
+    /**
+     * @param gotoInst
+     * @return the return the goto leads to, if it is cheap enough to be copied in place of the goto
+     */
+    public Optional<ReturnInstruction> getReturnTarget(GotoInstruction gotoInst) {
+        if (!(labels.get(getTarget(gotoInst.getLabel())) instanceof ReturnInstruction returnInst)) {
+            return Optional.empty();
+        }
+
+        // a single load at most, so the copy is no longer than the goto it replaces by much
+        var operand = returnInst.getOperand();
+        var cheap = operand == null || operand instanceof LiteralElement
+                || operand instanceof Operand variable && !(variable instanceof ArrayOperand);
+
+        return cheap ? Optional.of(returnInst) : Optional.empty();
+    }
+}
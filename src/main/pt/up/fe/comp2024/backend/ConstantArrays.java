@@ -0,0 +1,297 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPipelines;
+
+import java.util.*;
+
+/**
+ * Arrays built from literals only, e.g. by {@code [31, 28, 31]} or by the arguments of a vararg call, whose contents
+ * are put once in a static field of the class instead of element by element every time they are created.
+ * <p>
+ * An array that is only ever read shares the array of the field: it goes through copies of its variable, is indexed,
+ * its length is taken, or it is passed to parameters of methods of the class that only read it as well. Any other
+ * array is a clone of the field. Which parameters only read their array is known under the closed class assumption of
+ * {@link OptimizationPipelines}.
+ */
+public class ConstantArrays {
+
+    /**
+     * Arrays shorter than this that may be changed are still filled in place, which costs about as much as a clone.
+     */
+    private static final int MIN_CLONED_LENGTH = 4;
+
+    /**
+     * @param field  the name of the static field with the contents of the array
+     * @param values
+     * @param shared true if the array is only read, so that the field itself is used instead of a clone
+     * @param stores the stores of the values into the new array, which are no longer generated
+     */
+    public record ConstantArray(String field, List<Integer> values, boolean shared, List<AssignInstruction> stores) {
+    }
+
+    private final ClassUnit ollirClass;
+    private final Descriptors descriptors;
+
+    // methods by name, when no other method has the same name
+    private final Map<String, Method> methods;
+
+    // indexes of the array parameters of each method that are only read
+    private final Map<String, Set<Integer>> readOnlyParams;
+
+    private final Map<Method, Map<AssignInstruction, ConstantArray>> arrays;
+
+    public ConstantArrays(ClassUnit ollirClass, Descriptors descriptors) {
+        this.ollirClass = ollirClass;
+        this.descriptors = descriptors;
+        this.methods = new HashMap<>();
+        this.readOnlyParams = new TreeMap<>();
+        this.arrays = new IdentityHashMap<>();
+
+        var names = new HashMap<String, Integer>();
+        ollirClass.getMethods().forEach(method -> names.merge(method.getMethodName(), 1, Integer::sum));
+
+        for (var method : ollirClass.getMethods()) {
+            // overloaded names cannot be told apart by the calls
+            if (method.isConstructMethod() || names.get(method.getMethodName()) > 1) {
+                continue;
+            }
+
+            methods.put(method.getMethodName(), method);
+
+            var params = new TreeSet<Integer>();
+            for (int i = 0; i < method.getParams().size(); i++) {
+                if (method.getParams().get(i).getType().getTypeOfElement() == ElementType.ARRAYREF) {
+                    params.add(i);
+                }
+            }
+            readOnlyParams.put(method.getMethodName(), params);
+        }
+
+        // every parameter starts as read-only, so that methods passing it on to themselves keep it that way
+        boolean changed;
+        do {
+            changed = false;
+            for (var entry : readOnlyParams.entrySet()) {
+                var method = methods.get(entry.getKey());
+                changed |= entry.getValue().removeIf(index ->
+                        !isReadOnly(((Operand) method.getParams().get(index)).getName(), method, List.of()));
+            }
+        } while (changed);
+    }
+
+    /**
+     * @param method
+     * @return the constant arrays of the method, by the assignment of the new array
+     */
+    public Map<AssignInstruction, ConstantArray> find(Method method) {
+        return arrays.computeIfAbsent(method, this::findArrays);
+    }
+
+    /**
+     * @return the constant arrays of every method of the class, in order
+     */
+    public List<ConstantArray> findAll() {
+        return ollirClass.getMethods().stream()
+                .flatMap(method -> find(method).values().stream())
+                .toList();
+    }
+
+    /**
+     * @return what the arrays of a method depend on besides its own code, i.e. the parameters of the class that are
+     * only read
+     */
+    public String getDependencies() {
+        return readOnlyParams.toString();
+    }
+
+    private Map<AssignInstruction, ConstantArray> findArrays(Method method) {
+        var found = new LinkedHashMap<AssignInstruction, ConstantArray>();
+        var instructions = method.getInstructions();
+        var prefix = getFieldPrefix(method);
+
+        for (int i = 0; i < instructions.size(); i++) {
+            if (!(instructions.get(i) instanceof AssignInstruction assign) || !(assign.getDest() instanceof Operand dest)
+                    || dest instanceof ArrayOperand || !(assign.getRhs() instanceof CallInstruction call)
+                    || call.getInvocationType() != CallType.NEW
+                    || call.getCaller().getType().getTypeOfElement() != ElementType.ARRAYREF
+                    || !(call.getArguments().get(0) instanceof LiteralElement size)) {
+                continue;
+            }
+
+            var length = Integer.parseInt(size.getLiteral());
+            if (length < 1 || i + length >= instructions.size()) {
+                continue;
+            }
+
+            // one store of a literal for each index in order, right after the array is created
+            var values = new ArrayList<Integer>();
+            var stores = new ArrayList<AssignInstruction>();
+            for (int index = 0; index < length; index++) {
+                var inst = instructions.get(i + 1 + index);
+                if (!method.getLabels(inst).isEmpty() || !(inst instanceof AssignInstruction store)
+                        || !(store.getDest() instanceof ArrayOperand array) || !array.getName().equals(dest.getName())
+                        || !(array.getIndexOperands().get(0) instanceof LiteralElement storeIndex)
+                        || Integer.parseInt(storeIndex.getLiteral()) != index
+                        || !(store.getRhs() instanceof SingleOpInstruction single)
+                        || !(single.getSingleOperand() instanceof LiteralElement value)) {
+                    break;
+                }
+
+                values.add(Integer.parseInt(value.getLiteral()));
+                stores.add(store);
+            }
+
+            if (values.size() != length) {
+                continue;
+            }
+
+            var shared = isReadOnly(dest.getName(), method, stores);
+            if (!shared && length < MIN_CLONED_LENGTH) {
+                continue;
+            }
+
+            var field = prefix + "$array" + found.size();
+            found.put(assign, new ConstantArray(field, values, shared, stores));
+            i += length;
+        }
+
+        return found;
+    }
+
+    /**
+     * The name of the method and the descriptors of its parameters, which tell overloads apart, with the characters a
+     * field name cannot have escaped like JNI does: '_' as "_1", ';' as "_2", '[' as "_3" and '/' as '_'.
+     * <p>
+     * The names depend on the method alone, so that the cached code of a method still names its fields when other
+     * methods change.
+     *
+     * @param method
+     * @return e.g. {@code sum$_3II} for {@code sum(int[], int)}
+     */
+    private String getFieldPrefix(Method method) {
+        var prefix = new StringBuilder(method.getMethodName()).append('$');
+
+        for (var param : method.getParams()) {
+            for (char c : descriptors.getDescriptor(param.getType()).toCharArray()) {
+                switch (c) {
+                    case '_' -> prefix.append("_1");
+                    case ';' -> prefix.append("_2");
+                    case '[' -> prefix.append("_3");
+                    case '/' -> prefix.append('_');
+                    default -> prefix.append(c);
+                }
+            }
+        }
+
+        return prefix.toString();
+    }
+
+    /**
+     * @param variable an array variable
+     * @param method
+     * @param stores   the stores that fill the array, which are not counted
+     * @return true if the arrays in the variable, and in every variable it is copied to, are only read
+     */
+    private boolean isReadOnly(String variable, Method method, List<AssignInstruction> stores) {
+        var aliases = new HashSet<String>();
+        aliases.add(variable);
+
+        // the variables the array is copied to, and those they are copied to in turn
+        boolean changed;
+        do {
+            changed = false;
+            for (var inst : method.getInstructions()) {
+                if (inst instanceof AssignInstruction assign && assign.getRhs() instanceof SingleOpInstruction single
+                        && isAlias(single.getSingleOperand(), aliases) && assign.getDest() instanceof Operand dest
+                        && !(dest instanceof ArrayOperand)) {
+                    changed |= aliases.add(dest.getName());
+                }
+            }
+        } while (changed);
+
+        return method.getInstructions().stream()
+                .allMatch(inst -> stores.contains(inst) || isReadOnlyUse(inst, aliases, method));
+    }
+
+    private boolean isReadOnlyUse(Instruction inst, Set<String> aliases, Method method) {
+        if (inst instanceof AssignInstruction assign) {
+            // a store into the array, a copy was already followed
+            if (assign.getDest() instanceof ArrayOperand array && aliases.contains(array.getName())) {
+                return false;
+            }
+
+            return assign.getRhs() instanceof SingleOpInstruction || isReadOnlyUse(assign.getRhs(), aliases, method);
+        }
+
+        if (inst instanceof CallInstruction call) {
+            if (call.getInvocationType() == CallType.arraylength) {
+                return true;
+            }
+
+            if (isAlias(call.getCaller(), aliases)) {
+                return false;
+            }
+
+            var arguments = call.getArguments();
+            for (int i = 0; i < arguments.size(); i++) {
+                if (isAlias(arguments.get(i), aliases) && !isReadOnlyParam(call, i, method)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        if (inst instanceof CondBranchInstruction branch) {
+            return isReadOnlyUse(branch.getCondition(), aliases, method);
+        }
+
+        if (inst instanceof ReturnInstruction returnInst) {
+            return !returnInst.hasReturnValue() || !isAlias(returnInst.getOperand(), aliases);
+        }
+
+        if (inst instanceof PutFieldInstruction putField) {
+            return !isAlias(putField.getValue(), aliases);
+        }
+
+        if (inst instanceof SingleOpInstruction single) {
+            return !isAlias(single.getSingleOperand(), aliases);
+        }
+
+        if (inst instanceof BinaryOpInstruction binary) {
+            return !isAlias(binary.getLeftOperand(), aliases) && !isAlias(binary.getRightOperand(), aliases);
+        }
+
+        if (inst instanceof UnaryOpInstruction unary) {
+            return !isAlias(unary.getOperand(), aliases);
+        }
+
+        return inst instanceof GotoInstruction || inst instanceof GetFieldInstruction;
+    }
+
+    /**
+     * @param call
+     * @param index
+     * @param method the method with the call
+     * @return true if the argument at the index goes to a parameter of a method of the class that is only read
+     */
+    private boolean isReadOnlyParam(CallInstruction call, int index, Method method) {
+        if (call.getInvocationType() != CallType.invokevirtual || !(call.getCaller() instanceof Operand caller)
+                || !(call.getMethodName() instanceof LiteralElement name)) {
+            return false;
+        }
+
+        var isOwnClass = caller.getType().getTypeOfElement() == ElementType.THIS
+                || caller.getType() instanceof ClassType type
+                && type.getName().equals(method.getOllirClass().getClassName());
+
+        var params = readOnlyParams.get(name.getLiteral().replace("\"", ""));
+        return isOwnClass && params != null && params.contains(index);
+    }
+
+    private static boolean isAlias(Element element, Set<String> aliases) {
+        return element instanceof Operand operand && !(operand instanceof ArrayOperand)
+                && aliases.contains(operand.getName());
+    }
+}
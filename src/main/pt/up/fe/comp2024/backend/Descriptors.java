@@ -0,0 +1,67 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The internal names of the classes a class refers to and the descriptors of the types it uses, resolved once for the
+ * whole class.
+ * <p>
+ * A class is known by the last part of its import, e.g. {@code Bar} for {@code import foo.Bar}, and by its internal
+ * name, {@code foo/Bar}. The first import wins when two of them end in the same name.
+ */
+public class Descriptors {
+
+    private final String className;
+
+    // the internal names of the imported classes, by simple name
+    private final Map<String, String> classNames;
+
+    // the descriptors of classes and of arrays, by the internal name of the class or the descriptor of the elements
+    private final Map<String, String> objectDescriptors;
+    private final Map<String, String> arrayDescriptors;
+
+    public Descriptors(ClassUnit classUnit) {
+        this.className = classUnit.getClassName();
+        this.classNames = new HashMap<>();
+        this.objectDescriptors = new HashMap<>();
+        this.arrayDescriptors = new HashMap<>();
+
+        for (var imported : classUnit.getImports()) {
+            var simpleName = imported.substring(imported.lastIndexOf('.') + 1);
+            classNames.putIfAbsent(simpleName, imported.replace(".", "/"));
+        }
+    }
+
+    /**
+     * @param name
+     * @return the internal name of the class, or the name itself if it is not imported
+     */
+    public String getClassName(String name) {
+        if (name.equals("this")) {
+            return className;
+        }
+
+        return classNames.getOrDefault(name, name);
+    }
+
+    /**
+     * @param type
+     * @return the descriptor of the type, e.g. {@code I} or {@code Lfoo/Bar;}, or null if it has none
+     */
+    public String getDescriptor(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case INT32 -> "I";
+            case BOOLEAN -> "Z";
+            case VOID -> "V";
+            case STRING -> "Ljava/lang/String;";
+            case ARRAYREF -> arrayDescriptors.computeIfAbsent(getDescriptor(((ArrayType) type).getElementType()),
+                    elements -> "[" + elements);
+            case OBJECTREF -> objectDescriptors.computeIfAbsent(getClassName(((ClassType) type).getName()),
+                    internalName -> "L" + internalName + ";");
+            default -> null;
+        };
+    }
+}
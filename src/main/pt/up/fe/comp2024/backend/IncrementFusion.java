@@ -0,0 +1,104 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+
+import java.util.HashMap;
+
+/**
+ * Generates the increments of a variable by a small constant as an iinc, both {@code v := v + c} and the
+ * {@code tmp := v + c; v := tmp} that OLLIR splits them into, with the temporary used nowhere else.
+ */
+public class IncrementFusion implements OptimizationPass<MethodLowering> {
+
+    @Override
+    public String getName() {
+        return "iinc";
+    }
+
+    @Override
+    public int run(MethodLowering target) {
+        var method = target.getMethod();
+        var increments = target.getIncrements();
+
+        // occurrences of each variable, as destination or operand
+        var occurrences = new HashMap<String, Integer>();
+        for (var inst : method.getInstructions()) {
+            inst.getDescendantsStream()
+                    .filter(node -> node instanceof Operand)
+                    .forEach(node -> occurrences.merge(((Operand) node).getName(), 1, Integer::sum));
+        }
+
+        var instructions = method.getInstructions();
+        for (int i = 0; i < instructions.size(); i++) {
+            if (!(instructions.get(i) instanceof AssignInstruction assign)
+                    || !(assign.getDest() instanceof Operand dest) || dest instanceof ArrayOperand
+                    || !(assign.getRhs() instanceof BinaryOpInstruction rhs)) {
+                continue;
+            }
+
+            var amount = getIncrement(rhs, dest.getName());
+            if (amount != null) {
+                increments.put(assign, new MethodLowering.Increment(dest, amount, null));
+                continue;
+            }
+
+            if (i + 1 >= instructions.size()
+                    || !(instructions.get(i + 1) instanceof AssignInstruction copy)
+                    || !(copy.getDest() instanceof Operand variable) || variable instanceof ArrayOperand
+                    || !(copy.getRhs() instanceof SingleOpInstruction single)
+                    || !isVariable(single.getSingleOperand(), dest.getName())) {
+                continue;
+            }
+
+            // nothing jumps in between, and the temporary is not read anywhere else
+            amount = getIncrement(rhs, variable.getName());
+            if (!method.getLabels(copy).isEmpty() || occurrences.get(dest.getName()) != 2 || amount == null) {
+                continue;
+            }
+
+            increments.put(assign, new MethodLowering.Increment(variable, amount, copy));
+            target.getOmitted().add(copy);
+        }
+
+        return increments.size();
+    }
+
+    /**
+     * @param rhs
+     * @param variable
+     * @return the constant added to the variable by {@code variable + c}, {@code c + variable} or
+     * {@code variable - c}, or null if the operation is not one of those or the constant does not fit iinc
+     */
+    private static Integer getIncrement(BinaryOpInstruction rhs, String variable) {
+        var opType = rhs.getOperation().getOpType();
+        if (opType != OperationType.ADD && opType != OperationType.SUB) {
+            return null;
+        }
+
+        Integer increment = null;
+        if (isVariable(rhs.getLeftOperand(), variable)) {
+            increment = getIntLiteral(rhs.getRightOperand());
+            if (increment != null && opType == OperationType.SUB) {
+                increment = -increment;
+            }
+        } else if (opType == OperationType.ADD && isVariable(rhs.getRightOperand(), variable)) {
+            increment = getIntLiteral(rhs.getLeftOperand());
+        }
+
+        return increment != null && increment >= Byte.MIN_VALUE && increment <= Byte.MAX_VALUE ? increment : null;
+    }
+
+    private static boolean isVariable(Element element, String variable) {
+        return element instanceof Operand operand && !(operand instanceof ArrayOperand)
+                && operand.getName().equals(variable);
+    }
+
+    private static Integer getIntLiteral(Element element) {
+        if (!(element instanceof LiteralElement literal) || element.getType().getTypeOfElement() != ElementType.INT32) {
+            return null;
+        }
+
+        return Integer.parseInt(literal.getLiteral());
+    }
+}
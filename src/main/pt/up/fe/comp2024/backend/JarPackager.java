@@ -0,0 +1,101 @@
+package pt.up.fe.comp2024.backend;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Packages compiled classes into a single jar, streamed entry by entry into the file.
+ * <p>
+ * The jar is written next to the file it replaces and then moved over it, so a program running from the previous jar
+ * never reads a partly written one.
+ */
+public class JarPackager {
+
+    private static final String CLASS_EXTENSION = ".class";
+
+    /**
+     * @param jar        the file to write
+     * @param classes    the compiled classes
+     * @param mainClass  the binary name of the class run by {@code java -jar}, or null if none
+     * @param bundledDir a directory of class files to package as well, e.g. the runtime classes of Java--, or null if
+     *                   none; the compiled classes take the place of those with the same name
+     */
+    public static void write(File jar, List<AssembledClass> classes, String mainClass, File bundledDir) {
+        var manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (mainClass != null) {
+            manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, mainClass);
+        }
+
+        var target = jar.getAbsoluteFile().toPath();
+        Path temp = null;
+        try {
+            Files.createDirectories(target.getParent());
+            temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+
+            try (var out = new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), manifest)) {
+                var written = new HashSet<String>();
+
+                for (var assembled : classes) {
+                    var name = assembled.name() + CLASS_EXTENSION;
+                    if (!written.add(name)) {
+                        throw new RuntimeException("Class '" + assembled.name() + "' was compiled more than once");
+                    }
+
+                    out.putNextEntry(new JarEntry(name));
+                    out.write(assembled.bytes());
+                    out.closeEntry();
+                }
+
+                if (bundledDir != null) {
+                    bundle(bundledDir.toPath(), out, written);
+                }
+            }
+
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write jar '" + jar + "'", e);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    // only a leftover temporary file
+                }
+            }
+        }
+    }
+
+    private static void bundle(Path dir, JarOutputStream out, Set<String> written) throws IOException {
+        List<Path> files;
+        try (var walk = Files.walk(dir)) {
+            files = walk.filter(path -> Files.isRegularFile(path) && path.toString().endsWith(CLASS_EXTENSION))
+                    .sorted()
+                    .toList();
+        }
+
+        for (var file : files) {
+            // entries always use '/', whatever the separator of the file system
+            var name = dir.relativize(file).toString().replace(File.separatorChar, '/');
+            if (!written.add(name)) {
+                continue;
+            }
+
+            out.putNextEntry(new JarEntry(name));
+            Files.copy(file, out);
+            out.closeEntry();
+        }
+    }
+}
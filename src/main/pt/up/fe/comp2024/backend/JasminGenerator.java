@@ -3,26 +3,27 @@ package pt.up.fe.comp2024.backend;
 import com.sun.jdi.ObjectReference;
 import org.specs.comp.ollir.*;
 import org.specs.comp.ollir.parser.OllirParser;
-import org.specs.comp.ollir.tree.TreeNode;
 import org.w3c.dom.css.CSSImportRule;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.ollir.OllirUtils;
 import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.cache.IncrementalCompilation;
 import pt.up.fe.comp2024.optimization.OllirGeneratorVisitor;
-import pt.up.fe.specs.util.classmap.FunctionClassMap;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPipelines;
+import pt.up.fe.comp2024.optimization.pipeline.PassManager;
+import pt.up.fe.comp2024.optimization.pipeline.PassStatistics;
 import pt.up.fe.specs.util.exceptions.NotImplementedException;
-import pt.up.fe.specs.util.utilities.StringLines;
 
 import java.awt.*;
-import java.util.ArrayList;
+import java.util.*;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
 
 /**
  * Generates Jasmin code from an OllirResult.
  * <p>
- * One JasminGenerator instance per OllirResult.
+ * One JasminGenerator instance per OllirResult. The code of the instructions of a method is written into a single
+ * buffer, by generators chosen with a switch on the type of each instruction.
  */
 public class JasminGenerator {
 
@@ -37,38 +38,50 @@ public class JasminGenerator {
 
     Method currentMethod;
 
+    BlockLayout layout;
+
     int maxStack = 0;
     int currentStack = 0;
     int locals = 0;
 
     int branchCounter = 0;
 
-    private final FunctionClassMap<TreeNode, String> generators;
+    // a switch table may have up to this many entries per test of its chain
+    private static final int SWITCH_TABLE_FACTOR = 4;
+
+    // the body of the method being generated, reused for every method
+    private final StringBuilder body;
+
+    private final IncrementalCompilation incremental;
+
+    private final Descriptors descriptors;
+
+    // the backend passes, which decide how each method is lowered
+    private final PassManager<MethodLowering> passes;
+    private final PassStatistics statistics;
+
+    private ConstantArrays constantArrays;
+
+    private MethodLowering lowering;
+
+    private OperandTrees operandTrees;
+
+    private LocalSlots localSlots;
 
     public JasminGenerator(OllirResult ollirResult) {
         this.ollirResult = ollirResult;
+        this.incremental = IncrementalCompilation.fromConfig(ollirResult.getConfig()).orElse(null);
+        this.descriptors = new Descriptors(ollirResult.getOllirClass());
+
+        var config = ollirResult.getConfig() != null ? ollirResult.getConfig() : Map.<String, String>of();
+        this.passes = OptimizationPipelines.backend(config);
+        this.statistics = new PassStatistics();
 
         reports = new ArrayList<>();
         code = null;
         currentMethod = null;
 
-        this.generators = new FunctionClassMap<>();
-        generators.put(ClassUnit.class, this::generateClassUnit);
-        generators.put(Field.class, this::generateField);
-        generators.put(Method.class, this::generateMethod);
-        generators.put(AssignInstruction.class, this::generateAssign);
-        generators.put(SingleOpInstruction.class, this::generateSingleOp);
-        generators.put(LiteralElement.class, this::generateLiteral);
-        generators.put(Operand.class, this::generateOperand);
-        generators.put(BinaryOpInstruction.class, this::generateBinaryOp);
-        generators.put(UnaryOpInstruction.class, this::generateUnaryOp);
-        generators.put(CallInstruction.class, this::generateCallInstruction);
-        generators.put(PutFieldInstruction.class, this::generatePutFieldInstruction);
-        generators.put(GetFieldInstruction.class, this::generateGetFieldInstruction);
-        generators.put(CondBranchInstruction.class, this::generateCondBranch);
-        generators.put(GotoInstruction.class, this::generateGoToInstruction);
-        generators.put(ReturnInstruction.class, this::generateReturn);
-
+        this.body = new StringBuilder();
     }
 
     public List<Report> getReports() {
@@ -79,7 +92,7 @@ public class JasminGenerator {
 
         // This way, build is idempotent
         if (code == null) {
-            code = generators.apply(ollirResult.getOllirClass());
+            code = generateClassUnit(ollirResult.getOllirClass());
         }
 
         return code;
@@ -104,40 +117,63 @@ public class JasminGenerator {
 
         // generate code for fields
         for (var field : ollirResult.getOllirClass().getFields()) {
-            code.append(generators.apply(field));
+            generateField(field, code);
+        }
+
+        // arrays of literals are built once, in fields of their own
+        constantArrays = new ConstantArrays(classUnit, descriptors);
+        var arrays = passes.isEnabled("constant-arrays")
+                ? constantArrays.findAll()
+                : List.<ConstantArrays.ConstantArray>of();
+        for (var array : arrays) {
+            code.append(".field private static final ").append(array.field()).append(" [I").append(NL);
         }
 
         // generate code for all other methods
         for (var method : ollirResult.getOllirClass().getMethods()) {
-            code.append(generators.apply(method));
+            generateMethod(method, code);
         }
 
+        generateStaticInitializer(className, arrays, code);
+
+        var config = ollirResult.getConfig();
+        if (config != null && CompilerConfig.getPassStatistics(config) && !statistics.isEmpty()) {
+            System.out.print(statistics.getReport("Backend passes:"));
+        }
 
-        System.out.println(code);
         return code.toString();
     }
 
-    private String generateField(Field field) {
-        var code = new StringBuilder();
-
+    private void generateField(Field field, StringBuilder code) {
         var modifier = getFieldModifier(field);
 
         var fieldName = field.getFieldName();
         var fieldType = this.getType(field.getFieldType());
 
         code.append(".field ").append(modifier).append(fieldName).append(" ").append(fieldType).append(NL);
-
-        return code.toString();
     }
 
-    private String generateMethod(Method method) {
+    private void generateMethod(Method method, StringBuilder code) {
+
+        // reuse the code of a method whose OLLIR did not change since a previous compilation
+        String jasminKey = null;
+        if (incremental != null) {
+            jasminKey = incremental.getJasminKey(method, constantArrays.getDependencies());
+            var cached = incremental.getJasmin(jasminKey);
+            if (cached.isPresent()) {
+                code.append(cached.get());
+                return;
+            }
+        }
 
         // set method
         currentMethod = method;
         locals = 0;
         maxStack = 0;
+        currentStack = 0;
+        body.setLength(0);
 
-        var code = new StringBuilder();
+        var methodStart = code.length();
 
         // calculate modifier
         var modifier = method.getMethodAccessModifier() != AccessModifier.DEFAULT ?
@@ -163,24 +199,86 @@ public class JasminGenerator {
 
         code.append(")").append(returnType).append(NL);
 
-        var methodBody = new StringBuilder();
+        // if/else-if chains dispatched by a switch, increments as an iinc, arrays of literals taken from their fields,
+        // self-calls in tail position as jumps back to the start, and temporaries left on the stack, as the passes
+        // enabled decide
+        lowering = new MethodLowering(method, constantArrays, () -> branchCounter++);
+        passes.run(lowering, statistics);
+
+        var switchChains = lowering.getSwitchChains();
+        var extraLabels = lowering.getExtraLabels();
+        var increments = lowering.getIncrements();
+        var arrays = lowering.getArrays();
+        var tailCalls = lowering.getTailCalls();
+        var omitted = lowering.getOmitted();
+        operandTrees = lowering.getOperandTrees();
+        layout = lowering.getLayout();
+
+        // temporaries live at different times share their slots
+        var onStack = new HashSet<String>();
+        operandTrees.getAssignments().forEach(assign -> onStack.add(((Operand) assign.getDest()).getName()));
+        localSlots = new LocalSlots(method, onStack, extraLabels.keySet());
+
+        // the instruction emitted after each one
+        var successors = new IdentityHashMap<Instruction, Instruction>();
+        Instruction previous = null;
+        for (var inst : method.getInstructions()) {
+            if (omitted.contains(inst)) {
+                continue;
+            }
+            if (previous != null) {
+                successors.put(previous, inst);
+            }
+            previous = inst;
+        }
+
+        var entryLabel = "entry_" + branchCounter++;
+
+        if (!tailCalls.isEmpty()) {
+            emitLabel(entryLabel);
+        }
+
         for (var inst : method.getInstructions()) {
 
             for (var label : method.getLabels().entrySet()) {
                 if (label.getValue().equals(inst)) {
-                    methodBody.append(label.getKey()).append(":").append(NL);
+                    emitLabel(label.getKey());
                 }
             }
 
-            var instCode = StringLines.getLines(generators.apply(inst)).stream()
-                    .collect(Collectors.joining(NL + TAB, TAB, NL));
+            if (extraLabels.containsKey(inst)) {
+                emitLabel(extraLabels.get(inst));
+            }
+
+            // only reachable through the switch of its chain, which jumps past it, part of an increment, a store
+            // into a constant array, or a temporary computed where it is read
+            if (omitted.contains(inst)) {
+                continue;
+            }
+
+            // the instruction after the goto is where it leads anyway
+            if (inst instanceof GotoInstruction gotoInst && layout.isFallthrough(gotoInst, successors.get(inst))) {
+                continue;
+            }
 
-            methodBody.append(instCode);
+            var chain = switchChains.get(inst);
+            if (chain != null) {
+                generateSwitch(chain, method, extraLabels);
+            } else if (increments.containsKey(inst)) {
+                var increment = increments.get(inst);
+                generateIncrement(increment.variable(), increment.amount());
+            } else if (inst instanceof AssignInstruction assign && tailCalls.contains(assign)) {
+                generateTailCall((CallInstruction) assign.getRhs(), method, entryLabel);
+            } else if (inst instanceof AssignInstruction assign && arrays.containsKey(assign)) {
+                generateConstantArray(assign, arrays.get(assign));
+            } else {
+                generate(inst);
+            }
 
 
 
             if ((inst.getInstType() == InstructionType.CALL) &&  ((CallInstruction) inst).getReturnType().getTypeOfElement() != ElementType.VOID) {
-                methodBody.append("pop").append(NL);
+                emit("pop");
                 this.updateStack(-1);
             }
 
@@ -194,142 +292,314 @@ public class JasminGenerator {
             (method.getReturnType().getTypeOfElement() == ElementType.VOID))
         )
         {
-            methodBody.append(TAB).append("return").append(NL);
+            emit("return");
         }
 
         // Add limits
         code.append(TAB).append(".limit stack ").append(maxStack).append(NL);
         code.append(TAB).append(".limit locals ").append(locals+1).append(NL);
-        code.append(methodBody);
+        code.append(body);
         code.append(".end method\n");
 
         // unset method
         currentMethod = null;
+        layout = null;
+        lowering = null;
+        operandTrees = null;
+        localSlots = null;
 
-        return code.toString();
+        if (incremental != null) {
+            incremental.putJasmin(jasminKey, code.substring(methodStart));
+        }
     }
 
-    private String generateAssign(AssignInstruction assign) {
-        var code = new StringBuilder();
+    /**
+     * Generates an instruction with the generator of its type.
+     */
+    private void generate(Instruction inst) {
+        switch (inst.getInstType()) {
+            case ASSIGN -> generateAssign((AssignInstruction) inst);
+            case CALL -> generateCallInstruction((CallInstruction) inst);
+            case GOTO -> generateGoToInstruction((GotoInstruction) inst);
+            case BRANCH -> generateCondBranch((CondBranchInstruction) inst);
+            case RETURN -> generateReturn((ReturnInstruction) inst);
+            case PUTFIELD -> generatePutFieldInstruction((PutFieldInstruction) inst);
+            case GETFIELD -> generateGetFieldInstruction((GetFieldInstruction) inst);
+            case UNARYOPER -> generateUnaryOp((UnaryOpInstruction) inst);
+            case BINARYOPER -> generateBinaryOp((BinaryOpInstruction) inst);
+            case NOPER -> generateSingleOp((SingleOpInstruction) inst);
+        }
+    }
 
-        // store value in the stack in destination
-        var lhs = assign.getDest();
+    /**
+     * Pushes the value of an element, a literal or the value of an operand.
+     */
+    private void generate(Element element) {
+        if (element.isLiteral()) {
+            generateLiteral((LiteralElement) element);
+        } else {
+            generateOperand((Operand) element);
+        }
+    }
 
-        // Array assignment
-        if (lhs instanceof ArrayOperand) {
-            return generateArrayAssign(assign);
+    private void emit(String instruction) {
+        body.append(TAB).append(instruction).append(NL);
+    }
+
+    private void emitLabel(String label) {
+        body.append(label).append(":").append(NL);
+    }
+
+    /**
+     * Reuses the frame of the method for a call to itself: the arguments are stored in the parameters, and the code
+     * jumps back to the start of the method.
+     *
+     * @param call
+     * @param method
+     * @param entryLabel the label at the start of the method
+     */
+    private void generateTailCall(CallInstruction call, Method method, String entryLabel) {
+        var args = call.getArguments();
+        var params = method.getParams();
+
+        // all arguments are loaded before any parameter changes, as they may read the parameters
+        var changed = new ArrayList<Integer>();
+        for (int i = 0; i < args.size(); i++) {
+            var arg = args.get(i);
+            var param = (Operand) params.get(i);
+
+            // a parameter passed on to itself keeps its value
+            if (arg instanceof Operand operand && !(operand instanceof ArrayOperand)
+                    && operand.getName().equals(param.getName())) {
+                continue;
+            }
+
+            generate(arg);
+            changed.add(i);
         }
 
-        // Use of iinc
-        if (assign.getRhs() instanceof BinaryOpInstruction) {
-            var rhs = (BinaryOpInstruction) assign.getRhs();
-            var operation = rhs.getOperation().getOpType();
+        for (int i = changed.size() - 1; i >= 0; i--) {
+            var param = (Operand) params.get(changed.get(i));
+            var reg = localSlots.getSlot(param.getName());
+            var store = switch (param.getType().getTypeOfElement()) {
+                case INT32, BOOLEAN -> "istore";
+                default -> "astore";
+            };
 
-            // Can only use iinc if the operation is add or sub
-            if (operation == OperationType.ADD || operation == OperationType.SUB) {
+            emit(store + (reg < 4 ? "_" + reg : " " + reg));
+            updateStack(-1);
+        }
 
-                var reg = 0;
-                var literal = "";
+        emit("goto " + entryLabel);
+    }
 
-                // we need to check the two different cases: lhs = lhs + literal and lhs = literal + lhs
-                if (rhs.getLeftOperand() instanceof Operand) {
-                    var leftOperand = (Operand) rhs.getLeftOperand();
+    /**
+     * Dispatches a switch chain with a bounds check and a tableswitch, or with a binary search of the bounds when they
+     * are too sparse for a table.
+     *
+     * @param chain
+     * @param method
+     * @param extraLabels
+     */
+    private void generateSwitch(SwitchChain chain, Method method, Map<Instruction, String> extraLabels) {
+        var bounds = chain.getBounds();
+        var labels = chain.getTargets().stream()
+                .map(target -> extraLabels.getOrDefault(target, method.getLabels(target).stream().findFirst().orElse(null)))
+                .toList();
+
+        var first = bounds.get(0);
+        var last = bounds.get(bounds.size() - 1);
+
+        if ((long) last - first > (long) SWITCH_TABLE_FACTOR * bounds.size()) {
+            generateSwitchSearch(chain, labels, 0, labels.size() - 1);
+            return;
+        }
+
+        // values below the table
+        generate(chain.getVariable());
+        if (first == 0) {
+            emit("iflt " + labels.get(0));
+            updateStack(-1);
+        } else {
+            emit(loadInt(first));
+            updateStack(1);
+            emit("if_icmplt " + labels.get(0));
+            updateStack(-2);
+        }
 
-                    // Check if name is the same as the operand on assign: lhs = lhs + literal
-                    if (leftOperand.getName().equals(((Operand) lhs).getName())) {
-                        reg = currentMethod.getVarTable().get(leftOperand.getName()).getVirtualReg();
-                        updateLocals(reg);
+        // one entry per value from the first bound up to the last one, values from the last bound on are the default
+        generate(chain.getVariable());
+        emit("tableswitch " + first + " " + (last - 1));
+        var range = 1;
+        for (long value = first; value < last; value++) {
+            while (value >= bounds.get(range)) {
+                range++;
+            }
+            emit(TAB + labels.get(range));
+        }
+        emit(TAB + "default : " + labels.get(labels.size() - 1));
+        updateStack(-1);
+    }
 
-                        // We need to check if the right operand is a literal, otherwise we can't use iinc
-                        if (rhs.getRightOperand() instanceof LiteralElement) {
-                            literal = ((LiteralElement) rhs.getRightOperand()).getLiteral();
+    /**
+     * Binary search for the range of the variable among the targets from lo to hi, split by the bounds between them.
+     */
+    private void generateSwitchSearch(SwitchChain chain, List<String> labels, int lo, int hi) {
+        if (lo == hi) {
+            emit("goto " + labels.get(lo));
+            return;
+        }
 
-                        }
-                    }
-                }
+        // the bound between the targets mid - 1 and mid
+        var mid = (lo + hi + 1) / 2;
+        var upper = "case_" + branchCounter++;
 
-                if (rhs.getRightOperand() instanceof Operand) {
-                    var rightOperand = (Operand) rhs.getRightOperand();
+        generate(chain.getVariable());
+        emit(loadInt(chain.getBounds().get(mid - 1)));
+        updateStack(1);
+        emit("if_icmpge " + upper);
+        updateStack(-2);
 
-                    // Check if name is the same as the operand on assign: lhs = literal + lhs
-                    if (rightOperand.getName().equals(((Operand) lhs).getName())) {
-                        reg = currentMethod.getVarTable().get(rightOperand.getName()).getVirtualReg();
-                        updateLocals(reg);
+        generateSwitchSearch(chain, labels, lo, mid - 1);
+        emitLabel(upper);
+        generateSwitchSearch(chain, labels, mid, hi);
+    }
 
-                        // We need to check if the left operand is a literal, otherwise we can't use iinc
-                        if (rhs.getLeftOperand() instanceof LiteralElement) {
-                            literal = ((LiteralElement) rhs.getLeftOperand()).getLiteral();
-                        }
-                    }
-                }
+    private void generateAssign(AssignInstruction assign) {
+        // store value in the stack in destination
+        var lhs = assign.getDest();
 
-                // If we have a register and a literal, we can use iinc
-                if (reg != 0 && !literal.isEmpty()) {
-                    var isNeg = operation == OperationType.SUB ? "-" : "";
-                    code.append("iinc ").append(reg).append(" ").append(isNeg).append(literal).append(NL);
-                    return code.toString();
-                }
-            }
+        // Array assignment
+        if (lhs instanceof ArrayOperand) {
+            generateArrayAssign(assign);
+            return;
         }
 
-        // If not array assignment, nor iinc, we need to generate the code for the right side
-        code.append(generators.apply(assign.getRhs()));
+        // If not array assignment, we need to generate the code for the right side
+        generate(assign.getRhs());
 
         if (!(lhs instanceof Operand)) {
             throw new NotImplementedException(lhs.getClass());
         }
 
-        var operand = (Operand) lhs;
+        generateStore((Operand) lhs, assign.getTypeOfAssign());
+    }
 
+    /**
+     * Stores the value on the top of the stack in the variable.
+     *
+     * @param operand
+     * @param type    the type of the value on the top of the stack
+     */
+    private void generateStore(Operand operand, Type type) {
         // get register
-        var reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
+        var reg = localSlots.getSlot(operand.getName());
         updateLocals(reg);
 
-        var str = reg < 4 ? "_" + reg : " " + reg + NL;
-        var type = assign.getTypeOfAssign().getTypeOfElement();
-        switch (type) {
-            case INT32, BOOLEAN -> code.append("istore").append(str);
-            case STRING, ARRAYREF, OBJECTREF -> code.append("astore").append(str);
+        var str = reg < 4 ? "_" + reg : " " + reg;
+        switch (type.getTypeOfElement()) {
+            case INT32, BOOLEAN -> emit("istore" + str);
+            case STRING, ARRAYREF, OBJECTREF -> emit("astore" + str);
             default -> throw new NotImplementedException(operand.getType().getTypeOfElement());
         };
 
         updateStack(-1); // pop value
-        return code.toString();
     }
 
-    private String generateArrayAssign(AssignInstruction assign) {
+    /**
+     * Takes an array of literals from its field, or a copy of it when the array may be changed.
+     *
+     * @param assign the assignment of the new array
+     * @param array
+     */
+    private void generateConstantArray(AssignInstruction assign, ConstantArrays.ConstantArray array) {
+        var className = importCorrection(currentMethod.getOllirClass().getClassName());
 
-        // The correct order for iastore is arrayref, index and value, so we need to load the arrayref first
-        var code = new StringBuilder();
+        emit("getstatic " + className + "/" + array.field() + " [I");
+        updateStack(1); // push array reference
+
+        if (!array.shared()) {
+            emit("invokevirtual [I/clone()Ljava/lang/Object;");
+            emit("checkcast [I");
+        }
+
+        generateStore((Operand) assign.getDest(), assign.getTypeOfAssign());
+    }
+
+    /**
+     * Generates the static initializer that fills the fields of the arrays, or nothing if there are none.
+     *
+     * @param className
+     * @param arrays    the arrays of literals of the class
+     * @param code
+     */
+    private void generateStaticInitializer(String className, List<ConstantArrays.ConstantArray> arrays,
+                                           StringBuilder code) {
+        if (arrays.isEmpty()) {
+            return;
+        }
+
+        code.append("\n.method static <clinit>()V").append(NL);
+
+        // the array, its copy, an index and a value
+        code.append(TAB).append(".limit stack 4").append(NL);
+        code.append(TAB).append(".limit locals 0").append(NL);
 
+        for (var array : arrays) {
+            var values = array.values();
+            code.append(TAB).append(loadInt(values.size())).append(NL);
+            code.append(TAB).append("newarray int").append(NL);
+
+            for (int i = 0; i < values.size(); i++) {
+                code.append(TAB).append("dup").append(NL);
+                code.append(TAB).append(loadInt(i)).append(NL);
+                code.append(TAB).append(loadInt(values.get(i))).append(NL);
+                code.append(TAB).append("iastore").append(NL);
+            }
+
+            code.append(TAB).append("putstatic ").append(className).append("/").append(array.field()).append(" [I")
+                    .append(NL);
+        }
+
+        code.append(TAB).append("return").append(NL);
+        code.append(".end method\n");
+    }
+
+    private void generateIncrement(Operand variable, int increment) {
+        var reg = localSlots.getSlot(variable.getName());
+        updateLocals(reg);
+
+        emit("iinc " + reg + " " + increment);
+    }
+
+    private void generateArrayAssign(AssignInstruction assign) {
+
+        // The correct order for iastore is arrayref, index and value, so we need to load the arrayref first
         var operand = (Operand) assign.getDest();
 
         // arrayRef
-        var reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
+        var reg = localSlots.getSlot(operand.getName());
         updateLocals(reg);
-        code.append("aload").append(reg < 4 ? "_" + reg : " " + reg).append(NL);
+        emit("aload" + (reg < 4 ? "_" + reg : " " + reg));
         updateStack(1); // push array reference
 
         //get index
         var array = (ArrayOperand) assign.getDest();
-        code.append(generators.apply( array.getIndexOperands().get(0) ));
+        generate(array.getIndexOperands().get(0));
 
         //get value
-        code.append(generators.apply(assign.getRhs()));
+        generate(assign.getRhs());
 
-        code.append("iastore").append(NL);
+        emit("iastore");
         updateStack(-3); // pop array reference, index and value
 
-
-        return code.toString();
-
     }
 
-    private String generateSingleOp(SingleOpInstruction singleOp) {
-        return generators.apply(singleOp.getSingleOperand());
+    private void generateSingleOp(SingleOpInstruction singleOp) {
+        generate(singleOp.getSingleOperand());
     }
 
-    private String generateLiteral(LiteralElement literal) {
+    private void generateLiteral(LiteralElement literal) {
 
         ElementType type = literal.getType().getTypeOfElement();
 
@@ -338,180 +608,273 @@ public class JasminGenerator {
 
         // ldc also works for strings, floats, etc...
         if ((type != ElementType.INT32) && (type != ElementType.BOOLEAN)) {
-            return "ldc " + literal.getLiteral() + NL;
+            emit("ldc " + literal.getLiteral());
+            return;
         }
 
         var value = Integer.parseInt(literal.getLiteral());
+        emit(loadInt(value));
+
+    }
+
+    /**
+     * @param value
+     * @return the shortest instruction that pushes the given int, the stack is not updated
+     */
+    private String loadInt(int value) {
         if ( (value <= 5) && (value >= -1)) {
             if (value == -1) {
-                return "iconst_m1" + NL;
+                return "iconst_m1";
             }
-            return "iconst_" + value + NL;
+            return "iconst_" + value;
         }
         if ( (value <= 127) && (value >= -128)) {
-            return "bipush " + value + NL;
+            return "bipush " + value;
         }
         if ( (value <= 32767) && (value >= -32768)) {
-            return "sipush " + value + NL;
+            return "sipush " + value;
         }
         else {
-            return "ldc " + value + NL;
+            return "ldc " + value;
         }
-
     }
 
-    private String generateOperand(Operand operand) {
+    private void generateOperand(Operand operand) {
 
         if (operand instanceof ArrayOperand) {
-            return generateArrayOperand(operand);
+            generateArrayOperand(operand);
+            return;
         }
 
-        var code = new StringBuilder();
+        // left on the stack by the operation itself
+        var tree = operandTrees.getTree(operand);
+        if (tree != null) {
+            generate(tree);
+            return;
+        }
 
         // get register
-        var reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
+        var reg = localSlots.getSlot(operand.getName());
         updateLocals(reg);
         updateStack(1); // push value to stack
 
         String str = reg < 4 ? "_" + reg : " " + reg;
         switch(operand.getType().getTypeOfElement()) {
             case THIS:
-                code.append("aload_0").append(NL);
+                emit("aload_0");
                 break;
             case OBJECTREF, STRING,ARRAYREF:
-                code.append("aload").append(str).append(NL);
+                emit("aload" + str);
                 break;
             case INT32, BOOLEAN:
-                code.append("iload").append(str).append(NL);
+                emit("iload" + str);
                 break;
 
         }
 
-        return code.toString();
-
     }
 
-    private String generateArrayOperand(Operand operand) {
-
-            var code = new StringBuilder();
+    private void generateArrayOperand(Operand operand) {
 
             // get register
-            var reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
+            var reg = localSlots.getSlot(operand.getName());
             updateLocals(reg);
             updateStack(1); // push arrayRef to stack
             String str = reg < 4 ? "_" + reg : " " + reg;
-            code.append("aload").append(str).append(NL);
+            emit("aload" + str);
             updateStack(1);
 
             // get Index
             var array = (ArrayOperand) operand;
-            code.append(generators.apply(array.getIndexOperands().get(0)));
+            generate(array.getIndexOperands().get(0));
 
-            code.append("iaload").append(NL);
+            emit("iaload");
             updateStack(-2); // pop array reference and index
             updateStack(1); // push value
-
-            return code.toString();
     }
 
-    private String generateBinaryOp(BinaryOpInstruction binaryOp) {
-        var code = new StringBuilder();
+    private void generateBinaryOp(BinaryOpInstruction binaryOp) {
+        if (lowering.getReduced().contains(binaryOp) && generateStrengthReduced(binaryOp)) {
+            return;
+        }
 
-        // load values on the left and on the right
-        code.append(generators.apply(binaryOp.getLeftOperand()));
-        code.append(generators.apply(binaryOp.getRightOperand()));
+        // comparisons push 1 or 0 depending on whether their branch is taken
+        if (isComparison(binaryOp.getOperation().getOpType())) {
+            // numbered before the operands, which may have comparisons of their own
+            var branch = branchCounter++;
+            generateCompareBranch(binaryOp, "branch_" + branch);
+            this.boolBranching(branch);
+            return;
+        }
+
+        // load values on the left and on the right, or the other way round when the right one needs more of the
+        // stack, which then holds the left one for less time
+        var rightFirst = operandTrees.isRightFirst(binaryOp);
+        if (rightFirst) {
+            generate(binaryOp.getRightOperand());
+            generate(binaryOp.getLeftOperand());
+        } else {
+            generate(binaryOp.getLeftOperand());
+            generate(binaryOp.getRightOperand());
+        }
 
         // apply operation
-        var op = new StringBuilder();
         switch (binaryOp.getOperation().getOpType()) {
             case ADD:
-                op.append("iadd ");
+                emit("iadd");
                 updateStack(-2); // pop two values
                 updateStack(1); // push result
                 break;
             case MUL:
-                op.append("imul ");
+                emit("imul");
                 updateStack(-2); // pop two values
                 updateStack(1); // push result
                 break;
             case SUB:
-                op.append("isub ");
+                emit("isub");
+                // b - a is the negation of a - b
+                if (rightFirst) {
+                    emit("ineg");
+                }
                 updateStack(-2); // pop two values
                 updateStack(1); // push result
                 break;
             case DIV:
-                op.append("idiv ");
+                emit("idiv");
                 updateStack(-2); // pop two values
                 updateStack(1); // push result
                 break;
             case ANDB:
-                op.append("iand ");
+                emit("iand");
                 updateStack(-2); // pop two values
                 updateStack(1); // push result
                 break;
-            case LTH:
-                op.append("isub ").append(NL);
-                updateStack(-2); // pop two values
-                updateStack(1); // push result
+            default:
+                break;
+        };
+    }
 
-                op.append("iflt ");
-                updateStack(-1); // pop boolean value
+    /**
+     * Strength reduction of multiplications and divisions by positive constants:
+     * <ul>
+     *     <li>x * 2^k becomes x << k;</li>
+     *     <li>x * (2^k + 1) becomes (x << k) + x, and x * (2^k - 1) becomes (x << k) - x;</li>
+     *     <li>x / 2^k becomes (x + bias) >> k, where the bias is 2^k - 1 for a negative x and 0 otherwise, so that the
+     *     shift rounds towards zero like idiv.</li>
+     * </ul>
+     * Other constants keep imul, as longer shift and add sequences do not pay off once the JIT compiles the code.
+     *
+     * @param binaryOp
+     * @return false, with nothing generated, if the operation cannot be reduced
+     */
+    private boolean generateStrengthReduced(BinaryOpInstruction binaryOp) {
+        var opType = binaryOp.getOperation().getOpType();
+        if (opType != OperationType.MUL && opType != OperationType.DIV) {
+            return false;
+        }
 
-                op.append(this.boolBranching());
-                break;
-            case GTH:
-                op.append("isub ").append(NL);
-                updateStack(-2); // pop two values
-                updateStack(1); // push result
+        var operand = binaryOp.getLeftOperand();
+        var constant = getIntLiteral(binaryOp.getRightOperand());
+
+        // multiplication is commutative
+        if (constant == null && opType == OperationType.MUL) {
+            operand = binaryOp.getRightOperand();
+            constant = getIntLiteral(binaryOp.getLeftOperand());
+        }
 
-                op.append("ifgt ");
-                updateStack(-1); // pop boolean value
+        if (constant == null || constant < 2) {
+            return false;
+        }
 
-                op.append(this.boolBranching());
-                break;
-            case EQ:
-                op.append("isub ").append(NL);
+        if (opType == OperationType.MUL) {
+            if (isPowerOfTwo(constant)) {
+                generate(operand);
+                shiftLeft(Integer.numberOfTrailingZeros(constant));
+            } else if (isPowerOfTwo(constant - 1)) {
+                generate(operand);
+                emit("dup");
+                updateStack(1);
+                shiftLeft(Integer.numberOfTrailingZeros(constant - 1));
+                emit("iadd");
                 updateStack(-2); // pop two values
                 updateStack(1); // push result
-
-                op.append("ifeq ");
-                updateStack(-1); // pop boolean value
-
-                op.append(this.boolBranching());
-                break;
-            case NEQ:
-                op.append("isub ").append(NL);
+            } else if (isPowerOfTwo(constant + 1)) {
+                generate(operand);
+                emit("dup");
+                updateStack(1);
+                shiftLeft(Integer.numberOfTrailingZeros(constant + 1));
+                emit("swap");
+                emit("isub");
                 updateStack(-2); // pop two values
                 updateStack(1); // push result
+            } else {
+                return false;
+            }
 
-                op.append("ifne ");
-                updateStack(-1); // pop boolean value
+            return true;
+        }
 
-                op.append(this.boolBranching());
-                break;
+        if (!isPowerOfTwo(constant)) {
+            return false;
+        }
 
-            default:
-                break;
-        };
+        var shift = Integer.numberOfTrailingZeros(constant);
 
-        code.append(op).append(NL);
+        generate(operand);
+        emit("dup");
+        updateStack(1);
 
-        return code.toString();
+        // bias: all ones in the sign, then only the lowest bits of it
+        emit(loadInt(31));
+        updateStack(1);
+        emit("ishr");
+        updateStack(-1);
+        emit(loadInt(32 - shift));
+        updateStack(1);
+        emit("iushr");
+        updateStack(-1);
+
+        emit("iadd");
+        updateStack(-1);
+
+        emit(loadInt(shift));
+        updateStack(1);
+        emit("ishr");
+        updateStack(-1);
+
+        return true;
     }
 
-    private String generateUnaryOp(UnaryOpInstruction unaryOp) {
-        var code = new StringBuilder();
+    private void shiftLeft(int shift) {
+        emit(loadInt(shift));
+        updateStack(1);
+        emit("ishl");
+        updateStack(-2); // pop value and shift
+        updateStack(1); // push result
+    }
+
+    private static Integer getIntLiteral(Element element) {
+        if (!(element instanceof LiteralElement literal) || element.getType().getTypeOfElement() != ElementType.INT32) {
+            return null;
+        }
 
+        return Integer.parseInt(literal.getLiteral());
+    }
+
+    private static boolean isPowerOfTwo(int value) {
+        return value > 0 && Integer.bitCount(value) == 1;
+    }
+
+    private void generateUnaryOp(UnaryOpInstruction unaryOp) {
         // load value
-        code.append(generators.apply(unaryOp.getOperand()));
+        generate(unaryOp.getOperand());
 
         // apply operation
-        var op = new StringBuilder();
-        System.out.println("UNARY: " + unaryOp);
         switch (unaryOp.getOperation().getOpType()) {
             // XOR -> 1 if 1 operand is true, 0 if both are true or false
             case NOTB:
-                op.append("iconst_1 ").append(NL).append("ixor ");
+                emit("iconst_1");
+                emit("ixor");
                 break;
             default:
                 break;
@@ -520,115 +883,101 @@ public class JasminGenerator {
         updateStack(1); //iconst_1 pushes a value
         updateStack(-2); //xor pops two values
         updateStack(1); // push result
-
-        code.append(op).append(NL);
-
-        return code.toString();
     }
 
-    private String generateCallInstruction(CallInstruction callInst) {
-        var code = new StringBuilder();
-
+    private void generateCallInstruction(CallInstruction callInst) {
         var callType = callInst.getInvocationType();
 
         switch (callType) {
 
             case invokespecial:
-                code.append(invokeSpecial(callInst));
+                invokeSpecial(callInst);
                 break;
 
             case invokestatic:
-                code.append(invokeStatic(callInst));
+                invokeStatic(callInst);
                 break;
 
             case invokevirtual:
-                code.append(invokeVirtual(callInst));
+                invokeVirtual(callInst);
                 break;
 
             case arraylength:
 
-                code.append(generators.apply(callInst.getCaller()));
-                code.append("arraylength").append(NL);
+                generate(callInst.getCaller());
+                emit("arraylength");
                 updateStack(-1); // pop array reference
                 updateStack(1); // push length
                 break;
 
             case NEW:
-                code.append(generateNew(callInst));
+                generateNew(callInst);
                 break;
 
         }
-
-        return code.toString();
     }
 
 
 
-    private String invokeSpecial(CallInstruction callInst) {
-        var code = new StringBuilder();
-
+    private void invokeSpecial(CallInstruction callInst) {
         var args = callInst.getArguments();
 
-        code.append(generators.apply((Operand) callInst.getCaller()));
+        generate(callInst.getCaller());
 
         for (var arg : args) {
-            code.append(generators.apply(arg));
+            generate(arg);
         }
 
-        code.append("invokespecial ");
+        body.append(TAB).append("invokespecial ");
 
 
         if (callInst.getCaller().getType().getTypeOfElement() == ElementType.THIS) {
 
             if (currentMethod.getOllirClass().getSuperClass() == null) {
-                code.append("java/lang/Object");
+                body.append("java/lang/Object");
             }
             else {
                 var className = currentMethod.getOllirClass().getSuperClass();
                 var superClass = getImportedClass(className);
-                code.append(superClass);
+                body.append(superClass);
             }
 
         }
         else {
             var className = getImportedClass(((ClassType) callInst.getCaller().getType()).getName());
-            code.append(className);
+            body.append(className);
         }
 
         // Need to check if the method is a constructor
         var method = callInst.getMethodName();
         if (method instanceof LiteralElement) {
             var literal = ((LiteralElement) method).getLiteral().replace("\"", "");
-            code.append("/").append(literal);
+            body.append("/").append(literal);
 
-            code.append("(");
+            body.append("(");
             for (var arg: args) {
-                code.append(getType(arg.getType()));
+                body.append(getType(arg.getType()));
             }
-            code.append(")");
+            body.append(")");
 
         }
-        else { code.append("/<init>()"); }
+        else { body.append("/<init>()"); }
 
-        code.append(getType(callInst.getReturnType())).append(NL);
+        body.append(getType(callInst.getReturnType())).append(NL);
 
         updateStack(-args.size());
         updateStack(-1); // pop caller
         if (callInst.getReturnType().getTypeOfElement() != ElementType.VOID) {
             updateStack(1); // push return value
         }
-
-        return code.toString();
     }
 
-    private String invokeStatic(CallInstruction callInst) {
-        var code = new StringBuilder();
-
+    private void invokeStatic(CallInstruction callInst) {
         var args = callInst.getArguments();
 
         // load arguments
         for (var arg : args) {
-            code.append(generators.apply(arg));
+            generate(arg);
         }
 
         var className = getImportedClass(((Operand) callInst.getCaller()).getName());
@@ -636,33 +985,29 @@ public class JasminGenerator {
         var method = callInst.getMethodName();
         var literal = ((LiteralElement) method).getLiteral().replace("\"", "");
 
-        code.append("invokestatic ").append(className).append("/").append(literal).append("(");
+        body.append(TAB).append("invokestatic ").append(className).append("/").append(literal).append("(");
 
         for (var arg: args) {
-            code.append(getType(arg.getType()));
+            body.append(getType(arg.getType()));
         }
 
-        code.append(")").append(getType(callInst.getReturnType())).append(NL);
+        body.append(")").append(getType(callInst.getReturnType())).append(NL);
 
         updateStack(-args.size()); // pop arguments
         if (callInst.getReturnType().getTypeOfElement() != ElementType.VOID) {
             updateStack(1); // push return value
         }
-
-        return code.toString();
     }
 
-    private String invokeVirtual(CallInstruction callInst) {
-        var code = new StringBuilder();
-
+    private void invokeVirtual(CallInstruction callInst) {
         var args = callInst.getArguments();
 
         // load object
-        code.append(generators.apply((Operand) callInst.getCaller()));
+        generate(callInst.getCaller());
 
         // load arguments
         for (var arg : args) {
-            code.append(generators.apply(arg));
+            generate(arg);
         }
 
         var className = getImportedClass(((ClassType) callInst.getCaller().getType()).getName());
@@ -670,150 +1015,205 @@ public class JasminGenerator {
         var method = callInst.getMethodName();
         var literal = ((LiteralElement) method).getLiteral().replace("\"", "");
 
-        code.append("invokevirtual ").append(className).append("/").append(literal).append("(");
+        body.append(TAB).append("invokevirtual ").append(className).append("/").append(literal).append("(");
 
         for (var arg: callInst.getArguments()) {
-            code.append(getType(arg.getType()));
+            body.append(getType(arg.getType()));
         }
 
-        code.append(")").append(getType(callInst.getReturnType())).append(NL);
+        body.append(")").append(getType(callInst.getReturnType())).append(NL);
 
         updateStack(-1); // pop caller
         updateStack(-args.size()); // pop arguments
         if (callInst.getReturnType().getTypeOfElement() != ElementType.VOID) {
             updateStack(1); // push return value
         }
-
-        return code.toString();
     }
 
-    private String generateNew(CallInstruction callInst) {
-
-        var code = new StringBuilder();
+    private void generateNew(CallInstruction callInst) {
 
         var args = callInst.getArguments();
 
         for (var arg : args) {
-            code.append(generators.apply(arg));
+            generate(arg);
         }
 
         if (callInst.getCaller().getType().getTypeOfElement() == ElementType.ARRAYREF) {
 
-            code.append("newarray int").append(NL);
+            emit("newarray int");
             updateStack(-1); // pop size
             updateStack(1); // push array reference
 
         }
         else {
             var className = getImportedClass(((ClassType) callInst.getCaller().getType()).getName());
-            code.append("new ").append(className).append(NL);
+            emit("new " + className);
             updateStack(-args.size()); // pop arguments
             updateStack(1); // push object
         }
-
-        return code.toString();
     }
-    private String generatePutFieldInstruction(PutFieldInstruction putFieldInst) {
-        var code = new StringBuilder();
-
+    private void generatePutFieldInstruction(PutFieldInstruction putFieldInst) {
         var field = putFieldInst.getField().getName();
         var object = putFieldInst.getObject();
 
-        code.append(generators.apply(object));
+        generate(object);
 
-        code.append(generators.apply(putFieldInst.getValue()));
+        generate(putFieldInst.getValue());
 
         var className = getImportedClass(((ClassType) object.getType()).getName());
 
-        code.append("putfield ").append(className).append("/").append(field).append(" ");
+        body.append(TAB).append("putfield ").append(className).append("/").append(field).append(" ");
         updateStack(-2); // pop object reference and value
 
-        code.append(getType(putFieldInst.getValue().getType())).append(NL);
-
-        return code.toString();
+        body.append(getType(putFieldInst.getValue().getType())).append(NL);
     }
 
-    private String generateGetFieldInstruction(GetFieldInstruction getFieldInst) {
-        var code = new StringBuilder();
-
+    private void generateGetFieldInstruction(GetFieldInstruction getFieldInst) {
         var field = getFieldInst.getField().getName();
         var object = getFieldInst.getObject();
 
-        code.append(generators.apply(object));
+        generate(object);
 
         var className = getImportedClass(((ClassType) object.getType()).getName());
 
-        code.append("getfield ").append(className).append("/").append(field).append(" ");
+        body.append(TAB).append("getfield ").append(className).append("/").append(field).append(" ");
         updateStack(-1); // pop object reference
         updateStack(1); // push value
 
         if (getFieldInst.getField().getType().getTypeOfElement() == ElementType.ARRAYREF) {
-            code.append("[I").append(NL);
-            return code.toString();
+            body.append("[I").append(NL);
+            return;
         }
-        code.append(getType(getFieldInst.getField().getType())).append(NL);
-
-        return code.toString();
+        body.append(getType(getFieldInst.getField().getType())).append(NL);
     }
 
-    private String generateCondBranch(CondBranchInstruction condBranch){
+    private void generateCondBranch(CondBranchInstruction condBranch){
 
-        var code = new StringBuilder();
+        var condition = condBranch.getCondition();
+
+        // jump on the comparison itself instead of on its boolean value
+        if (condition instanceof BinaryOpInstruction binaryOp && isComparison(binaryOp.getOperation().getOpType())) {
+            generateCompareBranch(binaryOp, layout.getTarget(condBranch.getLabel()));
+            return;
+        }
+
+        if (condition instanceof UnaryOpInstruction unaryOp && unaryOp.getOperation().getOpType() == OperationType.NOTB) {
+            generate(unaryOp.getOperand());
+            emit("ifeq " + layout.getTarget(condBranch.getLabel()));
+            updateStack(-1); // pops boolean value
 
-        code.append(generators.apply(condBranch.getCondition()));
+            return;
+        }
+
+        generate(condition);
 
         //Check if the condition is true or false
-        code.append("ifne ").append(condBranch.getLabel()).append(NL);
+        emit("ifne " + layout.getTarget(condBranch.getLabel()));
         updateStack(-1); // pops boolean value
 
-        return code.toString();
+    }
 
+    /**
+     * Loads the operands of a comparison and jumps to the label if it holds. Comparisons against zero use the single
+     * operand form of the jump (e.g. iflt), the others compare both operands (e.g. if_icmplt), so that no subtraction
+     * is needed, which could also overflow.
+     *
+     * @param compare
+     * @param label
+     */
+    private void generateCompareBranch(BinaryOpInstruction compare, String label) {
+        var opType = compare.getOperation().getOpType();
+        var left = compare.getLeftOperand();
+        var right = compare.getRightOperand();
+
+        if (Integer.valueOf(0).equals(getIntLiteral(right))) {
+            generate(left);
+            emit("if" + getConditionSuffix(opType) + " " + label);
+            updateStack(-1);
+        } else if (Integer.valueOf(0).equals(getIntLiteral(left))) {
+            generate(right);
+            emit("if" + getConditionSuffix(swapOperands(opType)) + " " + label);
+            updateStack(-1);
+        } else if (operandTrees.isRightFirst(compare)) {
+            generate(right);
+            generate(left);
+            emit("if_icmp" + getConditionSuffix(swapOperands(opType)) + " " + label);
+            updateStack(-2);
+        } else {
+            generate(left);
+            generate(right);
+            emit("if_icmp" + getConditionSuffix(opType) + " " + label);
+            updateStack(-2);
+        }
     }
 
-    private String generateGoToInstruction(GotoInstruction gotoInst) {
-        return "goto " + gotoInst.getLabel() + NL;
+    private static boolean isComparison(OperationType opType) {
+        return switch (opType) {
+            case LTH, GTH, LTE, GTE, EQ, NEQ -> true;
+            default -> false;
+        };
     }
 
-    private String generateReturn(ReturnInstruction returnInst) {
-        var code = new StringBuilder();
+    private static String getConditionSuffix(OperationType opType) {
+        return switch (opType) {
+            case LTH -> "lt";
+            case GTH -> "gt";
+            case LTE -> "le";
+            case GTE -> "ge";
+            case EQ -> "eq";
+            case NEQ -> "ne";
+            default -> throw new NotImplementedException(opType);
+        };
+    }
+
+    /**
+     * @return the comparison that holds for (b, a) when the given one holds for (a, b)
+     */
+    private static OperationType swapOperands(OperationType opType) {
+        return switch (opType) {
+            case LTH -> OperationType.GTH;
+            case GTH -> OperationType.LTH;
+            case LTE -> OperationType.GTE;
+            case GTE -> OperationType.LTE;
+            default -> opType;
+        };
+    }
+
+    private void generateGoToInstruction(GotoInstruction gotoInst) {
+        var returnTarget = layout.getReturnTarget(gotoInst);
+        if (returnTarget.isPresent()) {
+            generateReturn(returnTarget.get());
+            return;
+        }
 
+        emit("goto " + layout.getTarget(gotoInst.getLabel()));
+    }
+
+    private void generateReturn(ReturnInstruction returnInst) {
         var type = returnInst.getReturnType().getTypeOfElement();
 
         if (returnInst.getOperand() != null){
-            code.append(generators.apply(returnInst.getOperand()));
+            generate(returnInst.getOperand());
         }
 
         switch (type) {
             case INT32, BOOLEAN:
-                code.append("ireturn").append(NL);
+                emit("ireturn");
                 updateStack(-1);
                 break;
             case ARRAYREF, OBJECTREF:
-                code.append("areturn").append(NL);
+                emit("areturn");
                 updateStack(-1);
                 break;
             case VOID:
-                code.append("return").append(NL);
+                emit("return");
                 break;
 
         }
-
-        return code.toString();
     }
 
     private String getImportedClass(String className) {
-
-        if (className.equals("this")) {
-            return ollirResult.getOllirClass().getClassName();
-        }
-
-        for (String imported : ollirResult.getOllirClass().getImports()) {
-            if (imported.endsWith(className)) {
-                return importCorrection(imported);
-            }
-        }
-
-        return className;
+        return descriptors.getClassName(className);
     }
 
     private String importCorrection(String className) {
@@ -834,20 +1234,7 @@ public class JasminGenerator {
     }
 
     private String getType(Type type) {
-
-        var code = "";
-
-        switch (type.getTypeOfElement()) {
-            case INT32 -> code = "I";
-            case BOOLEAN -> code = "Z";
-            case VOID -> code = "V";
-            case STRING -> code = "Ljava/lang/String;";
-            case ARRAYREF -> code = "[" + this.getType(((ArrayType) type).getElementType());
-            case OBJECTREF -> code = "L"+getImportedClass(((ClassType) type).getName())+";";
-            default -> code = null;
-        }
-
-        return code;
+        return descriptors.getDescriptor(type);
     }
 
     private void updateStack(int value) {
@@ -861,28 +1248,24 @@ public class JasminGenerator {
         locals = Math.max(value, locals);
     }
 
-    private String boolBranching() {
-        var code = new StringBuilder();
-
-        // goto if correct
-        code.append("branch_").append(branchCounter).append(NL);
-
-        // if not equal
-        code.append("iconst_0").append(NL);
+    /**
+     * Pushes 1 if the jump to the branch label with the given number that precedes this code was taken, and 0
+     * otherwise.
+     */
+    private void boolBranching(int branch) {
+        // if not taken
+        emit("iconst_0");
         updateStack(1);
-        code.append("goto ").append("end_branch_").append(branchCounter).append(NL).append(NL);
+        emit("goto end_branch_" + branch);
+        updateStack(-1); // the other path pushes its own value
 
-        // if equal
-        code.append("branch_").append(branchCounter).append(":").append(NL);
-        code.append("iconst_1").append(NL).append(NL);
+        // if taken
+        emitLabel("branch_" + branch);
+        emit("iconst_1");
         updateStack(1);
 
         // end branch
-        code.append("end_branch_").append(branchCounter).append(":");
-
-        branchCounter++;
-
-        return code.toString();
+        emitLabel("end_branch_" + branch);
     }
 
 
@@ -0,0 +1,221 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.specs.util.system.ProcessOutputAsString;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs compiled classes in this JVM, instead of launching a java process for them.
+ * <p>
+ * The classes are defined in a class loader of their own, which sees the Java platform and the runtime classes of
+ * Java-- (e.g. {@code io}) but none of the classes of the compiler, and is dropped after the run. The standard streams
+ * belong to the whole JVM, so only one program runs at a time, and anything other threads print meanwhile is captured
+ * as well. A program that calls {@code System.exit} ends this JVM too, and one that times out is left running in a
+ * daemon thread, as Java has no way to stop it.
+ */
+public class JasminRunner {
+
+    public static final long DEFAULT_TIMEOUT_MS = 5000;
+
+    private static final String RUNTIME_CLASSES_PATH = "libs-jmm/compiled";
+
+    /**
+     * The runtime classes of Java--, e.g. {@code io}, in the first directory above the classes or jar of the compiler
+     * that has them, so that the compiler runs from any directory, or else in the working directory.
+     */
+    public static final File RUNTIME_CLASSES = findRuntimeClasses();
+
+    private static final Object STREAMS = new Object();
+
+    private final List<AssembledClass> classes;
+    private final List<File> classpath;
+
+    /**
+     * @param classes   the classes to run, the first one having the main method
+     * @param classpath the directories and jars of the other classes they use
+     */
+    public JasminRunner(List<AssembledClass> classes, List<File> classpath) {
+        this.classes = classes;
+        this.classpath = classpath;
+    }
+
+    /**
+     * @param jasminCode
+     * @return a runner of the class of the code, along with the runtime classes of Java--
+     */
+    public static JasminRunner fromJasmin(String jasminCode) {
+        return new JasminRunner(List.of(AssembledClass.assemble(jasminCode)), List.of(RUNTIME_CLASSES));
+    }
+
+    private static File findRuntimeClasses() {
+        var codeSource = JasminRunner.class.getProtectionDomain().getCodeSource();
+
+        if (codeSource != null) {
+            try {
+                for (var dir = Path.of(codeSource.getLocation().toURI()); dir != null; dir = dir.getParent()) {
+                    var runtimeClasses = dir.resolve(RUNTIME_CLASSES_PATH);
+                    if (Files.isDirectory(runtimeClasses)) {
+                        return runtimeClasses.toFile();
+                    }
+                }
+            } catch (URISyntaxException | IllegalArgumentException | FileSystemNotFoundException e) {
+                // not a location in the file system
+            }
+        }
+
+        return new File(RUNTIME_CLASSES_PATH);
+    }
+
+    /**
+     * @param input     what the program reads from the standard input, or null if nothing
+     * @param timeoutMs
+     * @return the standard output and error of the program, and 0 if it returned from main, 1 if it threw, or -1 if
+     * it timed out, like the exit code of a java process
+     */
+    public ProcessOutputAsString run(String input, long timeoutMs) {
+        var bytes = input != null ? input.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        return run(new ByteArrayInputStream(bytes), timeoutMs);
+    }
+
+    /**
+     * @param input     the standard input of the program
+     * @param timeoutMs
+     * @return the standard output and error of the program, and 0 if it returned from main, 1 if it threw, or -1 if
+     * it timed out, like the exit code of a java process
+     */
+    public ProcessOutputAsString run(InputStream input, long timeoutMs) {
+        var stdout = new ByteArrayOutputStream();
+        var stderr = new ByteArrayOutputStream();
+        var out = new PrintStream(stdout, true, StandardCharsets.UTF_8);
+        var err = new PrintStream(stderr, true, StandardCharsets.UTF_8);
+
+        int returnValue;
+        synchronized (STREAMS) {
+            var systemIn = System.in;
+            var systemOut = System.out;
+            var systemErr = System.err;
+
+            var loader = new ClassesLoader(classes, getUrls());
+            try {
+                System.setIn(input);
+                System.setOut(out);
+                System.setErr(err);
+
+                returnValue = runMain(loader, err, timeoutMs);
+            } finally {
+                System.setIn(systemIn);
+                System.setOut(systemOut);
+                System.setErr(systemErr);
+            }
+
+            // still in use by a program that timed out
+            if (returnValue != -1) {
+                closeLoader(loader);
+            }
+        }
+
+        return new ProcessOutputAsString(returnValue, stdout.toString(StandardCharsets.UTF_8),
+                stderr.toString(StandardCharsets.UTF_8));
+    }
+
+    private int runMain(ClassLoader loader, PrintStream err, long timeoutMs) {
+        var failure = new Throwable[1];
+        var thread = new Thread(() -> {
+            try {
+                var mainClass = loader.loadClass(classes.get(0).getBinaryName());
+                var main = mainClass.getMethod("main", String[].class);
+
+                // the java command runs classes that are not public too
+                main.setAccessible(true);
+                main.invoke(null, (Object) new String[0]);
+            } catch (InvocationTargetException e) {
+                failure[0] = e.getCause();
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "main");
+
+        thread.setDaemon(true);
+        thread.setContextClassLoader(loader);
+        thread.start();
+
+        try {
+            thread.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (thread.isAlive()) {
+            err.println("Timed out after " + timeoutMs + " ms");
+            return -1;
+        }
+
+        if (failure[0] != null) {
+            err.print("Exception in thread \"main\" ");
+            failure[0].printStackTrace(err);
+            return 1;
+        }
+
+        return 0;
+    }
+
+    private URL[] getUrls() {
+        var urls = new URL[classpath.size()];
+        for (int i = 0; i < urls.length; i++) {
+            try {
+                urls[i] = classpath.get(i).toURI().toURL();
+            } catch (MalformedURLException e) {
+                throw new RuntimeException("Invalid classpath entry '" + classpath.get(i) + "'", e);
+            }
+        }
+
+        return urls;
+    }
+
+    private static void closeLoader(URLClassLoader loader) {
+        try {
+            loader.close();
+        } catch (IOException e) {
+            // only the jars of the classpath stay open
+        }
+    }
+
+    /**
+     * Defines the assembled classes, and finds the others in the classpath or the Java platform.
+     */
+    private static class ClassesLoader extends URLClassLoader {
+
+        private final Map<String, byte[]> classes;
+
+        ClassesLoader(List<AssembledClass> classes, URL[] urls) {
+            super(urls, ClassLoader.getPlatformClassLoader());
+
+            this.classes = new HashMap<>();
+            for (var assembled : classes) {
+                this.classes.put(assembled.getBinaryName(), assembled.bytes());
+            }
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            var bytes = classes.get(name);
+            if (bytes != null) {
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+
+            return super.findClass(name);
+        }
+    }
+}
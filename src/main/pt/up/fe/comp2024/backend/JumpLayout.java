@@ -0,0 +1,36 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.CondBranchInstruction;
+import org.specs.comp.ollir.GotoInstruction;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+
+/**
+ * Places the jumps of a method with a {@link BlockLayout}, instead of generating every goto where it is.
+ */
+public class JumpLayout implements OptimizationPass<MethodLowering> {
+
+    @Override
+    public String getName() {
+        return "layout";
+    }
+
+    @Override
+    public int run(MethodLowering target) {
+        var layout = new BlockLayout(target.getMethod());
+        target.setLayout(layout);
+
+        // the jumps redirected or replaced by a return, those that fall through are only known when generated
+        var changes = 0;
+        for (var inst : target.getMethod().getInstructions()) {
+            if (inst instanceof GotoInstruction gotoInst) {
+                var isChanged = layout.getReturnTarget(gotoInst).isPresent()
+                        || !layout.getTarget(gotoInst.getLabel()).equals(gotoInst.getLabel());
+                changes += isChanged ? 1 : 0;
+            } else if (inst instanceof CondBranchInstruction branch) {
+                changes += layout.getTarget(branch.getLabel()).equals(branch.getLabel()) ? 0 : 1;
+            }
+        }
+
+        return changes;
+    }
+}
@@ -0,0 +1,115 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.Operand;
+import org.specs.comp.ollir.VarScope;
+import pt.up.fe.comp2024.optimization.ssa.Variables;
+
+import java.util.*;
+
+/**
+ * The local slots the variables of a method are stored in.
+ * <p>
+ * OLLIR gives each variable a register of its own, and the OLLIR generator a new temporary to each operation, so a long
+ * expression would need more locals than a method may have. A variable assigned once and read once by a later
+ * instruction, with no jump target in between, is only live from its assignment to its read, so these temporaries share
+ * slots: each takes the lowest slot free at its assignment, and frees it at its read. The other variables keep a slot
+ * of their own, in the order of their registers, which puts {@code this} and the parameters first.
+ */
+public class LocalSlots {
+
+    private final Map<String, Integer> slots;
+
+    private int count;
+
+    /**
+     * @param method
+     * @param onStack     the temporaries left on the operand stack, which need no slot
+     * @param jumpTargets the instructions jumped to, other than through the labels of the method
+     */
+    public LocalSlots(Method method, Set<String> onStack, Set<Instruction> jumpTargets) {
+        this.slots = new HashMap<>();
+        this.count = 0;
+
+        var instructions = method.getInstructions();
+        var variables = new Variables(method);
+
+        // the index of the only assignment and of the only read of each variable, or -1 if there are more
+        var assignments = new HashMap<String, Integer>();
+        var reads = new HashMap<String, Integer>();
+        // the number of jump targets up to each instruction
+        var targets = new int[instructions.size() + 1];
+
+        for (int i = 0; i < instructions.size(); i++) {
+            var inst = instructions.get(i);
+            var index = i;
+
+            variables.getUses(inst, inst).forEach(use -> reads.merge(use.operand().getName(), index, (a, b) -> -1));
+
+            var defined = variables.getDefinedName(inst);
+            if (defined != null) {
+                assignments.merge(defined, index, (a, b) -> -1);
+            }
+
+            var isTarget = !method.getLabels(inst).isEmpty() || jumpTargets.contains(inst);
+            targets[i + 1] = targets[i] + (isTarget ? 1 : 0);
+        }
+
+        var params = new HashSet<String>();
+        for (var param : method.getParams()) {
+            if (param instanceof Operand operand) {
+                params.add(operand.getName());
+            }
+        }
+
+        var temporaries = new HashSet<String>();
+        assignments.forEach((name, assignment) -> {
+            var read = reads.getOrDefault(name, -1);
+            if (assignment >= 0 && read > assignment && targets[read + 1] == targets[assignment + 1]
+                    && !params.contains(name)) {
+                temporaries.add(name);
+            }
+        });
+
+        // the variables with a slot of their own, after this, which is not always in the table, fields having none
+        if (!method.isStaticMethod()) {
+            slots.put("this", count++);
+        }
+        method.getVarTable().entrySet().stream()
+                .filter(entry -> entry.getValue().getScope() != VarScope.FIELD)
+                .filter(entry -> !temporaries.contains(entry.getKey()) && !slots.containsKey(entry.getKey()))
+                .sorted(Comparator.comparingInt(entry -> entry.getValue().getVirtualReg()))
+                .forEach(entry -> slots.put(entry.getKey(), count++));
+
+        // the temporaries, live from their assignment to their read
+        var free = new PriorityQueue<Integer>();
+        for (int i = 0; i < instructions.size(); i++) {
+            var inst = instructions.get(i);
+            var index = i;
+
+            variables.getUses(inst, inst).stream()
+                    .map(use -> use.operand().getName())
+                    .filter(name -> temporaries.contains(name) && reads.get(name) == index && slots.containsKey(name))
+                    .forEach(name -> free.add(slots.get(name)));
+
+            var defined = variables.getDefinedName(inst);
+            if (defined != null && temporaries.contains(defined) && !onStack.contains(defined)) {
+                slots.put(defined, free.isEmpty() ? count++ : free.poll());
+            }
+        }
+    }
+
+    /**
+     * @param variable
+     * @return the slot the variable is stored in
+     */
+    public int getSlot(String variable) {
+        var slot = slots.get(variable);
+        if (slot == null) {
+            throw new RuntimeException("Variable '" + variable + "' has no local slot");
+        }
+
+        return slot;
+    }
+}
@@ -0,0 +1,168 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.pipeline.PassTarget;
+
+import java.util.*;
+import java.util.function.IntSupplier;
+
+/**
+ * How the instructions of an OLLIR method are lowered to Jasmin, which the backend passes decide before the method is
+ * generated. With no pass run, every instruction is generated on its own, each temporary in a local, and every goto
+ * where it is.
+ */
+public class MethodLowering implements PassTarget {
+
+    /**
+     * An increment of a variable by a constant that fits iinc.
+     *
+     * @param variable
+     * @param amount
+     * @param copy     the copy of a temporary back to the variable, which is no longer generated, or null if the
+     *                 variable is assigned directly
+     */
+    public record Increment(Operand variable, int amount, AssignInstruction copy) {
+    }
+
+    private final Method method;
+    private final ConstantArrays constantArrays;
+    private final IntSupplier labelCounter;
+
+    private final Map<Instruction, SwitchChain> switchChains;
+    private final Map<Instruction, String> extraLabels;
+    private final Map<Instruction, Increment> increments;
+    private final Map<AssignInstruction, ConstantArrays.ConstantArray> arrays;
+    private final Set<AssignInstruction> tailCalls;
+    private final Set<BinaryOpInstruction> reduced;
+    private final Set<Instruction> omitted;
+
+    private OperandTrees operandTrees;
+    private BlockLayout layout;
+
+    /**
+     * @param method
+     * @param constantArrays the arrays of literals of the class
+     * @param labelCounter   numbers the labels the passes add, unique in the class
+     */
+    public MethodLowering(Method method, ConstantArrays constantArrays, IntSupplier labelCounter) {
+        this.method = method;
+        this.constantArrays = constantArrays;
+        this.labelCounter = labelCounter;
+
+        this.switchChains = new IdentityHashMap<>();
+        this.extraLabels = new IdentityHashMap<>();
+        this.increments = new IdentityHashMap<>();
+        this.arrays = new IdentityHashMap<>();
+        this.tailCalls = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.reduced = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.omitted = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        this.operandTrees = null;
+        this.layout = BlockLayout.none();
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public ConstantArrays getConstantArrays() {
+        return constantArrays;
+    }
+
+    /**
+     * @param prefix
+     * @return a new label
+     */
+    public String newLabel(String prefix) {
+        return prefix + "_" + labelCounter.getAsInt();
+    }
+
+    /**
+     * @return the chains dispatched by a switch, by their first test
+     */
+    public Map<Instruction, SwitchChain> getSwitchChains() {
+        return switchChains;
+    }
+
+    /**
+     * @return the labels added to instructions that had none
+     */
+    public Map<Instruction, String> getExtraLabels() {
+        return extraLabels;
+    }
+
+    /**
+     * @return the increments generated as an iinc, by the instruction generated as one
+     */
+    public Map<Instruction, Increment> getIncrements() {
+        return increments;
+    }
+
+    /**
+     * @return the arrays of literals taken from their fields, by the assignment of the new array
+     */
+    public Map<AssignInstruction, ConstantArrays.ConstantArray> getArrays() {
+        return arrays;
+    }
+
+    /**
+     * @return the assignments of self-calls whose value is returned, which jump back to the start instead
+     */
+    public Set<AssignInstruction> getTailCalls() {
+        return tailCalls;
+    }
+
+    /**
+     * @return the multiplications and divisions by constants that may be generated with shifts
+     */
+    public Set<BinaryOpInstruction> getReduced() {
+        return reduced;
+    }
+
+    /**
+     * @return the instructions that are not generated, being part of another one or no longer reachable
+     */
+    public Set<Instruction> getOmitted() {
+        return omitted;
+    }
+
+    /**
+     * @return the instructions generated in some other way than by their type
+     */
+    public Set<Instruction> getSpecial() {
+        var special = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+        special.addAll(omitted);
+        special.addAll(switchChains.keySet());
+        special.addAll(increments.keySet());
+        special.addAll(tailCalls);
+        special.addAll(arrays.keySet());
+
+        return special;
+    }
+
+    /**
+     * @return the temporaries left on the operand stack, none unless a pass chose them
+     */
+    public OperandTrees getOperandTrees() {
+        if (operandTrees == null) {
+            operandTrees = OperandTrees.none();
+        }
+
+        return operandTrees;
+    }
+
+    public void setOperandTrees(OperandTrees operandTrees) {
+        this.operandTrees = operandTrees;
+    }
+
+    /**
+     * @return the placement of the jumps, which leaves every goto where it is unless a pass chose another
+     */
+    public BlockLayout getLayout() {
+        return layout;
+    }
+
+    public void setLayout(BlockLayout layout) {
+        this.layout = layout;
+    }
+}
@@ -0,0 +1,292 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.ssa.Variables;
+
+import java.util.*;
+
+/**
+ * The expression trees that OLLIR splits into temporaries, e.g. {@code t1 := a * b; t2 := c - t1}, whose temporaries
+ * are left on the operand stack for the instruction that reads them instead of being stored in a local and loaded back.
+ * <p>
+ * A temporary is left on the stack when it is assigned an operation on ints or booleans and read once, and every
+ * instruction from its assignment to its read computes another such temporary, each read by the next instructions in
+ * the order they were computed. The operations then run in the same order as in the OLLIR, except for the operands
+ * that are computed right to left because they need less of the stack that way.
+ * <p>
+ * The need of each operation, and whether it may throw, are computed once, when its temporary is assigned, from those of
+ * the temporaries it reads, which come before it. A tree stops growing at {@link #MAX_DEPTH} nested operations, so a
+ * long expression is stored in a local every so often instead of being generated as one deep tree.
+ */
+public class OperandTrees {
+
+    // the nesting of operations left on the stack, deeper ones being stored in their local instead
+    private static final int MAX_DEPTH = 64;
+
+    // the operations of the temporaries left on the stack, by name
+    private final Map<String, AssignInstruction> trees;
+
+    private final Map<Instruction, Shape> shapes;
+
+    // whether operands may be computed right to left
+    private final boolean reordered;
+
+    private OperandTrees() {
+        this.trees = Map.of();
+        this.shapes = Map.of();
+        this.reordered = false;
+    }
+
+    /**
+     * @param method
+     * @param excluded the instructions generated in some other way, which neither compute nor read temporaries left
+     *                 on the stack
+     */
+    public OperandTrees(Method method, Set<Instruction> excluded) {
+        this.trees = new HashMap<>();
+        this.shapes = new IdentityHashMap<>();
+        this.reordered = true;
+
+        var variables = new Variables(method);
+        var reads = new HashMap<String, Integer>();
+        var assignments = new HashMap<String, Integer>();
+        for (var inst : method.getInstructions()) {
+            variables.getUses(inst, inst).forEach(use -> reads.merge(use.operand().getName(), 1, Integer::sum));
+
+            var defined = variables.getDefinedName(inst);
+            if (defined != null) {
+                assignments.merge(defined, 1, Integer::sum);
+            }
+        }
+
+        // the temporaries computed since the last instruction that is not one, in order
+        var pending = new ArrayList<AssignInstruction>();
+        for (var inst : method.getInstructions()) {
+            if (excluded.contains(inst)) {
+                pending.clear();
+                continue;
+            }
+
+            // a jump to the label would skip the temporaries computed before it
+            if (!method.getLabels(inst).isEmpty()) {
+                pending.clear();
+            }
+
+            var read = variables.getUses(inst, inst).stream()
+                    .map(use -> use.operand())
+                    .filter(operand -> !(operand instanceof ArrayOperand))
+                    .map(operand -> pending.stream()
+                            .filter(assign -> ((Operand) assign.getDest()).getName().equals(operand.getName()))
+                            .findFirst().orElse(null))
+                    .filter(Objects::nonNull)
+                    .toList();
+
+            // the last ones computed, in the same order, and not after an element of an array that could throw first
+            var isOrdered = read.equals(pending.subList(pending.size() - read.size(), pending.size()))
+                    && (!readsArray(inst) || read.stream().noneMatch(assign -> shapes.get(assign.getRhs()).mayThrow()));
+            if (!isOrdered) {
+                pending.clear();
+                continue;
+            }
+
+            read.forEach(assign -> trees.put(((Operand) assign.getDest()).getName(), assign));
+            pending.removeAll(read);
+
+            var defined = variables.getDefinedName(inst);
+            if (defined != null && reads.getOrDefault(defined, 0) == 1 && assignments.get(defined) == 1
+                    && isOperation((AssignInstruction) inst)) {
+                // the temporaries it reads already have their shapes
+                var rhs = ((AssignInstruction) inst).getRhs();
+                var shape = computeShape(rhs);
+                shapes.put(rhs, shape);
+
+                if (shape.depth() < MAX_DEPTH) {
+                    pending.add((AssignInstruction) inst);
+                } else {
+                    pending.clear();
+                }
+            } else {
+                pending.clear();
+            }
+        }
+    }
+
+    /**
+     * @return no temporaries left on the stack, and every operation computing its operands left to right
+     */
+    public static OperandTrees none() {
+        return new OperandTrees();
+    }
+
+    /**
+     * @return the assignments of the temporaries left on the stack, which are computed where they are read instead
+     */
+    public Collection<AssignInstruction> getAssignments() {
+        return trees.values();
+    }
+
+    /**
+     * @param operand
+     * @return the operation computed in the place of the operand, or null if it is loaded from its local
+     */
+    public Instruction getTree(Operand operand) {
+        if (operand instanceof ArrayOperand) {
+            return null;
+        }
+
+        var tree = trees.get(operand.getName());
+        return tree != null ? tree.getRhs() : null;
+    }
+
+    /**
+     * @param binaryOp
+     * @return true if the right operand is computed before the left one, which it is when it needs more of the stack
+     * and computing it first cannot change which of the two throws an exception
+     */
+    public boolean isRightFirst(BinaryOpInstruction binaryOp) {
+        if (!reordered) {
+            return false;
+        }
+
+        var left = binaryOp.getLeftOperand();
+        var right = binaryOp.getRightOperand();
+
+        var opType = binaryOp.getOperation().getOpType();
+        var isSwappable = switch (opType) {
+            case ADD, SUB, MUL, ANDB -> true;
+            // comparisons against 0 only load the other operand
+            case LTH, GTH, LTE, GTE, EQ, NEQ -> !isZero(left) && !isZero(right);
+            default -> false;
+        };
+
+        return isSwappable && getNeed(right) > getNeed(left) && !(mayThrow(left) && mayThrow(right));
+    }
+
+    /**
+     * @param element
+     * @return the number of stack slots needed to compute the element, its Sethi-Ullman number
+     */
+    public int getNeed(Element element) {
+        if (element instanceof ArrayOperand array) {
+            // the array, then its index
+            return Math.max(1, 1 + getNeed(array.getIndexOperands().get(0)));
+        }
+
+        var shape = getShape(element);
+        return shape != null ? shape.need() : 1;
+    }
+
+    private boolean mayThrow(Element element) {
+        if (element instanceof ArrayOperand) {
+            return true;
+        }
+
+        var shape = getShape(element);
+        return shape != null && shape.mayThrow();
+    }
+
+    private int getDepth(Element element) {
+        if (element instanceof ArrayOperand array) {
+            return getDepth(array.getIndexOperands().get(0));
+        }
+
+        var shape = getShape(element);
+        return shape != null ? shape.depth() : 0;
+    }
+
+    private Shape getShape(Element element) {
+        if (element instanceof Operand operand && getTree(operand) != null) {
+            return shapes.get(getTree(operand));
+        }
+
+        return null;
+    }
+
+    private Shape computeShape(Instruction inst) {
+        if (inst instanceof SingleOpInstruction single) {
+            var operand = single.getSingleOperand();
+            return new Shape(getNeed(operand), mayThrow(operand), 1 + getDepth(operand));
+        }
+
+        if (inst instanceof UnaryOpInstruction unary) {
+            var operand = unary.getOperand();
+
+            // the operand, then the 1 it is xored with
+            return new Shape(Math.max(getNeed(operand), 2), mayThrow(operand), 1 + getDepth(operand));
+        }
+
+        var binaryOp = (BinaryOpInstruction) inst;
+        var left = binaryOp.getLeftOperand();
+        var right = binaryOp.getRightOperand();
+
+        var need = isRightFirst(binaryOp)
+                ? Math.max(getNeed(right), 1 + getNeed(left))
+                : Math.max(getNeed(left), 1 + getNeed(right));
+
+        // a division by a literal other than 0 cannot throw
+        var isDivision = binaryOp.getOperation().getOpType() == OperationType.DIV
+                && (!(right instanceof LiteralElement) || isZero(right));
+
+        return new Shape(need, isDivision || mayThrow(left) || mayThrow(right),
+                1 + Math.max(getDepth(left), getDepth(right)));
+    }
+
+    /**
+     * @return true if the assignment is of an int or boolean computed from its operands alone, other than a copy,
+     * which stays a store to its variable
+     */
+    private static boolean isOperation(AssignInstruction assign) {
+        var type = assign.getTypeOfAssign().getTypeOfElement();
+        if (type != ElementType.INT32 && type != ElementType.BOOLEAN) {
+            return false;
+        }
+
+        var rhs = assign.getRhs();
+        return rhs instanceof SingleOpInstruction single && single.getSingleOperand() instanceof ArrayOperand
+                || rhs instanceof UnaryOpInstruction
+                || rhs instanceof BinaryOpInstruction;
+    }
+
+    /**
+     * @return true if the instruction reads an element of an array, other than the one it stores into
+     */
+    private static boolean readsArray(Instruction inst) {
+        if (inst instanceof AssignInstruction assign) {
+            return readsArray(assign.getRhs());
+        }
+
+        if (inst instanceof CondBranchInstruction branch) {
+            return readsArray(branch.getCondition());
+        }
+
+        List<Element> operands = List.of();
+        if (inst instanceof SingleOpInstruction single) {
+            operands = List.of(single.getSingleOperand());
+        } else if (inst instanceof UnaryOpInstruction unary) {
+            operands = List.of(unary.getOperand());
+        } else if (inst instanceof BinaryOpInstruction binary) {
+            operands = List.of(binary.getLeftOperand(), binary.getRightOperand());
+        } else if (inst instanceof CallInstruction call) {
+            operands = call.getArguments();
+        } else if (inst instanceof PutFieldInstruction putField) {
+            operands = List.of(putField.getValue());
+        } else if (inst instanceof ReturnInstruction returnInst && returnInst.hasReturnValue()) {
+            operands = List.of(returnInst.getOperand());
+        }
+
+        return operands.stream().anyMatch(operand -> operand instanceof ArrayOperand);
+    }
+
+    private static boolean isZero(Element element) {
+        return element instanceof LiteralElement literal && element.getType().getTypeOfElement() == ElementType.INT32
+                && literal.getLiteral().equals("0");
+    }
+
+    /**
+     * @param need     the number of stack slots needed to compute the operation
+     * @param mayThrow whether computing it may throw an exception
+     * @param depth    the number of operations nested in it, itself included
+     */
+    private record Shape(int need, boolean mayThrow, int depth) {
+    }
+}
@@ -0,0 +1,26 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.Operand;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+
+/**
+ * Leaves the temporaries of the {@link OperandTrees} of a method on the operand stack, computing the deeper operand of
+ * an operation first. Runs after the other backend passes, as the instructions they generate in some other way do not
+ * take part in the trees.
+ */
+public class StackTemporaries implements OptimizationPass<MethodLowering> {
+
+    @Override
+    public String getName() {
+        return "operand-trees";
+    }
+
+    @Override
+    public int run(MethodLowering target) {
+        var operandTrees = new OperandTrees(target.getMethod(), target.getSpecial());
+        target.setOperandTrees(operandTrees);
+        target.getOmitted().addAll(operandTrees.getAssignments());
+
+        return operandTrees.getAssignments().size();
+    }
+}
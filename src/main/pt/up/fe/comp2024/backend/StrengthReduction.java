@@ -0,0 +1,70 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+
+/**
+ * Generates the multiplications and divisions by positive constants with shifts, when the constant is a power of two,
+ * or one more or one less than a power of two for a multiplication.
+ */
+public class StrengthReduction implements OptimizationPass<MethodLowering> {
+
+    @Override
+    public String getName() {
+        return "strength-reduce";
+    }
+
+    @Override
+    public int run(MethodLowering target) {
+        var reduced = target.getReduced();
+
+        for (var inst : target.getMethod().getInstructions()) {
+            var operation = inst;
+            if (inst instanceof AssignInstruction assign) {
+                operation = assign.getRhs();
+            } else if (inst instanceof CondBranchInstruction branch) {
+                operation = branch.getCondition();
+            }
+
+            if (operation instanceof BinaryOpInstruction binaryOp && isReducible(binaryOp)) {
+                reduced.add(binaryOp);
+            }
+        }
+
+        return reduced.size();
+    }
+
+    private static boolean isReducible(BinaryOpInstruction binaryOp) {
+        var opType = binaryOp.getOperation().getOpType();
+
+        if (opType == OperationType.DIV) {
+            var constant = getIntLiteral(binaryOp.getRightOperand());
+            return constant != null && constant >= 2 && isPowerOfTwo(constant);
+        }
+
+        if (opType != OperationType.MUL) {
+            return false;
+        }
+
+        // multiplication is commutative
+        var constant = getIntLiteral(binaryOp.getRightOperand());
+        if (constant == null) {
+            constant = getIntLiteral(binaryOp.getLeftOperand());
+        }
+
+        return constant != null && constant >= 2
+                && (isPowerOfTwo(constant) || isPowerOfTwo(constant - 1) || isPowerOfTwo(constant + 1));
+    }
+
+    private static Integer getIntLiteral(Element element) {
+        if (!(element instanceof LiteralElement literal) || element.getType().getTypeOfElement() != ElementType.INT32) {
+            return null;
+        }
+
+        return Integer.parseInt(literal.getLiteral());
+    }
+
+    private static boolean isPowerOfTwo(int value) {
+        return value > 0 && Integer.bitCount(value) == 1;
+    }
+}
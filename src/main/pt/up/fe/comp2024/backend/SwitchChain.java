@@ -0,0 +1,176 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * A chain of conditional branches that test the same integer variable against increasing constants, e.g. the code of
+ * {@code if (a < 1) ... else if (a < 2) ... else if (a < 6) ...}.
+ * <p>
+ * The chain splits the values of the variable into consecutive ranges, each with its own target: values below the
+ * first bound go to the first target, values between the i-th and the (i+1)-th bound to the (i+1)-th target, and values
+ * from the last bound on to the last target. Both the jump-if-true layout (tests one after the other) and the
+ * jump-if-false layout (each test at the label of the previous one) are recognized.
+ */
+public class SwitchChain {
+
+    /**
+     * Chains with fewer tests are left as compare-and-branch, as the bounds check and the switch cost about as much.
+     */
+    public static final int MIN_TESTS = 4;
+
+    private final Operand variable;
+    private final List<CondBranchInstruction> tests;
+    private final List<Integer> bounds;
+    private final List<Instruction> targets;
+
+    private SwitchChain(Operand variable) {
+        this.variable = variable;
+        this.tests = new ArrayList<>();
+        this.bounds = new ArrayList<>();
+        this.targets = new ArrayList<>();
+    }
+
+    public Operand getVariable() {
+        return variable;
+    }
+
+    /**
+     * @return the tests of the chain, the first one being where the chain is entered
+     */
+    public List<CondBranchInstruction> getTests() {
+        return tests;
+    }
+
+    /**
+     * @return the bounds of the ranges, in increasing order
+     */
+    public List<Integer> getBounds() {
+        return bounds;
+    }
+
+    /**
+     * @return the target of each range, one more than the bounds
+     */
+    public List<Instruction> getTargets() {
+        return targets;
+    }
+
+    /**
+     * Finds the chains of a method. A test belongs to at most one chain.
+     *
+     * @param method
+     * @return
+     */
+    public static List<SwitchChain> find(Method method) {
+        var instructions = method.getInstructions();
+        var successors = new IdentityHashMap<Instruction, Instruction>();
+        for (int i = 0; i + 1 < instructions.size(); i++) {
+            successors.put(instructions.get(i), instructions.get(i + 1));
+        }
+
+        var chains = new ArrayList<SwitchChain>();
+        var claimed = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+
+        for (var inst : instructions) {
+            if (claimed.contains(inst)) {
+                continue;
+            }
+
+            var test = RangeTest.of(inst, method, successors);
+            if (test == null) {
+                continue;
+            }
+
+            var chain = new SwitchChain(test.variable());
+            var members = new ArrayList<RangeTest>();
+            members.add(test);
+
+            // values from the bound on continue to the next test, if it tests the same variable against a higher bound
+            var current = test;
+            while (true) {
+                var next = RangeTest.of(current.high(), method, successors);
+                if (next == null || claimed.contains(next.inst()) || members.stream().anyMatch(m -> m.inst() == next.inst())
+                        || !next.variable().getName().equals(test.variable().getName())
+                        || next.bound() <= current.bound()) {
+                    break;
+                }
+
+                members.add(next);
+                current = next;
+            }
+
+            if (members.size() < MIN_TESTS) {
+                continue;
+            }
+
+            for (var member : members) {
+                chain.tests.add(member.inst());
+                chain.bounds.add(member.bound());
+                chain.targets.add(member.low());
+                claimed.add(member.inst());
+            }
+            chain.targets.add(current.high());
+
+            chains.add(chain);
+        }
+
+        return chains;
+    }
+
+    /**
+     * A conditional branch of the form {@code x < bound}, normalized from the comparisons of an integer variable
+     * against a constant.
+     *
+     * @param inst
+     * @param variable
+     * @param bound
+     * @param low      where values below the bound go
+     * @param high     where the other values go
+     */
+    private record RangeTest(CondBranchInstruction inst, Operand variable, int bound, Instruction low,
+                             Instruction high) {
+
+        private static RangeTest of(Instruction inst, Method method, Map<Instruction, Instruction> successors) {
+            if (!(inst instanceof CondBranchInstruction branch)
+                    || !(branch.getCondition() instanceof BinaryOpInstruction compare)) {
+                return null;
+            }
+
+            if (!(compare.getLeftOperand() instanceof Operand variable) || variable instanceof ArrayOperand
+                    || variable.getType().getTypeOfElement() != ElementType.INT32
+                    || !(compare.getRightOperand() instanceof LiteralElement literal)
+                    || literal.getType().getTypeOfElement() != ElementType.INT32) {
+                return null;
+            }
+
+            var taken = method.getLabels().get(branch.getLabel());
+            var notTaken = successors.get(inst);
+            if (taken == null || notTaken == null) {
+                return null;
+            }
+
+            long value = Long.parseLong(literal.getLiteral());
+
+            // x < c, x <= c, x >= c and x > c, as x < bound
+            return switch (compare.getOperation().getOpType()) {
+                case LTH -> of(branch, variable, value, taken, notTaken);
+                case LTE -> of(branch, variable, value + 1, taken, notTaken);
+                case GTE -> of(branch, variable, value, notTaken, taken);
+                case GTH -> of(branch, variable, value + 1, notTaken, taken);
+                default -> null;
+            };
+        }
+
+        private static RangeTest of(CondBranchInstruction inst, Operand variable, long bound, Instruction low,
+                                    Instruction high) {
+            // a bound past the int range leaves one side empty
+            if (bound > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            return new RangeTest(inst, variable, (int) bound, low, high);
+        }
+    }
+}
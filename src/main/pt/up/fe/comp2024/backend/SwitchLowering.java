@@ -0,0 +1,80 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+
+import java.util.*;
+
+/**
+ * Dispatches the if/else-if chains on one variable ({@link SwitchChain}) with a tableswitch at their first test,
+ * instead of going through every test of the chain.
+ */
+public class SwitchLowering implements OptimizationPass<MethodLowering> {
+
+    @Override
+    public String getName() {
+        return "switch-tables";
+    }
+
+    @Override
+    public int run(MethodLowering target) {
+        var method = target.getMethod();
+        var chains = SwitchChain.find(method);
+        if (chains.isEmpty()) {
+            return 0;
+        }
+
+        // branches that jump to each label
+        var jumps = new HashMap<String, List<Instruction>>();
+        for (var inst : method.getInstructions()) {
+            if (inst instanceof CondBranchInstruction branch) {
+                jumps.computeIfAbsent(branch.getLabel(), label -> new ArrayList<>()).add(inst);
+            } else if (inst instanceof GotoInstruction gotoInst) {
+                jumps.computeIfAbsent(gotoInst.getLabel(), label -> new ArrayList<>()).add(inst);
+            }
+        }
+
+        // the targets that have no label of their own get one
+        var extraLabels = target.getExtraLabels();
+        var targets = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+        for (var chain : chains) {
+            target.getSwitchChains().put(chain.getTests().get(0), chain);
+
+            for (var chainTarget : chain.getTargets()) {
+                targets.add(chainTarget);
+                if (method.getLabels(chainTarget).isEmpty() && !extraLabels.containsKey(chainTarget)) {
+                    extraLabels.put(chainTarget, target.newLabel("case"));
+                }
+            }
+        }
+
+        // the tests that can only be reached from the first test of their chain are no longer needed
+        var instructions = method.getInstructions();
+        for (var chain : chains) {
+            var tests = chain.getTests();
+
+            for (int i = 1; i < tests.size(); i++) {
+                var test = tests.get(i);
+                if (targets.contains(test)) {
+                    continue;
+                }
+
+                var entries = method.getLabels(test).stream()
+                        .flatMap(label -> jumps.getOrDefault(label, List.of()).stream())
+                        .allMatch(jump -> tests.stream().anyMatch(other -> other == jump));
+
+                var index = instructions.indexOf(test);
+                var previous = index > 0 ? instructions.get(index - 1) : null;
+                var fallsThrough = previous != null && !(previous instanceof GotoInstruction)
+                        && !(previous instanceof ReturnInstruction)
+                        && tests.stream().noneMatch(other -> other == previous);
+
+                if (entries && !fallsThrough) {
+                    target.getOmitted().add(test);
+                }
+            }
+        }
+
+        return chains.size();
+    }
+}
@@ -0,0 +1,23 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+
+/**
+ * Turns the {@link TailCalls} of a method into stores of the arguments into the parameters and a jump back to the
+ * start of the method.
+ */
+public class TailCallElimination implements OptimizationPass<MethodLowering> {
+
+    @Override
+    public String getName() {
+        return "tail-calls";
+    }
+
+    @Override
+    public int run(MethodLowering target) {
+        var tailCalls = TailCalls.find(target.getMethod());
+        target.getTailCalls().addAll(tailCalls);
+
+        return tailCalls.size();
+    }
+}
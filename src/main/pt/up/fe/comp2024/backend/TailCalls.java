@@ -0,0 +1,106 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPipelines;
+
+import java.util.*;
+
+/**
+ * Calls of a method to itself on {@code this} whose value is returned right away, which can reuse the frame of the
+ * method instead of pushing a new one.
+ * <p>
+ * A call is in tail position when its value only goes through copies and gotos before being returned, e.g. in the code
+ * of {@code if (n < 2) r = acc; else r = this.f(n - 1, acc * n); return r;}. The call is taken to run the method itself, under
+ * the closed class assumption of {@link OptimizationPipelines}.
+ */
+public class TailCalls {
+
+    /**
+     * @param method
+     * @return the assignments of the result of a tail call
+     */
+    public static Set<AssignInstruction> find(Method method) {
+        var tailCalls = Collections.newSetFromMap(new IdentityHashMap<AssignInstruction, Boolean>());
+        if (method.isStaticMethod() || method.isConstructMethod()) {
+            return tailCalls;
+        }
+
+        var instructions = method.getInstructions();
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i) instanceof AssignInstruction assign && isSelfCall(assign, method)
+                    && isReturned(((Operand) assign.getDest()).getName(), i + 1, method)) {
+                tailCalls.add(assign);
+            }
+        }
+
+        return tailCalls;
+    }
+
+    private static boolean isSelfCall(AssignInstruction assign, Method method) {
+        if (!(assign.getRhs() instanceof CallInstruction call) || call.getInvocationType() != CallType.invokevirtual
+                || !(assign.getDest() instanceof Operand dest) || dest instanceof ArrayOperand) {
+            return false;
+        }
+
+        if (!(call.getCaller() instanceof Operand caller) || !caller.getName().equals("this")
+                || !(call.getMethodName() instanceof LiteralElement name)
+                || !name.getLiteral().replace("\"", "").equals(method.getMethodName())) {
+            return false;
+        }
+
+        // the same signature, so that the arguments fit the parameters
+        var args = call.getArguments();
+        var params = method.getParams();
+        if (args.size() != params.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < args.size(); i++) {
+            if (!args.get(i).getType().toString().equals(params.get(i).getType().toString())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param variable
+     * @param start    the index of the instruction that follows the call
+     * @param method
+     * @return true if the value of the variable is returned without any other effect from the given instruction on
+     */
+    private static boolean isReturned(String variable, int start, Method method) {
+        var instructions = method.getInstructions();
+        var visited = new HashSet<Integer>();
+        var index = start;
+
+        while (index < instructions.size() && visited.add(index)) {
+            var inst = instructions.get(index);
+
+            if (inst instanceof ReturnInstruction returnInst) {
+                return returnInst.getOperand() instanceof Operand operand && !(operand instanceof ArrayOperand)
+                        && operand.getName().equals(variable);
+            }
+
+            if (inst instanceof GotoInstruction gotoInst) {
+                index = instructions.indexOf(method.getLabels().get(gotoInst.getLabel()));
+                continue;
+            }
+
+            // a copy of the value, which is followed instead
+            if (inst instanceof AssignInstruction assign && assign.getRhs() instanceof SingleOpInstruction copy
+                    && copy.getSingleOperand() instanceof Operand source && !(source instanceof ArrayOperand)
+                    && source.getName().equals(variable)
+                    && assign.getDest() instanceof Operand dest && !(dest instanceof ArrayOperand)) {
+                variable = dest.getName();
+                index++;
+                continue;
+            }
+
+            return false;
+        }
+
+        return false;
+    }
+}
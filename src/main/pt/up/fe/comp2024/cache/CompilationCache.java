@@ -0,0 +1,356 @@
+package pt.up.fe.comp2024.cache;
+
+import pt.up.fe.comp2024.Launcher;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of compilation outputs, stored on disk.
+ * <p>
+ * Each entry is a directory named after the hash of the source code, the compiler version and the compiler options,
+ * holding the final OLLIR and Jasmin code. Entries are evicted by least recent use once the cache grows over its size
+ * bound. Hit and miss counts are kept in the cache directory, so they accumulate over several runs.
+ */
+public class CompilationCache {
+
+    /**
+     * Bump when the generated code changes in a way the code of the compiler does not capture, e.g. a new version of a
+     * library.
+     */
+    public static final String VERSION = "1";
+
+    private static final String OLLIR_FILE = "code.ollir";
+    private static final String JASMIN_FILE = "code.j";
+    private static final String STATS_FILE = "stats.properties";
+
+    // Options that do not change the generated code
+    private static final Set<String> IGNORED_OPTIONS = Set.of("inputFile", "cacheDir", "cacheSize", "passStatistics",
+            "watch", "execute", "jarFile", "bundleDir");
+
+    // hashing the whole compiler takes a moment, and it does not change while it runs
+    private static String compilerStamp;
+
+    private final Path dir;
+    private final long maxBytes;
+    private final String stamp;
+
+    public CompilationCache(Path dir, long maxBytes) {
+        this(dir, maxBytes, getCompilerStamp());
+    }
+
+    /**
+     * @param dir
+     * @param maxBytes
+     * @param stamp    identifies the compiler build in the keys, instead of the hash of its code
+     */
+    public CompilationCache(Path dir, long maxBytes, String stamp) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.stamp = stamp;
+
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create cache directory '" + dir + "'", e);
+        }
+    }
+
+    /**
+     * Computes the key under which the outputs of compiling the given code with the given options are stored.
+     *
+     * @param code
+     * @param config
+     * @return
+     */
+    public String getKey(String code, Map<String, String> config) {
+        var key = new StringBuilder();
+        key.append(getOptionsKey(config));
+        key.append(code);
+
+        return sha256(key.toString());
+    }
+
+    /**
+     * @param config
+     * @return the compiler version and the options that affect the generated code, as a string
+     */
+    public String getOptionsKey(Map<String, String> config) {
+        var key = new StringBuilder();
+        key.append(VERSION).append('\0').append(stamp).append('\0');
+
+        new TreeMap<>(config).forEach((option, value) -> {
+            if (!IGNORED_OPTIONS.contains(option)) {
+                key.append(option).append('=').append(value).append('\0');
+            }
+        });
+
+        return key.toString();
+    }
+
+    /**
+     * @param key
+     * @return the cached entry, or empty if there is none
+     */
+    public Optional<Entry> get(String key) {
+        var entryDir = dir.resolve(key);
+        var ollirFile = entryDir.resolve(OLLIR_FILE);
+        var jasminFile = entryDir.resolve(JASMIN_FILE);
+
+        if (!Files.isRegularFile(ollirFile) || !Files.isRegularFile(jasminFile)) {
+            updateStats(false);
+            return Optional.empty();
+        }
+
+        try {
+            var entry = new Entry(Files.readString(ollirFile), Files.readString(jasminFile));
+
+            // most recently used entries are the last ones to be evicted
+            Files.setLastModifiedTime(entryDir, FileTime.fromMillis(System.currentTimeMillis()));
+            updateStats(true);
+
+            return Optional.of(entry);
+        } catch (IOException e) {
+            // a broken entry is treated as a miss, and overwritten by the next put
+            updateStats(false);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores the outputs of a compilation, evicting old entries if the cache goes over its size bound.
+     *
+     * @param key
+     * @param entry
+     */
+    public void put(String key, Entry entry) {
+        var entryDir = dir.resolve(key);
+
+        try {
+            // write to a temporary directory first, so that concurrent readers never see half an entry
+            var tempDir = Files.createTempDirectory(dir, key + ".tmp");
+            Files.writeString(tempDir.resolve(OLLIR_FILE), entry.ollirCode());
+            Files.writeString(tempDir.resolve(JASMIN_FILE), entry.jasminCode());
+
+            deleteRecursively(entryDir);
+            Files.move(tempDir, entryDir, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write cache entry '" + entryDir + "'", e);
+        }
+
+        evict();
+    }
+
+    /**
+     * Reads a single named fragment of an entry, e.g. the code generated for one method.
+     *
+     * @param key
+     * @param name
+     * @return the fragment, or empty if there is none
+     */
+    public Optional<String> getFragment(String key, String name) {
+        var entryDir = dir.resolve(key);
+        var file = entryDir.resolve(name);
+
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+
+        try {
+            var fragment = Files.readString(file);
+            Files.setLastModifiedTime(entryDir, FileTime.fromMillis(System.currentTimeMillis()));
+            return Optional.of(fragment);
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores a single named fragment of an entry. Eviction only happens on {@link #put(String, Entry)}, so that
+     * storing many small fragments does not rescan the cache each time.
+     *
+     * @param key
+     * @param name
+     * @param fragment
+     */
+    public void putFragment(String key, String name, String fragment) {
+        var entryDir = dir.resolve(key);
+
+        try {
+            Files.createDirectories(entryDir);
+
+            var tempFile = Files.createTempFile(entryDir, name, ".tmp");
+            Files.writeString(tempFile, fragment);
+            Files.move(tempFile, entryDir.resolve(name), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write cache fragment '" + entryDir.resolve(name) + "'", e);
+        }
+    }
+
+    /**
+     * @return the number of hits and misses recorded in this cache directory
+     */
+    public Stats getStats() {
+        var properties = readStats();
+        return new Stats(Long.parseLong(properties.getProperty("hits", "0")),
+                Long.parseLong(properties.getProperty("misses", "0")));
+    }
+
+    private void evict() {
+        var entries = new ArrayList<Path>();
+        try (Stream<Path> children = Files.list(dir)) {
+            children.filter(Files::isDirectory)
+                    .filter(child -> !child.getFileName().toString().contains(".tmp"))
+                    .forEach(entries::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        var sizes = new HashMap<Path, Long>();
+        var total = 0L;
+        for (var entry : entries) {
+            var size = sizeOf(entry);
+            sizes.put(entry, size);
+            total += size;
+        }
+
+        // oldest first
+        entries.sort(Comparator.comparing(CompilationCache::lastModified));
+
+        for (var entry : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+
+            deleteRecursively(entry);
+            total -= sizes.get(entry);
+        }
+    }
+
+    private void updateStats(boolean hit) {
+        var properties = readStats();
+        var property = hit ? "hits" : "misses";
+        properties.setProperty(property, Long.toString(Long.parseLong(properties.getProperty(property, "0")) + 1));
+
+        try (var out = Files.newOutputStream(dir.resolve(STATS_FILE))) {
+            properties.store(out, "jmm compilation cache");
+        } catch (IOException e) {
+            // statistics are best-effort
+        }
+    }
+
+    private Properties readStats() {
+        var properties = new Properties();
+        var statsFile = dir.resolve(STATS_FILE);
+
+        if (Files.isRegularFile(statsFile)) {
+            try (var in = Files.newInputStream(statsFile)) {
+                properties.load(in);
+            } catch (IOException e) {
+                // start counting again
+            }
+        }
+
+        return properties;
+    }
+
+    /**
+     * Identifies the compiler build by its contents, so that entries produced by an older build are never reused.
+     */
+    private static synchronized String getCompilerStamp() {
+        if (compilerStamp == null) {
+            compilerStamp = computeCompilerStamp();
+        }
+
+        return compilerStamp;
+    }
+
+    /**
+     * @return the hash of the jar the compiler runs from, or of every file of its classes directory, e.g. when run by
+     * gradle
+     */
+    private static String computeCompilerStamp() {
+        try {
+            var location = Paths.get(Launcher.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            var digest = MessageDigest.getInstance("SHA-256");
+
+            if (Files.isDirectory(location)) {
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(location)) {
+                    files = walk.filter(Files::isRegularFile).sorted().toList();
+                }
+
+                for (var file : files) {
+                    digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                    digest.update(Files.readAllBytes(file));
+                }
+            } else {
+                digest.update(Files.readAllBytes(location));
+            }
+
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | URISyntaxException | SecurityException | NullPointerException e) {
+            return "unknown";
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static String sha256(String text) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static long sizeOf(Path path) {
+        try (Stream<Path> files = Files.walk(path)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void deleteRecursively(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+
+        try (Stream<Path> files = Files.walk(path)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public record Entry(String ollirCode, String jasminCode) {
+    }
+
+    public record Stats(long hits, long misses) {
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + ", misses=" + misses;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package pt.up.fe.comp2024.cache;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.ast.NodeUtils;
+import pt.up.fe.comp2024.ast.TreeWalker;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPipelines;
+
+import java.util.*;
+
+import static pt.up.fe.comp2024.ast.Kind.CLASS_DECL_RULE;
+import static pt.up.fe.comp2024.ast.Kind.MEMBER_CALL_EXPR;
+import static pt.up.fe.comp2024.ast.Kind.METHOD_DECL;
+
+/**
+ * Method-granular reuse of compilation results.
+ * <p>
+ * Every METHOD_DECL is fingerprinted from its subtree (without source positions) together with the class-level
+ * symbol table and the compiler options. When a method with the same fingerprint was compiled before, its semantic
+ * reports and OLLIR code are taken from the cache, and the analysis passes and OLLIR generator skip it. Jasmin
+ * fragments are keyed by the final OLLIR of the method instead, so they stay valid whatever the OLLIR optimizations
+ * did to it. When methods may be inlined, the fingerprint of a method also covers the methods of the class it calls.
+ */
+public class IncrementalCompilation {
+
+    /**
+     * AST attribute with the fingerprint of a METHOD_DECL.
+     */
+    public static final String FINGERPRINT = "fingerprint";
+
+    /**
+     * AST attribute set to "true" on a METHOD_DECL whose results are all taken from the cache.
+     */
+    public static final String REUSED = "reused";
+
+    private static final String REPORTS_FRAGMENT = "method.reports";
+    private static final String OLLIR_FRAGMENT = "method.ollir";
+    private static final String JASMIN_FRAGMENT = "method.j";
+
+    // Attributes that do not change the generated code
+    private static final Set<String> POSITION_ATTRIBUTES = Set.of("lineStart", "lineEnd", "colStart", "colEnd",
+            FINGERPRINT, REUSED);
+
+    private final CompilationCache cache;
+    private final String optionsKey;
+    private final boolean inlining;
+
+    public IncrementalCompilation(CompilationCache cache, Map<String, String> config) {
+        this.cache = cache;
+        this.optionsKey = cache.getOptionsKey(config);
+        this.inlining = OptimizationPipelines.ast(config).isEnabled("inline")
+                && CompilerConfig.getInlineLimit(config) > 0;
+    }
+
+    /**
+     * @param config
+     * @return incremental compilation over the configured cache directory, or empty if caching is disabled
+     */
+    public static Optional<IncrementalCompilation> fromConfig(Map<String, String> config) {
+        if (config == null) {
+            return Optional.empty();
+        }
+
+        return CompilerConfig.getCacheDir(config)
+                .map(dir -> new CompilationCache(dir.toPath(), CompilerConfig.getCacheSize(config) * 1024L * 1024L))
+                .map(cache -> new IncrementalCompilation(cache, config));
+    }
+
+    /**
+     * Fingerprints every method of the program, marking the ones that can be reused.
+     *
+     * @param root
+     * @param table
+     */
+    public void fingerprintMethods(JmmNode root, SymbolTable table) {
+        var classKey = optionsKey + getTableKey(table);
+
+        for (var classDecl : root.getChildren(CLASS_DECL_RULE)) {
+            var methods = new HashMap<String, JmmNode>();
+            classDecl.getChildren(METHOD_DECL).forEach(method -> methods.put(method.get("name"), method));
+
+            for (var method : classDecl.getChildren(METHOD_DECL)) {
+                var subtree = new StringBuilder();
+                appendSubtree(method, subtree);
+
+                // the code of the callees ends up in the method when they are inlined
+                if (inlining) {
+                    TreeWalker.getDescendants(method, MEMBER_CALL_EXPR).stream()
+                            .map(call -> methods.get(call.get("name")))
+                            .filter(callee -> callee != null && callee != method)
+                            .distinct()
+                            .forEach(callee -> appendSubtree(callee, subtree));
+                }
+
+                var fingerprint = CompilationCache.sha256(classKey + subtree);
+                method.put(FINGERPRINT, fingerprint);
+
+                var reusable = cache.getFragment(fingerprint, REPORTS_FRAGMENT).isPresent()
+                        && cache.getFragment(fingerprint, OLLIR_FRAGMENT).isPresent();
+                if (reusable) {
+                    method.put(REUSED, "true");
+                }
+            }
+        }
+    }
+
+    public static boolean isReused(JmmNode method) {
+        return NodeUtils.getBooleanAttribute(method, REUSED, "false");
+    }
+
+    /**
+     * @param method
+     * @return the cached reports of the method, moved to its current position in the source
+     */
+    public List<Report> getReports(JmmNode method) {
+        var reports = new ArrayList<Report>();
+        var fragment = cache.getFragment(method.get(FINGERPRINT), REPORTS_FRAGMENT).orElse("");
+        var methodLine = NodeUtils.getLine(method);
+
+        for (var line : fragment.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            var parts = line.split("\t", 5);
+            var type = ReportType.valueOf(parts[0]);
+            var stage = Stage.valueOf(parts[1]);
+            var reportLine = Integer.parseInt(parts[2]);
+            var column = Integer.parseInt(parts[3]);
+            var message = unescape(parts[4]);
+
+            reports.add(new Report(type, stage, reportLine < 0 ? reportLine : methodLine + reportLine, column, message));
+        }
+
+        return reports;
+    }
+
+    /**
+     * Stores the reports of a method, with lines relative to the start of the method.
+     *
+     * @param method
+     * @param reports
+     */
+    public void putReports(JmmNode method, List<Report> reports) {
+        var fragment = new StringBuilder();
+        var methodLine = NodeUtils.getLine(method);
+
+        for (var report : reports) {
+            var line = report.getLine() < 0 ? report.getLine() : report.getLine() - methodLine;
+            fragment.append(report.getType()).append('\t')
+                    .append(report.getStage()).append('\t')
+                    .append(line).append('\t')
+                    .append(report.getColumn()).append('\t')
+                    .append(escape(report.getMessage())).append('\n');
+        }
+
+        cache.putFragment(method.get(FINGERPRINT), REPORTS_FRAGMENT, fragment.toString());
+    }
+
+    /**
+     * @param method
+     * @return true if the report was produced inside the given method
+     */
+    public static boolean isInside(Report report, JmmNode method) {
+        var start = NodeUtils.getLine(method);
+        var end = NodeUtils.getIntegerAttribute(method, "lineEnd", "-1");
+
+        return report.getLine() >= start && report.getLine() <= end;
+    }
+
+    public Optional<String> getOllir(JmmNode method) {
+        return cache.getFragment(method.get(FINGERPRINT), OLLIR_FRAGMENT);
+    }
+
+    public void putOllir(JmmNode method, String ollirCode) {
+        cache.putFragment(method.get(FINGERPRINT), OLLIR_FRAGMENT, ollirCode);
+    }
+
+    /**
+     * Fingerprints the final OLLIR of a method, together with the class information the backend uses.
+     *
+     * @param method
+     * @param dependencies what the code of the method depends on in the other methods of the class
+     * @return
+     */
+    public String getJasminKey(Method method, String dependencies) {
+        var key = new StringBuilder(optionsKey);
+        var ollirClass = method.getOllirClass();
+
+        key.append(dependencies).append('\0');
+
+        key.append(ollirClass.getClassName()).append('\0')
+                .append(ollirClass.getSuperClass()).append('\0')
+                .append(ollirClass.getImports()).append('\0');
+
+        key.append(method.getMethodAccessModifier()).append(' ')
+                .append(method.isStaticMethod()).append(' ')
+                .append(method.isFinalMethod()).append(' ')
+                .append(method.isConstructMethod()).append(' ')
+                .append(method.getMethodName()).append(' ')
+                .append(method.getParams()).append(' ')
+                .append(method.getReturnType()).append('\n');
+
+        new TreeMap<>(method.getVarTable()).forEach((name, descriptor) ->
+                key.append(name).append(':').append(descriptor.getVirtualReg()).append(':')
+                        .append(descriptor.getVarType()).append('\n'));
+
+        for (var inst : method.getInstructions()) {
+            key.append(method.getLabels(inst)).append(inst);
+
+            // not part of the textual form of the instructions
+            if (inst instanceof CallInstruction call) {
+                key.append(" returns ").append(call.getReturnType());
+            } else if (inst instanceof AssignInstruction assign) {
+                key.append(" as ").append(assign.getTypeOfAssign());
+                if (assign.getRhs() instanceof CallInstruction call) {
+                    key.append(" returns ").append(call.getReturnType());
+                }
+            }
+
+            key.append('\n');
+        }
+
+        return CompilationCache.sha256(key.toString());
+    }
+
+    public Optional<String> getJasmin(String jasminKey) {
+        return cache.getFragment(jasminKey, JASMIN_FRAGMENT);
+    }
+
+    public void putJasmin(String jasminKey, String jasminCode) {
+        cache.putFragment(jasminKey, JASMIN_FRAGMENT, jasminCode);
+    }
+
+    /**
+     * Class-level information that the analysis and code generation of a single method may depend on.
+     */
+    private static String getTableKey(SymbolTable table) {
+        var key = new StringBuilder();
+
+        key.append(table.getClassName()).append('\0')
+                .append(table.getSuper()).append('\0')
+                .append(table.getImports()).append('\0')
+                .append(table.getFields()).append('\0');
+
+        for (var method : table.getMethods()) {
+            key.append(method).append(':')
+                    .append(table.getReturnType(method)).append(':')
+                    .append(table.getParameters(method)).append('\0');
+        }
+
+        return key.toString();
+    }
+
+    private static void appendSubtree(JmmNode root, StringBuilder subtree) {
+        TreeWalker.walk(root, node -> {
+            subtree.append('(').append(node.getKind());
+
+            new TreeSet<>(node.getAttributes()).forEach(attribute -> {
+                if (!POSITION_ATTRIBUTES.contains(attribute)) {
+                    subtree.append(' ').append(attribute).append('=').append(node.getOptional(attribute).orElse(""));
+                }
+            });
+
+            return true;
+        }, node -> subtree.append(')'));
+    }
+
+    private static String escape(String message) {
+        return message.replace("\\", "\\\\").replace("\n", "\\n").replace("\t", "\\t");
+    }
+
+    private static String unescape(String message) {
+        var result = new StringBuilder();
+
+        for (int i = 0; i < message.length(); i++) {
+            var c = message.charAt(i);
+            if (c == '\\' && i + 1 < message.length()) {
+                var next = message.charAt(++i);
+                result.append(switch (next) {
+                    case 'n' -> '\n';
+                    case 't' -> '\t';
+                    default -> next;
+                });
+            } else {
+                result.append(c);
+            }
+        }
+
+        return result.toString();
+    }
+}
@@ -0,0 +1,499 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.pipeline.Analysis;
+import pt.up.fe.comp2024.optimization.pipeline.MethodUnit;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+import pt.up.fe.comp2024.optimization.ssa.BasicBlock;
+import pt.up.fe.comp2024.optimization.ssa.ControlFlowGraph;
+import pt.up.fe.comp2024.optimization.ssa.Variables;
+
+import java.util.*;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Removes the branches whose condition always holds or never does, found by a value range analysis of the int and
+ * boolean variables over the control flow graph, along with the code they leave unreachable.
+ * <p>
+ * The range of a variable is an interval, narrowed on each side of a branch by its condition, e.g. {@code i} is below
+ * {@code n} where {@code if (i < n)} jumps. An interval that keeps growing around a loop is widened at the head of the
+ * loop, up to the limits of int, and then narrowed back by going over the loop again. Arithmetic that may overflow
+ * gives the whole range of int.
+ */
+public class BranchPruning implements OptimizationPass<MethodUnit> {
+
+    // passes over the blocks once the widened ranges are stable, to narrow them back
+    private static final int NARROWING_ROUNDS = 2;
+
+    // where widened bounds stop, one short of the limits of int so that a counter stepped after its test against
+    // another variable does not overflow
+    private static final TreeSet<Long> THRESHOLDS = new TreeSet<>(List.of((long) Integer.MIN_VALUE,
+            Integer.MIN_VALUE + 1L, -1L, 0L, 1L, Integer.MAX_VALUE - 1L, (long) Integer.MAX_VALUE));
+
+    /**
+     * The values a variable may hold, both bounds included.
+     */
+    record Interval(long low, long high) {
+
+        static final Interval INT = new Interval(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        static final Interval BOOLEAN = new Interval(0, 1);
+
+        /**
+         * @return the interval, or the whole range of int if it goes past it, as the values would wrap around
+         */
+        static Interval of(long low, long high) {
+            return low < Integer.MIN_VALUE || high > Integer.MAX_VALUE ? INT : new Interval(low, high);
+        }
+
+        static Interval of(long value) {
+            return new Interval(value, value);
+        }
+
+        boolean isConstant() {
+            return low == high;
+        }
+
+        Interval join(Interval other) {
+            return new Interval(Math.min(low, other.low), Math.max(high, other.high));
+        }
+
+        /**
+         * @return this interval, with the bounds the next one goes past moved to the next threshold
+         */
+        Interval widen(Interval next) {
+            return new Interval(next.low < low ? THRESHOLDS.floor(next.low) : low,
+                    next.high > high ? THRESHOLDS.ceiling(next.high) : high);
+        }
+    }
+
+    private Variables variables;
+
+    private int changes = 0;
+
+    @Override
+    public String getName() {
+        return "prune-branches";
+    }
+
+    @Override
+    public Set<Analysis> getRequiredAnalyses() {
+        return Set.of(Analysis.CFG);
+    }
+
+    @Override
+    public int run(MethodUnit target) {
+        optimize(target.getMethod(), target.getCfg());
+        return changes;
+    }
+
+    public void optimize(Method method, ControlFlowGraph cfg) {
+        changes = 0;
+        variables = new Variables(method);
+
+        var blocks = cfg.getReversePostorder();
+
+        // the heads of loops, where a block later in the order jumps back to
+        var order = new HashMap<BasicBlock, Integer>();
+        blocks.forEach(block -> order.put(block, order.size()));
+        var heads = new HashSet<BasicBlock>();
+        for (var block : blocks) {
+            if (block.getPredecessors().stream().anyMatch(pred -> order.getOrDefault(pred, -1) >= order.get(block))) {
+                heads.add(block);
+            }
+        }
+
+        // the ranges at the start of each block, and along each edge out of it, null where it cannot be taken
+        var incoming = new HashMap<BasicBlock, Map<String, Interval>>();
+        var outgoing = new HashMap<BasicBlock, Map<BasicBlock, Map<String, Interval>>>();
+
+        boolean changed;
+        do {
+            changed = false;
+            for (var block : blocks) {
+                var ranges = getIncoming(block, cfg.getEntry(), outgoing);
+                if (ranges == null) {
+                    continue;
+                }
+
+                var previous = incoming.get(block);
+                if (heads.contains(block) && previous != null) {
+                    ranges = widen(previous, ranges);
+                }
+
+                if (!ranges.equals(previous)) {
+                    incoming.put(block, ranges);
+                    outgoing.put(block, getOutgoing(block, ranges));
+                    changed = true;
+                }
+            }
+        } while (changed);
+
+        for (int round = 0; round < NARROWING_ROUNDS; round++) {
+            for (var block : blocks) {
+                var ranges = getIncoming(block, cfg.getEntry(), outgoing);
+                if (ranges == null) {
+                    incoming.remove(block);
+                    outgoing.remove(block);
+                } else {
+                    incoming.put(block, ranges);
+                    outgoing.put(block, getOutgoing(block, ranges));
+                }
+            }
+        }
+
+        for (var block : blocks) {
+            if (incoming.containsKey(block) && block.getTerminator() instanceof CondBranchInstruction branch) {
+                var ranges = new HashMap<>(incoming.get(block));
+                block.getInstructions().forEach(inst -> transfer(inst, ranges));
+
+                var condition = evaluate(branch.getCondition(), ranges, new Type(ElementType.BOOLEAN));
+                if (condition.isConstant() && prune(branch, condition.low() != 0, method)) {
+                    changes++;
+                }
+            }
+        }
+
+        changes += removeUnreachable(method);
+    }
+
+    private Map<String, Interval> getIncoming(BasicBlock block, BasicBlock entry,
+                                              Map<BasicBlock, Map<BasicBlock, Map<String, Interval>>> outgoing) {
+        if (block == entry) {
+            return new HashMap<>();
+        }
+
+        Map<String, Interval> ranges = null;
+        for (var predecessor : block.getPredecessors()) {
+            // not visited yet, or never reached
+            var edges = outgoing.get(predecessor);
+            if (edges == null || edges.get(block) == null) {
+                continue;
+            }
+
+            ranges = ranges == null ? new HashMap<>(edges.get(block)) : join(ranges, edges.get(block));
+        }
+
+        return ranges;
+    }
+
+    private Map<BasicBlock, Map<String, Interval>> getOutgoing(BasicBlock block, Map<String, Interval> incoming) {
+        var ranges = new HashMap<>(incoming);
+        block.getInstructions().forEach(inst -> transfer(inst, ranges));
+
+        var edges = new HashMap<BasicBlock, Map<String, Interval>>();
+        var successors = block.getSuccessors();
+
+        if (block.getTerminator() instanceof CondBranchInstruction branch) {
+            var taken = refine(branch.getCondition(), true, ranges);
+            var notTaken = successors.size() > 1 ? refine(branch.getCondition(), false, ranges) : null;
+
+            edges.put(successors.get(0), taken);
+            if (successors.size() > 1) {
+                // both edges may lead to the same block
+                var other = edges.get(successors.get(1));
+                edges.put(successors.get(1), other == null ? notTaken : notTaken == null ? other : join(other, notTaken));
+            }
+        } else {
+            successors.forEach(successor -> edges.put(successor, ranges));
+        }
+
+        return edges;
+    }
+
+    private void transfer(Instruction inst, Map<String, Interval> ranges) {
+        var defined = variables.getDefinedName(inst);
+        if (defined == null || !isTracked(variables.getType(defined))) {
+            return;
+        }
+
+        var assign = (AssignInstruction) inst;
+        set(ranges, defined, evaluate(assign.getRhs(), ranges, assign.getTypeOfAssign()));
+    }
+
+    /**
+     * @param inst the right-hand side of an assignment or a condition
+     * @param type the type of the value
+     * @return the values the instruction may compute
+     */
+    private Interval evaluate(Instruction inst, Map<String, Interval> ranges, Type type) {
+        if (inst instanceof SingleOpInstruction single) {
+            return get(single.getSingleOperand(), ranges);
+        }
+
+        if (inst instanceof UnaryOpInstruction unary && unary.getOperation().getOpType() == OperationType.NOTB) {
+            var operand = get(unary.getOperand(), ranges);
+            return new Interval(1 - operand.high(), 1 - operand.low());
+        }
+
+        if (inst instanceof CallInstruction call && call.getInvocationType() == CallType.arraylength) {
+            return new Interval(0, Integer.MAX_VALUE);
+        }
+
+        if (!(inst instanceof BinaryOpInstruction binary)) {
+            return getDefault(type);
+        }
+
+        var left = get(binary.getLeftOperand(), ranges);
+        var right = get(binary.getRightOperand(), ranges);
+        var opType = binary.getOperation().getOpType();
+
+        return switch (opType) {
+            case ADD -> Interval.of(left.low() + right.low(), left.high() + right.high());
+            case SUB -> Interval.of(left.low() - right.high(), left.high() - right.low());
+            case MUL -> getCorners(left, right, (a, b) -> a * b);
+            // truncating division is monotone in each operand while the divisor keeps its sign
+            case DIV -> right.low() > 0 || right.high() < 0 ? getCorners(left, right, (a, b) -> a / b) : Interval.INT;
+            case LTH, GTH, LTE, GTE, EQ, NEQ -> {
+                var holds = compare(opType, left, right);
+                yield holds == null ? Interval.BOOLEAN : Interval.of(holds ? 1 : 0);
+            }
+            case ANDB -> Interval.of(left.low() & right.low(), left.high() & right.high());
+            case ORB -> Interval.of(left.low() | right.low(), left.high() | right.high());
+            default -> getDefault(type);
+        };
+    }
+
+    /**
+     * @return the ranges where the condition holds or not, or null if it never does
+     */
+    private Map<String, Interval> refine(Instruction condition, boolean holds, Map<String, Interval> ranges) {
+        var value = evaluate(condition, ranges, new Type(ElementType.BOOLEAN));
+        if (value.isConstant() && (value.low() != 0) != holds) {
+            return null;
+        }
+
+        var refined = new HashMap<>(ranges);
+
+        if (condition instanceof SingleOpInstruction single && variables.isVariable(single.getSingleOperand())
+                && !(single.getSingleOperand() instanceof ArrayOperand)) {
+            set(refined, ((Operand) single.getSingleOperand()).getName(), Interval.of(holds ? 1 : 0));
+        } else if (condition instanceof UnaryOpInstruction unary && variables.isVariable(unary.getOperand())
+                && !(unary.getOperand() instanceof ArrayOperand)) {
+            set(refined, ((Operand) unary.getOperand()).getName(), Interval.of(holds ? 0 : 1));
+        } else if (condition instanceof BinaryOpInstruction binary) {
+            var opType = binary.getOperation().getOpType();
+            return refine(holds ? opType : negate(opType), binary.getLeftOperand(), binary.getRightOperand(),
+                    refined);
+        }
+
+        return refined;
+    }
+
+    /**
+     * @return the ranges where the comparison of the operands holds, or null if it never does
+     */
+    private Map<String, Interval> refine(OperationType opType, Element left, Element right,
+                                         Map<String, Interval> ranges) {
+        var leftRange = get(left, ranges);
+        var rightRange = get(right, ranges);
+
+        Interval newLeft;
+        Interval newRight;
+        switch (opType) {
+            case LTH -> {
+                newLeft = new Interval(leftRange.low(), Math.min(leftRange.high(), rightRange.high() - 1));
+                newRight = new Interval(Math.max(rightRange.low(), leftRange.low() + 1), rightRange.high());
+            }
+            case LTE -> {
+                newLeft = new Interval(leftRange.low(), Math.min(leftRange.high(), rightRange.high()));
+                newRight = new Interval(Math.max(rightRange.low(), leftRange.low()), rightRange.high());
+            }
+            case GTH -> {
+                return refine(OperationType.LTH, right, left, ranges);
+            }
+            case GTE -> {
+                return refine(OperationType.LTE, right, left, ranges);
+            }
+            case EQ -> {
+                newLeft = new Interval(Math.max(leftRange.low(), rightRange.low()),
+                        Math.min(leftRange.high(), rightRange.high()));
+                newRight = newLeft;
+            }
+            case NEQ -> {
+                newLeft = exclude(leftRange, rightRange);
+                newRight = exclude(rightRange, leftRange);
+            }
+            default -> {
+                return ranges;
+            }
+        }
+
+        if (newLeft.low() > newLeft.high() || newRight.low() > newRight.high()) {
+            return null;
+        }
+
+        if (isTrackedVariable(left)) {
+            set(ranges, ((Operand) left).getName(), newLeft);
+        }
+        if (isTrackedVariable(right)) {
+            set(ranges, ((Operand) right).getName(), newRight);
+        }
+
+        return ranges;
+    }
+
+    /**
+     * @return the interval without the value of the other one, if it is a constant at one of its ends
+     */
+    private static Interval exclude(Interval interval, Interval other) {
+        if (!other.isConstant()) {
+            return interval;
+        }
+
+        if (other.low() == interval.low()) {
+            return new Interval(interval.low() + 1, interval.high());
+        }
+        if (other.low() == interval.high()) {
+            return new Interval(interval.low(), interval.high() - 1);
+        }
+
+        return interval;
+    }
+
+    /**
+     * @return true if the comparison always holds, false if it never does, or null if it depends
+     */
+    private static Boolean compare(OperationType opType, Interval left, Interval right) {
+        return switch (opType) {
+            case LTH -> left.high() < right.low() ? Boolean.TRUE : left.low() >= right.high() ? Boolean.FALSE : null;
+            case LTE -> left.high() <= right.low() ? Boolean.TRUE : left.low() > right.high() ? Boolean.FALSE : null;
+            case GTH -> compare(OperationType.LTH, right, left);
+            case GTE -> compare(OperationType.LTE, right, left);
+            case EQ -> left.isConstant() && left.equals(right) ? Boolean.TRUE
+                    : left.high() < right.low() || right.high() < left.low() ? Boolean.FALSE : null;
+            case NEQ -> {
+                var equal = compare(OperationType.EQ, left, right);
+                yield equal == null ? null : !equal;
+            }
+            default -> null;
+        };
+    }
+
+    private static OperationType negate(OperationType opType) {
+        return switch (opType) {
+            case LTH -> OperationType.GTE;
+            case GTE -> OperationType.LTH;
+            case GTH -> OperationType.LTE;
+            case LTE -> OperationType.GTH;
+            case EQ -> OperationType.NEQ;
+            case NEQ -> OperationType.EQ;
+            default -> opType;
+        };
+    }
+
+    /**
+     * Turns a branch that is always taken into a goto, and removes one that never is.
+     *
+     * @return true if the branch was replaced or removed
+     */
+    private static boolean prune(CondBranchInstruction branch, boolean taken, Method method) {
+        var instructions = method.getInstructions();
+        var index = instructions.indexOf(branch);
+
+        if (taken) {
+            var jump = new GotoInstruction(branch.getLabel());
+            instructions.set(index, jump);
+            method.getLabels().replaceAll((label, inst) -> inst == branch ? jump : inst);
+            return true;
+        }
+
+        // its labels go to the instruction after it, which every path then continues to
+        if (index + 1 >= instructions.size()) {
+            return false;
+        }
+
+        var next = instructions.get(index + 1);
+        instructions.remove(index);
+        method.getLabels().replaceAll((label, inst) -> inst == branch ? next : inst);
+        return true;
+    }
+
+    /**
+     * @return the number of blocks removed, which no path from the start of the method reaches
+     */
+    private static int removeUnreachable(Method method) {
+        var cfg = new ControlFlowGraph(method);
+        var reachable = new HashSet<>(cfg.getReversePostorder());
+
+        var removed = Collections.newSetFromMap(new IdentityHashMap<Instruction, Boolean>());
+        var count = 0;
+        for (var block : cfg.getBlocks()) {
+            if (!reachable.contains(block) && !block.getInstructions().isEmpty()) {
+                removed.addAll(block.getInstructions());
+                count++;
+            }
+        }
+
+        if (count > 0) {
+            method.getInstructions().removeIf(removed::contains);
+            method.getLabels().values().removeIf(removed::contains);
+        }
+
+        return count;
+    }
+
+    private Interval get(Element element, Map<String, Interval> ranges) {
+        if (element instanceof LiteralElement literal) {
+            return Interval.of(Integer.parseInt(literal.getLiteral()));
+        }
+
+        if (isTrackedVariable(element)) {
+            var name = ((Operand) element).getName();
+            return ranges.getOrDefault(name, getDefault(variables.getType(name)));
+        }
+
+        return getDefault(element.getType());
+    }
+
+    /**
+     * Sets the range of a variable, which is left out when it is the whole range of its type, so that equal ranges
+     * are equal maps.
+     */
+    private void set(Map<String, Interval> ranges, String variable, Interval range) {
+        if (range.equals(getDefault(variables.getType(variable)))) {
+            ranges.remove(variable);
+        } else {
+            ranges.put(variable, range);
+        }
+    }
+
+    private static Map<String, Interval> join(Map<String, Interval> first, Map<String, Interval> second) {
+        var joined = new HashMap<String, Interval>();
+        first.forEach((variable, range) -> {
+            if (second.containsKey(variable)) {
+                joined.put(variable, range.join(second.get(variable)));
+            }
+        });
+        return joined;
+    }
+
+    private static Map<String, Interval> widen(Map<String, Interval> previous, Map<String, Interval> next) {
+        var widened = new HashMap<String, Interval>();
+        previous.forEach((variable, range) -> {
+            if (next.containsKey(variable)) {
+                widened.put(variable, range.widen(range.join(next.get(variable))));
+            }
+        });
+        return widened;
+    }
+
+    private boolean isTrackedVariable(Element element) {
+        return variables.isVariable(element) && !(element instanceof ArrayOperand)
+                && isTracked(variables.getType(((Operand) element).getName()));
+    }
+
+    private static boolean isTracked(Type type) {
+        var elementType = type.getTypeOfElement();
+        return elementType == ElementType.INT32 || elementType == ElementType.BOOLEAN;
+    }
+
+    private static Interval getDefault(Type type) {
+        return type.getTypeOfElement() == ElementType.BOOLEAN ? Interval.BOOLEAN : Interval.INT;
+    }
+
+    private static Interval getCorners(Interval left, Interval right, LongBinaryOperator op) {
+        var values = new long[]{op.applyAsLong(left.low(), right.low()), op.applyAsLong(left.low(), right.high()),
+                op.applyAsLong(left.high(), right.low()), op.applyAsLong(left.high(), right.high())};
+        return Interval.of(Arrays.stream(values).min().getAsLong(), Arrays.stream(values).max().getAsLong());
+    }
+}
@@ -0,0 +1,122 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.pipeline.MethodUnit;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+
+import java.util.HashSet;
+
+/**
+ * Replaces calls to pure methods of the class with literal arguments by the value they return, found by running them
+ * in an {@link OllirInterpreter} with a limit on the instructions run per call.
+ * <p>
+ * A call is only folded when the object it is made on cannot be null: {@code this}, or a local only ever assigned new
+ * objects of the class, directly or through copies.
+ */
+public class CallFolding implements OptimizationPass<MethodUnit> {
+
+    private final int steps;
+
+    private ClassUnit analyzedClass;
+    private PureMethods pureMethods;
+
+    /**
+     * @param steps the maximum number of instructions run for each call
+     */
+    public CallFolding(int steps) {
+        this.steps = steps;
+    }
+
+    @Override
+    public String getName() {
+        return "fold-calls";
+    }
+
+    @Override
+    public int run(MethodUnit target) {
+        // a limit of 0 disables the pass
+        if (steps <= 0) {
+            return 0;
+        }
+
+        var method = target.getMethod();
+
+        // the same for every method of the class
+        if (analyzedClass != method.getOllirClass()) {
+            analyzedClass = method.getOllirClass();
+            pureMethods = new PureMethods(analyzedClass);
+        }
+
+        var changes = 0;
+        var instructions = method.getInstructions();
+
+        for (int i = 0; i < instructions.size(); i++) {
+            if (!(instructions.get(i) instanceof AssignInstruction assign)
+                    || !(assign.getRhs() instanceof CallInstruction call) || !isFoldable(call, method)) {
+                continue;
+            }
+
+            var arguments = call.getArguments().stream()
+                    .map(argument -> Integer.parseInt(((LiteralElement) argument).getLiteral()))
+                    .toList();
+
+            var callee = pureMethods.getMethod(PureMethods.getMethodName(call));
+            var value = new OllirInterpreter(pureMethods).call(callee, arguments, steps);
+            if (value.isEmpty()) {
+                continue;
+            }
+
+            var literal = new LiteralElement(Integer.toString(value.get()), call.getReturnType());
+            var folded = new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                    new SingleOpInstruction(literal));
+
+            instructions.set(i, folded);
+            method.getLabels().replaceAll((label, inst) -> inst == assign ? folded : inst);
+            changes++;
+        }
+
+        return changes;
+    }
+
+    private boolean isFoldable(CallInstruction call, Method method) {
+        return call.getInvocationType() == CallType.invokevirtual
+                && pureMethods.isPure(PureMethods.getMethodName(call))
+                && call.getArguments().stream().allMatch(argument -> argument instanceof LiteralElement)
+                && call.getCaller() instanceof Operand caller
+                && caller.getType() instanceof ClassType type
+                && type.getName().equals(method.getOllirClass().getClassName())
+                && isNewObject(caller.getName(), method, new HashSet<>());
+    }
+
+    private static boolean isNewObject(String variable, Method method, HashSet<String> visited) {
+        if (variable.equals("this")) {
+            return true;
+        }
+
+        // parameters may be null, and copies may go round in cycles
+        if (!visited.add(variable) || method.getParams().stream()
+                .anyMatch(param -> param instanceof Operand operand && operand.getName().equals(variable))) {
+            return false;
+        }
+
+        var assigned = false;
+        for (var inst : method.getInstructions()) {
+            if (!(inst instanceof AssignInstruction assign) || !(assign.getDest() instanceof Operand dest)
+                    || !dest.getName().equals(variable)) {
+                continue;
+            }
+
+            var rhs = assign.getRhs();
+            var isNew = rhs instanceof CallInstruction call && call.getInvocationType() == CallType.NEW
+                    || rhs instanceof SingleOpInstruction single && single.getSingleOperand() instanceof Operand source
+                    && !(source instanceof ArrayOperand) && isNewObject(source.getName(), method, visited);
+
+            if (!isNew) {
+                return false;
+            }
+            assigned = true;
+        }
+
+        return assigned;
+    }
+}
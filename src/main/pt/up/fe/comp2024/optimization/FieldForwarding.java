@@ -0,0 +1,283 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.pipeline.Analysis;
+import pt.up.fe.comp2024.optimization.pipeline.MethodUnit;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPipelines;
+import pt.up.fe.comp2024.optimization.ssa.BasicBlock;
+import pt.up.fe.comp2024.optimization.ssa.SsaForm;
+
+import java.util.*;
+
+/**
+ * Replaces reads of the fields of {@code this} by the value last read from or written to the field, over a method in
+ * SSA form.
+ * <p>
+ * A value reaches a block when it is the same on every path to it. Any call may change the fields, except to get the
+ * length of an array, to create an object, or to a method of the class that writes no fields, directly or through
+ * the methods it calls, which are the ones of the class under the closed class assumption of
+ * {@link OptimizationPipelines}.
+ */
+public class FieldForwarding implements OptimizationPass<MethodUnit> {
+
+    private ClassUnit analyzedClass;
+    private Set<Method> preservingMethods;
+
+    private int changes = 0;
+
+    @Override
+    public String getName() {
+        return "forward-fields";
+    }
+
+    @Override
+    public Set<Analysis> getRequiredAnalyses() {
+        return Set.of(Analysis.SSA);
+    }
+
+    // only instructions inside the blocks change
+    @Override
+    public Set<Analysis> getPreservedAnalyses() {
+        return Set.of(Analysis.SSA, Analysis.CFG, Analysis.DOMINATORS);
+    }
+
+    @Override
+    public int run(MethodUnit target) {
+        var method = target.getMethod();
+        if (method.isStaticMethod()) {
+            return 0;
+        }
+
+        // the same for every method of the class
+        if (analyzedClass != method.getOllirClass()) {
+            analyzedClass = method.getOllirClass();
+            preservingMethods = findPreservingMethods(analyzedClass);
+        }
+
+        optimize(target.getSsa());
+        return changes;
+    }
+
+    public void optimize(SsaForm ssa) {
+        changes = 0;
+
+        var blocks = ssa.getCfg().getReversePostorder();
+        var entry = ssa.getCfg().getEntry();
+
+        // the values of the fields at the end of each block, null until the block is first visited
+        var available = new HashMap<BasicBlock, Map<String, Element>>();
+
+        boolean changed;
+        do {
+            changed = false;
+            for (var block : blocks) {
+                var fields = getIncoming(block, entry, available);
+                for (var inst : block.getInstructions()) {
+                    transfer(inst, fields, ssa.getMethod());
+                }
+
+                if (!fields.equals(available.get(block))) {
+                    available.put(block, fields);
+                    changed = true;
+                }
+            }
+        } while (changed);
+
+        for (var block : blocks) {
+            var fields = getIncoming(block, entry, available);
+            for (var inst : new ArrayList<>(block.getInstructions())) {
+                if (inst instanceof AssignInstruction assign && getReadField(assign) != null) {
+                    var value = fields.get(getReadField(assign));
+                    if (value != null && forward(ssa, assign, value)) {
+                        changes++;
+                    }
+                }
+
+                transfer(inst, fields, ssa.getMethod());
+            }
+        }
+    }
+
+    /**
+     * @return the values of the fields that are the same at the end of every predecessor of the block
+     */
+    private static Map<String, Element> getIncoming(BasicBlock block, BasicBlock entry,
+                                                    Map<BasicBlock, Map<String, Element>> available) {
+        if (block == entry) {
+            return new HashMap<>();
+        }
+
+        Map<String, Element> fields = null;
+        for (var predecessor : block.getPredecessors()) {
+            var outgoing = available.get(predecessor);
+
+            // not visited yet, e.g. the end of a loop, or unreachable
+            if (outgoing == null) {
+                continue;
+            }
+
+            if (fields == null) {
+                fields = new HashMap<>(outgoing);
+            } else {
+                fields.entrySet().removeIf(field -> !sameElement(field.getValue(), outgoing.get(field.getKey())));
+            }
+        }
+
+        return fields != null ? fields : new HashMap<>();
+    }
+
+    private void transfer(Instruction inst, Map<String, Element> fields, Method method) {
+        if (inst instanceof PutFieldInstruction putField) {
+            if (!isThis(putField.getObject())) {
+                fields.clear();
+                return;
+            }
+
+            var field = putField.getField().getName();
+            var value = putField.getValue();
+            if (value instanceof ArrayOperand) {
+                fields.remove(field);
+            } else {
+                fields.put(field, value);
+            }
+            return;
+        }
+
+        if (inst instanceof AssignInstruction assign) {
+            var field = getReadField(assign);
+
+            // a field already known keeps the value it is known by, as the read is replaced by it
+            if (field != null && !fields.containsKey(field)) {
+                fields.put(field, assign.getDest());
+            }
+
+            inst = assign.getRhs();
+        }
+
+        if (inst instanceof CallInstruction && !isPreserving(inst, method.getOllirClass(), preservingMethods)) {
+            fields.clear();
+        }
+    }
+
+    /**
+     * @return the name of the field of {@code this} the assignment reads, or null
+     */
+    private static String getReadField(AssignInstruction assign) {
+        if (assign.getRhs() instanceof GetFieldInstruction getField && isThis(getField.getObject())
+                && assign.getDest() instanceof Operand dest && !(dest instanceof ArrayOperand)) {
+            return getField.getField().getName();
+        }
+
+        return null;
+    }
+
+    /**
+     * Puts the value in the place of the uses of the variable the field is read into, or assigns it to the variable
+     * when it is a literal that some use cannot take.
+     */
+    private static boolean forward(SsaForm ssa, AssignInstruction assign, Element value) {
+        var dest = (Operand) assign.getDest();
+        if (!value.getType().toString().equals(dest.getType().toString())) {
+            return false;
+        }
+
+        if (value instanceof Operand operand) {
+            ssa.renameUses(dest.getName(), operand.getName());
+            ssa.removeDefinition(dest.getName());
+            return true;
+        }
+
+        var copy = new AssignInstruction(new Operand(dest.getName(), dest.getType()), assign.getTypeOfAssign(),
+                new SingleOpInstruction(value));
+        ssa.replaceInstruction(assign, copy);
+        return true;
+    }
+
+    /**
+     * @param ollirClass
+     * @return the methods and constructors of the class that write no fields, directly or through the methods they
+     * call
+     */
+    private static Set<Method> findPreservingMethods(ClassUnit ollirClass) {
+        var preserving = Collections.newSetFromMap(new IdentityHashMap<Method, Boolean>());
+        preserving.addAll(ollirClass.getMethods());
+
+        // every method starts as preserving, so that recursive methods stay that way
+        boolean changed;
+        do {
+            changed = preserving.removeIf(method -> method.getInstructions().stream()
+                    .anyMatch(inst -> !isPreserving(inst, ollirClass, preserving)));
+        } while (changed);
+
+        return preserving;
+    }
+
+    private static boolean isPreserving(Instruction inst, ClassUnit ollirClass, Set<Method> preserving) {
+        if (inst instanceof PutFieldInstruction) {
+            return false;
+        }
+
+        if (inst instanceof AssignInstruction assign) {
+            inst = assign.getRhs();
+        }
+
+        if (!(inst instanceof CallInstruction call)) {
+            return true;
+        }
+
+        var callType = call.getInvocationType();
+        if (callType == CallType.arraylength || callType == CallType.NEW) {
+            return true;
+        }
+
+        // the constructor of the superclass, which only writes fields when the class extends another one
+        if (callType == CallType.invokespecial && isThis(call.getCaller())) {
+            return ollirClass.getSuperClass() == null;
+        }
+
+        var callee = getCallee(call, ollirClass);
+        return callee != null && preserving.contains(callee);
+    }
+
+    /**
+     * @return the method or constructor of the class that is called, or null if the call is to another class or
+     * the name is overloaded
+     */
+    private static Method getCallee(CallInstruction call, ClassUnit ollirClass) {
+        if (!(call.getCaller() instanceof Operand caller) || !(call.getMethodName() instanceof LiteralElement)) {
+            return null;
+        }
+
+        var isOwnClass = caller.getType().getTypeOfElement() == ElementType.THIS
+                || caller.getType() instanceof ClassType type && type.getName().equals(ollirClass.getClassName());
+        if (!isOwnClass) {
+            return null;
+        }
+
+        var name = PureMethods.getMethodName(call);
+        var callType = call.getInvocationType();
+
+        var callees = ollirClass.getMethods().stream()
+                .filter(method -> callType == CallType.invokespecial
+                        ? method.isConstructMethod() && name.equals("<init>")
+                        : callType == CallType.invokevirtual && !method.isConstructMethod()
+                        && method.getMethodName().equals(name))
+                .toList();
+
+        return callees.size() == 1 ? callees.get(0) : null;
+    }
+
+    private static boolean isThis(Element element) {
+        return element.getType().getTypeOfElement() == ElementType.THIS;
+    }
+
+    private static boolean sameElement(Element first, Element second) {
+        if (first instanceof LiteralElement firstLiteral && second instanceof LiteralElement secondLiteral) {
+            return firstLiteral.getLiteral().equals(secondLiteral.getLiteral());
+        }
+
+        return first instanceof Operand firstOperand && second instanceof Operand secondOperand
+                && firstOperand.getName().equals(secondOperand.getName());
+    }
+}
@@ -3,6 +3,11 @@ package pt.up.fe.comp2024.optimization;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.ollir.JmmOptimization;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.cache.IncrementalCompilation;
+import pt.up.fe.comp2024.optimization.pipeline.MethodUnit;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPipelines;
+import pt.up.fe.comp2024.optimization.pipeline.PassStatistics;
 
 import java.util.Collections;
 
@@ -11,7 +16,8 @@ public class JmmOptimizationImpl implements JmmOptimization {
     @Override
     public OllirResult toOllir(JmmSemanticsResult semanticsResult) {
 
-        var visitor = new OllirGeneratorVisitor(semanticsResult.getSymbolTable());
+        var incremental = IncrementalCompilation.fromConfig(semanticsResult.getConfig()).orElse(null);
+        var visitor = new OllirGeneratorVisitor(semanticsResult.getSymbolTable(), incremental);
         var ollirCode = visitor.visit(semanticsResult.getRootNode());
 
         return new OllirResult(semanticsResult, ollirCode, Collections.emptyList());
@@ -20,7 +26,21 @@ public class JmmOptimizationImpl implements JmmOptimization {
     @Override
     public OllirResult optimize(OllirResult ollirResult) {
 
-        //TODO: Do your OLLIR-based optimizations here
+        var config = ollirResult.getConfig();
+        if (config == null) {
+            return ollirResult;
+        }
+
+        // changes the parsed class in place, the OLLIR code is left as generated
+        var passes = OptimizationPipelines.ollir(config);
+        var statistics = new PassStatistics();
+        for (var method : ollirResult.getOllirClass().getMethods()) {
+            passes.run(new MethodUnit(method), statistics);
+        }
+
+        if (CompilerConfig.getPassStatistics(config) && !statistics.isEmpty()) {
+            System.out.print(statistics.getReport("OLLIR passes:"));
+        }
 
         return ollirResult;
     }
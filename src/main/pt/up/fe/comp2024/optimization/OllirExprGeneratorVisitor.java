@@ -1,14 +1,18 @@
 package pt.up.fe.comp2024.optimization;
 
-import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.AJmmVisitor;
 import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.TreeWalker;
 import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.symboltable.MethodScope;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static pt.up.fe.comp2024.ast.Kind.*;
 
@@ -23,8 +27,58 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
     private final SymbolTable table;
 
+    private MethodScope scope;
+
+    // results of the operands of the expression being generated, computed before the expression itself
+    private final Map<JmmNode, OllirExprResult> operandResults;
+    private boolean generatingOperands;
+
     public OllirExprGeneratorVisitor(SymbolTable table) {
         this.table = table;
+        this.operandResults = new IdentityHashMap<>();
+        this.generatingOperands = false;
+    }
+
+    /**
+     * Generates the operands of an expression bottom-up with an explicit stack before generating the expression, so
+     * that the visit methods, which visit their operands, find their results ready instead of recursing down the
+     * expression.
+     */
+    @Override
+    public OllirExprResult visit(JmmNode node, Void unused) {
+        var operandResult = operandResults.remove(node);
+        if (operandResult != null) {
+            return operandResult;
+        }
+
+        // an operand that was not generated in advance, e.g. visited twice
+        if (generatingOperands) {
+            return super.visit(node, unused);
+        }
+
+        generatingOperands = true;
+        try {
+            TreeWalker.postorder(node, operand -> {
+                if (operand != node) {
+                    operandResults.put(operand, super.visit(operand, unused));
+                }
+            });
+
+            return super.visit(node, unused);
+        } finally {
+            // operands that the visit methods did not ask for
+            operandResults.clear();
+            generatingOperands = false;
+        }
+    }
+
+    /**
+     * Sets the scope of the method whose expressions are about to be visited.
+     *
+     * @param scope
+     */
+    public void setScope(MethodScope scope) {
+        this.scope = scope;
     }
 
     @Override
@@ -120,44 +174,6 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         return new OllirExprResult(code.toString(), computation.toString());
     }
 
-    public String getClosestOccurrenceVariable(String variableName, String methodSignature) {
-        if (variableName.equals("this")){
-            return "class";
-        }
-
-        if (variableName.startsWith("tmp")){
-            return "tmp";
-        }
-
-        for (Symbol s: table.getLocalVariables(methodSignature)){
-            if (s.getName().equals(variableName)){
-                return "local";
-            }
-        }
-        for (Symbol s: table.getParameters(methodSignature)){
-            if (s.getName().equals(variableName)){
-                return "param";
-            }
-        }
-
-        for (Symbol s: table.getFields()){
-            if (s.getName().equals(variableName)){
-                return "field";
-            }
-        }
-
-        for (String s: table.getImports()){
-            var split = s.split("\\.");
-            for (String s1: split){
-                if (s1.equals(variableName)){
-                    return "import";
-                }
-            }
-        }
-
-        return "not found";
-    }
-
     private OllirExprResult visitNewObjExpr(JmmNode node, Void unused) {
         StringBuilder computation = new StringBuilder();
 
@@ -210,11 +226,13 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         var l = table.getParameters(node.get("name"));
         boolean checkVararg = false;
         String varargTmp = "";
+        int varargStart = 0;
 
         for (var i = 1; i < node.getNumChildren(); i++){
             if (!l.isEmpty() && i - 1 < l.size()){
                 if (!checkVararg && l.get(i - 1).getType().getName().equals("vararg")) {
                     checkVararg = true;
+                    varargStart = i;
                     varargTmp = OptUtils.getTemp() + ".array.i32";
                     computation.append(varargTmp).append(SPACE).append(ASSIGN).append(".array.i32").append(SPACE).append("new(array,").append(SPACE)
                             .append(node.getNumChildren() - i).append(".i32).array.i32").append(END_STMT);
@@ -223,7 +241,8 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
             if (checkVararg) {
                 var child = visit(node.getJmmChild(i));
                 computation.append(child.getComputation());
-                computation.append(varargTmp).append("[").append(i - 1).append(".i32].i32").append(SPACE).append(ASSIGN).append(".i32").append(SPACE).append(child.getCode()).append(END_STMT);
+                // indexed from the first argument of the vararg, not from the first parameter
+                computation.append(varargTmp).append("[").append(i - varargStart).append(".i32].i32").append(SPACE).append(ASSIGN).append(".i32").append(SPACE).append(child.getCode()).append(END_STMT);
 
                 if (i == node.getNumChildren() - 1){
                     code.append(", ").append(varargTmp);
@@ -246,7 +265,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         StringBuilder code = new StringBuilder();
         StringBuilder computation = new StringBuilder();
 
-        var methodNode = node.getAncestor(METHOD_DECL).orElseThrow();
+        var methodNode = scope.getMethodNode();
         var parent = node.getParent();
         boolean isReturnStmt = methodNode.getJmmChild(methodNode.getNumChildren() - 1).equals(node);
 
@@ -258,24 +277,19 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         computation.append(lhsVisit.getComputation());
         var lhsCode = lhsVisit.getCode();
 
-        String occurs = this.getClosestOccurrenceVariable(lhsName, methodNode.get("name"));
+        String occurs = scope.getOccurrence(lhsName);
         var statOrVir = occurs.equals("import") ? "invokestatic(" : "invokevirtual(";
 
         var params = buildParams(node);
 
         if (EXPR_STMT.check(parent) ){
-            String type = occurs.equals("import") || occurs.equals("local") || occurs.equals("param") ? "" : lhsName.equals("this") ? "" :
+            // fields were already read into a temporary
+            String type = occurs.equals("import") || occurs.equals("local") || occurs.equals("param") || occurs.equals("field") ? "" : lhsName.equals("this") ? "" :
                     OptUtils.toOllirType(new Type(node.get("type"), false));
             String endType = OptUtils.toOllirType(new Type("void", false));
-            String tmp = "";
 
-            if (occurs.equals("field")){
-                tmp = OptUtils.getTemp() + type;
-                computation.append(tmp).append(SPACE).append(ASSIGN).append(type).append(SPACE)
-                        .append("getfield(this, ").append(lhsCode).append(")").append(type).append(END_STMT);
-            }
             computation.append(params.get(0));
-            tmp = tmp.isEmpty() ? lhsCode + type : tmp;
+            var tmp = lhsCode + type;
             computation.append(statOrVir).append(tmp).append(", \"").append(node.get("name")).append("\"")
                     .append(params.get(1)).append(")").append(endType).append(END_STMT);
 
@@ -283,26 +297,16 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         else {
             var type = ASSIGN_STMT.check(parent) ?
                     OptUtils.toOllirType(new Type(parent.getJmmChild(0).get("type"), false)) :
-                    OptUtils.toOllirType(table.getReturnType(methodNode.get("name")));
+                    OptUtils.toOllirType(scope.getReturnType());
 
             if (MEMBER_CALL_EXPR.check(parent)){
                 type = OptUtils.toOllirType(new Type(node.get("type"), false));
             }
 
-            var tmp = OptUtils.getTemp() + type;
-            String tmp2 = "";
+            var tmp = lhsCode;
+            var tmp2 = OptUtils.getTemp() + type;
 
-            if (occurs.equals("field")){
-                computation.append(tmp).append(SPACE).append(ASSIGN).append(type).append(SPACE)
-                        .append("getfield(this, ").append(lhsCode).append(")").append(type).append(END_STMT);
-                tmp2 = OptUtils.getTemp() + type;
-            }
             computation.append(params.get(0));
-
-            if (tmp2.isEmpty()){
-                tmp2 = tmp;
-                tmp = lhsCode;
-            }
             computation.append(tmp2).append(SPACE).append(ASSIGN).append(type).append(SPACE)
                     .append(statOrVir).append(tmp).append(", \"").append(node.get("name"))
                     .append("\"").append(params.get(1)).append(")").append(type).append(END_STMT);
@@ -320,6 +324,106 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         return new OllirExprResult(code);
     }
 
+    /**
+     * Generates the code of a condition in control-flow position, which jumps to the label when the condition has the
+     * given value and falls through otherwise.
+     * <p>
+     * Comparisons become the condition of the jump, {@code &&} becomes a chain of jumps and {@code !} swaps the value
+     * to jump on, so the boolean value of the condition is never stored in a temporary.
+     *
+     * @param node   the condition
+     * @param label  where to jump to
+     * @param jumpIf the value of the condition that makes the code jump
+     * @return
+     */
+    public String generateBranch(JmmNode node, String label, boolean jumpIf) {
+        StringBuilder code = new StringBuilder();
+
+        // the conditions still to generate and the labels still to place, in the order of the code
+        var pending = new ArrayDeque<Object>();
+        pending.push(new Branch(node, label, jumpIf));
+
+        while (!pending.isEmpty()) {
+            var next = pending.pop();
+            if (next instanceof String skip) {
+                code.append(skip).append(":\n");
+                continue;
+            }
+
+            var branch = (Branch) next;
+            var condition = branch.condition();
+
+            if (PRECEDENT_EXPR.check(condition)) {
+                pending.push(new Branch(condition.getJmmChild(0), branch.label(), branch.jumpIf()));
+            } else if (NEG_EXPR.check(condition)) {
+                pending.push(new Branch(condition.getJmmChild(0), branch.label(), !branch.jumpIf()));
+            } else if (BOOL_EXPR.check(condition)) {
+                var value = condition.get("bool").equals("true");
+                if (value == branch.jumpIf()) {
+                    code.append("goto ").append(branch.label()).append(END_STMT);
+                }
+            } else if (BINARY_EXPR.check(condition) && condition.get("op").equals("&&")) {
+                var lhs = condition.getJmmChild(0);
+                var rhs = condition.getJmmChild(1);
+
+                if (!branch.jumpIf()) {
+                    // jumps when either side is false
+                    pending.push(new Branch(rhs, branch.label(), false));
+                    pending.push(new Branch(lhs, branch.label(), false));
+                } else {
+                    // jumps when both sides are true, skipping the right side when the left one is false
+                    var skip = OptUtils.getTemp("SKIP");
+                    pending.push(skip);
+                    pending.push(new Branch(rhs, branch.label(), true));
+                    pending.push(new Branch(lhs, skip, false));
+                }
+            } else {
+                code.append(generateJump(condition, branch.label(), branch.jumpIf()));
+            }
+        }
+
+        return code.toString();
+    }
+
+    /**
+     * Generates a jump on a condition that is neither a negation, a literal nor a {@code &&}.
+     */
+    private String generateJump(JmmNode node, String label, boolean jumpIf) {
+        StringBuilder code = new StringBuilder();
+
+        if (BINARY_EXPR.check(node) && (node.get("op").equals("<") || node.get("op").equals(">"))) {
+            var lhs = visit(node.getJmmChild(0));
+            var rhs = visit(node.getJmmChild(1));
+
+            // the negation of a comparison is the opposite comparison
+            var op = switch (node.get("op")) {
+                case "<" -> jumpIf ? "<" : ">=";
+                default -> jumpIf ? ">" : "<=";
+            };
+
+            code.append(lhs.getComputation());
+            code.append(rhs.getComputation());
+            code.append("if (").append(lhs.getCode()).append(SPACE).append(op).append(".bool").append(SPACE)
+                    .append(rhs.getCode()).append(") goto ").append(label).append(END_STMT);
+
+            return code.toString();
+        }
+
+        var condition = visit(node);
+
+        code.append(condition.getComputation());
+        code.append("if (").append(jumpIf ? "" : "!.bool ").append(condition.getCode()).append(") goto ")
+                .append(label).append(END_STMT);
+
+        return code.toString();
+    }
+
+    /**
+     * A condition to generate a jump on.
+     */
+    private record Branch(JmmNode condition, String label, boolean jumpIf) {
+    }
+
     //code is pretty much the tmp variable name
     //while computation is the code to compute the value to put in the tmp variable
     private OllirExprResult visitBinExpr(JmmNode node, Void unused) {
@@ -327,70 +431,64 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         var lhs = visit(node.getJmmChild(0));
         var rhs = visit(node.getJmmChild(1));
 
-        StringBuilder computation = new StringBuilder();
-
         // code to compute self
         Type resType = TypeUtils.getExprType(node, table);
         String resOllirType = OptUtils.toOllirType(resType);
         String code = OptUtils.getTemp() + resOllirType;
 
+        // the computations of the operands are composed instead of copied, see OllirExprResult.compose
         if (node.get("op").equals("&&")) {
 
-            computation.append(lhs.getComputation());
-
             var l1 = OptUtils.getTemp("L");
             var end = OptUtils.getTemp("END");
-            computation.append("if (").append(lhs.getCode()).append(") goto ").append(l1).append(END_STMT);
-            computation.append(code).append(SPACE).append(ASSIGN).append(resOllirType).append(SPACE).append("0.bool").append(END_STMT);
-            computation.append("goto ").append(end).append(END_STMT);
 
-            computation.append(l1).append(":\n");
-            computation.append(rhs.getComputation());
-            computation.append(code).append(SPACE).append(ASSIGN).append(resOllirType).append(SPACE).append(rhs.getCode()).append(END_STMT);
+            StringBuilder shortCircuit = new StringBuilder();
+            shortCircuit.append("if (").append(lhs.getCode()).append(") goto ").append(l1).append(END_STMT);
+            shortCircuit.append(code).append(SPACE).append(ASSIGN).append(resOllirType).append(SPACE).append("0.bool").append(END_STMT);
+            shortCircuit.append("goto ").append(end).append(END_STMT);
 
-            computation.append(end).append(":\n");
+            shortCircuit.append(l1).append(":\n");
 
-        } else {
-            computation.append(lhs.getComputation());
-            computation.append(rhs.getComputation());
+            StringBuilder assignRhs = new StringBuilder();
+            assignRhs.append(code).append(SPACE).append(ASSIGN).append(resOllirType).append(SPACE).append(rhs.getCode()).append(END_STMT);
 
-            computation.append(code).append(SPACE)
-                    .append(ASSIGN).append(resOllirType).append(SPACE)
-                    .append(lhs.getCode()).append(SPACE);
+            assignRhs.append(end).append(":\n");
 
-            computation.append(node.get("op")).append(resOllirType).append(SPACE)
-                    .append(rhs.getCode()).append(END_STMT);
+            return OllirExprResult.compose(code, lhs, shortCircuit.toString(), rhs, assignRhs.toString());
         }
 
-        return new OllirExprResult(code, computation);
+        StringBuilder computation = new StringBuilder();
+        computation.append(code).append(SPACE)
+                .append(ASSIGN).append(resOllirType).append(SPACE)
+                .append(lhs.getCode()).append(SPACE);
+
+        computation.append(node.get("op")).append(resOllirType).append(SPACE)
+                .append(rhs.getCode()).append(END_STMT);
+
+        return OllirExprResult.compose(code, lhs, rhs, computation.toString());
     }
 
 
     private OllirExprResult visitVarRef(JmmNode node, Void unused) {
         StringBuilder computation = new StringBuilder();
-        var classMethodParent = node;
         var parent = node.getParent();
 
-        while (!METHOD_DECL.check(classMethodParent)){
-            classMethodParent = classMethodParent.getParent();
-        }
-        var occurs = this.getClosestOccurrenceVariable(node.get("name"), classMethodParent.get("name"));
-
-
         var id = node.get("name");
-        Type type = TypeUtils.getExprType(node, table);
+        var occurs = scope.getOccurrence(id);
+
+        Type type = TypeUtils.getExprType(node, table, scope);
         String ollirType = OptUtils.toOllirType(type);
 
         String code = ollirType.equals(".") ? id :  id + ollirType;
         code = ARRAY_REF_EXPR.check(parent) && ollirType.equals(".array.i32") ? id : code;
 
-        if (occurs.equals("field") ){
-            if (parent.getJmmChild(1 % parent.getNumChildren()).equals(node)){
-                var tmp = OptUtils.getTemp() + ollirType;
-                computation.append(tmp).append(SPACE).append(ASSIGN).append(ollirType).append(SPACE)
-                        .append("getfield(this, ").append(code).append(")").append(ollirType).append(END_STMT);
-                code = tmp;
-            }
+        // a field is read into a temporary wherever it is used, except as the target of an assignment
+        if (occurs.equals("field") && !(ASSIGN_STMT.check(parent) && parent.getJmmChild(0).equals(node))) {
+            var tmp = OptUtils.getTemp();
+            computation.append(tmp).append(ollirType).append(SPACE).append(ASSIGN).append(ollirType).append(SPACE)
+                    .append("getfield(this, ").append(id).append(ollirType).append(")").append(ollirType)
+                    .append(END_STMT);
+            code = ARRAY_REF_EXPR.check(parent) && ollirType.equals(".array.i32") ? tmp : tmp + ollirType;
         }
 
         return new OllirExprResult(code, computation.toString());
@@ -1,15 +1,44 @@
 package pt.up.fe.comp2024.optimization;
 
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+
 public class OllirExprResult {
 
     public static final OllirExprResult EMPTY = new OllirExprResult("", "");
 
-    private final String computation;
+    // null until joined, when the computation is made of parts
+    private String computation;
+    // Strings and results whose computations make up this computation, or null
+    private final List<Object> computationParts;
     private final String code;
 
     public OllirExprResult(String code, String computation) {
         this.code = code;
         this.computation = computation;
+        this.computationParts = null;
+    }
+
+    private OllirExprResult(String code, List<Object> computationParts) {
+        this.code = code;
+        this.computation = null;
+        this.computationParts = computationParts;
+    }
+
+    /**
+     * Builds a result whose computation is the concatenation of the given parts, each either a String or the
+     * computation of another result.
+     * <p>
+     * The parts are only joined when the computation is asked for, so results nested inside each other (e.g. long
+     * chains of binary expressions) do not copy the computations of their operands again at every level.
+     *
+     * @param code
+     * @param computationParts
+     * @return
+     */
+    public static OllirExprResult compose(String code, Object... computationParts) {
+        return new OllirExprResult(code, List.of(computationParts));
     }
 
     public OllirExprResult(String code) {
@@ -21,9 +50,42 @@ public class OllirExprResult {
     }
 
     public String getComputation() {
+        if (computation == null) {
+            computation = joinComputation();
+        }
+
         return computation;
     }
 
+    private String joinComputation() {
+        var joined = new StringBuilder();
+
+        // explicit stack, nested results can be as deep as the expression
+        var stack = new ArrayDeque<Iterator<Object>>();
+        stack.push(computationParts.iterator());
+
+        while (!stack.isEmpty()) {
+            var parts = stack.peek();
+            if (!parts.hasNext()) {
+                stack.pop();
+                continue;
+            }
+
+            var part = parts.next();
+            if (part instanceof OllirExprResult result) {
+                if (result.computation != null) {
+                    joined.append(result.computation);
+                } else {
+                    stack.push(result.computationParts.iterator());
+                }
+            } else {
+                joined.append((String) part);
+            }
+        }
+
+        return joined.toString();
+    }
+
     public String getCode() {
         return code;
     }
@@ -31,7 +93,7 @@ public class OllirExprResult {
     @Override
     public String toString() {
         return "OllirNodeResult{" +
-                "computation='" + computation + '\'' +
+                "computation='" + getComputation() + '\'' +
                 ", code='" + code + '\'' +
                 '}';
     }
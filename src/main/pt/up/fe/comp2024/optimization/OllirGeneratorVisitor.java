@@ -1,12 +1,20 @@
 package pt.up.fe.comp2024.optimization;
 
-import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.AJmmVisitor;
 import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.analysis.optimization.LoopRotation;
+import pt.up.fe.comp2024.ast.Kind;
 import pt.up.fe.comp2024.ast.NodeUtils;
+import pt.up.fe.comp2024.ast.TreeWalker;
 import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.cache.IncrementalCompilation;
+import pt.up.fe.comp2024.symboltable.MethodScope;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import static pt.up.fe.comp2024.ast.Kind.*;
 
@@ -28,9 +36,78 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
 
     private final OllirExprGeneratorVisitor exprVisitor;
 
+    private MethodScope scope;
+
+    private final IncrementalCompilation incremental;
+
+    // code of the children of the node being generated, computed before the node itself
+    private final Map<JmmNode, String> childResults;
+    private boolean generatingChildren;
+
     public OllirGeneratorVisitor(SymbolTable table) {
+        this(table, null);
+    }
+
+    public OllirGeneratorVisitor(SymbolTable table, IncrementalCompilation incremental) {
         this.table = table;
+        this.incremental = incremental;
         exprVisitor = new OllirExprGeneratorVisitor(table);
+        this.childResults = new IdentityHashMap<>();
+        this.generatingChildren = false;
+    }
+
+    /**
+     * Generates the statements inside a node bottom-up with an explicit stack before generating the node, so that the
+     * visit methods, which visit their children, find their code ready instead of recursing down nested statements.
+     * Expressions are left to the expression visitor.
+     */
+    @Override
+    public String visit(JmmNode node, Void unused) {
+        var childResult = childResults.remove(node);
+        if (childResult != null) {
+            return childResult;
+        }
+
+        // a child that was not generated in advance, e.g. a method taken from the cache
+        if (generatingChildren) {
+            return super.visit(node, unused);
+        }
+
+        generatingChildren = true;
+        try {
+            TreeWalker.walk(node, this::enter, child -> {
+                if (child != node) {
+                    childResults.put(child, super.visit(child, unused));
+                }
+            });
+
+            return super.visit(node, unused);
+        } finally {
+            // children that the visit methods did not ask for
+            childResults.clear();
+            generatingChildren = false;
+        }
+    }
+
+    /**
+     * @return false for the nodes whose children are not generated in advance
+     */
+    private boolean enter(JmmNode node) {
+        if (Arrays.stream(Kind.values()).filter(Kind::isExpr).anyMatch(kind -> kind.check(node))) {
+            return false;
+        }
+
+        if (METHOD_DECL.check(node)) {
+            if (incremental != null && IncrementalCompilation.isReused(node)) {
+                return false;
+            }
+
+            // resolve the method once, its statements and expressions reuse it
+            scope = new MethodScope(node, table);
+            exprVisitor.setScope(scope);
+        }
+
+        return true;
     }
 
 
@@ -53,19 +130,16 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
     }
 
     private String visitIfElseStmt(JmmNode jmmNode, Void unused) {
-        var condition = exprVisitor.visit(jmmNode.getJmmChild(0));
         var ifBody = visit(jmmNode.getJmmChild(1));
         var elseBody = jmmNode.getNumChildren() > 2 ? visit(jmmNode.getJmmChild(2)) : "";
 
         StringBuilder code = new StringBuilder();
-        var thenLabel = OptUtils.getTemp("THEN");
         var elseLabel = OptUtils.getTemp("ELSE");
         var endLabel = OptUtils.getTemp("END");
 
-        code.append(condition.getComputation());
-        code.append("if (").append(condition.getCode()).append(") goto " + thenLabel + ";\n");
-        code.append(jmmNode.getNumChildren() > 2 ? "goto " + elseLabel + ";\n" : "goto " + endLabel + ";\n");
-        code.append(thenLabel).append(": \n");
+        // the then branch falls through from the condition
+        code.append(exprVisitor.generateBranch(jmmNode.getJmmChild(0),
+                jmmNode.getNumChildren() > 2 ? elseLabel : endLabel, false));
         code.append(ifBody);
 
         if (jmmNode.getNumChildren() > 2) {
@@ -80,60 +154,32 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
     }
 
     private String visitWhileStmt(JmmNode jmmNode, Void unused) {
-        var condition = exprVisitor.visit(jmmNode.getJmmChild(0));
         var body = visit(jmmNode.getJmmChild(1));
 
         StringBuilder code = new StringBuilder();
         var loopLabel = OptUtils.getTemp("LOOP");
-        var bodyLabel = OptUtils.getTemp("BODY");
         var endLabel = OptUtils.getTemp("ENDLOOP");
 
+        // rotated into a guarded do-while, so that each iteration takes a single jump back to the body
+        if (LoopRotation.isRotated(jmmNode)) {
+            code.append(exprVisitor.generateBranch(jmmNode.getJmmChild(0), endLabel, false));
+            code.append(loopLabel).append(": \n");
+            code.append(body);
+            code.append(exprVisitor.generateBranch(jmmNode.getJmmChild(0), loopLabel, true));
+            code.append(endLabel).append(": \n");
+
+            return code.toString();
+        }
+
         code.append(loopLabel).append(": \n");
-        code.append(condition.getComputation());
-        code.append("if (").append(condition.getCode()).append(") goto " + bodyLabel + ";\n");
-        code.append("goto " + endLabel + ";\n");
-        code.append(bodyLabel).append(": \n");
+        code.append(exprVisitor.generateBranch(jmmNode.getJmmChild(0), endLabel, false));
         code.append(body);
-        code.append("goto " + loopLabel + ";\n");
+        code.append("goto ").append(loopLabel).append(END_STMT);
         code.append(endLabel).append(": \n");
 
         return code.toString();
     }
 
-    public String getClosestOccurrenceVariable(String variableName, String methodSignature) {
-        if (variableName.equals("this")){
-            return "class";
-        }
-
-        for (Symbol s: table.getLocalVariables(methodSignature)){
-            if (s.getName().equals(variableName)){
-                return "local";
-            }
-        }
-        for (Symbol s: table.getParameters(methodSignature)){
-            if (s.getName().equals(variableName)){
-                return "param";
-            }
-        }
-
-        for (Symbol s: table.getFields()){
-            if (s.getName().equals(variableName)){
-                return "field";
-            }
-        }
-
-        for (String s: table.getImports()){
-            var split = s.split("\\.");
-            for (String s1: split){
-                if (s1.equals(variableName)){
-                    return "import";
-                }
-            }
-        }
-
-        return "not found";
-    }
-
     private String visitExprStmt(JmmNode jmmNode, Void unused) {
         var child = exprVisitor.visit(jmmNode.getJmmChild(0));
         return child.getComputation() + child.getCode();
@@ -167,22 +213,26 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
         if (ARRAY_REF_EXPR.check(child)) child = child.getJmmChild(0);
         var leftName = child.get("name");
 
-        var classMethodParent = node;
-
-        while (!METHOD_DECL.check(classMethodParent)){
-            classMethodParent = classMethodParent.getParent();
-        }
-
-        String occurs = this.getClosestOccurrenceVariable(leftName, classMethodParent.get("name"));
+        String occurs = scope.getOccurrence(leftName);
 
         // code to compute self
         // statement has type of lhs
-        Type thisType = TypeUtils.getExprType(node.getJmmChild(0), table);
+        Type thisType = TypeUtils.getExprType(node.getJmmChild(0), table, scope);
         String typeString = OptUtils.toOllirType(thisType);
 
 
-        if (occurs.equals("field")){
-            code.append("putfield(this, ").append(lhs.getCode()).append(", ").append(rhs.getCode()).append(").V").append(END_STMT);
+        // the elements of an array in a field are stored into the array read from it
+        if (occurs.equals("field") && !ARRAY_REF_EXPR.check(node.getJmmChild(0))){
+            var value = rhs.getCode();
+
+            // putfield only takes a variable or a literal
+            if (NEW_ARRAY_EXPR.check(node.getJmmChild(1)) || ARRAY_REF_EXPR.check(node.getJmmChild(1))) {
+                value = OptUtils.getTemp() + typeString;
+                code.append(value).append(SPACE).append(ASSIGN).append(typeString).append(SPACE)
+                        .append(rhs.getCode()).append(END_STMT);
+            }
+
+            code.append("putfield(this, ").append(lhs.getCode()).append(", ").append(value).append(").V").append(END_STMT);
         }
         else {
             code.append(lhs.getCode());
@@ -202,9 +252,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
 
     private String visitReturn(JmmNode node, Void unused) {
 
-        //TODO: change the whiles to getAncestor because me stupid
-        String methodName = node.getAncestor(METHOD_DECL).map(method -> method.get("name")).orElseThrow();
-        Type retType = table.getReturnType(methodName);
+        Type retType = scope.getReturnType();
 
         StringBuilder code = new StringBuilder();
 
@@ -236,6 +284,10 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
 
     private String visitMethodDecl(JmmNode node, Void unused) {
 
+        if (incremental != null && IncrementalCompilation.isReused(node)) {
+            return incremental.getOllir(node).orElseThrow();
+        }
+
         StringBuilder code = new StringBuilder(".method ");
 
         boolean isPublic = NodeUtils.getBooleanAttribute(node, "isPublic", "false");
@@ -300,6 +352,10 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
         code.append(R_BRACKET);
         code.append(NL);
 
+        if (incremental != null) {
+            incremental.putOllir(node, code.toString());
+        }
+
         return code.toString();
     }
 
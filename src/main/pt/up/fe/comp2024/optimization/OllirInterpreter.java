@@ -0,0 +1,181 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Runs pure methods of a class over int and boolean values, booleans being 0 or 1, with a limit on the number of
+ * instructions run.
+ */
+public class OllirInterpreter {
+
+    /**
+     * Calls nested deeper than this give up, instead of overflowing the stack of the compiler.
+     */
+    private static final int MAX_DEPTH = 200;
+
+    /**
+     * Thrown to give up on a call.
+     */
+    private static class Abort extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Abort() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final PureMethods pureMethods;
+    private final Map<Method, Map<Instruction, Integer>> indexes;
+
+    private int steps;
+    private int depth;
+
+    public OllirInterpreter(PureMethods pureMethods) {
+        this.pureMethods = pureMethods;
+        this.indexes = new HashMap<>();
+    }
+
+    /**
+     * @param method    a pure method
+     * @param arguments
+     * @param steps     the number of instructions that may run, counting those of nested calls
+     * @return the value returned, or empty if the call does not return within the steps, divides by zero, or nests
+     * too deep
+     */
+    public Optional<Integer> call(Method method, List<Integer> arguments, int steps) {
+        this.steps = steps;
+        this.depth = 0;
+
+        try {
+            return Optional.of(execute(method, arguments));
+        } catch (Abort abort) {
+            return Optional.empty();
+        }
+    }
+
+    private int execute(Method method, List<Integer> arguments) {
+        if (++depth > MAX_DEPTH) {
+            throw new Abort();
+        }
+
+        var locals = new HashMap<String, Integer>();
+        var params = method.getParams();
+        for (int i = 0; i < params.size(); i++) {
+            locals.put(((Operand) params.get(i)).getName(), arguments.get(i));
+        }
+
+        var instructions = method.getInstructions();
+        var pc = 0;
+
+        while (pc < instructions.size()) {
+            if (--steps < 0) {
+                throw new Abort();
+            }
+
+            var inst = instructions.get(pc);
+            pc++;
+
+            if (inst instanceof AssignInstruction assign) {
+                locals.put(((Operand) assign.getDest()).getName(), evaluate(assign.getRhs(), locals));
+            } else if (inst instanceof GotoInstruction gotoInst) {
+                pc = getIndex(method, gotoInst.getLabel());
+            } else if (inst instanceof CondBranchInstruction branch) {
+                if (evaluate(branch.getCondition(), locals) != 0) {
+                    pc = getIndex(method, branch.getLabel());
+                }
+            } else if (inst instanceof ReturnInstruction returnInst) {
+                depth--;
+                return getValue(returnInst.getOperand(), locals);
+            } else {
+                evaluate(inst, locals);
+            }
+        }
+
+        throw new Abort();
+    }
+
+    private int evaluate(Instruction inst, Map<String, Integer> locals) {
+        if (inst instanceof SingleOpInstruction single) {
+            return getValue(single.getSingleOperand(), locals);
+        }
+
+        if (inst instanceof UnaryOpInstruction unary) {
+            return getValue(unary.getOperand(), locals) == 0 ? 1 : 0;
+        }
+
+        if (inst instanceof BinaryOpInstruction binary) {
+            var left = getValue(binary.getLeftOperand(), locals);
+            var right = getValue(binary.getRightOperand(), locals);
+
+            return switch (binary.getOperation().getOpType()) {
+                case ADD -> left + right;
+                case SUB -> left - right;
+                case MUL -> left * right;
+                case DIV -> {
+                    // left for the program to throw at run time
+                    if (right == 0) {
+                        throw new Abort();
+                    }
+                    yield left / right;
+                }
+                case SHL -> left << right;
+                case SHR -> left >> right;
+                case SHRR -> left >>> right;
+                case AND, ANDB -> left & right;
+                case OR, ORB -> left | right;
+                case XOR -> left ^ right;
+                case LTH -> left < right ? 1 : 0;
+                case GTH -> left > right ? 1 : 0;
+                case LTE -> left <= right ? 1 : 0;
+                case GTE -> left >= right ? 1 : 0;
+                case EQ -> left == right ? 1 : 0;
+                case NEQ -> left != right ? 1 : 0;
+                default -> throw new Abort();
+            };
+        }
+
+        if (inst instanceof CallInstruction call) {
+            var callee = pureMethods.getMethod(PureMethods.getMethodName(call));
+            if (callee == null) {
+                throw new Abort();
+            }
+
+            var arguments = call.getArguments().stream()
+                    .map(argument -> getValue(argument, locals))
+                    .toList();
+
+            return execute(callee, arguments);
+        }
+
+        throw new Abort();
+    }
+
+    private static int getValue(Element element, Map<String, Integer> locals) {
+        if (element instanceof LiteralElement literal) {
+            return Integer.parseInt(literal.getLiteral());
+        }
+
+        // read before it is assigned
+        var value = locals.get(((Operand) element).getName());
+        if (value == null) {
+            throw new Abort();
+        }
+
+        return value;
+    }
+
+    private int getIndex(Method method, String label) {
+        var methodIndexes = indexes.computeIfAbsent(method, key -> {
+            var instructionIndexes = new IdentityHashMap<Instruction, Integer>();
+            var instructions = key.getInstructions();
+            for (int i = 0; i < instructions.size(); i++) {
+                instructionIndexes.put(instructions.get(i), i);
+            }
+            return instructionIndexes;
+        });
+
+        return methodIndexes.get(method.getLabels().get(label));
+    }
+}
@@ -0,0 +1,123 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPipelines;
+
+import java.util.*;
+
+/**
+ * The methods of a class that compute their int or boolean result only from their int and boolean parameters: they
+ * read no fields or arrays, create no objects, and only call methods of the class on {@code this} that are pure as
+ * well.
+ * <p>
+ * Every method that passes the local checks starts pure, and calling an impure method makes a method impure until
+ * nothing changes, so that recursive methods stay pure. Methods called on {@code this} are those of the class, under
+ * the closed class assumption of {@link OptimizationPipelines}.
+ */
+public class PureMethods {
+
+    private final Map<String, Method> methods;
+    private final Set<String> pure;
+
+    public PureMethods(ClassUnit ollirClass) {
+        this.methods = new HashMap<>();
+        this.pure = new HashSet<>();
+
+        var names = new HashMap<String, Integer>();
+        ollirClass.getMethods().forEach(method -> names.merge(method.getMethodName(), 1, Integer::sum));
+
+        var callees = new HashMap<String, Set<String>>();
+        for (var method : ollirClass.getMethods()) {
+            // overloaded names cannot be told apart by the calls
+            if (method.isConstructMethod() || names.get(method.getMethodName()) > 1) {
+                continue;
+            }
+
+            var called = new HashSet<String>();
+            if (hasPureSignature(method) && method.getInstructions().stream().allMatch(inst -> isPure(inst, called))) {
+                methods.put(method.getMethodName(), method);
+                callees.put(method.getMethodName(), called);
+            }
+        }
+
+        pure.addAll(methods.keySet());
+
+        boolean changed;
+        do {
+            changed = pure.removeIf(name -> !pure.containsAll(callees.get(name)));
+        } while (changed);
+    }
+
+    public boolean isPure(String name) {
+        return pure.contains(name);
+    }
+
+    /**
+     * @param name
+     * @return the pure method with the name, or null
+     */
+    public Method getMethod(String name) {
+        return isPure(name) ? methods.get(name) : null;
+    }
+
+    /**
+     * @param call
+     * @return the name of the method called, without quotes
+     */
+    public static String getMethodName(CallInstruction call) {
+        return ((LiteralElement) call.getMethodName()).getLiteral().replace("\"", "");
+    }
+
+    private static boolean hasPureSignature(Method method) {
+        return isValueType(method.getReturnType())
+                && method.getParams().stream().allMatch(param -> isValueType(param.getType()));
+    }
+
+    private static boolean isPure(Instruction inst, Set<String> called) {
+        if (inst instanceof AssignInstruction assign) {
+            return assign.getDest() instanceof Operand dest && !(dest instanceof ArrayOperand)
+                    && isValueType(dest.getType()) && isPureValue(assign.getRhs(), called);
+        }
+
+        if (inst instanceof CondBranchInstruction branch) {
+            return isPureValue(branch.getCondition(), called);
+        }
+
+        if (inst instanceof ReturnInstruction returnInst) {
+            return returnInst.hasReturnValue() && isPureElement(returnInst.getOperand());
+        }
+
+        return inst instanceof GotoInstruction || isPureValue(inst, called);
+    }
+
+    private static boolean isPureValue(Instruction inst, Set<String> called) {
+        if (inst instanceof SingleOpInstruction single) {
+            return isPureElement(single.getSingleOperand());
+        }
+
+        if (inst instanceof BinaryOpInstruction binary) {
+            return isPureElement(binary.getLeftOperand()) && isPureElement(binary.getRightOperand());
+        }
+
+        if (inst instanceof UnaryOpInstruction unary) {
+            return isPureElement(unary.getOperand());
+        }
+
+        if (inst instanceof CallInstruction call && call.getInvocationType() == CallType.invokevirtual
+                && call.getCaller() instanceof Operand caller && caller.getName().equals("this")
+                && call.getArguments().stream().allMatch(PureMethods::isPureElement)) {
+            called.add(getMethodName(call));
+            return true;
+        }
+
+        return false;
+    }
+
+    private static boolean isPureElement(Element element) {
+        return !(element instanceof ArrayOperand) && isValueType(element.getType());
+    }
+
+    private static boolean isValueType(Type type) {
+        return type.getTypeOfElement() == ElementType.INT32 || type.getTypeOfElement() == ElementType.BOOLEAN;
+    }
+}
@@ -0,0 +1,238 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2024.optimization.pipeline.Analysis;
+import pt.up.fe.comp2024.optimization.pipeline.MethodUnit;
+import pt.up.fe.comp2024.optimization.pipeline.OptimizationPass;
+import pt.up.fe.comp2024.optimization.ssa.Phi;
+import pt.up.fe.comp2024.optimization.ssa.SsaForm;
+
+import java.util.Set;
+
+/**
+ * Folds operations on literals, forwards temporaries into the variable they are copied to, and removes dead
+ * assignments and phis that always select the same value, over a method in SSA form.
+ * <p>
+ * Constants are propagated on the AST before the OLLIR is generated, and are not propagated here.
+ */
+public class SsaSimplification implements OptimizationPass<MethodUnit> {
+
+    private int changes = 0;
+
+    public void optimize(SsaForm ssa) {
+        changes = 0;
+
+        boolean changed;
+        do {
+            changed = false;
+
+            for (var version : ssa.getDefinedVersions()) {
+                // removed by an earlier step of this round
+                var definition = ssa.getDefinition(version);
+                if (definition == null) {
+                    continue;
+                }
+
+                var simplified = definition instanceof Phi phi
+                        ? simplifyPhi(ssa, phi)
+                        : simplifyAssign(ssa, version, (AssignInstruction) definition);
+
+                if (simplified) {
+                    changes++;
+                    changed = true;
+                }
+            }
+        } while (changed);
+    }
+
+    @Override
+    public String getName() {
+        return "ssa-simplify";
+    }
+
+    @Override
+    public Set<Analysis> getRequiredAnalyses() {
+        return Set.of(Analysis.SSA);
+    }
+
+    // only instructions inside the blocks change
+    @Override
+    public Set<Analysis> getPreservedAnalyses() {
+        return Set.of(Analysis.SSA, Analysis.CFG, Analysis.DOMINATORS);
+    }
+
+    @Override
+    public int run(MethodUnit target) {
+        optimize(target.getSsa());
+        return changes;
+    }
+
+    private boolean simplifyPhi(SsaForm ssa, Phi phi) {
+        Element value = null;
+
+        for (var argument : phi.getArguments().values()) {
+            if (argument instanceof Operand operand && operand.getName().equals(phi.getTarget())) {
+                continue;
+            }
+
+            if (value != null && !sameElement(value, argument)) {
+                return false;
+            }
+            value = argument;
+        }
+
+        // the same value comes from every predecessor
+        if (value != null) {
+            ssa.replaceUses(phi.getTarget(), value);
+        }
+
+        if (!ssa.getUses(phi.getTarget()).isEmpty()) {
+            return false;
+        }
+
+        ssa.removeDefinition(phi.getTarget());
+        return true;
+    }
+
+    private boolean simplifyAssign(SsaForm ssa, String version, AssignInstruction assign) {
+        var rhs = assign.getRhs();
+
+        var folded = fold(rhs);
+        if (folded != null) {
+            var type = assign.getTypeOfAssign();
+            var dest = new Operand(version, assign.getDest().getType());
+            ssa.replaceInstruction(assign, new AssignInstruction(dest, type, new SingleOpInstruction(folded)));
+            return true;
+        }
+
+        var uses = ssa.getUses(version);
+
+        if (rhs instanceof SingleOpInstruction single && !(single.getSingleOperand() instanceof ArrayOperand)
+                && single.getSingleOperand() instanceof Operand source && forward(ssa, version, assign, source)) {
+            return true;
+        }
+
+        if (uses.isEmpty() && isPure(rhs)) {
+            ssa.removeDefinition(version);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Turns {@code t := expr; v := t} into {@code v := expr} when the copy follows the only assignment of the
+     * temporary, and nothing else reads it.
+     */
+    private boolean forward(SsaForm ssa, String version, AssignInstruction copy, Operand source) {
+        if (!(ssa.getDefinition(source.getName()) instanceof AssignInstruction sourceAssign)
+                || ssa.getUses(source.getName()).size() != 1
+                || !sourceAssign.getDest().getType().toString().equals(copy.getDest().getType().toString())) {
+            return false;
+        }
+
+        var block = ssa.getBlock(copy);
+        if (ssa.getBlock(sourceAssign) != block) {
+            return false;
+        }
+
+        var instructions = block.getInstructions();
+        var index = instructions.indexOf(copy);
+        if (index < 1 || instructions.get(index - 1) != sourceAssign) {
+            return false;
+        }
+
+        ssa.removeDefinition(version);
+        ssa.renameDefinition(source.getName(), version);
+        return true;
+    }
+
+    private Element fold(Instruction rhs) {
+        if (rhs instanceof UnaryOpInstruction unary && unary.getOperation().getOpType() == OperationType.NOTB
+                && unary.getOperand() instanceof LiteralElement operand) {
+            return newLiteral(getValue(operand) == 0 ? 1 : 0, unary.getOperand().getType());
+        }
+
+        if (rhs instanceof BinaryOpInstruction binary && binary.getOperation().getOpType() == OperationType.MUL
+                && (isZero(binary.getLeftOperand()) || isZero(binary.getRightOperand()))) {
+            return newLiteral(0, new Type(ElementType.INT32));
+        }
+
+        if (!(rhs instanceof BinaryOpInstruction binary)
+                || !(binary.getLeftOperand() instanceof LiteralElement left)
+                || !(binary.getRightOperand() instanceof LiteralElement right)) {
+            return null;
+        }
+
+        int leftValue = getValue(left);
+        int rightValue = getValue(right);
+        var opType = binary.getOperation().getOpType();
+
+        // left for the program to throw at run time
+        if (opType == OperationType.DIV && rightValue == 0) {
+            return null;
+        }
+
+        Integer result = switch (opType) {
+            case ADD -> leftValue + rightValue;
+            case SUB -> leftValue - rightValue;
+            case MUL -> leftValue * rightValue;
+            case DIV -> leftValue / rightValue;
+            case LTH -> leftValue < rightValue ? 1 : 0;
+            case GTH -> leftValue > rightValue ? 1 : 0;
+            case LTE -> leftValue <= rightValue ? 1 : 0;
+            case GTE -> leftValue >= rightValue ? 1 : 0;
+            case EQ -> leftValue == rightValue ? 1 : 0;
+            case NEQ -> leftValue != rightValue ? 1 : 0;
+            case ANDB -> leftValue & rightValue;
+            case ORB -> leftValue | rightValue;
+            default -> null;
+        };
+
+        if (result == null) {
+            return null;
+        }
+
+        var type = switch (opType) {
+            case ADD, SUB, MUL, DIV -> new Type(ElementType.INT32);
+            default -> new Type(ElementType.BOOLEAN);
+        };
+
+        return newLiteral(result, type);
+    }
+
+    private static boolean isPure(Instruction rhs) {
+        if (rhs instanceof SingleOpInstruction single) {
+            return !(single.getSingleOperand() instanceof ArrayOperand);
+        }
+
+        // division may throw
+        if (rhs instanceof BinaryOpInstruction binary) {
+            return binary.getOperation().getOpType() != OperationType.DIV;
+        }
+
+        return rhs instanceof UnaryOpInstruction;
+    }
+
+    private static boolean sameElement(Element first, Element second) {
+        if (first instanceof LiteralElement firstLiteral && second instanceof LiteralElement secondLiteral) {
+            return firstLiteral.getLiteral().equals(secondLiteral.getLiteral());
+        }
+
+        return first instanceof Operand firstOperand && !(first instanceof ArrayOperand)
+                && second instanceof Operand secondOperand && !(second instanceof ArrayOperand)
+                && firstOperand.getName().equals(secondOperand.getName());
+    }
+
+    private static boolean isZero(Element element) {
+        return element instanceof LiteralElement literal && getValue(literal) == 0;
+    }
+
+    private static int getValue(LiteralElement literal) {
+        return Integer.parseInt(literal.getLiteral());
+    }
+
+    private static LiteralElement newLiteral(int value, Type type) {
+        return new LiteralElement(Integer.toString(value), type);
+    }
+}
@@ -0,0 +1,15 @@
+package pt.up.fe.comp2024.optimization.pipeline;
+
+/**
+ * Information about an OLLIR method that passes may require, computed on demand and dropped when a pass changes the
+ * method without preserving it.
+ */
+public enum Analysis {
+    CFG,
+    DOMINATORS,
+    LIVENESS,
+    /**
+     * The method itself in SSA form, put back in normal form before any pass that does not require it.
+     */
+    SSA
+}
@@ -0,0 +1,13 @@
+package pt.up.fe.comp2024.optimization.pipeline;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+
+/**
+ * The AST of a class, which AST passes transform in place.
+ *
+ * @param root
+ * @param table
+ */
+public record AstUnit(JmmNode root, JmmSymbolTable table) implements PassTarget {
+}
@@ -0,0 +1,105 @@
+package pt.up.fe.comp2024.optimization.pipeline;
+
+import org.specs.comp.ollir.Method;
+import pt.up.fe.comp2024.optimization.ssa.*;
+
+import java.util.Set;
+
+/**
+ * An OLLIR method, with the analyses of it computed so far.
+ */
+public class MethodUnit implements PassTarget {
+
+    private final Method method;
+
+    private ControlFlowGraph cfg;
+    private DominatorTree dominators;
+    private Liveness liveness;
+    private SsaForm ssa;
+
+    public MethodUnit(Method method) {
+        this.method = method;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public ControlFlowGraph getCfg() {
+        if (cfg == null) {
+            cfg = ssa != null ? ssa.getCfg() : new ControlFlowGraph(method);
+        }
+
+        return cfg;
+    }
+
+    public DominatorTree getDominators() {
+        if (dominators == null) {
+            dominators = ssa != null ? ssa.getDominators() : new DominatorTree(getCfg());
+        }
+
+        return dominators;
+    }
+
+    /**
+     * @return the liveness of the variables, or of their versions while the method is in SSA form
+     */
+    public Liveness getLiveness() {
+        if (liveness == null) {
+            var variables = ssa != null ? ssa.getVariables() : new Variables(method);
+            liveness = new Liveness(getDominators(), variables);
+        }
+
+        return liveness;
+    }
+
+    public SsaForm getSsa() {
+        if (ssa == null) {
+            ssa = SsaForm.build(method);
+
+            // the blocks of the SSA form replace any built before
+            cfg = null;
+            dominators = null;
+            liveness = null;
+        }
+
+        return ssa;
+    }
+
+    @Override
+    public void prepare(Set<Analysis> required) {
+        if (ssa != null && !required.contains(Analysis.SSA)) {
+            leaveSsa();
+        }
+    }
+
+    @Override
+    public void invalidate(Set<Analysis> preserved) {
+        if (!preserved.contains(Analysis.CFG)) {
+            cfg = null;
+        }
+        if (!preserved.contains(Analysis.DOMINATORS)) {
+            dominators = null;
+        }
+        if (!preserved.contains(Analysis.LIVENESS)) {
+            liveness = null;
+        }
+    }
+
+    @Override
+    public void finish() {
+        if (ssa != null) {
+            leaveSsa();
+        }
+    }
+
+    private void leaveSsa() {
+        ssa.destroy();
+        ssa = null;
+
+        // the blocks are rebuilt with the copies out of SSA
+        cfg = null;
+        dominators = null;
+        liveness = null;
+    }
+}
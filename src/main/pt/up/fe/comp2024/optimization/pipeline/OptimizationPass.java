@@ -0,0 +1,48 @@
+package pt.up.fe.comp2024.optimization.pipeline;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A transformation run by a {@link PassManager} over the AST or over each OLLIR method.
+ *
+ * @param <T> what the pass transforms
+ */
+public interface OptimizationPass<T extends PassTarget> {
+
+    /**
+     * @return the name that selects the pass in "-p"
+     */
+    String getName();
+
+    /**
+     * Passes this one relies on, which must be registered before it, and are enabled along with it.
+     *
+     * @return their names
+     */
+    default List<String> getDependencies() {
+        return List.of();
+    }
+
+    /**
+     * @return the analyses that must be available when the pass runs
+     */
+    default Set<Analysis> getRequiredAnalyses() {
+        return Set.of();
+    }
+
+    /**
+     * @return the analyses that are still valid after the pass changes the code
+     */
+    default Set<Analysis> getPreservedAnalyses() {
+        return Set.of();
+    }
+
+    /**
+     * Runs the pass once.
+     *
+     * @param target
+     * @return the number of changes made
+     */
+    int run(T target);
+}
@@ -0,0 +1,120 @@
+package pt.up.fe.comp2024.optimization.pipeline;
+
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.analysis.optimization.*;
+import pt.up.fe.comp2024.backend.*;
+import pt.up.fe.comp2024.optimization.BranchPruning;
+import pt.up.fe.comp2024.optimization.CallFolding;
+import pt.up.fe.comp2024.optimization.FieldForwarding;
+import pt.up.fe.comp2024.optimization.SsaSimplification;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The passes of each optimization level.
+ * <ul>
+ *     <li>-O0: only iinc for increments, so that the code is otherwise generated instruction by instruction;</li>
+ *     <li>-O1: constant propagation, folding and algebraic simplification on the AST, and the forwarding of fields
+ *     and simplification of the OLLIR in SSA form, with loops rotated, strength reduction, temporaries left on the
+ *     operand stack and the jumps laid out in the backend;</li>
+ *     <li>-O2, the same as "-o": also inlining, loop unrolling, the reduction of induction variables, the folding
+ *     of calls to pure methods and the removal of branches decided by the ranges of the variables, with tail calls,
+ *     switch tables and arrays of literals in static fields in the backend;</li>
+ *     <li>-O3: the same passes, with larger default budgets for inlining, unrolling and folding calls.</li>
+ * </ul>
+ * <p>
+ * A class is compiled alone, so nothing tells whether another class extends it. The optimizations that look into
+ * the method a call on {@code this} runs (inlining, tail calls, pure methods, field forwarding and constant arrays
+ * shared with parameters) assume that it is the method of the compiled class. This is the closed class assumption:
+ * the class has no subclass that overrides its methods.
+ */
+public class OptimizationPipelines {
+
+    /**
+     * @param config
+     * @return the passes over the AST, run after the semantic analysis
+     */
+    public static PassManager<AstUnit> ast(Map<String, String> config) {
+        var manager = new PassManager<AstUnit>(CompilerConfig.getOptimizationLevel(config),
+                CompilerConfig.getPassFlags(config));
+
+        // inlined first, so that the constants of the callers reach the inlined code
+        manager.add(2, new MethodInlining(CompilerConfig.getInlineLimit(config)));
+
+        manager.addFixpoint(1, List.of(new ConstantPropagation(), new ConstantFolding(),
+                new AlgebraicSimplification()));
+
+        // unrolled last, once the bounds of the loops are folded into literals
+        manager.add(2, new LoopUnrolling(CompilerConfig.getUnrollBudget(config)));
+
+        // after unrolling, so that the copies of the body share the reduced variables
+        manager.add(2, new InductionVariables());
+
+        // last, so that the loops the other passes add are rotated as well
+        manager.add(1, new LoopRotation());
+
+        return manager;
+    }
+
+    /**
+     * @param config
+     * @return the passes over each method of the OLLIR, run before the backend
+     */
+    public static PassManager<MethodUnit> ollir(Map<String, String> config) {
+        var manager = new PassManager<MethodUnit>(CompilerConfig.getOptimizationLevel(config),
+                CompilerConfig.getPassFlags(config));
+
+        // folded before the simplification, which forwards the results into their variables
+        manager.add(2, new CallFolding(CompilerConfig.getCallSteps(config)));
+
+        // before the simplification, which removes the copies and reads left unused
+        manager.add(1, new FieldForwarding());
+
+        manager.add(1, new SsaSimplification());
+
+        // out of SSA form, as removing branches changes the blocks
+        manager.add(2, new BranchPruning());
+
+        return manager;
+    }
+
+    /**
+     * @param config
+     * @return the passes that decide how each method of the OLLIR is lowered to Jasmin
+     */
+    public static PassManager<MethodLowering> backend(Map<String, String> config) {
+        var manager = new PassManager<MethodLowering>(CompilerConfig.getOptimizationLevel(config),
+                CompilerConfig.getPassFlags(config));
+
+        manager.add(0, new IncrementFusion());
+        manager.add(1, new StrengthReduction());
+        manager.add(1, new JumpLayout());
+        manager.add(2, new SwitchLowering());
+        manager.add(2, new TailCallElimination());
+        manager.add(2, new ArrayHoisting());
+
+        // last, as the instructions generated in some other way are left out of the trees
+        manager.add(1, new StackTemporaries());
+
+        return manager;
+    }
+
+    /**
+     * @param config
+     * @throws RuntimeException if "-p" names a pass that does not exist
+     */
+    public static void checkPassNames(Map<String, String> config) {
+        var names = new HashSet<>(ast(config).getPassNames());
+        names.addAll(ollir(config).getPassNames());
+        names.addAll(backend(config).getPassNames());
+
+        for (var pass : CompilerConfig.getPassFlags(config).keySet()) {
+            if (!names.contains(pass)) {
+                throw new RuntimeException("Unknown optimization pass '" + pass + "', expected one of "
+                        + names.stream().sorted().toList());
+            }
+        }
+    }
+}
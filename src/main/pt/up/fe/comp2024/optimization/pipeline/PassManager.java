@@ -0,0 +1,155 @@
+package pt.up.fe.comp2024.optimization.pipeline;
+
+import java.util.*;
+
+/**
+ * Runs the passes enabled by an optimization level, in the order they were registered.
+ * <p>
+ * A pass is enabled when the level is at least the one it was registered with, unless "-p" enables or disables it by
+ * name. The dependencies of an enabled pass are enabled along with it, unless "-p" disables them.
+ *
+ * @param <T> what the passes transform
+ */
+public class PassManager<T extends PassTarget> {
+
+    /**
+     * The most times the passes of a fixpoint are repeated. Each run leaves valid code, so passes that keep undoing
+     * each other stop there instead of hanging the compiler, with the changes of the last run kept.
+     */
+    public static final int MAX_FIXPOINT_ROUNDS = 50;
+
+    /**
+     * Passes run one after the other, repeated until none of them changes anything for a fixpoint.
+     */
+    private record Step<T extends PassTarget>(List<OptimizationPass<T>> passes, boolean fixpoint) {
+    }
+
+    private final int level;
+    private final Map<String, Boolean> flags;
+
+    private final List<Step<T>> steps;
+    private final Map<String, OptimizationPass<T>> passes;
+    private final Map<String, Integer> levels;
+    private Set<String> enabled;
+
+    /**
+     * @param level the optimization level, from 0 to 3
+     * @param flags passes enabled or disabled regardless of the level
+     */
+    public PassManager(int level, Map<String, Boolean> flags) {
+        this.level = level;
+        this.flags = flags;
+        this.steps = new ArrayList<>();
+        this.passes = new LinkedHashMap<>();
+        this.levels = new HashMap<>();
+        this.enabled = null;
+    }
+
+    /**
+     * @param level the lowest optimization level that runs the pass
+     * @param pass
+     * @return
+     */
+    public PassManager<T> add(int level, OptimizationPass<T> pass) {
+        return addStep(level, List.of(pass), false);
+    }
+
+    /**
+     * @param level  the lowest optimization level that runs the passes
+     * @param passes passes repeated until none of them changes anything, or {@link #MAX_FIXPOINT_ROUNDS} times
+     * @return
+     */
+    public PassManager<T> addFixpoint(int level, List<OptimizationPass<T>> passes) {
+        return addStep(level, passes, true);
+    }
+
+    private PassManager<T> addStep(int level, List<OptimizationPass<T>> stepPasses, boolean fixpoint) {
+        for (var pass : stepPasses) {
+            for (var dependency : pass.getDependencies()) {
+                if (!passes.containsKey(dependency)) {
+                    throw new IllegalArgumentException("Pass '" + pass.getName() + "' depends on '" + dependency
+                            + "', which must be registered before it");
+                }
+            }
+
+            passes.put(pass.getName(), pass);
+            levels.put(pass.getName(), level);
+        }
+
+        steps.add(new Step<>(stepPasses, fixpoint));
+        enabled = null;
+
+        return this;
+    }
+
+    public Set<String> getPassNames() {
+        return Collections.unmodifiableSet(passes.keySet());
+    }
+
+    public boolean isEnabled(String pass) {
+        return getEnabled().contains(pass);
+    }
+
+    /**
+     * Runs the enabled passes over the target.
+     *
+     * @param target
+     * @param statistics where the runs of each pass are recorded
+     */
+    public void run(T target, PassStatistics statistics) {
+        for (var step : steps) {
+            var stepPasses = step.passes().stream()
+                    .filter(pass -> isEnabled(pass.getName()))
+                    .toList();
+
+            boolean changed;
+            int rounds = 0;
+            do {
+                changed = false;
+                for (var pass : stepPasses) {
+                    changed |= runPass(pass, target, statistics) > 0;
+                }
+                rounds++;
+            } while (step.fixpoint() && changed && rounds < MAX_FIXPOINT_ROUNDS);
+        }
+
+        target.finish();
+    }
+
+    private int runPass(OptimizationPass<T> pass, T target, PassStatistics statistics) {
+        target.prepare(pass.getRequiredAnalyses());
+
+        var start = System.nanoTime();
+        var changes = pass.run(target);
+        statistics.record(pass.getName(), changes, System.nanoTime() - start);
+
+        if (changes > 0) {
+            target.invalidate(pass.getPreservedAnalyses());
+        }
+
+        return changes;
+    }
+
+    private Set<String> getEnabled() {
+        if (enabled != null) {
+            return enabled;
+        }
+
+        enabled = new HashSet<>();
+        passes.keySet().stream()
+                .filter(pass -> flags.getOrDefault(pass, levels.get(pass) <= level))
+                .forEach(enabled::add);
+
+        var pending = new ArrayDeque<>(enabled);
+        while (!pending.isEmpty()) {
+            for (var dependency : passes.get(pending.pop()).getDependencies()) {
+                if (!flags.getOrDefault(dependency, true) || !enabled.add(dependency)) {
+                    continue;
+                }
+                pending.push(dependency);
+            }
+        }
+
+        return enabled;
+    }
+}
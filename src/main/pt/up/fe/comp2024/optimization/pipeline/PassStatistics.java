@@ -0,0 +1,48 @@
+package pt.up.fe.comp2024.optimization.pipeline;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * How many times each pass ran, the changes it made and the time it took, summed over every run.
+ */
+public class PassStatistics {
+
+    private static class Entry {
+        int runs = 0;
+        int changes = 0;
+        long nanos = 0;
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    public void record(String pass, int changes, long nanos) {
+        var entry = entries.computeIfAbsent(pass, name -> new Entry());
+        entry.runs++;
+        entry.changes += changes;
+        entry.nanos += nanos;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public int getChanges(String pass) {
+        var entry = entries.get(pass);
+        return entry == null ? 0 : entry.changes;
+    }
+
+    /**
+     * @param title
+     * @return a table with a line per pass, in the order they first ran
+     */
+    public String getReport(String title) {
+        var report = new StringBuilder(title).append('\n');
+        report.append(String.format("  %-22s %6s %8s %10s%n", "pass", "runs", "changes", "time (ms)"));
+
+        entries.forEach((pass, entry) -> report.append(String.format("  %-22s %6d %8d %10.3f%n",
+                pass, entry.runs, entry.changes, entry.nanos / 1e6)));
+
+        return report.toString();
+    }
+}
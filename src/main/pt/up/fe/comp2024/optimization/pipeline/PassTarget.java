@@ -0,0 +1,31 @@
+package pt.up.fe.comp2024.optimization.pipeline;
+
+import java.util.Set;
+
+/**
+ * What a {@link PassManager} runs its passes over, keeping the analyses of it that passes require up to date.
+ */
+public interface PassTarget {
+
+    /**
+     * Called before each pass runs.
+     *
+     * @param required the analyses the pass requires
+     */
+    default void prepare(Set<Analysis> required) {
+    }
+
+    /**
+     * Called after a pass changed the target.
+     *
+     * @param preserved the analyses still valid
+     */
+    default void invalidate(Set<Analysis> preserved) {
+    }
+
+    /**
+     * Called once every pass ran.
+     */
+    default void finish() {
+    }
+}
@@ -0,0 +1,84 @@
+package pt.up.fe.comp2024.optimization.ssa;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sequence of instructions of a method that is only entered at its first instruction and only left after its last.
+ */
+public class BasicBlock {
+
+    private final int index;
+    private final List<String> labels;
+    private final List<Instruction> instructions;
+    private final List<Phi> phis;
+    private final List<BasicBlock> successors;
+    private final List<BasicBlock> predecessors;
+
+    BasicBlock(int index) {
+        this.index = index;
+        this.labels = new ArrayList<>();
+        this.instructions = new ArrayList<>();
+        this.phis = new ArrayList<>();
+        this.successors = new ArrayList<>();
+        this.predecessors = new ArrayList<>();
+    }
+
+    /**
+     * @return the position of the block in the method, which is also the order the blocks are laid out in
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the labels of the first instruction of the block
+     */
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @return the phis at the start of the block, empty unless the method is in SSA form
+     */
+    public List<Phi> getPhis() {
+        return phis;
+    }
+
+    public List<BasicBlock> getSuccessors() {
+        return successors;
+    }
+
+    public List<BasicBlock> getPredecessors() {
+        return predecessors;
+    }
+
+    /**
+     * @return the goto, branch or return the block ends with, or null if it falls through to the next block
+     */
+    public Instruction getTerminator() {
+        if (instructions.isEmpty()) {
+            return null;
+        }
+
+        var last = instructions.get(instructions.size() - 1);
+        return last instanceof GotoInstruction || last instanceof CondBranchInstruction
+                || last instanceof ReturnInstruction ? last : null;
+    }
+
+    void addSuccessor(BasicBlock successor) {
+        successors.add(successor);
+        successor.predecessors.add(this);
+    }
+
+    @Override
+    public String toString() {
+        return "B" + index + labels;
+    }
+}
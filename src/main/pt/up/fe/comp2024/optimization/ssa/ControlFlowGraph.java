@@ -0,0 +1,123 @@
+package pt.up.fe.comp2024.optimization.ssa;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * The basic blocks of a method and the jumps between them.
+ * <p>
+ * The first block is always an empty entry block that falls through to the first instruction, so that the entry is
+ * never the target of a jump, even when the method starts with a loop.
+ */
+public class ControlFlowGraph {
+
+    private final Method method;
+    private final List<BasicBlock> blocks;
+    private final Map<String, BasicBlock> labelBlocks;
+
+    public ControlFlowGraph(Method method) {
+        this.method = method;
+        this.blocks = new ArrayList<>();
+        this.labelBlocks = new HashMap<>();
+
+        build();
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public BasicBlock getEntry() {
+        return blocks.get(0);
+    }
+
+    /**
+     * @return the blocks, in the order of the instructions of the method
+     */
+    public List<BasicBlock> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * @param label
+     * @return the block that starts at the label
+     */
+    public BasicBlock getBlock(String label) {
+        return labelBlocks.get(label);
+    }
+
+    /**
+     * @return the blocks reachable from the entry, each one before its successors except along back edges
+     */
+    public List<BasicBlock> getReversePostorder() {
+        var postorder = new ArrayList<BasicBlock>();
+        var visited = new HashSet<BasicBlock>();
+
+        // the index of the next successor to visit, for each block on the path from the entry
+        var path = new ArrayDeque<Map.Entry<BasicBlock, Integer>>();
+        visited.add(getEntry());
+        path.push(new AbstractMap.SimpleEntry<>(getEntry(), 0));
+
+        while (!path.isEmpty()) {
+            var top = path.peek();
+            var successors = top.getKey().getSuccessors();
+
+            if (top.getValue() < successors.size()) {
+                var next = successors.get(top.getValue());
+                top.setValue(top.getValue() + 1);
+
+                if (visited.add(next)) {
+                    path.push(new AbstractMap.SimpleEntry<>(next, 0));
+                }
+            } else {
+                postorder.add(path.pop().getKey());
+            }
+        }
+
+        Collections.reverse(postorder);
+        return postorder;
+    }
+
+    private void build() {
+        var labels = new IdentityHashMap<Instruction, List<String>>();
+        method.getLabels().forEach((label, inst) -> labels.computeIfAbsent(inst, i -> new ArrayList<>()).add(label));
+        labels.values().forEach(Collections::sort);
+
+        blocks.add(new BasicBlock(0));
+
+        BasicBlock current = null;
+        for (var inst : method.getInstructions()) {
+            var leader = current == null || labels.containsKey(inst) || current.getTerminator() != null;
+
+            if (leader) {
+                current = new BasicBlock(blocks.size());
+                blocks.add(current);
+
+                for (var label : labels.getOrDefault(inst, List.of())) {
+                    current.getLabels().add(label);
+                    labelBlocks.put(label, current);
+                }
+            }
+
+            current.getInstructions().add(inst);
+        }
+
+        for (int i = 0; i < blocks.size(); i++) {
+            var block = blocks.get(i);
+            var next = i + 1 < blocks.size() ? blocks.get(i + 1) : null;
+            var terminator = block.getTerminator();
+
+            if (terminator instanceof GotoInstruction gotoInst) {
+                block.addSuccessor(labelBlocks.get(gotoInst.getLabel()));
+            } else if (terminator instanceof CondBranchInstruction branch) {
+                block.addSuccessor(labelBlocks.get(branch.getLabel()));
+                if (next != null) {
+                    block.addSuccessor(next);
+                }
+            } else if (terminator == null && next != null) {
+                block.addSuccessor(next);
+            }
+        }
+    }
+}
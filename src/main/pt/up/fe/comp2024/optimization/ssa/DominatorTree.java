@@ -0,0 +1,167 @@
+package pt.up.fe.comp2024.optimization.ssa;
+
+import java.util.*;
+
+/**
+ * Immediate dominators and dominance frontiers of the blocks reachable from the entry of a control flow graph, computed
+ * with the iterative algorithm of Cooper, Harvey and Kennedy.
+ */
+public class DominatorTree {
+
+    private final List<BasicBlock> reversePostorder;
+    private final Map<BasicBlock, Integer> order;
+    private final Map<BasicBlock, BasicBlock> idoms;
+    private final Map<BasicBlock, List<BasicBlock>> children;
+    private final Map<BasicBlock, Set<BasicBlock>> frontiers;
+
+    public DominatorTree(ControlFlowGraph cfg) {
+        this.reversePostorder = cfg.getReversePostorder();
+        this.order = new HashMap<>();
+        this.idoms = new HashMap<>();
+        this.children = new HashMap<>();
+        this.frontiers = new HashMap<>();
+
+        for (int i = 0; i < reversePostorder.size(); i++) {
+            order.put(reversePostorder.get(i), i);
+            children.put(reversePostorder.get(i), new ArrayList<>());
+            frontiers.put(reversePostorder.get(i), new LinkedHashSet<>());
+        }
+
+        computeIdoms();
+        computeFrontiers();
+    }
+
+    /**
+     * @return the reachable blocks, in reverse postorder
+     */
+    public List<BasicBlock> getBlocks() {
+        return reversePostorder;
+    }
+
+    public boolean isReachable(BasicBlock block) {
+        return order.containsKey(block);
+    }
+
+    /**
+     * @param block
+     * @return the immediate dominator of the block, or null for the entry
+     */
+    public BasicBlock getIdom(BasicBlock block) {
+        var idom = idoms.get(block);
+        return idom == block ? null : idom;
+    }
+
+    /**
+     * @param block
+     * @return the blocks the given one immediately dominates
+     */
+    public List<BasicBlock> getChildren(BasicBlock block) {
+        return children.getOrDefault(block, List.of());
+    }
+
+    /**
+     * @param block
+     * @return the blocks where the dominance of the given one ends
+     */
+    public Set<BasicBlock> getFrontier(BasicBlock block) {
+        return frontiers.getOrDefault(block, Set.of());
+    }
+
+    public boolean dominates(BasicBlock dominator, BasicBlock block) {
+        while (block != null) {
+            if (block == dominator) {
+                return true;
+            }
+            block = getIdom(block);
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the reachable blocks, each one before the blocks it dominates
+     */
+    public List<BasicBlock> getPreorder() {
+        var preorder = new ArrayList<BasicBlock>();
+        if (reversePostorder.isEmpty()) {
+            return preorder;
+        }
+
+        var stack = new ArrayDeque<BasicBlock>();
+        stack.push(reversePostorder.get(0));
+        while (!stack.isEmpty()) {
+            var block = stack.pop();
+            preorder.add(block);
+
+            var blockChildren = getChildren(block);
+            for (int i = blockChildren.size() - 1; i >= 0; i--) {
+                stack.push(blockChildren.get(i));
+            }
+        }
+
+        return preorder;
+    }
+
+    private void computeIdoms() {
+        if (reversePostorder.isEmpty()) {
+            return;
+        }
+
+        var entry = reversePostorder.get(0);
+        idoms.put(entry, entry);
+
+        boolean changed;
+        do {
+            changed = false;
+
+            for (var block : reversePostorder.subList(1, reversePostorder.size())) {
+                BasicBlock idom = null;
+                for (var pred : block.getPredecessors()) {
+                    if (!idoms.containsKey(pred)) {
+                        continue;
+                    }
+                    idom = idom == null ? pred : intersect(pred, idom);
+                }
+
+                if (idoms.get(block) != idom) {
+                    idoms.put(block, idom);
+                    changed = true;
+                }
+            }
+        } while (changed);
+
+        for (var block : reversePostorder.subList(1, reversePostorder.size())) {
+            children.get(idoms.get(block)).add(block);
+        }
+    }
+
+    private BasicBlock intersect(BasicBlock first, BasicBlock second) {
+        while (first != second) {
+            while (order.get(first) > order.get(second)) {
+                first = idoms.get(first);
+            }
+            while (order.get(second) > order.get(first)) {
+                second = idoms.get(second);
+            }
+        }
+
+        return first;
+    }
+
+    private void computeFrontiers() {
+        for (var block : reversePostorder) {
+            var preds = block.getPredecessors().stream().filter(this::isReachable).toList();
+            if (preds.size() < 2) {
+                continue;
+            }
+
+            for (var pred : preds) {
+                var runner = pred;
+                while (runner != null && runner != idoms.get(block)) {
+                    frontiers.get(runner).add(block);
+                    runner = getIdom(runner);
+                }
+            }
+        }
+    }
+}
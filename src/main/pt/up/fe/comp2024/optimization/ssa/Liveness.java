@@ -0,0 +1,94 @@
+package pt.up.fe.comp2024.optimization.ssa;
+
+import org.specs.comp.ollir.Operand;
+
+import java.util.*;
+
+/**
+ * The variables live at the start and at the end of each reachable block, with the names they have at the time, phis
+ * reading their arguments at the end of the predecessors.
+ */
+public class Liveness {
+
+    private final Map<BasicBlock, Set<String>> liveIn;
+    private final Map<BasicBlock, Set<String>> liveOut;
+
+    public Liveness(DominatorTree dominators, Variables variables) {
+        this.liveIn = new HashMap<>();
+        this.liveOut = new HashMap<>();
+
+        var reachable = dominators.getBlocks();
+        var gen = new HashMap<BasicBlock, Set<String>>();
+        var kill = new HashMap<BasicBlock, Set<String>>();
+
+        for (var block : reachable) {
+            var blockGen = new HashSet<String>();
+            var blockKill = new HashSet<String>();
+            block.getPhis().forEach(phi -> blockKill.add(phi.getTarget()));
+
+            for (var inst : block.getInstructions()) {
+                for (var use : variables.getUses(inst, inst)) {
+                    if (!blockKill.contains(use.operand().getName())) {
+                        blockGen.add(use.operand().getName());
+                    }
+                }
+
+                var defined = variables.getDefinedName(inst);
+                if (defined != null) {
+                    blockKill.add(defined);
+                }
+            }
+
+            gen.put(block, blockGen);
+            kill.put(block, blockKill);
+            liveIn.put(block, new HashSet<>(blockGen));
+        }
+
+        boolean changed;
+        do {
+            changed = false;
+
+            for (int i = reachable.size() - 1; i >= 0; i--) {
+                var block = reachable.get(i);
+                var out = computeLiveOut(block, variables);
+                liveOut.put(block, out);
+
+                var in = new HashSet<>(out);
+                in.removeAll(kill.get(block));
+                in.addAll(gen.get(block));
+
+                if (!in.equals(liveIn.get(block))) {
+                    liveIn.put(block, in);
+                    changed = true;
+                }
+            }
+        } while (changed);
+    }
+
+    public Set<String> getLiveIn(BasicBlock block) {
+        return Collections.unmodifiableSet(liveIn.getOrDefault(block, Set.of()));
+    }
+
+    public Set<String> getLiveOut(BasicBlock block) {
+        return Collections.unmodifiableSet(liveOut.getOrDefault(block, Set.of()));
+    }
+
+    private Set<String> computeLiveOut(BasicBlock block, Variables variables) {
+        var live = new HashSet<String>();
+
+        for (var successor : block.getSuccessors()) {
+            if (!liveIn.containsKey(successor)) {
+                continue;
+            }
+
+            live.addAll(liveIn.get(successor));
+            for (var phi : successor.getPhis()) {
+                if (phi.getArguments().get(block) instanceof Operand operand && variables.isVariable(operand)) {
+                    live.add(operand.getName());
+                }
+            }
+        }
+
+        return live;
+    }
+}
@@ -0,0 +1,59 @@
+package pt.up.fe.comp2024.optimization.ssa;
+
+import org.specs.comp.ollir.Element;
+import org.specs.comp.ollir.Type;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Selects the version of a variable that reaches the start of a block, depending on the predecessor it came from.
+ */
+public class Phi {
+
+    private final String variable;
+    private final Type type;
+    private String target;
+    private final Map<BasicBlock, Element> arguments;
+
+    Phi(String variable, Type type) {
+        this.variable = variable;
+        this.type = type;
+        this.target = variable;
+        this.arguments = new LinkedHashMap<>();
+    }
+
+    /**
+     * @return the variable of the method the phi is for
+     */
+    public String getVariable() {
+        return variable;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the version the phi defines
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    void setTarget(String target) {
+        this.target = target;
+    }
+
+    /**
+     * @return the value of each predecessor, a version of the variable or a literal
+     */
+    public Map<BasicBlock, Element> getArguments() {
+        return arguments;
+    }
+
+    @Override
+    public String toString() {
+        return target + " = phi" + arguments;
+    }
+}
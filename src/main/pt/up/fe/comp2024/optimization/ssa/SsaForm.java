@@ -0,0 +1,612 @@
+package pt.up.fe.comp2024.optimization.ssa;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * A method of a class in pruned SSA form, with the def-use chains of the versions of its variables.
+ * <p>
+ * Building renames every assignment of a variable {@code x} to a new version {@code x#1}, {@code x#2}, ..., the value
+ * the variable has when the method starts keeping the name {@code x}, and adds a phi at the start of each block where
+ * different versions meet and the variable is still live. The instructions of the method are changed in place, the
+ * phis being kept in the blocks of the control flow graph.
+ * <p>
+ * Destroying gives each version the name of the variable back unless it is live at the same time as another version
+ * of it, which then keeps its own name, and replaces the phis by copies at the end of the predecessors, splitting the
+ * edges from a branch to a block with phis. The instructions, labels and variable table of the method are rebuilt.
+ */
+public class SsaForm {
+
+    private final Method method;
+    private final ControlFlowGraph cfg;
+    private final DominatorTree dominators;
+
+    private final Variables variables;
+    private final Map<String, Integer> versions;
+
+    private final Map<String, Object> definitions;
+    private final Map<String, List<Use>> uses;
+    private final Map<Object, List<Use>> usesByUser;
+    private final Map<Object, BasicBlock> blocks;
+
+    private int labelCounter = 0;
+
+    private SsaForm(Method method) {
+        this.method = method;
+        this.cfg = new ControlFlowGraph(method);
+        this.dominators = new DominatorTree(cfg);
+        this.versions = new HashMap<>();
+        this.definitions = new HashMap<>();
+        this.uses = new HashMap<>();
+        this.usesByUser = new IdentityHashMap<>();
+        this.blocks = new IdentityHashMap<>();
+
+        this.variables = new Variables(method);
+    }
+
+    /**
+     * Puts the method in SSA form.
+     *
+     * @param method
+     * @return
+     */
+    public static SsaForm build(Method method) {
+        var ssa = new SsaForm(method);
+        ssa.insertPhis();
+        ssa.rename();
+        ssa.computeChains();
+
+        return ssa;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public ControlFlowGraph getCfg() {
+        return cfg;
+    }
+
+    public DominatorTree getDominators() {
+        return dominators;
+    }
+
+    public Variables getVariables() {
+        return variables;
+    }
+
+    /**
+     * @return the versions assigned in the method, in no particular order
+     */
+    public List<String> getDefinedVersions() {
+        return new ArrayList<>(definitions.keySet());
+    }
+
+    /**
+     * @param version
+     * @return the assignment or phi that defines the version, or null for the value a variable starts with
+     */
+    public Object getDefinition(String version) {
+        return definitions.get(version);
+    }
+
+    public List<Use> getUses(String version) {
+        return Collections.unmodifiableList(uses.getOrDefault(version, List.of()));
+    }
+
+    /**
+     * @param user an instruction or phi of a reachable block
+     * @return the block it is in
+     */
+    public BasicBlock getBlock(Object user) {
+        return blocks.get(user);
+    }
+
+    /**
+     * Puts a copy of the value in the place of each use of the version that can take it.
+     *
+     * @param version
+     * @param value   a literal or an operand
+     */
+    public void replaceUses(String version, Element value) {
+        for (var use : new ArrayList<>(getUses(version))) {
+            if (use.isReplaceable()) {
+                replaceUse(use, value);
+            }
+        }
+    }
+
+    /**
+     * Puts a copy of the value in the place of a use that can take it.
+     *
+     * @param use
+     * @param value a literal or an operand
+     */
+    public void replaceUse(Use use, Element value) {
+        var copy = copyElement(value);
+        use.replacer().accept(copy);
+        dropUse(use);
+
+        if (variables.isVariable(copy)) {
+            addUse(new Use(use.user(), (Operand) copy, use.replacer()));
+        }
+    }
+
+    /**
+     * Makes every use of the version read another version of the same type instead, including the uses that only
+     * take a variable, such as the name of an array.
+     *
+     * @param version
+     * @param other
+     */
+    public void renameUses(String version, String other) {
+        for (var use : new ArrayList<>(getUses(version))) {
+            if (use.isReplaceable()) {
+                replaceUse(use, new Operand(other, use.operand().getType()));
+            } else {
+                dropUse(use);
+                use.operand().setName(other);
+                addUse(use);
+            }
+        }
+    }
+
+    /**
+     * Removes the assignment or phi that defines the version, along with its uses.
+     *
+     * @param version
+     */
+    public void removeDefinition(String version) {
+        var definition = definitions.remove(version);
+        var block = blocks.remove(definition);
+
+        if (definition instanceof Phi phi) {
+            block.getPhis().remove(phi);
+        } else {
+            removeIdentity(block.getInstructions(), definition);
+        }
+
+        for (var use : usesByUser.getOrDefault(definition, List.of())) {
+            uses.getOrDefault(use.operand().getName(), new ArrayList<>()).remove(use);
+        }
+        usesByUser.remove(definition);
+    }
+
+    /**
+     * Replaces an instruction by another one in its block.
+     *
+     * @param old
+     * @param replacement
+     */
+    public void replaceInstruction(Instruction old, Instruction replacement) {
+        var block = blocks.remove(old);
+        var instructions = block.getInstructions();
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i) == old) {
+                instructions.set(i, replacement);
+            }
+        }
+
+        for (var use : usesByUser.getOrDefault(old, List.of())) {
+            uses.getOrDefault(use.operand().getName(), new ArrayList<>()).remove(use);
+        }
+        usesByUser.remove(old);
+
+        var defined = variables.getDefinedName(old);
+        if (defined != null) {
+            definitions.remove(defined);
+        }
+
+        addInstruction(replacement, block);
+    }
+
+    /**
+     * Makes the assignment of a version define another one instead, which must not be defined already.
+     *
+     * @param from
+     * @param to
+     */
+    public void renameDefinition(String from, String to) {
+        var definition = (AssignInstruction) definitions.remove(from);
+        ((Operand) definition.getDest()).setName(to);
+        definitions.put(to, definition);
+    }
+
+    /**
+     * Takes the method out of SSA form.
+     */
+    public void destroy() {
+        var names = coalesce();
+
+        // every version takes the name of its class
+        for (var block : dominators.getBlocks()) {
+            for (var phi : block.getPhis()) {
+                phi.setTarget(names.getOrDefault(phi.getTarget(), phi.getTarget()));
+                for (var argument : phi.getArguments().values()) {
+                    if (argument instanceof Operand operand) {
+                        operand.setName(names.getOrDefault(operand.getName(), operand.getName()));
+                    }
+                }
+            }
+
+            for (var inst : block.getInstructions()) {
+                for (var use : variables.getUses(inst, inst)) {
+                    use.operand().setName(names.getOrDefault(use.operand().getName(), use.operand().getName()));
+                }
+
+                if (inst instanceof AssignInstruction assign && variables.getDefinedName(inst) != null) {
+                    var dest = (Operand) assign.getDest();
+                    dest.setName(names.getOrDefault(dest.getName(), dest.getName()));
+                }
+            }
+        }
+
+        var instructions = new ArrayList<Instruction>();
+        var labels = new HashMap<String, Instruction>();
+        var pendingLabels = new ArrayList<String>();
+        var splitBlocks = new ArrayList<Map.Entry<String, List<Instruction>>>();
+
+        for (var block : cfg.getBlocks()) {
+            pendingLabels.addAll(block.getLabels());
+
+            var body = new ArrayList<>(block.getInstructions());
+            var terminator = block.getTerminator();
+            var successors = block.getSuccessors();
+
+            for (int i = 0; i < successors.size(); i++) {
+                var copies = getPhiCopies(block, successors.get(i));
+                if (copies.isEmpty()) {
+                    continue;
+                }
+
+                if (terminator instanceof GotoInstruction) {
+                    body.addAll(body.size() - 1, copies);
+                } else if (terminator instanceof CondBranchInstruction branch && i == 0) {
+                    // the branch jumps to a new block with the copies, which then jumps to the target
+                    var label = newLabel();
+                    copies.add(new GotoInstruction(branch.getLabel()));
+                    branch.setLabel(label);
+                    splitBlocks.add(new AbstractMap.SimpleEntry<>(label, copies));
+                } else {
+                    // only run when falling through, which is the last thing the block does
+                    body.addAll(copies);
+                }
+            }
+
+            for (var inst : body) {
+                pendingLabels.forEach(label -> labels.put(label, inst));
+                pendingLabels.clear();
+                instructions.add(inst);
+            }
+        }
+
+        for (var splitBlock : splitBlocks) {
+            labels.put(splitBlock.getKey(), splitBlock.getValue().get(0));
+            instructions.addAll(splitBlock.getValue());
+        }
+
+        method.getInstructions().clear();
+        method.getInstructions().addAll(instructions);
+        method.getLabels().clear();
+        method.getLabels().putAll(labels);
+
+        method.getVarTable().clear();
+        method.buildVarTable();
+    }
+
+    private void insertPhis() {
+        var liveness = new Liveness(dominators, variables);
+
+        // blocks that assign each variable
+        var assigningBlocks = new HashMap<String, Set<BasicBlock>>();
+        for (var block : dominators.getBlocks()) {
+            for (var inst : block.getInstructions()) {
+                var defined = variables.getDefinedName(inst);
+                if (defined != null) {
+                    assigningBlocks.computeIfAbsent(defined, name -> new LinkedHashSet<>()).add(block);
+                }
+            }
+        }
+
+        for (var entry : assigningBlocks.entrySet()) {
+            var variable = entry.getKey();
+            var worklist = new ArrayDeque<>(entry.getValue());
+            var withPhi = new HashSet<BasicBlock>();
+
+            while (!worklist.isEmpty()) {
+                var block = worklist.pop();
+
+                for (var frontier : dominators.getFrontier(block)) {
+                    // pruned: no phi where the variable is dead
+                    if (withPhi.contains(frontier) || !liveness.getLiveIn(frontier).contains(variable)) {
+                        continue;
+                    }
+
+                    frontier.getPhis().add(new Phi(variable, variables.getType(variable)));
+                    withPhi.add(frontier);
+
+                    if (!entry.getValue().contains(frontier)) {
+                        worklist.push(frontier);
+                    }
+                }
+            }
+        }
+    }
+
+    private void rename() {
+        if (dominators.getBlocks().isEmpty()) {
+            return;
+        }
+
+        var stacks = new HashMap<String, Deque<String>>();
+
+        // each frame is a block, the index of its next child, and the variables it pushed a version of
+        record Frame(BasicBlock block, int child, List<String> pushed) {
+        }
+
+        var path = new ArrayDeque<Frame>();
+        path.push(new Frame(dominators.getBlocks().get(0), 0, renameBlock(dominators.getBlocks().get(0), stacks)));
+
+        while (!path.isEmpty()) {
+            var frame = path.pop();
+            var children = dominators.getChildren(frame.block());
+
+            if (frame.child() < children.size()) {
+                path.push(new Frame(frame.block(), frame.child() + 1, frame.pushed()));
+
+                var child = children.get(frame.child());
+                path.push(new Frame(child, 0, renameBlock(child, stacks)));
+            } else {
+                frame.pushed().forEach(variable -> stacks.get(variable).pop());
+            }
+        }
+    }
+
+    /**
+     * Renames the versions defined and used in the block, and sets the arguments of the phis of its successors.
+     *
+     * @return the variables a new version was pushed for
+     */
+    private List<String> renameBlock(BasicBlock block, Map<String, Deque<String>> stacks) {
+        var pushed = new ArrayList<String>();
+
+        for (var phi : block.getPhis()) {
+            var version = newVersion(phi.getVariable());
+            phi.setTarget(version);
+            stacks.computeIfAbsent(phi.getVariable(), variable -> new ArrayDeque<>()).push(version);
+            pushed.add(phi.getVariable());
+        }
+
+        for (var inst : block.getInstructions()) {
+            for (var use : variables.getUses(inst, inst)) {
+                var stack = stacks.get(use.operand().getName());
+                if (stack != null && !stack.isEmpty()) {
+                    use.operand().setName(stack.peek());
+                }
+            }
+
+            var defined = variables.getDefinedName(inst);
+            if (defined != null) {
+                var version = newVersion(defined);
+                ((Operand) ((AssignInstruction) inst).getDest()).setName(version);
+                stacks.computeIfAbsent(defined, variable -> new ArrayDeque<>()).push(version);
+                pushed.add(defined);
+            }
+        }
+
+        for (var successor : block.getSuccessors()) {
+            for (var phi : successor.getPhis()) {
+                var stack = stacks.get(phi.getVariable());
+                var version = stack != null && !stack.isEmpty() ? stack.peek() : phi.getVariable();
+                phi.getArguments().put(block, new Operand(version, phi.getType()));
+            }
+        }
+
+        return pushed;
+    }
+
+    private String newVersion(String variable) {
+        return variable + Variables.VERSION_SEPARATOR + versions.merge(variable, 1, Integer::sum);
+    }
+
+    private void computeChains() {
+        for (var block : dominators.getBlocks()) {
+            for (var phi : block.getPhis()) {
+                definitions.put(phi.getTarget(), phi);
+                blocks.put(phi, block);
+                usesByUser.put(phi, new ArrayList<>());
+
+                for (var pred : phi.getArguments().keySet()) {
+                    if (variables.isVariable(phi.getArguments().get(pred))) {
+                        Consumer<Element> replacer = element -> phi.getArguments().put(pred, element);
+                        addUse(new Use(phi, (Operand) phi.getArguments().get(pred), replacer));
+                    }
+                }
+            }
+
+            for (var inst : block.getInstructions()) {
+                addInstruction(inst, block);
+            }
+        }
+    }
+
+    private void addInstruction(Instruction inst, BasicBlock block) {
+        blocks.put(inst, block);
+        usesByUser.put(inst, new ArrayList<>());
+        variables.getUses(inst, inst).forEach(this::addUse);
+
+        var defined = variables.getDefinedName(inst);
+        if (defined != null) {
+            definitions.put(defined, inst);
+        }
+    }
+
+    private void addUse(Use use) {
+        uses.computeIfAbsent(use.operand().getName(), name -> new ArrayList<>()).add(use);
+        usesByUser.computeIfAbsent(use.user(), user -> new ArrayList<>()).add(use);
+    }
+
+    private void dropUse(Use use) {
+        uses.getOrDefault(use.operand().getName(), new ArrayList<>()).remove(use);
+        usesByUser.getOrDefault(use.user(), new ArrayList<>()).remove(use);
+    }
+
+    /**
+     * Groups the versions of each variable that are never live at the same time, the first group taking the name of
+     * the variable.
+     *
+     * @return the name of each version
+     */
+    private Map<String, String> coalesce() {
+        var liveness = new Liveness(dominators, variables);
+        var interferences = new HashMap<String, Set<String>>();
+
+        for (var block : dominators.getBlocks()) {
+            var live = new HashSet<>(liveness.getLiveOut(block));
+            var instructions = block.getInstructions();
+
+            for (int i = instructions.size() - 1; i >= 0; i--) {
+                var inst = instructions.get(i);
+
+                var defined = variables.getDefinedName(inst);
+                if (defined != null) {
+                    live.forEach(other -> addInterference(defined, other, interferences));
+                    live.remove(defined);
+                }
+
+                variables.getUses(inst, inst).forEach(use -> live.add(use.operand().getName()));
+            }
+
+            for (var phi : block.getPhis()) {
+                live.forEach(other -> addInterference(phi.getTarget(), other, interferences));
+            }
+        }
+
+        // versions in the order they are defined, after the value each variable starts with
+        var ordered = new LinkedHashMap<String, List<String>>();
+        variables.getNames().stream().sorted()
+                .forEach(variable -> ordered.put(variable, new ArrayList<>(List.of(variable))));
+
+        for (var block : dominators.getPreorder()) {
+            block.getPhis().forEach(phi -> ordered.get(phi.getVariable()).add(phi.getTarget()));
+
+            for (var inst : block.getInstructions()) {
+                var defined = variables.getDefinedName(inst);
+                if (defined != null) {
+                    ordered.get(Variables.getVariable(defined)).add(defined);
+                }
+            }
+        }
+
+        var names = new HashMap<String, String>();
+        for (var entry : ordered.entrySet()) {
+            var classes = new ArrayList<List<String>>();
+
+            for (var version : entry.getValue()) {
+                var noInterference = classes.stream()
+                        .filter(members -> members.stream().noneMatch(member ->
+                                interferences.getOrDefault(member, Set.of()).contains(version)))
+                        .findFirst();
+
+                if (noInterference.isPresent()) {
+                    noInterference.get().add(version);
+                    names.put(version, names.get(noInterference.get().get(0)));
+                } else {
+                    classes.add(new ArrayList<>(List.of(version)));
+                    names.put(version, classes.size() == 1 ? entry.getKey() : version);
+                }
+            }
+        }
+
+        return names;
+    }
+
+    private static void addInterference(String first, String second, Map<String, Set<String>> interferences) {
+        // only versions of the same variable may share a name
+        if (first.equals(second) || !Variables.getVariable(first).equals(Variables.getVariable(second))) {
+            return;
+        }
+
+        interferences.computeIfAbsent(first, name -> new HashSet<>()).add(second);
+        interferences.computeIfAbsent(second, name -> new HashSet<>()).add(first);
+    }
+
+    /**
+     * @return the copies that the phis of the successor need at the end of the block, sequentialized so that each
+     * reads the value its source had before any of them
+     */
+    private List<Instruction> getPhiCopies(BasicBlock block, BasicBlock successor) {
+        record Copy(String target, Element source, Type type) {
+        }
+
+        var pending = new ArrayList<Copy>();
+        for (var phi : successor.getPhis()) {
+            var source = phi.getArguments().get(block);
+            if (source == null || source instanceof Operand operand && operand.getName().equals(phi.getTarget())) {
+                continue;
+            }
+            pending.add(new Copy(phi.getTarget(), source, phi.getType()));
+        }
+
+        var copies = new ArrayList<Instruction>();
+        while (!pending.isEmpty()) {
+            var ready = pending.stream()
+                    .filter(copy -> pending.stream().noneMatch(other -> other != copy
+                            && other.source() instanceof Operand operand
+                            && operand.getName().equals(copy.target())))
+                    .findFirst();
+
+            if (ready.isPresent()) {
+                copies.add(newCopy(ready.get().target(), ready.get().source(), ready.get().type()));
+                pending.remove(ready.get());
+                continue;
+            }
+
+            // a cycle, broken by saving one of the targets before it is overwritten
+            var saved = pending.get(0);
+            var temp = saved.target() + Variables.VERSION_SEPARATOR + "swap" + labelCounter++;
+            copies.add(newCopy(temp, new Operand(saved.target(), saved.type()), saved.type()));
+
+            for (int i = 0; i < pending.size(); i++) {
+                var copy = pending.get(i);
+                if (copy.source() instanceof Operand operand && operand.getName().equals(saved.target())) {
+                    pending.set(i, new Copy(copy.target(), new Operand(temp, copy.type()), copy.type()));
+                }
+            }
+        }
+
+        return copies;
+    }
+
+    private static Instruction newCopy(String target, Element source, Type type) {
+        return new AssignInstruction(new Operand(target, type), type, new SingleOpInstruction(copyElement(source)));
+    }
+
+    private String newLabel() {
+        String label;
+        do {
+            label = "SSA_EDGE" + labelCounter++;
+        } while (method.getLabels().containsKey(label) || cfg.getBlock(label) != null);
+
+        return label;
+    }
+
+    private static Element copyElement(Element element) {
+        if (element instanceof LiteralElement literal) {
+            return new LiteralElement(literal.getLiteral(), literal.getType());
+        }
+
+        return new Operand(((Operand) element).getName(), element.getType());
+    }
+
+    private static void removeIdentity(List<?> list, Object element) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == element) {
+                list.remove(i);
+                return;
+            }
+        }
+    }
+}
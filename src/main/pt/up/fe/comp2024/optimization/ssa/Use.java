@@ -0,0 +1,20 @@
+package pt.up.fe.comp2024.optimization.ssa;
+
+import org.specs.comp.ollir.Element;
+import org.specs.comp.ollir.Operand;
+
+import java.util.function.Consumer;
+
+/**
+ * A read of a version of a variable.
+ *
+ * @param user     the instruction or phi that reads it
+ * @param operand  the operand that names the version
+ * @param replacer puts another element in the place of the operand, or null where OLLIR only takes a variable
+ */
+public record Use(Object user, Operand operand, Consumer<Element> replacer) {
+
+    public boolean isReplaceable() {
+        return replacer != null;
+    }
+}
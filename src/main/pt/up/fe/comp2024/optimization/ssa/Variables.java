@@ -0,0 +1,126 @@
+package pt.up.fe.comp2024.optimization.ssa;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * The local variables and parameters of a method, and where its instructions read and assign them.
+ * <p>
+ * Versions of a variable in SSA form are named after it, {@code x#1} being a version of {@code x}.
+ */
+public class Variables {
+
+    static final String VERSION_SEPARATOR = "#";
+
+    private final Map<String, Type> types;
+
+    public Variables(Method method) {
+        this.types = new HashMap<>();
+
+        method.getVarTable().forEach((name, descriptor) -> {
+            var scope = descriptor.getScope();
+            if ((scope == VarScope.LOCAL || scope == VarScope.PARAMETER) && !name.equals("this")
+                    && descriptor.getVarType().getTypeOfElement() != ElementType.CLASS) {
+                types.put(name, descriptor.getVarType());
+            }
+        });
+    }
+
+    /**
+     * @param version
+     * @return the variable of the method the version belongs to
+     */
+    public static String getVariable(String version) {
+        var separator = version.indexOf(VERSION_SEPARATOR);
+        return separator < 0 ? version : version.substring(0, separator);
+    }
+
+    public Set<String> getNames() {
+        return types.keySet();
+    }
+
+    public Type getType(String variable) {
+        return types.get(getVariable(variable));
+    }
+
+    public boolean isVariable(Element element) {
+        return element instanceof Operand operand && types.containsKey(getVariable(operand.getName()));
+    }
+
+    /**
+     * @return the variable the instruction assigns, or null if it assigns none, or only an element of an array
+     */
+    public String getDefinedName(Instruction inst) {
+        if (inst instanceof AssignInstruction assign && assign.getDest() instanceof Operand dest
+                && !(dest instanceof ArrayOperand) && isVariable(dest)) {
+            return dest.getName();
+        }
+
+        return null;
+    }
+
+    /**
+     * @param user the instruction the uses belong to
+     * @param inst the instruction, or part of it, to find the uses in
+     * @return the variables the instruction reads, in the order they are read
+     */
+    public List<Use> getUses(Object user, Instruction inst) {
+        var found = new ArrayList<Use>();
+
+        if (inst instanceof AssignInstruction assign) {
+            if (assign.getDest() instanceof ArrayOperand array) {
+                collectElement(user, array, null, found);
+            }
+            found.addAll(getUses(user, assign.getRhs()));
+        } else if (inst instanceof SingleOpInstruction single) {
+            collectElement(user, single.getSingleOperand(), single::setSingleOperand, found);
+        } else if (inst instanceof BinaryOpInstruction binary) {
+            collectElement(user, binary.getLeftOperand(), binary::setLeftOperand, found);
+            collectElement(user, binary.getRightOperand(), binary::setRightOperand, found);
+        } else if (inst instanceof UnaryOpInstruction unary) {
+            collectElement(user, unary.getOperand(), unary::setOperand, found);
+        } else if (inst instanceof CallInstruction call) {
+            // the caller of new and of static calls is a class
+            var type = call.getInvocationType();
+            if (type != CallType.NEW && type != CallType.invokestatic) {
+                collectElement(user, call.getCaller(), null, found);
+            }
+
+            var arguments = call.getArguments();
+            for (int i = 0; i < arguments.size(); i++) {
+                var index = i;
+                collectElement(user, arguments.get(i), element -> arguments.set(index, element), found);
+            }
+        } else if (inst instanceof PutFieldInstruction putField) {
+            collectElement(user, putField.getObject(), null, found);
+            collectElement(user, putField.getValue(), null, found);
+        } else if (inst instanceof GetFieldInstruction getField) {
+            collectElement(user, getField.getObject(), null, found);
+        } else if (inst instanceof CondBranchInstruction branch) {
+            found.addAll(getUses(user, branch.getCondition()));
+        } else if (inst instanceof ReturnInstruction returnInst && returnInst.getOperand() != null) {
+            collectElement(user, returnInst.getOperand(), returnInst::setOperand, found);
+        }
+
+        return found;
+    }
+
+    private void collectElement(Object user, Element element, Consumer<Element> replacer, List<Use> found) {
+        if (element instanceof ArrayOperand array) {
+            // the array itself cannot be replaced, its indexes can
+            if (isVariable(array)) {
+                found.add(new Use(user, array, null));
+            }
+
+            var indexes = array.getIndexOperands();
+            for (int i = 0; i < indexes.size(); i++) {
+                var index = i;
+                collectElement(user, indexes.get(i), value -> indexes.set(index, value), found);
+            }
+        } else if (isVariable(element)) {
+            found.add(new Use(user, (Operand) element, replacer));
+        }
+    }
+}
@@ -2,6 +2,7 @@ package pt.up.fe.comp2024.optimization_jasmin;
 
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.ast.PostorderJmmVisitor;
+import pt.up.fe.comp2024.ast.TreeWalker;
 import pt.up.fe.specs.util.SpecsCheck;
 import pt.up.fe.specs.util.exceptions.NotImplementedException;
 
@@ -26,6 +27,13 @@ public class JasminExprGeneratorVisitor extends PostorderJmmVisitor<StringBuilde
         addVisit("BinaryExpr", this::visitBinaryExpr);
     }
 
+    @Override
+    public Void visit(JmmNode jmmNode, StringBuilder code) {
+        // same order as PostorderJmmVisitor, but with an explicit stack
+        TreeWalker.postorder(jmmNode, node -> getVisit(node).apply(node, code));
+        return null;
+    }
+
     private Void visitIntegerLiteral(JmmNode integerLiteral, StringBuilder code) {
         code.append("ldc " + integerLiteral.get("value") + NL);
         return null;
@@ -2,14 +2,20 @@ package pt.up.fe.comp2024.parser;
 
 import org.antlr.v4.runtime.ANTLRInputStream;
 import org.antlr.v4.runtime.CommonTokenStream;
-import pt.up.fe.comp.jmm.ast.antlr.AntlrParser;
+import org.antlr.v4.runtime.tree.ParseTree;
+import pt.up.fe.comp.jmm.ast.antlr.JmmErrorListener;
 import pt.up.fe.comp.jmm.parser.JmmParser;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
 import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.specs.util.SpecsSystem;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
  * Copyright 2022 SPeCS.
@@ -26,6 +32,9 @@ import java.util.Map;
 
 public class JmmParserImpl implements JmmParser {
 
+    // ANTLR parses nested statements and parentheses recursively, a few frames per level
+    private static final long PARSER_STACK_SIZE = 256L * 1024 * 1024;
+
     @Override
     public String getDefaultRule() {
         return "program";
@@ -45,12 +54,53 @@ public class JmmParserImpl implements JmmParser {
             var parser = new pt.up.fe.comp2024.JavammParser(tokens);
 
 
-            // Convert ANTLR CST to JmmNode AST
-            return AntlrParser.parse(lex, parser, startingRule, config);
+            // Collect lexical and syntactic errors as reports
+            lex.removeErrorListeners();
+            var lexerListener = new JmmErrorListener(Stage.LEXICAL);
+            lex.addErrorListener(lexerListener);
+
+            parser.removeErrorListeners();
+            var parserListener = new JmmErrorListener(Stage.SYNTATIC);
+            parser.addErrorListener(parserListener);
+
+            var parseTree = parseOnLargeStack(parser, startingRule);
+
+            var reports = new ArrayList<Report>();
+            reports.addAll(lexerListener.getReports());
+            reports.addAll(parserListener.getReports());
+
+            if (reports.stream().anyMatch(report -> report.getType() == ReportType.ERROR)) {
+                return new JmmParserResult(null, reports, config);
+            }
+
+            // Convert ANTLR CST to JmmNode AST, without recursion so that deeply nested programs can be converted
+            var root = ParseTreeConverter.convert(parseTree, parser);
+
+            return new JmmParserResult(root, reports, config);
 
         } catch (Exception e) {
             // There was an uncaught exception during parsing, create an error JmmParserResult without root node
             return JmmParserResult.newError(Report.newError(Stage.SYNTATIC, -1, -1, "Exception during parsing", e), config);
         }
     }
+
+    /**
+     * Runs the starting rule on a thread of its own, whose stack fits programs nested thousands of levels deep.
+     */
+    private static ParseTree parseOnLargeStack(pt.up.fe.comp2024.JavammParser parser, String startingRule)
+            throws Exception {
+        var task = new FutureTask<>(() -> (ParseTree) SpecsSystem.invoke(parser, startingRule));
+
+        var thread = new Thread(null, task, "jmm-parser", PARSER_STACK_SIZE);
+        thread.start();
+
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
 }
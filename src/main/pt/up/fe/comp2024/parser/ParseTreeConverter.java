@@ -0,0 +1,213 @@
+package pt.up.fe.comp2024.parser;
+
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp.jmm.ast.NodePosition;
+import pt.up.fe.comp2024.ast.TreeWalker;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Converts an ANTLR parse tree into JmmNodes.
+ * <p>
+ * Produces the same nodes as the converter of the course library, but walks the parse tree with an explicit stack,
+ * so that long chains of left-recursive expressions (e.g. {@code a + a + ... + a}), which ANTLR parses in a loop,
+ * do not overflow the Java stack when converted. The grammar has no ignore list, so no nodes are removed.
+ */
+public class ParseTreeConverter {
+
+    private final Parser parser;
+
+    // ParseTree does not override equals, this is an identity map
+    private final Map<ParseTree, JmmNode> antlrToJmm;
+
+    // public fields of each context class, found by reflection once per class
+    private final Map<Class<?>, List<Field>> fieldsCache;
+    private final Map<Class<?>, List<String>> hierarchyCache;
+
+    private ParseTreeConverter(Parser parser) {
+        this.parser = parser;
+        this.antlrToJmm = new HashMap<>();
+        this.fieldsCache = new HashMap<>();
+        this.hierarchyCache = new HashMap<>();
+    }
+
+    public static JmmNode convert(ParseTree root, Parser parser) {
+        var converter = new ParseTreeConverter(parser);
+        var rootNode = converter.convertTree(root);
+
+        // now that all nodes were converted, replace attributes that are ANTLR nodes with the equivalent JmmNode
+        TreeWalker.preorder(rootNode, converter::replaceParseTreeAttributes);
+
+        return rootNode;
+    }
+
+    private JmmNode convertTree(ParseTree root) {
+        var rootNode = convertNode(root);
+
+        var pending = new ArrayDeque<ParseTree>();
+        pending.push(root);
+
+        while (!pending.isEmpty()) {
+            var node = pending.pop();
+            var jmmNode = antlrToJmm.get(node);
+
+            for (int i = 0; i < node.getChildCount(); i++) {
+                var child = node.getChild(i);
+
+                // terminal nodes are kept as attributes of their parent
+                if (child instanceof TerminalNode) {
+                    continue;
+                }
+
+                jmmNode.add(convertNode(child));
+                pending.push(child);
+            }
+        }
+
+        return rootNode;
+    }
+
+    private JmmNodeImpl convertNode(ParseTree node) {
+        var jmmNode = new JmmNodeImpl(getKind(node));
+        antlrToJmm.put(node, jmmNode);
+
+        if (node instanceof ParserRuleContext) {
+            jmmNode.setHierarchy(getHierarchy(node.getClass()));
+        }
+
+        addAttributes(jmmNode, node);
+
+        return jmmNode;
+    }
+
+    private void addAttributes(JmmNodeImpl jmmNode, ParseTree node) {
+        var startPosition = parser.getTokenStream().get(node.getSourceInterval().a);
+        var endPosition = parser.getTokenStream().get(node.getSourceInterval().b);
+
+        jmmNode.put(NodePosition.LINE_START.getKey(), Integer.toString(startPosition.getLine()));
+        jmmNode.put(NodePosition.COL_START.getKey(), Integer.toString(startPosition.getCharPositionInLine()));
+        jmmNode.put(NodePosition.LINE_END.getKey(), Integer.toString(endPosition.getLine()));
+        jmmNode.put(NodePosition.COL_END.getKey(), Integer.toString(endPosition.getCharPositionInLine()));
+
+        if (node instanceof TerminalNode terminal) {
+            jmmNode.put("value", terminal.getSymbol().getText());
+            return;
+        }
+
+        for (var field : getPublicFields(node.getClass())) {
+            try {
+                var value = field.get(node);
+
+                if (!field.getType().isAssignableFrom(Token.class)) {
+                    jmmNode.putObject(field.getName(), processValue(value));
+                    continue;
+                }
+
+                // no token for the given field
+                if (value == null) {
+                    continue;
+                }
+
+                jmmNode.put(field.getName(), ((Token) value).getText());
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("Could not access field '" + field.getName() + "' from node " + node, e);
+            }
+        }
+    }
+
+    private void replaceParseTreeAttributes(JmmNode node) {
+        for (var attribute : node.getAttributes()) {
+            var value = node.getObject(attribute);
+
+            if (value instanceof ParseTree parseTree && antlrToJmm.containsKey(parseTree)) {
+                node.putObject(attribute, antlrToJmm.get(parseTree));
+            }
+        }
+    }
+
+    private static Object processValue(Object value) {
+        if (value instanceof Token token) {
+            return token.getText();
+        }
+
+        if (value instanceof List<?> list) {
+            var processed = new ArrayList<>(list.size());
+            for (var element : list) {
+                processed.add(processValue(element));
+            }
+            return processed;
+        }
+
+        return value;
+    }
+
+    private List<Field> getPublicFields(Class<?> nodeClass) {
+        return fieldsCache.computeIfAbsent(nodeClass, key -> {
+            var fields = new ArrayList<Field>();
+
+            for (var currentClass : getNodeClasses(key)) {
+                for (var field : currentClass.getDeclaredFields()) {
+                    if (Modifier.isPublic(field.getModifiers())) {
+                        fields.add(field);
+                    }
+                }
+            }
+
+            return fields;
+        });
+    }
+
+    private List<String> getHierarchy(Class<?> nodeClass) {
+        return hierarchyCache.computeIfAbsent(nodeClass, key -> getNodeClasses(key).stream()
+                .map(ParseTreeConverter::getKind)
+                .toList());
+    }
+
+    /**
+     * @return the context class of the node and its superclasses, up to ParserRuleContext
+     */
+    private static List<Class<?>> getNodeClasses(Class<?> nodeClass) {
+        var nodeClasses = new ArrayList<Class<?>>();
+        var currentClass = nodeClass;
+
+        while (!currentClass.equals(ParserRuleContext.class)) {
+            nodeClasses.add(currentClass);
+            currentClass = currentClass.getSuperclass();
+        }
+
+        return nodeClasses;
+    }
+
+    private String getKind(ParseTree node) {
+        // tokens are terminal nodes
+        if (node instanceof TerminalNode terminal) {
+            return parser.getVocabulary().getSymbolicName(terminal.getSymbol().getType());
+        }
+
+        if (!(node instanceof ParserRuleContext)) {
+            throw new RuntimeException("Expected node to be of class '" + ParserRuleContext.class
+                    + "', but got '" + node.getClass() + "'");
+        }
+
+        return getKind(node.getClass());
+    }
+
+    private static String getKind(Class<?> nodeClass) {
+        var className = nodeClass.getSimpleName();
+
+        // rules end with context
+        if (!className.endsWith("Context")) {
+            throw new RuntimeException("Expected classname to end with 'Context' " + className);
+        }
+
+        return className.substring(0, className.length() - "Context".length());
+    }
+}
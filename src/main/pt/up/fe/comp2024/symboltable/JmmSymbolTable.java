@@ -6,6 +6,7 @@ import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp2024.ast.TypeUtils;
 import pt.up.fe.specs.util.exceptions.NotImplementedException;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -83,4 +84,14 @@ public class JmmSymbolTable implements SymbolTable {
         return localVariables != null ? Collections.unmodifiableList(localVariables) : Collections.emptyList();
     }
 
+    /**
+     * Declares a local variable that is not in the source, e.g. one introduced by an optimization.
+     *
+     * @param methodSignature
+     * @param local
+     */
+    public void addLocalVariable(String methodSignature, Symbol local) {
+        locals.computeIfAbsent(methodSignature, method -> new ArrayList<>()).add(local);
+    }
+
 }
@@ -0,0 +1,135 @@
+package pt.up.fe.comp2024.symboltable;
+
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolved view of a single method declaration.
+ * <p>
+ * Built once when a traversal enters a METHOD_DECL and carried down to its children, so that variable
+ * lookups are map hits instead of parent walks followed by linear scans over the symbol table.
+ */
+public class MethodScope {
+
+    private final JmmNode methodNode;
+    private final String methodName;
+    private final Type returnType;
+
+    // name -> symbol, locals and parameters shadow fields; the analysis rejects a local named like a parameter,
+    // so the order between those two does not matter
+    private final Map<String, Symbol> symbols;
+    // name -> "local", "param" or "field"
+    private final Map<String, String> occurrences;
+    // every part of every import, e.g. "io" and "a" for "a.io"
+    private final Set<String> importParts;
+    // full and simple names of imported classes, e.g. "a.io" and "io" for "a.io"
+    private final Set<String> importedClasses;
+
+    public MethodScope(JmmNode methodNode, SymbolTable table) {
+        this.methodNode = methodNode;
+        this.methodName = methodNode.get("name");
+        this.returnType = table.getReturnType(methodName);
+
+        this.symbols = new HashMap<>();
+        this.occurrences = new HashMap<>();
+        this.importParts = new HashSet<>();
+        this.importedClasses = new HashSet<>();
+
+        for (var field : table.getFields()) {
+            symbols.put(field.getName(), field);
+            occurrences.put(field.getName(), "field");
+        }
+
+        for (var param : table.getParameters(methodName)) {
+            symbols.put(param.getName(), param);
+            occurrences.put(param.getName(), "param");
+        }
+
+        for (var local : table.getLocalVariables(methodName)) {
+            symbols.put(local.getName(), local);
+            occurrences.put(local.getName(), "local");
+        }
+
+        for (var imported : table.getImports()) {
+            var parts = imported.split("\\.");
+            importParts.addAll(List.of(parts));
+            importedClasses.add(imported);
+            importedClasses.add(parts[parts.length - 1]);
+        }
+    }
+
+    public JmmNode getMethodNode() {
+        return methodNode;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public Type getReturnType() {
+        return returnType;
+    }
+
+    /**
+     * @param name
+     * @return the symbol visible under the given name in this method, or null if there is none
+     */
+    public Symbol getSymbol(String name) {
+        return symbols.get(name);
+    }
+
+    /**
+     * @param name
+     * @return the type of the variable visible under the given name, or null if there is none
+     */
+    public Type getType(String name) {
+        var symbol = symbols.get(name);
+        return symbol != null ? symbol.getType() : null;
+    }
+
+    /**
+     * @param name
+     * @return true if the name is the full or simple name of an imported class
+     */
+    public boolean isImportedClass(String name) {
+        return importedClasses.contains(name);
+    }
+
+    /**
+     * Classifies a name as "class", "local", "param", "field", "import", "tmp" or "not found".
+     * <p>
+     * Declared names are classified before the "tmp" prefix of generated temporaries, so that a field such as
+     * {@code tmpTotal} is still read as a field.
+     *
+     * @param name
+     * @return
+     */
+    public String getOccurrence(String name) {
+        if (name.equals("this")) {
+            return "class";
+        }
+
+        var occurrence = occurrences.get(name);
+        if (occurrence != null) {
+            return occurrence;
+        }
+
+        if (importParts.contains(name)) {
+            return "import";
+        }
+
+        if (name.startsWith("tmp")) {
+            return "tmp";
+        }
+
+        return "not found";
+    }
+}
@@ -19,10 +19,12 @@ import org.specs.comp.ollir.*;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.backend.JasminRunner;
 import pt.up.fe.specs.util.SpecsCollections;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsStrings;
 import pt.up.fe.specs.util.exceptions.NotImplementedException;
+import pt.up.fe.specs.util.system.ProcessOutputAsString;
 import pt.up.fe.specs.util.utilities.LineStream;
 
 import java.io.File;
@@ -121,7 +123,7 @@ public class CpUtils {
 
         var testName = new File(resource).getName();
         System.out.println(testName + ":\n" + result.getJasminCode());
-        var runOutput = result.runWithFullOutput();
+        var runOutput = runWithFullOutput(result);
         Assert.assertEquals("Error while running compiled Jasmin: " + runOutput.getOutput() + "\n\nJasmin code:\n"
                 + result.getJasminCode(), 0, runOutput.getReturnValue());
         System.out.println("\n Result: " + runOutput.getOutput());
@@ -145,7 +147,7 @@ public class CpUtils {
 
             var testName = new File(resource).getName();
             System.out.println(testName + ":\n" + result.getJasminCode());
-            var runOutput = result.runWithFullOutput();
+            var runOutput = runWithFullOutput(result);
             Assert.assertEquals("Error while running compiled Jasmin: " + runOutput.getOutput() + "\n\nJasmin code:\n"
                             + result.getJasminCode(), 0,
                     runOutput.getReturnValue());
@@ -526,9 +528,30 @@ public class CpUtils {
         return null;
     }
 
+    /**
+     * Runs the class of the Jasmin code in this JVM with {@link JasminRunner}, instead of launching java. Each line of
+     * the output ends with a line separator, as in the output of {@link JasminResult#runWithFullOutput()}.
+     *
+     * @param jasminResult
+     * @return
+     */
+    public static ProcessOutputAsString runWithFullOutput(JasminResult jasminResult) {
+        var output = JasminRunner.fromJasmin(jasminResult.getJasminCode())
+                .run((String) null, JasminRunner.DEFAULT_TIMEOUT_MS);
+
+        return new ProcessOutputAsString(output.getReturnValue(), toLines(output.getStdOut()),
+                toLines(output.getStdErr()));
+    }
+
+    private static String toLines(String output) {
+        return output.lines()
+                .map(line -> line + System.lineSeparator())
+                .collect(Collectors.joining());
+    }
+
     public static void runJasmin(JasminResult jasminResult, String expected) {
         try {
-            var output = SpecsStrings.normalizeFileContents(jasminResult.run(), true);
+            var output = SpecsStrings.normalizeFileContents(runWithFullOutput(jasminResult).getOutput(), true);
             assertEquals("Jasmin output", expected, output, jasminResult);
         } catch (Exception e) {
             throw new RuntimeException("Problems while running Jasmin code:\n" + jasminResult.getJasminCode(), e);
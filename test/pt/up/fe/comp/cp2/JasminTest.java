@@ -1,6 +1,7 @@
 package pt.up.fe.comp.cp2;
 
 import org.junit.Test;
+import pt.up.fe.comp.CpUtils;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
@@ -96,7 +97,7 @@ public class JasminTest {
         
         var testName = new File(resource).getName();
         System.out.println(testName + ":\n" + result.getJasminCode());
-        var runOutput = result.runWithFullOutput();
+        var runOutput = CpUtils.runWithFullOutput(result);
         assertEquals("Error while running compiled Jasmin: " + runOutput.getOutput(), 0, runOutput.getReturnValue());
         System.out.println("\n Result: " + runOutput.getOutput());
 
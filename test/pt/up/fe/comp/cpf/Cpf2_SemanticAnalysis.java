@@ -123,5 +123,25 @@ public class Cpf2_SemanticAnalysis {
         CpUtils.assertEquals("Lookup of field", "10", jasminResult.run().trim(), jasminResult);
     }
 
+    /**
+     * Test if a local variable with the name of a parameter is rejected, so that lookups never have to choose between
+     * the two.
+     */
+    @Test
+    public void section2_Lookup_VarLookup_Param_Local_Fail() {
+        test("lookup/VarLookup_Param_Local_Fail.jmm", true);
+    }
+
+    /**
+     * Test if a field whose name starts like a generated temporary is still looked up as a field.
+     */
+    @Test
+    public void section2_Lookup_VarLookup_Tmp_Field() {
+        var jasminResult = getJasminResult("lookup/VarLookup_Tmp_Field.jmm");
+
+        CpUtils.matches(jasminResult, "getfield\\s+TmpField/tmpTotal");
+        CpUtils.assertEquals("Lookup of field", "10", jasminResult.run().trim(), jasminResult);
+    }
+
 
 }
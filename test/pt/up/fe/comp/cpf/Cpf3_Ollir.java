@@ -20,8 +20,12 @@ import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.specs.util.SpecsIo;
 
+import java.util.Map;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import static org.junit.Assert.assertTrue;
+
 public class Cpf3_Ollir {
 
     static OllirResult getOllirResult(String filename) {
@@ -289,4 +293,85 @@ public class Cpf3_Ollir {
 
     }
 
+    /*checks that a deeply nested if/else is generated without overflowing the stack*/
+    @Test
+    public void section5_Size_DeepNesting() {
+        var code = getNestedCode(2000);
+
+        for (var optimize : new String[]{"false", "true"}) {
+            var result = TestUtils.backend(code, Map.of("optimize", optimize));
+            TestUtils.noErrors(result.getReports());
+
+            CpUtils.assertEquals("Output of the nested if/else", "1500", result.run().trim(), result);
+        }
+    }
+
+
+    /*checks that the temporaries of a long expression share the locals of the method*/
+    @Test
+    public void section5_Size_LongChain() {
+        // too long to load, the code of the method exceeding 64 KB
+        var result = TestUtils.backend(getChainCode(100000));
+        TestUtils.noErrors(result.getReports());
+
+        var locals = Pattern.compile("\\.limit locals (\\d+)").matcher(result.getJasminCode()).results()
+                .mapToInt(match -> Integer.parseInt(match.group(1)))
+                .max().orElseThrow();
+        assertTrue("Expected at most 3 locals, found " + locals, locals <= 3);
+
+        var shorter = TestUtils.backend(getChainCode(10000));
+        TestUtils.noErrors(shorter.getReports());
+
+        CpUtils.assertEquals("Output of the chain", "10000", shorter.run().trim(), shorter);
+    }
+
+    /**
+     * @return a class whose method pick nests the given number of if/else statements, and whose main prints pick(1500)
+     */
+    private static String getNestedCode(int depth) {
+        var code = new StringBuilder("import io;\nclass Nested {\n    public int pick(int a) {\n        int x;\n");
+
+        for (int i = depth; i > 0; i--) {
+            code.append("if (a < ").append(i).append(") {\n");
+        }
+        code.append("x = 0;\n");
+        for (int i = 1; i <= depth; i++) {
+            code.append("} else {\nx = ").append(i).append(";\n}\n");
+        }
+
+        return code.append("""
+                        return x;
+                    }
+
+                    public static void main(String[] args) {
+                        Nested n;
+                        n = new Nested();
+                        io.println(n.pick(1500));
+                    }
+                }
+                """).toString();
+    }
+
+    /**
+     * @return a class whose method sum adds its argument the given number of times, and whose main prints sum(1)
+     */
+    private static String getChainCode(int terms) {
+        var code = new StringBuilder("import io;\nclass Chain {\n    public int sum(int a) {\n        int x;\n        x = a");
+
+        code.append(" + a".repeat(terms - 1));
+
+        return code.append("""
+                ;
+                        return x;
+                    }
+
+                    public static void main(String[] args) {
+                        Chain c;
+                        c = new Chain();
+                        io.println(c.sum(1));
+                    }
+                }
+                """).toString();
+    }
+
 }
@@ -18,12 +18,19 @@ import pt.up.fe.comp.CpUtils;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.backend.AssembledClass;
+import pt.up.fe.comp2024.backend.JasminRunner;
 import pt.up.fe.specs.util.SpecsCheck;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsStrings;
 import utils.ProjectTestUtils;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.util.Collections;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -303,4 +310,144 @@ public class Cpf4_Jasmin {
         // Make sure the code compiles
         jasminResult.compile();
     }
+
+
+    /*checks if the class is assembled in memory into a class file with the name the Jasmin declares*/
+    @Test
+    public void section7_Runner_AssembledClass() {
+        var jasminResult = getJasminResult("runner/ReadSum.ollir");
+        var assembled = AssembledClass.assemble(jasminResult.getJasminCode());
+
+        assertEquals("ReadSum", assembled.name());
+        assertEquals(0xCAFEBABE, (assembled.bytes()[0] & 0xff) << 24 | (assembled.bytes()[1] & 0xff) << 16
+                | (assembled.bytes()[2] & 0xff) << 8 | (assembled.bytes()[3] & 0xff));
+    }
+
+    /*checks if Jasmin that does not assemble is reported*/
+    @Test(expected = RuntimeException.class)
+    public void section7_Runner_AssembledClass_Invalid() {
+        AssembledClass.assemble(".class public Broken\n.super java/lang/Object\n.method public static main()V\n"
+                + "    undefined_instruction\n.end method\n");
+    }
+
+    /*checks if the runtime classes of Java-- are found from the classes of the compiler*/
+    @Test
+    public void section7_Runner_RuntimeClasses() {
+        assertTrue("Expected io.class in " + JasminRunner.RUNTIME_CLASSES,
+                new File(JasminRunner.RUNTIME_CLASSES, "io.class").isFile());
+    }
+
+    /*checks if running in-process gives the output and exit code of a java process, reading the standard input*/
+    @Test
+    public void section7_Runner_SameAsProcess() {
+        var jasminResult = getJasminResult("runner/ReadSum.ollir");
+
+        var process = jasminResult.runWithFullOutput(Collections.emptyList(),
+                List.of(TestUtils.getLibsClasspath()), "4 5\n");
+        var inProcess = JasminRunner.fromJasmin(jasminResult.getJasminCode())
+                .run("4 5\n", JasminRunner.DEFAULT_TIMEOUT_MS);
+
+        assertEquals(0, process.getReturnValue());
+        assertEquals(process.getReturnValue(), inProcess.getReturnValue());
+        assertEquals(SpecsStrings.normalizeFileContents(process.getOutput(), true),
+                SpecsStrings.normalizeFileContents(inProcess.getOutput(), true));
+        assertEquals("9", SpecsStrings.normalizeFileContents(inProcess.getOutput(), true));
+    }
+
+    /*checks if an exception thrown by the program ends the run with exit code 1, like a java process*/
+    @Test
+    public void section7_Runner_Exception() {
+        var jasminResult = getJasminResult("runner/OutOfBounds.ollir");
+
+        var process = jasminResult.runWithFullOutput();
+        var inProcess = CpUtils.runWithFullOutput(jasminResult);
+
+        assertEquals(1, process.getReturnValue());
+        assertEquals(process.getReturnValue(), inProcess.getReturnValue());
+        assertEquals(process.getStdOut(), inProcess.getStdOut());
+        assertTrue("Expected the exception in the standard error:\n" + inProcess.getStdErr(),
+                inProcess.getStdErr().contains("ArrayIndexOutOfBoundsException"));
+    }
+
+    /*checks if a program still running after the timeout is abandoned with exit code -1*/
+    @Test
+    public void section7_Runner_Timeout() throws IOException {
+        var jasminResult = getJasminResult("runner/ReadSum.ollir");
+
+        // the program waits for input that only comes once the run is abandoned
+        var input = new PipedInputStream();
+        var pipe = new PipedOutputStream(input);
+        try {
+            var output = JasminRunner.fromJasmin(jasminResult.getJasminCode()).run(input, 200);
+
+            assertEquals(-1, output.getReturnValue());
+            assertTrue("Expected the timeout in the standard error:\n" + output.getStdErr(),
+                    output.getStdErr().contains("Timed out"));
+        } finally {
+            pipe.close();
+        }
+    }
+
+    /*checks if every kind of instruction and operand is generated, each method in the order of the class, and runs*/
+    @Test
+    public void section8_Emitter_AllInstructions() {
+        var jasminResult = getJasminResult("emitter/AllInstructions.ollir");
+
+        CpUtils.matches(jasminResult, "\\.field\\s+public\\s+total\\s+I");
+        CpUtils.matches(jasminResult,
+                "\\.method\\s+public\\s+add[\\s\\S]+\\.method\\s+public\\s+flip[\\s\\S]+\\.method\\s+public\\s+squares"
+                        + "[\\s\\S]+\\.method\\s+public\\s+static\\s+main[\\s\\S]+\\.method\\s+public\\s+<init>");
+
+        var add = CpUtils.getJasminMethod(jasminResult, "add");
+        CpUtils.matches(add, "aload_0\\s+getfield\\s+AllInstructions/total\\s+I");
+        CpUtils.matches(add, "putfield\\s+AllInstructions/total\\s+I");
+        CpUtils.matches(add, "ireturn");
+
+        CpUtils.matches(CpUtils.getJasminMethod(jasminResult, "flip"), "iload_1\\s+iconst_1\\s+ixor");
+
+        var squares = CpUtils.getJasminMethod(jasminResult, "squares");
+        CpUtils.matches(squares, "iload_1\\s+newarray\\s+int");
+        CpUtils.matches(squares, "if_icmpge\\s+\\w+");
+        CpUtils.matches(squares, "imul");
+        CpUtils.matches(squares, "iastore");
+        CpUtils.matches(squares, "iaload");
+        CpUtils.matches(squares, "goto\\s+\\w+");
+
+        var main = CpUtils.getJasminMethod(jasminResult, "static\\s+main");
+        CpUtils.matches(main, "new\\s+AllInstructions\\s+(astore_\\d|dup)");
+        CpUtils.matches(main, "invokespecial\\s+AllInstructions/<init>\\(\\)V");
+        CpUtils.matches(main, "invokevirtual\\s+AllInstructions/squares\\(I\\)I");
+        CpUtils.matches(main, "invokevirtual\\s+AllInstructions/flip\\(Z\\)Z");
+        CpUtils.matches(main, "invokestatic\\s+io/println\\(I\\)V");
+        CpUtils.matches(main, "ifeq\\s+\\w+");
+        CpUtils.matches(main, "return");
+
+        CpUtils.runJasmin(jasminResult, "19\n1");
+    }
+
+    /*checks if the imported classes are named by their full names in fields, descriptors, news and calls, and runs*/
+    @Test
+    public void section9_Names_ImportedClasses() {
+        var jasminResult = getJasminResult("resolution/ImportedNames.ollir");
+
+        CpUtils.matches(jasminResult, "\\.field\\s+public\\s+kept\\s+LinheritanceAB/A;");
+        CpUtils.matches(jasminResult, "\\.method\\s+public\\s+keep\\(LinheritanceAB/A;\\)I");
+        CpUtils.matches(jasminResult, "\\.method\\s+public\\s+other\\(LinheritanceAB/B;\\)I");
+
+        var keep = CpUtils.getJasminMethod(jasminResult, "keep");
+        CpUtils.matches(keep, "putfield\\s+ImportedNames/kept\\s+LinheritanceAB/A;");
+        CpUtils.matches(keep, "getfield\\s+ImportedNames/kept\\s+LinheritanceAB/A;");
+        CpUtils.matches(keep, "invokevirtual\\s+inheritanceAB/A/a\\(\\)I");
+
+        CpUtils.matches(CpUtils.getJasminMethod(jasminResult, "other"), "invokevirtual\\s+inheritanceAB/B/a\\(\\)I");
+
+        var main = CpUtils.getJasminMethod(jasminResult, "static\\s+main");
+        CpUtils.matches(main, "new\\s+inheritanceAB/A");
+        CpUtils.matches(main, "invokespecial\\s+inheritanceAB/A/<init>\\(\\)V");
+        CpUtils.matches(main, "new\\s+inheritanceAB/B");
+        CpUtils.matches(main, "invokevirtual\\s+ImportedNames/keep\\(LinheritanceAB/A;\\)I");
+        CpUtils.matches(main, "invokevirtual\\s+ImportedNames/other\\(LinheritanceAB/B;\\)I");
+
+        CpUtils.runJasmin(jasminResult, "1\n2");
+    }
 }
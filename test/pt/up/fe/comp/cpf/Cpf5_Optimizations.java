@@ -14,17 +14,30 @@
 package pt.up.fe.comp.cpf;
 
 import org.junit.Test;
+import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.Operand;
 import pt.up.fe.comp.CpUtils;
 import pt.up.fe.comp.TestUtils;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.optimization.pipeline.*;
+import pt.up.fe.comp2024.optimization.ssa.SsaForm;
+import pt.up.fe.comp2024.optimization.ssa.Variables;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsStrings;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
 
 public class Cpf5_Optimizations {
 
@@ -49,6 +62,12 @@ public class Cpf5_Optimizations {
         return TestUtils.backend(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
     }
 
+    static JasminResult getJasminResultLevel(String filename, int level) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimizationLevel", String.valueOf(level));
+        return TestUtils.backend(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/" + filename), config);
+    }
+
     /**
      * Test if small integers are loaded with iconst
      */
@@ -195,4 +214,608 @@ public class Cpf5_Optimizations {
     }
 
 
+    /**
+     * Test if constants follow the statements in order: reassigned variables, if branches, loops, array elements and
+     * fields changed by calls
+     */
+    @Test
+    public void section3_ConstProp_FlowSensitive() {
+        JasminResult optimized = getJasminResultOpt("const_prop/PropFlowSensitive.jmm");
+        CpUtils.runJasmin(optimized, "6\n1\n2\n11\n8\n5");
+    }
+
+
+    /**
+     * Test if a call on this to a small method of the class is replaced by its code
+     */
+    @Test
+    public void section4_Inlining_SmallMethod() {
+
+        String filename = "inlining/InlineSmall.jmm";
+
+        JasminResult original = getJasminResult(filename);
+        JasminResult optimized = getJasminResultOpt(filename);
+
+        CpUtils.assertTrue("Expected the original code to call 'twice'",
+                CpUtils.getJasminMethod(original, "run").contains("invokevirtual InlineSmall/twice"),
+                original);
+        CpUtils.assertTrue("Expected the call to 'twice' to be inlined with -o flag",
+                !CpUtils.getJasminMethod(optimized, "run").contains("invokevirtual InlineSmall/twice"),
+                optimized);
+
+        CpUtils.runJasmin(optimized, "41");
+    }
+
+
+    /**
+     * Test if a self call in tail position is turned into a jump to the method entry, so that deep recursion does not
+     * overflow the stack
+     */
+    @Test
+    public void section4_TailCalls_Loop() {
+
+        JasminResult jasminResult = getJasminResultOpt("tail_calls/TailCount.jmm");
+
+        String method = CpUtils.getJasminMethod(jasminResult, "count");
+        CpUtils.assertTrue("Expected no call to 'count' in 'count'",
+                !method.contains("invokevirtual TailCount/count"),
+                jasminResult);
+        CpUtils.matches(method, CpUtils.GOTO_REGEX);
+
+        CpUtils.runJasmin(jasminResult, "1000000");
+    }
+
+
+    /**
+     * Test if reads of a field after it is stored use the stored value instead of loading the field again
+     */
+    @Test
+    public void section4_FieldForwarding_StoredValue() {
+
+        String filename = "field_forwarding/ForwardField.jmm";
+
+        JasminResult original = getJasminResult(filename);
+        JasminResult optimized = getJasminResultOpt(filename);
+
+        CpUtils.assertTrue("Expected the original code to read 'value'",
+                CpUtils.getJasminMethod(original, "run").contains("getfield"),
+                original);
+        CpUtils.assertTrue("Expected the reads of 'value' to be forwarded with -o flag",
+                !CpUtils.getJasminMethod(optimized, "run").contains("getfield"),
+                optimized);
+
+        CpUtils.runJasmin(optimized, "8");
+    }
+
+
+    /**
+     * Test if a call to a pure method with literal arguments is replaced by its result
+     */
+    @Test
+    public void section4_CallFolding_PureMethod() {
+
+        String filename = "call_folding/FoldPure.jmm";
+
+        JasminResult original = getJasminResult(filename);
+        JasminResult optimized = getJasminResultOpt(filename);
+
+        // the recursive call in 'fact' itself stays
+        CpUtils.assertEquals("Expected calls to 'fact' in the original code", 2,
+                CpUtils.countOccurences(original, "invokevirtual FoldPure/fact"), original);
+        CpUtils.assertEquals("Expected the call to 'fact' in 'main' to be folded with -o flag", 1,
+                CpUtils.countOccurences(optimized, "invokevirtual FoldPure/fact"), optimized);
+        CpUtils.matches(optimized, "ldc 3628800");
+
+        CpUtils.runJasmin(optimized, "3628800");
+    }
+
+
+    /**
+     * Test if an array of literals is built once in the static initializer, instead of each time it is evaluated
+     */
+    @Test
+    public void section4_ConstantArrays_StaticInitializer() {
+
+        JasminResult jasminResult = getJasminResultOpt("constant_arrays/ConstArray.jmm");
+
+        CpUtils.matches(jasminResult, "\\.method\\s+static\\s+<clinit>");
+        CpUtils.matches(jasminResult, "putstatic\\s+ConstArray/\\S+\\s+\\[I");
+        CpUtils.matches(jasminResult, "getstatic\\s+ConstArray/\\S+\\s+\\[I");
+        CpUtils.assertEquals("Expected the array to be created only in <clinit>", 1,
+                CpUtils.countOccurences(jasminResult, "newarray"), jasminResult);
+
+        CpUtils.runJasmin(jasminResult, "10");
+    }
+
+
+    /**
+     * Test if the constant arrays of overloaded methods get fields of their own
+     */
+    @Test
+    public void section4_ConstantArrays_Overloads() {
+
+        String resource = SpecsIo.getResource(
+                "pt/up/fe/comp/cpf/5_optimizations/constant_arrays/ConstArrayOverloads.ollir");
+        JasminResult jasminResult = TestUtils.backend(new OllirResult(resource, Map.of("optimizationLevel", "2")));
+
+        CpUtils.matches(jasminResult, "\\.field\\s+private\\s+static\\s+final\\s+pick\\$I\\$array0\\s+\\[I");
+        CpUtils.matches(jasminResult, "\\.field\\s+private\\s+static\\s+final\\s+pick\\$II\\$array0\\s+\\[I");
+
+        CpUtils.runJasmin(jasminResult, "30\n106");
+    }
+
+
+    /**
+     * Test if multiplications and divisions by constants near powers of two are generated with shifts
+     */
+    @Test
+    public void section4_StrengthReduction_Shifts() {
+
+        String filename = "strength_reduction/StrengthReduce.jmm";
+
+        JasminResult original = getJasminResultLevel(filename, 0);
+        JasminResult optimized = getJasminResultLevel(filename, 1);
+
+        CpUtils.matches(CpUtils.getJasminMethod(original, "times8"), "imul");
+        CpUtils.matches(CpUtils.getJasminMethod(original, "quarter"), "idiv");
+
+        for (var method : List.of("times8", "times9", "times7", "quarter")) {
+            var code = CpUtils.getJasminMethod(optimized, method);
+            CpUtils.assertTrue("Expected no imul nor idiv in '" + method + "' at -O1",
+                    !code.contains("imul") && !code.contains("idiv"), optimized);
+            CpUtils.matches(code, "ishl|ishr");
+        }
+
+        // x * 9 is (x << 3) + x, and 7 * x is (x << 3) - x
+        CpUtils.matches(CpUtils.getJasminMethod(optimized, "times9"), "iconst_3\\s+ishl\\s+iadd");
+        CpUtils.matches(CpUtils.getJasminMethod(optimized, "times7"), "iconst_3\\s+ishl\\s+swap\\s+isub");
+        // a negative dividend is biased by 3 so that the shift rounds towards zero
+        CpUtils.matches(CpUtils.getJasminMethod(optimized, "quarter"), "iushr\\s+iadd\\s+iconst_2\\s+ishr");
+
+        CpUtils.runJasmin(original, "40\n45\n35\n3\n-3");
+        CpUtils.runJasmin(optimized, "40\n45\n35\n3\n-3");
+    }
+
+
+    /**
+     * Test if conditions of ifs and whiles jump on their operands, without storing a boolean to branch on
+     */
+    @Test
+    public void section4_Conditions_BranchDirectly() {
+
+        JasminResult jasminResult = getJasminResult("conditions/BranchConditions.jmm");
+
+        // ok && !skip jumps to the else on either operand, and low < a on the comparison itself
+        String pick = CpUtils.getJasminMethod(jasminResult, "pick");
+        CpUtils.matches(pick, "iload_3\\s+ifeq\\s+(\\w+)\\s+iload\\s+4\\s+ifne\\s+\\1");
+        CpUtils.matches(pick, "iload_2\\s+iload_1\\s+if_icmpge");
+        CpUtils.assertTrue("Expected no boolean pushed in 'pick'",
+                !pick.contains("iconst_0") && !pick.contains("iconst_1"), jasminResult);
+        CpUtils.assertEquals("Expected only 'r' to be stored in 'pick'", 3, countStores(pick), jasminResult);
+
+        String count = CpUtils.getJasminMethod(jasminResult, "count");
+        CpUtils.matches(count, "iload_3\\s+iload_1\\s+if_icmpge");
+        CpUtils.matches(count, "iload_2\\s+ifne");
+
+        CpUtils.runJasmin(jasminResult, "10\n20\n30\n30\n7\n8");
+    }
+
+
+    /**
+     * Test if an if/else-if chain on one variable is dispatched with a tableswitch, or with a binary search of its
+     * bounds when they are too sparse for a table
+     */
+    @Test
+    public void section4_SwitchTables_Chains() {
+
+        String filename = "switch_tables/SwitchChains.jmm";
+
+        JasminResult original = getJasminResult(filename);
+        JasminResult optimized = getJasminResultLevel(filename, 2);
+
+        CpUtils.assertTrue("Expected no tableswitch without optimizations",
+                !original.getJasminCode().contains("tableswitch"), original);
+
+        // a < 1, a < 2, a < 3, a < 5: one check below the table, then one entry per value from 1 to 4
+        String dense = CpUtils.getJasminMethod(optimized, "dense");
+        CpUtils.matches(dense, "iconst_1\\s+if_icmplt\\s+\\w+\\s+iload_1\\s+tableswitch\\s+1\\s+4");
+        CpUtils.assertEquals("Expected no comparison other than the check below the table", 1,
+                dense.split("if_icmp", -1).length - 1, optimized);
+
+        // the bounds 10, 1000, 100000 and 10000000 are searched with two comparisons
+        String sparse = CpUtils.getJasminMethod(optimized, "sparse");
+        CpUtils.assertTrue("Expected no tableswitch for sparse bounds", !sparse.contains("tableswitch"), optimized);
+        CpUtils.matches(sparse, "iload_1\\s+sipush\\s+1000\\s+if_icmpge");
+
+        String expected = "10\n10\n20\n30\n40\n40\n50\n50\n1\n2\n2\n3\n3\n4\n5";
+        CpUtils.runJasmin(original, expected);
+        CpUtils.runJasmin(optimized, expected);
+    }
+
+
+    /**
+     * Test if while loops are rotated to test their condition at the bottom, so that no iteration jumps back with a
+     * goto, and still run no iteration when the condition is false at first
+     */
+    @Test
+    public void section4_LoopRotation_NoBackEdgeGoto() {
+
+        String filename = "loop_rotation/RotateLoops.jmm";
+
+        JasminResult original = getJasminResult(filename);
+        JasminResult optimized = getJasminResultLevel(filename, 1);
+
+        String originalLoops = CpUtils.getJasminMethod(original, "triangle");
+        CpUtils.assertEquals("Expected a goto back to the condition of each loop without optimizations", 2,
+                originalLoops.split("goto", -1).length - 1, original);
+
+        String rotated = CpUtils.getJasminMethod(optimized, "triangle");
+        CpUtils.assertTrue("Expected no goto in the rotated loops", !rotated.contains("goto"), optimized);
+        // the guard before each loop, and the test at its bottom that jumps back to its body
+        CpUtils.assertEquals("Expected a guard before each loop", 2,
+                rotated.split("if_icmpge", -1).length - 1, optimized);
+        CpUtils.matches(rotated, "if_icmplt\\s+(\\w+)[\\s\\S]+if_icmplt\\s+(?!\\1)\\w+");
+
+        CpUtils.runJasmin(original, "0\n0\n120");
+        CpUtils.runJasmin(optimized, "0\n0\n120");
+    }
+
+
+    /**
+     * Test if the array indices derived from the counters of loops are stepped with iinc instead of multiplied on each
+     * iteration, and if a counter only read by its condition is replaced by the derived index
+     */
+    @Test
+    public void section4_InductionVariables_StridedIndex() {
+
+        String filename = "induction/StridedSum.jmm";
+
+        JasminResult original = getJasminResult(filename);
+        JasminResult optimized = getJasminResultLevel(filename, 2);
+
+        CpUtils.matches(CpUtils.getJasminMethod(original, "strided"), "imul");
+        CpUtils.matches(CpUtils.getJasminMethod(original, "counted"), "imul");
+
+        // i * 3 + 1 steps by 3 next to i, which the condition still reads
+        String strided = CpUtils.getJasminMethod(optimized, "strided");
+        CpUtils.assertTrue("Expected no imul in 'strided'", !strided.contains("imul"), optimized);
+        CpUtils.assertEquals("Expected i and its index to be stepped", List.of(1, 3), getIncrements(strided),
+                optimized);
+
+        // i * 4 + 2 steps by 4, and i is only assigned its final value after the loop
+        String counted = CpUtils.getJasminMethod(optimized, "counted");
+        CpUtils.assertTrue("Expected no imul in 'counted'", !counted.contains("imul"), optimized);
+        CpUtils.assertTrue("Expected only the index to be stepped in 'counted'",
+                !getIncrements(counted).isEmpty() && getIncrements(counted).stream().allMatch(step -> step == 4),
+                optimized);
+        CpUtils.matches(counted, "bipush\\s+40\\s+istore");
+
+        CpUtils.runJasmin(original, "51\n3240");
+        CpUtils.runJasmin(optimized, "51\n3240");
+    }
+
+    private static List<Integer> getIncrements(String method) {
+        var matcher = Pattern.compile("iinc\\s+\\d+\\s+(-?\\d+)").matcher(method);
+        var increments = new ArrayList<Integer>();
+        while (matcher.find()) {
+            increments.add(Integer.parseInt(matcher.group(1)));
+        }
+        return increments;
+    }
+
+
+    /**
+     * Test if the operand that needs the deeper stack is evaluated first, so that right-heavy expressions need no more
+     * stack than left-heavy ones
+     */
+    @Test
+    public void section4_OperandOrder_StackDepth() {
+
+        JasminResult jasminResult = getJasminResultLevel("operand_order/OperandOrder.jmm", 1);
+
+        // a + b * c * d evaluates the product first, and a - b * c * d negates the difference taken the other way
+        String rightHeavy = CpUtils.getJasminMethod(jasminResult, "rightHeavy");
+        CpUtils.assertEquals("Expected a stack of 2 for 'rightHeavy'", 2, getMaxStack(rightHeavy),
+                jasminResult);
+        CpUtils.matches(rightHeavy, "imul\\s+iload_1\\s+iadd");
+        CpUtils.assertTrue("Expected no temporary stored in 'rightHeavy'", countStores(rightHeavy) == 0,
+                jasminResult);
+
+        String minus = CpUtils.getJasminMethod(jasminResult, "minus");
+        CpUtils.assertEquals("Expected a stack of 2 for 'minus'", 2, getMaxStack(minus), jasminResult);
+        CpUtils.matches(minus, "imul\\s+iload_1\\s+isub\\s+ineg");
+
+        // both operands of a * b + c * d need 2, so one of them is held while the other is evaluated
+        CpUtils.assertEquals("Expected a stack of 3 for 'nested'", 3,
+                getMaxStack(CpUtils.getJasminMethod(jasminResult, "nested")), jasminResult);
+
+        CpUtils.runJasmin(jasminResult, "25\n-23\n14");
+    }
+
+    private static int getMaxStack(String method) {
+        return Integer.parseInt(SpecsStrings.getRegexGroup(method, CpUtils.getLimitStackRegex(), 1));
+    }
+
+
+    /**
+     * Test if putting the methods in SSA form and taking them out of it again keeps what they do, including variables
+     * swapped in a loop and versions live at the same time
+     */
+    @Test
+    public void section5_Ssa_RoundTrip() {
+
+        OllirResult ollirResult = getOllirResult("ssa/SsaRoundTrip.jmm");
+
+        for (var method : ollirResult.getOllirClass().getMethods()) {
+            var ssa = SsaForm.build(method);
+
+            if (method.getMethodName().equals("swap")) {
+                int phis = ssa.getCfg().getBlocks().stream().mapToInt(block -> block.getPhis().size()).sum();
+                CpUtils.assertTrue("Expected phis for the variables swapped in 'swap'", phis >= 3, ollirResult);
+            }
+
+            ssa.destroy();
+        }
+
+        JasminResult jasminResult = TestUtils.backend(ollirResult);
+        CpUtils.runJasmin(jasminResult, "21\n12\n6\n8160\n0\ntrue\nfalse");
+    }
+
+
+    /**
+     * Test if the variables live at the same time, as the liveness analysis finds them, are in different registers,
+     * and if 'soManyRegisters' needs no more registers than the register allocation test asks for
+     */
+    @Test
+    public void section5_Liveness_AgreesWithRegisters() {
+
+        String[] filenames = {"reg_alloc/regalloc.jmm", "const_prop/PropSimple.jmm", "const_prop/PropWithLoop.jmm",
+                "const_prop/PropFlowSensitive.jmm", "inlining/InlineSmall.jmm", "tail_calls/TailCount.jmm",
+                "field_forwarding/ForwardField.jmm", "call_folding/FoldPure.jmm", "constant_arrays/ConstArray.jmm",
+                "ssa/SsaRoundTrip.jmm"};
+
+        for (String filename : filenames) {
+            OllirResult ollirResult = getOllirResult(filename);
+            for (var method : ollirResult.getOllirClass().getMethods()) {
+                checkLiveness(method, ollirResult);
+            }
+        }
+
+        // this and the parameter keep their registers, the locals live at once need one each
+        OllirResult regAlloc = getOllirResult("reg_alloc/regalloc.jmm");
+        var method = CpUtils.getMethod(regAlloc, "soManyRegisters");
+        int numReg = 1 + method.getParams().size() + checkLiveness(method, regAlloc);
+        CpUtils.assertTrue("Expected 'soManyRegisters' to need at most 3 registers, needs " + numReg,
+                numReg <= 3, regAlloc);
+    }
+
+    /**
+     * Walks the instructions of each block back from the variables live at its end.
+     *
+     * @return the most locals, other than the parameters, live at once
+     */
+    private static int checkLiveness(Method method, OllirResult ollirResult) {
+        var unit = new MethodUnit(method);
+        var liveness = unit.getLiveness();
+        var variables = new Variables(method);
+        var params = method.getParams().stream()
+                .map(param -> ((Operand) param).getName())
+                .collect(Collectors.toSet());
+
+        var name = method.getMethodName();
+        var liveIn = liveness.getLiveIn(unit.getCfg().getEntry());
+        CpUtils.assertTrue(() -> "Expected only parameters to be live at the start of '" + name + "', found " + liveIn,
+                params.containsAll(liveIn), ollirResult);
+
+        int maxLocals = 0;
+        for (var block : unit.getDominators().getBlocks()) {
+            var live = new HashSet<>(liveness.getLiveOut(block));
+            var instructions = block.getInstructions();
+
+            for (int i = instructions.size() - 1; i >= 0; i--) {
+                checkRegisters(method, live, ollirResult);
+                maxLocals = Math.max(maxLocals, (int) live.stream().filter(variable -> !params.contains(variable)).count());
+
+                var inst = instructions.get(i);
+                var defined = variables.getDefinedName(inst);
+                if (defined != null) {
+                    live.remove(defined);
+                }
+                variables.getUses(inst, inst).forEach(use -> live.add(use.operand().getName()));
+            }
+
+            CpUtils.assertEquals("Expected the variables live at the start of block " + block.getIndex() + " of '"
+                    + name + "'", liveness.getLiveIn(block), live, ollirResult);
+        }
+
+        return maxLocals;
+    }
+
+    private static void checkRegisters(Method method, Set<String> live, OllirResult ollirResult) {
+        var registers = new HashMap<Integer, String>();
+
+        for (var variable : live) {
+            var descriptor = method.getVarTable().get(variable);
+            CpUtils.assertTrue(() -> "Expected live variable '" + variable + "' of '" + method.getMethodName()
+                    + "' to have a register", descriptor != null, ollirResult);
+
+            var other = registers.put(descriptor.getVirtualReg(), variable);
+            CpUtils.assertTrue(() -> "Expected '" + variable + "' and '" + other + "' of '" + method.getMethodName()
+                    + "', live at the same time, to be in different registers", other == null, ollirResult);
+        }
+    }
+
+
+    private static final Set<String> LEVEL_0_PASSES = Set.of("iinc");
+
+    private static final Set<String> LEVEL_1_PASSES = Set.of("iinc", "propagate", "fold", "simplify",
+            "rotate-loops", "forward-fields", "ssa-simplify", "strength-reduce", "layout", "operand-trees");
+
+    private static final Set<String> LEVEL_2_PASSES = Set.of("iinc", "propagate", "fold", "simplify",
+            "rotate-loops", "forward-fields", "ssa-simplify", "strength-reduce", "layout", "operand-trees",
+            "inline", "unroll", "induction", "fold-calls", "prune-branches", "tail-calls", "switch-tables",
+            "constant-arrays");
+
+    /**
+     * Test if -O0 runs no pass but iinc, and generates the code instruction by instruction
+     */
+    @Test
+    public void section6_Levels_O0() {
+        checkLevel(0, LEVEL_0_PASSES);
+    }
+
+    /**
+     * Test if -O1 runs the propagation, folding and simplification passes, and rotates loops, reduces multiplications
+     * and keeps temporaries on the stack
+     */
+    @Test
+    public void section6_Levels_O1() {
+        checkLevel(1, LEVEL_1_PASSES);
+    }
+
+    /**
+     * Test if -O2, the same as -o, adds inlining, unrolling and the other passes, with tail calls, switch tables and
+     * constant arrays
+     */
+    @Test
+    public void section6_Levels_O2() {
+        checkLevel(2, LEVEL_2_PASSES);
+
+        assertEquals(2, CompilerConfig.getOptimizationLevel(Map.of("optimize", "true")));
+        assertEquals(2, CompilerConfig.getOptimizationLevel(Map.of("optimizationLevel", "true")));
+        assertEquals(30, CompilerConfig.getInlineLimit(Map.of("optimizationLevel", "2")));
+        assertEquals(128, CompilerConfig.getUnrollBudget(Map.of("optimizationLevel", "2")));
+    }
+
+    /**
+     * Test if -O3 runs the passes of -O2, with larger budgets
+     */
+    @Test
+    public void section6_Levels_O3() {
+        checkLevel(3, LEVEL_2_PASSES);
+
+        var config = Map.of("optimizationLevel", "3");
+        assertEquals(60, CompilerConfig.getInlineLimit(config));
+        assertEquals(512, CompilerConfig.getUnrollBudget(config));
+        assertEquals(100000, CompilerConfig.getCallSteps(config));
+    }
+
+    /**
+     * Test if "-p" disables backend passes of the level
+     */
+    @Test
+    public void section6_Levels_DisableBackendPasses() {
+        Map<String, String> config = Map.of("optimizationLevel", "2", "passes", "-iinc,-switch-tables,-rotate-loops");
+        var jasminResult = TestUtils.backend(SpecsIo.getResource(LEVELS_PROGRAM), config);
+
+        var total = CpUtils.getJasminMethod(jasminResult, "total");
+        CpUtils.assertTrue("Expected no iinc with -p=-iinc", !total.contains("iinc"), jasminResult);
+        CpUtils.assertTrue("Expected a goto back to the condition with -p=-rotate-loops", total.contains("goto"),
+                jasminResult);
+        CpUtils.assertTrue("Expected no tableswitch with -p=-switch-tables",
+                !CpUtils.getJasminMethod(jasminResult, "grade").contains("tableswitch"), jasminResult);
+        CpUtils.matches(jasminResult, "\\.method\\s+static\\s+<clinit>");
+
+        CpUtils.runJasmin(jasminResult, LEVELS_OUTPUT);
+    }
+
+    private static final String LEVELS_PROGRAM = "pt/up/fe/comp/cpf/5_optimizations/levels/Levels.jmm";
+
+    private static final String LEVELS_OUTPUT = "52\n40\n20\n50\n20\n50\n32\n5050";
+
+    /**
+     * Checks the passes enabled at the level, the Jasmin they lead to, and that programs compiled with them still run
+     * the same
+     */
+    private static void checkLevel(int level, Set<String> expected) {
+        Map<String, String> config = Map.of("optimizationLevel", String.valueOf(level));
+
+        var enabled = new HashSet<String>();
+        var ast = OptimizationPipelines.ast(config);
+        ast.getPassNames().stream().filter(ast::isEnabled).forEach(enabled::add);
+        var ollir = OptimizationPipelines.ollir(config);
+        ollir.getPassNames().stream().filter(ollir::isEnabled).forEach(enabled::add);
+        var backend = OptimizationPipelines.backend(config);
+        backend.getPassNames().stream().filter(backend::isEnabled).forEach(enabled::add);
+
+        assertEquals("Passes enabled by -O" + level, expected, enabled);
+
+        CpUtils.runJasmin(getJasminResultLevel("const_prop/PropFlowSensitive.jmm", level), "6\n1\n2\n11\n8\n5");
+
+        var plain = TestUtils.backend(SpecsIo.getResource(LEVELS_PROGRAM), Map.of("optimizationLevel", "0"));
+        var jasminResult = TestUtils.backend(SpecsIo.getResource(LEVELS_PROGRAM), config);
+        var scale = CpUtils.getJasminMethod(jasminResult, "scale");
+        var grade = CpUtils.getJasminMethod(jasminResult, "grade");
+        var sum = CpUtils.getJasminMethod(jasminResult, "sum");
+        var total = CpUtils.getJasminMethod(jasminResult, "total");
+
+        CpUtils.assertTrue("Expected the increment of 'i' to be an iinc", total.contains("iinc"), jasminResult);
+
+        // loop rotation, strength reduction and operand trees from -O1 on
+        CpUtils.assertEquals("Expected x * 8 to be a shift from -O1 on", level >= 1, scale.contains("ishl"),
+                jasminResult);
+        CpUtils.assertEquals("Expected x * 8 to be a multiplication at -O0", level == 0, scale.contains("imul"),
+                jasminResult);
+        CpUtils.assertEquals("Expected the loop to be rotated, with no goto back, from -O1 on", level == 0,
+                total.contains("goto"), jasminResult);
+        var plainStores = countStores(CpUtils.getJasminMethod(plain, "total"));
+        var stores = countStores(total);
+        CpUtils.assertEquals("Expected temporaries to stay on the stack from -O1 on", level >= 1, stores < plainStores,
+                jasminResult);
+
+        // tail calls, switch tables and constant arrays from -O2 on
+        CpUtils.assertEquals("Expected the tail call to be a jump from -O2 on", level >= 2,
+                !sum.contains("invokevirtual Levels/sum"), jasminResult);
+        CpUtils.assertEquals("Expected the if/else-if chain to be a tableswitch from -O2 on", level >= 2,
+                grade.contains("tableswitch"), jasminResult);
+        CpUtils.assertEquals("Expected the array of literals in a static field from -O2 on", level >= 2,
+                jasminResult.getJasminCode().contains("<clinit>"), jasminResult);
+
+        CpUtils.runJasmin(jasminResult, LEVELS_OUTPUT);
+    }
+
+    private static int countStores(String method) {
+        return method.split("istore", -1).length - 1;
+    }
+
+
+    /**
+     * Test if passes that keep undoing each other in a fixpoint stop after the most rounds allowed
+     */
+    @Test
+    public void section6_PassManager_FixpointBound() {
+
+        var manager = new PassManager<Flag>(1, Map.of());
+        manager.addFixpoint(1, List.of(new Toggle("set", true), new Toggle("clear", false)));
+
+        var statistics = new PassStatistics();
+        manager.run(new Flag(), statistics);
+
+        assertEquals(PassManager.MAX_FIXPOINT_ROUNDS, statistics.getChanges("set"));
+        assertEquals(PassManager.MAX_FIXPOINT_ROUNDS, statistics.getChanges("clear"));
+    }
+
+    private static class Flag implements PassTarget {
+        boolean set = false;
+    }
+
+    private record Toggle(String name, boolean value) implements OptimizationPass<Flag> {
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public int run(Flag target) {
+            if (target.set == value) {
+                return 0;
+            }
+
+            target.set = value;
+            return 1;
+        }
+    }
+
+
 }
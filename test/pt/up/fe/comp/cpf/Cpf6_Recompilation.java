@@ -0,0 +1,373 @@
+/**
+ * Copyright 2022 SPeCS.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License. under the License.
+ */
+
+package pt.up.fe.comp.cpf;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp2024.Launcher;
+import pt.up.fe.comp2024.Watcher;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TreeWalker;
+import pt.up.fe.comp2024.cache.CompilationCache;
+import pt.up.fe.comp2024.cache.IncrementalCompilation;
+import pt.up.fe.specs.util.SpecsIo;
+import pt.up.fe.specs.util.SpecsStrings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class Cpf6_Recompilation {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    static String getCode(String filename) {
+        return SpecsIo.getResource("pt/up/fe/comp/cpf/6_recompilation/" + filename);
+    }
+
+    Map<String, String> getCachedConfig() {
+        Map<String, String> config = new HashMap<>();
+        config.put("cacheDir", temp.getRoot().getAbsolutePath());
+        return config;
+    }
+
+    /**
+     * @return the names of the methods whose results the analysis of the given code takes from the cache
+     */
+    static Set<String> getReusedMethods(String code, Map<String, String> config) {
+        var root = TestUtils.analyse(code, config).getRootNode();
+
+        return TreeWalker.getDescendants(root, Kind.METHOD_DECL).stream()
+                .filter(IncrementalCompilation::isReused)
+                .map(method -> method.get("name"))
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Test if compiling the same code again returns the cached Jasmin, identical to a compilation without the cache
+     */
+    @Test
+    public void section1_Cache_Hit() {
+        var code = getCode("Methods.jmm");
+        var config = getCachedConfig();
+
+        var uncached = Launcher.compile(code, new HashMap<>());
+        var first = Launcher.compile(code, config);
+        var second = Launcher.compile(code, config);
+
+        assertEquals(uncached, first);
+        assertEquals(first, second);
+
+        var stats = new CompilationCache(temp.getRoot().toPath(), Long.MAX_VALUE).getStats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+    }
+
+    /**
+     * Test if entries stored by another build of the compiler are not reused
+     */
+    @Test
+    public void section1_Cache_CompilerStamp() {
+        var code = getCode("Methods.jmm");
+        var config = getCachedConfig();
+        var dir = temp.getRoot().toPath();
+
+        var oldBuild = new CompilationCache(dir, Long.MAX_VALUE, "old");
+        var newBuild = new CompilationCache(dir, Long.MAX_VALUE, "new");
+
+        var oldKey = oldBuild.getKey(code, config);
+        oldBuild.put(oldKey, new CompilationCache.Entry("ollir", "jasmin"));
+
+        var newKey = newBuild.getKey(code, config);
+        assertNotEquals(oldKey, newKey);
+        assertTrue(newBuild.get(newKey).isEmpty());
+        assertEquals("jasmin", oldBuild.get(oldKey).orElseThrow().jasminCode());
+    }
+
+    /**
+     * Test if the least recently used entry is evicted once the cache goes over its size bound
+     */
+    @Test
+    public void section1_Cache_LeastRecentlyUsed() throws InterruptedException {
+        var entry = new CompilationCache.Entry("o".repeat(50), "j".repeat(50));
+        var cache = new CompilationCache(temp.getRoot().toPath(), 250);
+
+        cache.put("first", entry);
+        Thread.sleep(50);
+        cache.put("second", entry);
+        Thread.sleep(50);
+        assertTrue(cache.get("first").isPresent());
+        Thread.sleep(50);
+        cache.put("third", entry);
+
+        assertTrue(cache.get("first").isPresent());
+        assertTrue(cache.get("second").isEmpty());
+        assertTrue(cache.get("third").isPresent());
+    }
+
+    /**
+     * Test if recompiling after editing one method reuses the other methods, and gives the same Jasmin as a
+     * compilation without the cache
+     */
+    @Test
+    public void section2_Incremental_EditOneMethod() {
+        var code = getCode("Methods.jmm");
+        var edited = code.replace("return a * 2;", "return a * 3;");
+        var config = getCachedConfig();
+
+        Launcher.compile(code, config);
+
+        assertEquals(Set.of("add", "main"), getReusedMethods(edited, config));
+        assertEquals(Launcher.compile(edited, new HashMap<>()), Launcher.compile(edited, config));
+    }
+
+    /**
+     * Test if a method is compiled again when a method it may inline was edited
+     */
+    @Test
+    public void section2_Incremental_EditInlinedMethod() {
+        var code = getCode("Methods.jmm");
+        var edited = code.replace("return a * 2;", "return a * 3;");
+        var config = getCachedConfig();
+        config.put("optimize", "true");
+
+        Launcher.compile(code, config);
+
+        assertEquals(Set.of("add"), getReusedMethods(edited, config));
+
+        Map<String, String> uncached = new HashMap<>();
+        uncached.put("optimize", "true");
+        assertEquals(Launcher.compile(edited, uncached), Launcher.compile(edited, config));
+    }
+
+    /**
+     * Test if watching a directory compiles the files added to it and recompiles the ones that change
+     */
+    @Test
+    public void section3_Watch_RecompileOnChange() throws Exception {
+        var dir = temp.newFolder("src");
+        var jar = new File(temp.getRoot(), "out.jar");
+        var first = writeClass(dir, "First", 1);
+
+        try (var watch = new WatchRun(getWatchConfig(dir, first, jar))) {
+            watch.await("Compiled First.jmm", 1);
+            watch.await("Wrote", 1);
+
+            writeClass(dir, "Second", 2);
+            watch.await("Compiled Second.jmm", 1);
+            watch.await("Wrote", 2);
+
+            writeClass(dir, "First", 3);
+            watch.await("Compiled First.jmm", 2);
+            watch.await("Wrote", 3);
+        }
+
+        assertEquals(Set.of("First.class", "Second.class"), getClassEntries(jar));
+        assertEquals("First", getMainClass(jar));
+    }
+
+    /**
+     * Test if a burst of saves is compiled once, after the last one
+     */
+    @Test
+    public void section3_Watch_Debounce() throws Exception {
+        var file = writeClass(temp.getRoot(), "Saved", 0);
+
+        Map<String, String> config = new HashMap<>();
+        config.put("inputFile", file.getAbsolutePath());
+        config.put("watch", "true");
+
+        try (var watch = new WatchRun(config)) {
+            watch.await("Compiled Saved.jmm", 1);
+
+            for (int i = 1; i <= 5; i++) {
+                writeClass(temp.getRoot(), "Saved", i);
+                Thread.sleep(5);
+            }
+
+            watch.await("Compiled Saved.jmm", 2);
+            Thread.sleep(500);
+
+            assertEquals(2, watch.count("Compiled Saved.jmm"));
+        }
+    }
+
+    /**
+     * Test if a deleted file is dropped from the jar
+     */
+    @Test
+    public void section3_Watch_DeletedFile() throws Exception {
+        var dir = temp.newFolder("src");
+        var jar = new File(temp.getRoot(), "out.jar");
+        var first = writeClass(dir, "First", 1);
+        var second = writeClass(dir, "Second", 2);
+
+        try (var watch = new WatchRun(getWatchConfig(dir, first, jar))) {
+            watch.await("Wrote", 1);
+            assertEquals(Set.of("First.class", "Second.class"), getClassEntries(jar));
+
+            Files.delete(second.toPath());
+            watch.await("Removed Second.jmm", 1);
+            watch.await("Wrote", 2);
+        }
+
+        assertEquals(Set.of("First.class"), getClassEntries(jar));
+    }
+
+    /**
+     * Test if the jar of a watched directory is still written when the input file is not one of the watched files
+     */
+    @Test
+    public void section3_Watch_InputOutsideDirectory() throws Exception {
+        var dir = temp.newFolder("src");
+        var jar = new File(temp.getRoot(), "out.jar");
+        var outside = writeClass(temp.getRoot(), "Outside", 1);
+        writeClass(dir, "Inside", 2);
+
+        try (var watch = new WatchRun(getWatchConfig(dir, outside, jar))) {
+            watch.await("Wrote", 1);
+        }
+
+        assertEquals(Set.of("Inside.class"), getClassEntries(jar));
+        assertNull(getMainClass(jar));
+    }
+
+    /**
+     * Test if "-jar=<file>" packages the compiled class, with it as the main class of the manifest
+     */
+    @Test
+    public void section4_Jar_MainClass() throws IOException {
+        var input = writeClass(temp.getRoot(), "Packaged", 7);
+        var jar = new File(temp.getRoot(), "packaged.jar");
+
+        Launcher.main(new String[]{"-i=" + input.getAbsolutePath(), "-jar=" + jar.getAbsolutePath()});
+
+        assertEquals(Set.of("Packaged.class"), getClassEntries(jar));
+        assertEquals("Packaged", getMainClass(jar));
+    }
+
+    /**
+     * Test if the jar of "-jar=<file>" with the runtime classes of "-b" runs with "java -jar"
+     */
+    @Test
+    public void section4_Jar_RunWithJava() throws IOException, InterruptedException {
+        var input = writeClass(temp.getRoot(), "Runnable", 42);
+        var jar = new File(temp.getRoot(), "runnable.jar");
+
+        Launcher.main(new String[]{"-i=" + input.getAbsolutePath(), "-jar=" + jar.getAbsolutePath(), "-b"});
+
+        assertTrue(getClassEntries(jar).containsAll(Set.of("Runnable.class", "io.class")));
+
+        var java = new File(System.getProperty("java.home"), "bin/java").getAbsolutePath();
+        var process = new ProcessBuilder(java, "-jar", jar.getAbsolutePath())
+                .redirectErrorStream(true)
+                .start();
+        var output = new String(process.getInputStream().readAllBytes());
+
+        assertEquals(0, process.waitFor());
+        assertEquals("42", SpecsStrings.normalizeFileContents(output, true));
+    }
+
+    static Map<String, String> getWatchConfig(File dir, File inputFile, File jar) {
+        Map<String, String> config = new HashMap<>();
+        config.put("inputFile", inputFile.getAbsolutePath());
+        config.put("watch", dir.getAbsolutePath());
+        config.put("jarFile", jar.getAbsolutePath());
+        return config;
+    }
+
+    static File writeClass(File dir, String name, int value) throws IOException {
+        var file = new File(dir, name + ".jmm");
+        Files.writeString(file.toPath(), "import io;\n\nclass " + name + " {\n"
+                + "    public static void main(String[] args) {\n"
+                + "        io.println(" + value + ");\n"
+                + "    }\n}\n");
+        return file;
+    }
+
+    static Set<String> getClassEntries(File jar) throws IOException {
+        try (var jarFile = new JarFile(jar)) {
+            return jarFile.stream()
+                    .map(JarEntry::getName)
+                    .filter(name -> name.endsWith(".class"))
+                    .collect(Collectors.toSet());
+        }
+    }
+
+    static String getMainClass(File jar) throws IOException {
+        try (var jarFile = new JarFile(jar)) {
+            return jarFile.getManifest().getMainAttributes().getValue("Main-Class");
+        }
+    }
+
+    /**
+     * Runs a {@link Watcher} in another thread, capturing what it prints.
+     */
+    static class WatchRun implements AutoCloseable {
+
+        private static final long TIMEOUT_MS = 20000;
+
+        private final ByteArrayOutputStream output;
+        private final PrintStream previous;
+        private final Thread thread;
+
+        WatchRun(Map<String, String> config) {
+            this.output = new ByteArrayOutputStream();
+            this.previous = System.out;
+            System.setOut(new PrintStream(output, true));
+
+            this.thread = new Thread(() -> new Watcher(config).run());
+            thread.start();
+        }
+
+        int count(String text) {
+            var printed = output.toString();
+            var count = 0;
+            for (int index = printed.indexOf(text); index >= 0; index = printed.indexOf(text, index + 1)) {
+                count++;
+            }
+            return count;
+        }
+
+        void await(String text, int count) throws InterruptedException {
+            var deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (count(text) < count) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail("Expected '" + text + "' to be printed " + count + " times, got:\n" + output);
+                }
+                Thread.sleep(10);
+            }
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            thread.interrupt();
+            thread.join(TIMEOUT_MS);
+            System.setOut(previous);
+        }
+    }
+}